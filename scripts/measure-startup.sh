@@ -0,0 +1,51 @@
+#!/usr/bin/env bash
+# Compares start up time and memory of the default boot, fast-start mode, and fast-start mode with the class data
+# sharing archive. Each mode is started RUNS times on a random port; for each start it records the JVM uptime Spring
+# Boot reports once the application has started, and the resident set size at that point. Extra arguments are
+# passed to every start, e.g. --load-generator.populate.meters=100000. The means are printed as a Markdown table.
+set -euo pipefail
+
+cd "$(dirname "$0")/.."
+RUNS=${RUNS:-5}
+
+./gradlew -q startupLayout cdsArchive
+CLASSPATH=$(find build/startup/lib -name '*.jar' | LC_ALL=C sort | paste -sd: -)
+LOG=$(mktemp)
+trap 'rm -f "$LOG"' EXIT
+
+measure() {
+    local mode=$1
+    shift
+    local total_seconds=0 total_rss_kb=0
+    for run in $(seq "$RUNS"); do
+        java "$@" -cp "$CLASSPATH" uk.tw.energy.App --server.port=0 "${APP_ARGS[@]}" > "$LOG" 2>&1 &
+        local pid=$!
+        until grep -q 'Started App in' "$LOG"; do
+            if ! kill -0 "$pid" 2> /dev/null; then
+                echo "$mode failed to start:" >&2
+                cat "$LOG" >&2
+                exit 1
+            fi
+            sleep 0.05
+        done
+        local seconds rss_kb
+        seconds=$(sed -n 's/.*process running for \([0-9.]*\)).*/\1/p' "$LOG" | head -1)
+        rss_kb=$(ps -o rss= -p "$pid" | tr -d ' ')
+        kill "$pid"
+        wait "$pid" 2> /dev/null || true
+        total_seconds=$(echo "$total_seconds + $seconds" | bc)
+        total_rss_kb=$((total_rss_kb + rss_kb))
+    done
+    printf '| %-16s | %12.2f | %8d |\n' "$mode" "$(echo "$total_seconds / $RUNS" | bc -l)" $((total_rss_kb / RUNS / 1024))
+}
+
+# a Markdown table, to paste into the README's Fast Start section
+echo "Mean of $RUNS runs with Java $(java -version 2>&1 | sed -n 's/.*version "\(.*\)".*/\1/p'), arguments: ${*:-none}"
+echo
+echo "| Mode             | Start up (s) | RSS (MB) |"
+echo "| ---------------- | -----------: | -------: |"
+APP_ARGS=("$@")
+measure "default"
+APP_ARGS=(--spring.profiles.active=fast-start "$@")
+measure "fast-start"
+measure "fast-start + CDS" -XX:SharedArchiveFile=build/startup/app.jsa -Xshare:auto
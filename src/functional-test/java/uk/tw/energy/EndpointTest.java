@@ -12,7 +12,9 @@ import uk.tw.energy.domain.MeterReadings;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
-@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, classes = App.class)
+// billing runs write files under the working directory
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, classes = App.class,
+        properties = "billing.run.enabled=false")
 public class EndpointTest {
 
     @Autowired
@@ -32,7 +34,7 @@ public class EndpointTest {
 
     @Test
     public void givenMeterIdShouldReturnAMeterReadingAssociatedWithMeterId() throws JsonProcessingException {
-        String smartMeterId = "bob";
+        String smartMeterId = "smart-meter-bob";
         populateMeterReadingsForMeter(smartMeterId);
 
         ResponseEntity<String> response = restTemplate.getForEntity("/readings/read/" + smartMeterId, String.class);
@@ -42,7 +44,7 @@ public class EndpointTest {
 
     @Test
     public void shouldCalculateAllPrices() throws JsonProcessingException {
-        String smartMeterId = "bob";
+        String smartMeterId = "smart-meter-bob";
         populateMeterReadingsForMeter(smartMeterId);
 
         ResponseEntity<String> response = restTemplate.getForEntity("/price-plans/compare-all/" + smartMeterId, String.class);
@@ -52,7 +54,7 @@ public class EndpointTest {
 
     @Test
     public void givenMeterIdAndLimitShouldReturnRecommendedCheapestPricePlans() throws JsonProcessingException {
-        String smartMeterId = "bob";
+        String smartMeterId = "smart-meter-bob";
         populateMeterReadingsForMeter(smartMeterId);
 
         ResponseEntity<String> response =
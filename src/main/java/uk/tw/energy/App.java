@@ -2,11 +2,18 @@ package uk.tw.energy;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class App {
 
     public static void main(String[] args) {
-        SpringApplication.run(App.class);
+        ConfigurableApplicationContext context = SpringApplication.run(App.class, args);
+        // lets the cdsArchive build task record everything start up loads and then stop
+        if (context.getEnvironment().getProperty("app.exit-after-startup", Boolean.class, false)) {
+            System.exit(SpringApplication.exit(context));
+        }
     }
 }
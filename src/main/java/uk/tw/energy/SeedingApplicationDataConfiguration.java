@@ -2,15 +2,20 @@ package uk.tw.energy;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
 import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
-import uk.tw.energy.domain.ElectricityReading;
 import uk.tw.energy.domain.PricePlan;
 import uk.tw.energy.generator.ElectricityReadingsGenerator;
+import uk.tw.energy.generator.LoadGenerator;
+import uk.tw.energy.generator.LoadGeneratorSettings;
+import uk.tw.energy.store.MeterReadingStore;
 
 import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -25,6 +30,26 @@ public class SeedingApplicationDataConfiguration {
     private static final String RENEWABLES_PRICE_PLAN_ID = "price-plan-1";
     private static final String STANDARD_PRICE_PLAN_ID = "price-plan-2";
 
+    // Meters to generate on top of the seeded ones, for load testing; none by default.
+    @Value("${load-generator.populate.meters:0}")
+    private int generatedMeters;
+
+    @Value("${load-generator.populate.readings-per-meter:96}")
+    private int generatedReadingsPerMeter;
+
+    @Value("${load-generator.populate.seed:42}")
+    private long generatedSeed;
+
+    @Value("${load-generator.populate.start:2023-01-01T00:00:00Z}")
+    private String generatedStart;
+
+    @Value("${load-generator.populate.reading-interval:PT15M}")
+    private String generatedReadingInterval;
+
+    // Generate each meter's readings when it is first looked up rather than at start up.
+    @Value("${readings.seed.lazy:false}")
+    private boolean lazySeeding;
+
     @Bean
     public List<PricePlan> pricePlans() {
         final List<PricePlan> pricePlans = new ArrayList<>();
@@ -35,12 +60,25 @@ public class SeedingApplicationDataConfiguration {
     }
 
     @Bean
-    public Map<String, List<ElectricityReading>> perMeterElectricityReadings() {
-        final Map<String, List<ElectricityReading>> readings = new HashMap<>();
+    public MeterReadingStore perMeterElectricityReadings() {
+        final MeterReadingStore readings = new MeterReadingStore();
         final ElectricityReadingsGenerator electricityReadingsGenerator = new ElectricityReadingsGenerator();
         smartMeterToPricePlanAccounts()
                 .keySet()
-                .forEach(smartMeterId -> readings.put(smartMeterId, electricityReadingsGenerator.generate(20)));
+                .stream()
+                .filter(smartMeterId -> !smartMeterId.startsWith(LoadGeneratorSettings.DEFAULT_METER_ID_PREFIX))
+                .forEach(smartMeterId -> {
+                    if (lazySeeding) {
+                        readings.seedLazily(smartMeterId, () -> electricityReadingsGenerator.generate(20));
+                    } else {
+                        readings.getOrCreate(smartMeterId).append(electricityReadingsGenerator.generate(20));
+                    }
+                });
+        if (generatedMeters > 0 && lazySeeding) {
+            loadGenerator().populateLazily(readings);
+        } else if (generatedMeters > 0) {
+            loadGenerator().populate(readings);
+        }
         return readings;
     }
 
@@ -52,9 +90,18 @@ public class SeedingApplicationDataConfiguration {
         smartMeterToPricePlanAccounts.put("smart-meter-2", MOST_EVIL_PRICE_PLAN_ID);
         smartMeterToPricePlanAccounts.put("smart-meter-3", STANDARD_PRICE_PLAN_ID);
         smartMeterToPricePlanAccounts.put("smart-meter-4", RENEWABLES_PRICE_PLAN_ID);
+        if (generatedMeters > 0) {
+            loadGenerator().assignPricePlans(smartMeterToPricePlanAccounts,
+                    List.of(MOST_EVIL_PRICE_PLAN_ID, RENEWABLES_PRICE_PLAN_ID, STANDARD_PRICE_PLAN_ID));
+        }
         return smartMeterToPricePlanAccounts;
     }
 
+    private LoadGenerator loadGenerator() {
+        return new LoadGenerator(LoadGeneratorSettings.defaults().withPopulation(generatedMeters, generatedReadingsPerMeter,
+                Duration.parse(generatedReadingInterval), Instant.parse(generatedStart), generatedSeed));
+    }
+
     @Bean
     @Primary
     public ObjectMapper objectMapper(Jackson2ObjectMapperBuilder builder) {
@@ -0,0 +1,133 @@
+package uk.tw.energy.admission;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A concurrency limit that finds its own level from how long requests take: every request that finishes within the
+ * target latency raises the limit by 1/limit, so a fully used limit grows by one a round, and a request that overruns
+ * it cuts the limit by a tenth, at most once per target latency so a batch of slow requests that were already in
+ * flight only counts once. The limit therefore settles around the concurrency the endpoint can serve within its
+ * target, and backs off as soon as queueing inside the application starts to show up as latency.
+ */
+public class AdaptiveConcurrencyLimit {
+
+    private static final double BACKOFF = 0.9;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long targetNanos;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final ReentrantLock waitLock = new ReentrantLock();
+    private final Condition released = waitLock.newCondition();
+    private volatile double limit;
+    private volatile int waiting;
+    private long lastDecreaseNanos;
+
+    public AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, long targetLatency, TimeUnit unit) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.targetNanos = unit.toNanos(targetLatency);
+        this.limit = Math.min(Math.max(initialLimit, minLimit), maxLimit);
+        this.lastDecreaseNanos = System.nanoTime() - targetNanos;
+    }
+
+    /**
+     * Takes a permit if one is free, without waiting.
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Waits up to the timeout for a permit, unless {@code maxWaiting} callers are already waiting.
+     */
+    public boolean tryAcquire(long timeout, TimeUnit unit, int maxWaiting) throws InterruptedException {
+        if (tryAcquire()) {
+            return true;
+        }
+        long remaining = unit.toNanos(timeout);
+        if (remaining <= 0) {
+            return false;
+        }
+        waitLock.lock();
+        try {
+            if (waiting >= maxWaiting) {
+                return false;
+            }
+            waiting++;
+            try {
+                while (!tryAcquire()) {
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    remaining = released.awaitNanos(remaining);
+                }
+                return true;
+            } finally {
+                waiting--;
+            }
+        } finally {
+            waitLock.unlock();
+        }
+    }
+
+    /**
+     * Gives the permit back and adjusts the limit by how long the request took.
+     */
+    public void release(long serviceTime, TimeUnit unit) {
+        int stillInFlight = inFlight.decrementAndGet();
+        adjust(unit.toNanos(serviceTime), stillInFlight + 1);
+        wakeWaiter();
+    }
+
+    /**
+     * Gives back a permit the request never used, leaving the limit as it is.
+     */
+    public void cancel() {
+        inFlight.decrementAndGet();
+        wakeWaiter();
+    }
+
+    public int limit() {
+        return (int) limit;
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    private synchronized void adjust(long serviceNanos, int concurrency) {
+        if (serviceNanos > targetNanos) {
+            long now = System.nanoTime();
+            if (now - lastDecreaseNanos >= targetNanos) {
+                limit = Math.max(minLimit, limit * BACKOFF);
+                lastDecreaseNanos = now;
+            }
+        } else if (concurrency * 2 >= limit) {
+            // only a limit that is being used has shown it can go higher
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+    }
+
+    private void wakeWaiter() {
+        if (waiting > 0) {
+            waitLock.lock();
+            try {
+                released.signal();
+            } finally {
+                waitLock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package uk.tw.energy.admission;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import static uk.tw.energy.exceptions.Constants.ERROR;
+import static uk.tw.energy.exceptions.Constants.SERVICE_OVERLOADED;
+
+/**
+ * Sheds load before it queues up inside the application. Each endpoint has its own {@link AdaptiveConcurrencyLimit}
+ * tuned to a target latency, and all of them share admission.max-concurrency requests in flight. Storing readings
+ * comes first: it may use all of the shared capacity and, when its own limit is reached, wait up to
+ * admission.ingest-queue-timeout for a permit, whereas the analytics endpoints (reads, comparisons, usage, fleet,
+ * accounts and billing) only get admission.analytics-share of the shared capacity and are refused straight away. A refused
+ * request gets a 503 with a Retry-After header rather than waiting behind requests it would only slow down further.
+ * <p>
+ * Time spent waiting for a permit and time spent serving the request are published separately as
+ * http.admission.queue and http.admission.service, so queueing shows up as queueing rather than as a slow endpoint.
+ * A streamed response, such as /readings/stream/, is written after the controller returns, so it keeps its permit
+ * until the asynchronous request completes, times out or fails rather than until the filter chain returns. How long
+ * that takes depends on the size of the export, not on how busy the service is, so it is published as
+ * http.admission.async and never fed into an adaptive limit; only the time to hand over the response counts as
+ * service time. Streams are instead held to a fixed admission.stream-max-concurrency. Event streams and the actuator
+ * endpoints are not limited.
+ */
+@Component
+public class AdmissionControlFilter extends OncePerRequestFilter {
+
+    private static final Logger logger = Logger.getLogger(AdmissionControlFilter.class.getName());
+
+    static final String RETRY_AFTER_SECONDS = "1";
+
+    enum Priority {INGEST, ANALYTICS}
+
+    private final boolean enabled;
+    private final int maxConcurrency;
+    private final int analyticsMaxConcurrency;
+    private final long ingestQueueTimeoutNanos;
+    private final int ingestMaxQueued;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Endpoint storeReadings;
+    private final Map<String, Endpoint> analyticsByPathPrefix = new LinkedHashMap<>();
+
+    @Autowired
+    public AdmissionControlFilter(MeterRegistry meterRegistry,
+                                  @Value("${admission.enabled:true}") boolean enabled,
+                                  @Value("${admission.max-concurrency:150}") int maxConcurrency,
+                                  @Value("${admission.analytics-share:0.75}") double analyticsShare,
+                                  @Value("${admission.ingest-target-latency:PT0.05S}") Duration ingestTargetLatency,
+                                  @Value("${admission.analytics-target-latency:PT0.25S}") Duration analyticsTargetLatency,
+                                  @Value("${admission.ingest-queue-timeout:PT0.05S}") Duration ingestQueueTimeout,
+                                  @Value("${admission.ingest-max-queued:64}") int ingestMaxQueued,
+                                  @Value("${admission.stream-max-concurrency:4}") int streamMaxConcurrency) {
+        this.enabled = enabled;
+        this.maxConcurrency = maxConcurrency;
+        this.analyticsMaxConcurrency = Math.max(1, (int) (maxConcurrency * analyticsShare));
+        this.ingestQueueTimeoutNanos = ingestQueueTimeout.toNanos();
+        this.ingestMaxQueued = ingestMaxQueued;
+
+        this.storeReadings = new Endpoint("readings.store", Priority.INGEST,
+                limit(maxConcurrency, ingestTargetLatency), meterRegistry);
+        addAnalytics("/readings/read/", "readings.read", analyticsTargetLatency, meterRegistry);
+        // a fixed limit: every bound is the same, so release() never moves it
+        int streamLimit = Math.max(1, Math.min(streamMaxConcurrency, analyticsMaxConcurrency));
+        analyticsByPathPrefix.put("/readings/stream/", new Endpoint("readings.stream", Priority.ANALYTICS,
+                new AdaptiveConcurrencyLimit(streamLimit, streamLimit, streamLimit, analyticsTargetLatency.toNanos(),
+                        TimeUnit.NANOSECONDS), meterRegistry));
+        addAnalytics("/price-plans/", "price-plans", analyticsTargetLatency, meterRegistry);
+        addAnalytics("/usage/", "usage", analyticsTargetLatency, meterRegistry);
+        addAnalytics("/fleet/", "fleet", analyticsTargetLatency, meterRegistry);
+        addAnalytics("/accounts/", "accounts", analyticsTargetLatency, meterRegistry);
+        addAnalytics("/billing/", "billing", analyticsTargetLatency, meterRegistry);
+
+        Gauge.builder("http.admission.in.flight", inFlight, AtomicInteger::get)
+                .description("Requests admitted and not yet finished, across all limited endpoints")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Requests admitted and not yet finished, across all limited endpoints; always 0 when admission control is off.
+     */
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !enabled || endpointFor(request) == null;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        Endpoint endpoint = endpointFor(request);
+        long arrived = System.nanoTime();
+        if (!admit(endpoint)) {
+            endpoint.rejected.increment();
+            reject(response);
+            return;
+        }
+        long admitted = System.nanoTime();
+        endpoint.queueTimer.record(admitted - arrived, TimeUnit.NANOSECONDS);
+        boolean async = false;
+        try {
+            filterChain.doFilter(request, response);
+            if (request.isAsyncStarted()) {
+                endpoint.serviceTimer.record(System.nanoTime() - admitted, TimeUnit.NANOSECONDS);
+                request.getAsyncContext().addListener(new ReleaseOnCompletion(endpoint, admitted));
+                async = true;
+            }
+        } finally {
+            if (!async) {
+                release(endpoint, admitted);
+            }
+        }
+    }
+
+    private void release(Endpoint endpoint, long admitted) {
+        long serviceNanos = System.nanoTime() - admitted;
+        endpoint.serviceTimer.record(serviceNanos, TimeUnit.NANOSECONDS);
+        endpoint.limit.release(serviceNanos, TimeUnit.NANOSECONDS);
+        inFlight.decrementAndGet();
+    }
+
+    private boolean admit(Endpoint endpoint) {
+        boolean acquired;
+        if (endpoint.priority == Priority.INGEST) {
+            try {
+                acquired = endpoint.limit.tryAcquire(ingestQueueTimeoutNanos, TimeUnit.NANOSECONDS, ingestMaxQueued);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        } else {
+            acquired = endpoint.limit.tryAcquire();
+        }
+        if (!acquired) {
+            return false;
+        }
+        int cap = endpoint.priority == Priority.INGEST ? maxConcurrency : analyticsMaxConcurrency;
+        while (true) {
+            int current = inFlight.get();
+            if (current >= cap) {
+                endpoint.limit.cancel();
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void reject(HttpServletResponse response) throws IOException {
+        response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        response.setHeader(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS);
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding("UTF-8");
+        response.getWriter().write("{\"" + ERROR + "\":\"" + SERVICE_OVERLOADED + "\"}");
+        logger.fine("Rejected request, " + inFlight.get() + " in flight");
+    }
+
+    Endpoint endpointFor(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if (path.equals("/readings/store")) {
+            return "POST".equals(request.getMethod()) ? storeReadings : null;
+        }
+        for (Map.Entry<String, Endpoint> entry : analyticsByPathPrefix.entrySet()) {
+            if (path.startsWith(entry.getKey())) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    private void addAnalytics(String pathPrefix, String name, Duration targetLatency, MeterRegistry meterRegistry) {
+        analyticsByPathPrefix.put(pathPrefix,
+                new Endpoint(name, Priority.ANALYTICS, limit(analyticsMaxConcurrency, targetLatency), meterRegistry));
+    }
+
+    private static AdaptiveConcurrencyLimit limit(int maxLimit, Duration targetLatency) {
+        // start low and let fast responses raise the limit, rather than letting a cold start flood the endpoint
+        int initialLimit = Math.max(1, Math.min(maxLimit, 20));
+        return new AdaptiveConcurrencyLimit(initialLimit, 1, maxLimit, targetLatency.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Releases an asynchronous request's permit once, whichever of completion, timeout or error comes first, without
+     * adjusting the limit by how long it took.
+     */
+    private final class ReleaseOnCompletion implements AsyncListener {
+
+        private final Endpoint endpoint;
+        private final long admitted;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        ReleaseOnCompletion(Endpoint endpoint, long admitted) {
+            this.endpoint = endpoint;
+            this.admitted = admitted;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            releaseOnce();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            releaseOnce();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            releaseOnce();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // listeners are cleared when async processing restarts, so stay registered until the request completes
+            event.getAsyncContext().addListener(this);
+        }
+
+        private void releaseOnce() {
+            if (released.compareAndSet(false, true)) {
+                endpoint.asyncTimer.record(System.nanoTime() - admitted, TimeUnit.NANOSECONDS);
+                endpoint.limit.cancel();
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+
+    static final class Endpoint {
+
+        final String name;
+        final Priority priority;
+        final AdaptiveConcurrencyLimit limit;
+        final Timer queueTimer;
+        final Timer serviceTimer;
+        final Timer asyncTimer;
+        final Counter rejected;
+
+        Endpoint(String name, Priority priority, AdaptiveConcurrencyLimit limit, MeterRegistry meterRegistry) {
+            this.name = name;
+            this.priority = priority;
+            this.limit = limit;
+            this.queueTimer = Timer.builder("http.admission.queue")
+                    .description("Time requests waited for a concurrency permit")
+                    .tags("endpoint", name)
+                    .register(meterRegistry);
+            this.serviceTimer = Timer.builder("http.admission.service")
+                    .description("Time admitted requests took to serve")
+                    .tags("endpoint", name)
+                    .register(meterRegistry);
+            this.asyncTimer = Timer.builder("http.admission.async")
+                    .description("Time admitted asynchronous requests, such as streamed responses, held their permit")
+                    .tags("endpoint", name)
+                    .register(meterRegistry);
+            this.rejected = Counter.builder("http.admission.rejected")
+                    .description("Requests refused with a 503 because the endpoint was at its limit")
+                    .tags("endpoint", name)
+                    .register(meterRegistry);
+            Gauge.builder("http.admission.limit", limit, AdaptiveConcurrencyLimit::limit)
+                    .description("Current adaptive concurrency limit")
+                    .tags("endpoint", name)
+                    .register(meterRegistry);
+        }
+    }
+}
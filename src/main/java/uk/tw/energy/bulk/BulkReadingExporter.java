@@ -0,0 +1,133 @@
+package uk.tw.energy.bulk;
+
+import uk.tw.energy.store.MeterReadingSeries;
+import uk.tw.energy.store.MeterReadingStore;
+import uk.tw.energy.store.ReadingColumns;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes every meter's readings to a local {@link ReadingFileFormat CSV or binary} file that
+ * {@link BulkReadingImporter} can load back.
+ * <p>
+ * Meters are encoded in parallel, straight from their columns, a run of {@link #RUN_READINGS} readings at a time.
+ * Each run claims the next stretch of the file and is written there with a positional write, so threads never wait
+ * on one another; runs of different meters interleave, but each meter's readings stay in time order.
+ */
+public class BulkReadingExporter {
+
+    static final int RUN_READINGS = 4096;
+    static final String CSV_HEADER = "smartMeterId,time,reading\n";
+
+    private final MeterReadingStore meterReadingStore;
+    private final int threads;
+
+    public BulkReadingExporter(MeterReadingStore meterReadingStore, int threads) {
+        this.meterReadingStore = meterReadingStore;
+        this.threads = threads;
+    }
+
+    public BulkTransferResult exportFile(Path file) throws IOException {
+        long start = System.nanoTime();
+        ReadingFileFormat format = ReadingFileFormat.of(file);
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            ByteBuffer header = format == ReadingFileFormat.CSV
+                    ? ByteBuffer.wrap(CSV_HEADER.getBytes(StandardCharsets.UTF_8))
+                    : ByteBuffer.allocate(ReadingFileFormat.BINARY_HEADER_BYTES)
+                    .putInt(ReadingFileFormat.BINARY_MAGIC).putInt(ReadingFileFormat.BINARY_VERSION).flip();
+            AtomicLong position = new AtomicLong(header.remaining());
+            write(channel, header, 0);
+
+            List<Future<Integer>> exporting = new ArrayList<>();
+            for (String smartMeterId : meterReadingStore.smartMeterIds()) {
+                exporting.add(workers.submit(() -> exportMeter(channel, position, format, smartMeterId)));
+            }
+            long readings = 0;
+            int meters = 0;
+            for (Future<Integer> exported : exporting) {
+                int meterReadings = await(exported);
+                readings += meterReadings;
+                meters += meterReadings > 0 ? 1 : 0;
+            }
+            return new BulkTransferResult(readings, meters, 0, position.get(), System.nanoTime() - start);
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    private int exportMeter(FileChannel channel, AtomicLong position, ReadingFileFormat format, String smartMeterId)
+            throws IOException {
+        Optional<ReadingColumns> found = meterReadingStore.find(smartMeterId).map(MeterReadingSeries::columns);
+        if (found.isEmpty()) {
+            return 0;
+        }
+        // one view for the whole meter, so the export is consistent even if readings are stored meanwhile
+        ReadingColumns columns = found.get();
+        byte[] id = smartMeterId.getBytes(StandardCharsets.UTF_8);
+        for (int from = 0; from < columns.size(); from += RUN_READINGS) {
+            int to = Math.min(from + RUN_READINGS, columns.size());
+            ByteBuffer run = format == ReadingFileFormat.CSV ? csvRun(smartMeterId, columns, from, to) : binaryRun(id, columns, from, to);
+            write(channel, run, position.getAndAdd(run.remaining()));
+        }
+        return columns.size();
+    }
+
+    private static ByteBuffer csvRun(String smartMeterId, ReadingColumns columns, int from, int to) {
+        StringBuilder lines = new StringBuilder((to - from) * 48);
+        for (int i = from; i < to; i++) {
+            lines.append(smartMeterId).append(',').append(columns.time(i)).append(',')
+                    .append(columns.reading(i).toPlainString()).append('\n');
+        }
+        return ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static ByteBuffer binaryRun(byte[] id, ReadingColumns columns, int from, int to) {
+        ByteBuffer run = ByteBuffer.allocate(Short.BYTES + id.length + Integer.BYTES
+                + (to - from) * ReadingFileFormat.BINARY_READING_BYTES);
+        run.putShort((short) id.length).put(id).putInt(to - from);
+        for (int i = from; i < to; i++) {
+            run.putLong(columns.epochSecond(i)).putInt(columns.nano(i))
+                    .putLong(columns.unscaledReading(i)).put((byte) columns.readingScale(i));
+        }
+        return run.flip();
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    private static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while exporting readings", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw new UncheckedIOException(io);
+            }
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,420 @@
+package uk.tw.energy.bulk;
+
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.service.MeterReadingService;
+import uk.tw.energy.store.MeterReadingSeries;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static uk.tw.energy.exceptions.Constants.SMART_METER_ID_REGEX;
+
+/**
+ * Loads readings from a local {@link ReadingFileFormat CSV or binary} file straight into the store, for backfilling
+ * history without going through HTTP and JSON.
+ * <p>
+ * The file is split into chunks that are memory mapped and parsed in parallel, a wave of one chunk per thread at a
+ * time so memory stays bounded however big the file is. Each wave's readings are then stored a meter at a time, also
+ * in parallel, through {@link MeterReadingService#appendReadings} so alerts, projections and other listeners see
+ * them as they would readings stored over HTTP. A meter's readings are stored in file order, so a file sorted by time
+ * within each meter is appended without any merging.
+ * <p>
+ * A line or reading that can't be stored, because it is malformed, for an invalid meter id, at a time outside the
+ * range of an {@link Instant} or for a reading too large for the store, is counted as rejected and the import carries on.
+ */
+public class BulkReadingImporter {
+
+    // a CSV chunk owns the lines that start in it, so it maps this much past its end to finish its last line
+    static final int MAX_LINE_LENGTH = 1024;
+    private static final long SECONDS_PER_DAY = 86_400;
+
+    private final MeterReadingService meterReadingService;
+    private final int threads;
+    private final int chunkBytes;
+
+    /**
+     * @param chunkBytes roughly how much of the file each thread parses at a time
+     */
+    public BulkReadingImporter(MeterReadingService meterReadingService, int threads, int chunkBytes) {
+        this.meterReadingService = meterReadingService;
+        this.threads = threads;
+        this.chunkBytes = chunkBytes;
+    }
+
+    public BulkTransferResult importFile(Path file) throws IOException {
+        long start = System.nanoTime();
+        ReadingFileFormat format = ReadingFileFormat.of(file);
+        long readings = 0;
+        long rejected = 0;
+        Set<String> meters = new HashSet<>();
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            List<Chunk> chunks = format == ReadingFileFormat.CSV ? csvChunks(size) : binaryChunks(channel, size);
+            for (int wave = 0; wave < chunks.size(); wave += threads) {
+                List<Future<ParsedChunk>> parsing = new ArrayList<>();
+                for (Chunk chunk : chunks.subList(wave, Math.min(wave + threads, chunks.size()))) {
+                    parsing.add(workers.submit(() -> format == ReadingFileFormat.CSV
+                            ? parseCsv(channel, size, chunk)
+                            : parseBinary(channel, chunk)));
+                }
+                // chunks are merged in file order, so each meter's readings stay in the order they were written
+                Map<String, List<ElectricityReading>> byMeter = new LinkedHashMap<>();
+                for (Future<ParsedChunk> parsed : parsing) {
+                    ParsedChunk chunk = await(parsed);
+                    rejected += chunk.rejected;
+                    chunk.readings.forEach((smartMeterId, meterReadings) ->
+                            byMeter.computeIfAbsent(smartMeterId, id -> new ArrayList<>()).addAll(meterReadings));
+                }
+                List<Future<Integer>> appending = new ArrayList<>(byMeter.size());
+                byMeter.forEach((smartMeterId, meterReadings) ->
+                        appending.add(workers.submit(() -> meterReadingService.appendReadings(smartMeterId, meterReadings))));
+                long parsedReadings = byMeter.values().stream().mapToLong(List::size).sum();
+                long appendedReadings = 0;
+                for (Future<Integer> appended : appending) {
+                    appendedReadings += await(appended);
+                }
+                readings += appendedReadings;
+                // readings from before a meter's evicted history are dropped by the store
+                rejected += parsedReadings - appendedReadings;
+                meters.addAll(byMeter.keySet());
+            }
+            return new BulkTransferResult(readings, meters.size(), rejected, size, System.nanoTime() - start);
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * Even splits of the file; each chunk parses the lines that start within it.
+     */
+    private List<Chunk> csvChunks(long size) {
+        List<Chunk> chunks = new ArrayList<>();
+        for (long start = 0; start < size; start += chunkBytes) {
+            chunks.add(new Chunk(start, Math.min(start + chunkBytes, size)));
+        }
+        return chunks;
+    }
+
+    /**
+     * Splits the file between runs, by skipping from each run's header to the next.
+     */
+    private List<Chunk> binaryChunks(FileChannel channel, long size) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(ReadingFileFormat.BINARY_HEADER_BYTES);
+        readFully(channel, header, 0);
+        if (header.getInt(0) != ReadingFileFormat.BINARY_MAGIC || header.getInt(Integer.BYTES) != ReadingFileFormat.BINARY_VERSION) {
+            throw new IOException("Not a version " + ReadingFileFormat.BINARY_VERSION + " readings file");
+        }
+        List<Chunk> chunks = new ArrayList<>();
+        ByteBuffer idLength = ByteBuffer.allocate(Short.BYTES);
+        ByteBuffer count = ByteBuffer.allocate(Integer.BYTES);
+        long chunkStart = ReadingFileFormat.BINARY_HEADER_BYTES;
+        long position = chunkStart;
+        while (position < size) {
+            long runStart = position;
+            readFully(channel, idLength.clear(), position);
+            position += Short.BYTES + Short.toUnsignedInt(idLength.getShort(0));
+            readFully(channel, count.clear(), position);
+            position += Integer.BYTES;
+            int readings = count.getInt(0);
+            if (readings < 0 || readings > (size - position) / ReadingFileFormat.BINARY_READING_BYTES) {
+                throw new IOException("Readings file is corrupt: the run at offset " + runStart + " claims " + readings
+                        + " readings but " + (size - position) + " bytes remain");
+            }
+            position += (long) readings * ReadingFileFormat.BINARY_READING_BYTES;
+            if (position - chunkStart >= chunkBytes || position == size) {
+                chunks.add(new Chunk(chunkStart, position));
+                chunkStart = position;
+            }
+        }
+        return chunks;
+    }
+
+    private static ParsedChunk parseCsv(FileChannel channel, long size, Chunk chunk) throws IOException {
+        // from the byte before the chunk, to tell whether the chunk starts on a line or part way through one
+        long mapStart = chunk.start == 0 ? 0 : chunk.start - 1;
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, mapStart,
+                Math.min(size, chunk.end + MAX_LINE_LENGTH) - mapStart);
+        int end = (int) (chunk.end - mapStart);
+        int position = 0;
+        if (chunk.start > 0) {
+            // the line running into the chunk belongs to the chunk before
+            while (position < buffer.limit() && buffer.get(position++) != '\n') {
+            }
+        }
+
+        ParsedChunk parsed = new ParsedChunk();
+        CsvLineParser parser = new CsvLineParser();
+        while (position < end) {
+            int lineEnd = position;
+            while (lineEnd < buffer.limit() && buffer.get(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            if (lineEnd == buffer.limit() && mapStart + lineEnd < size) {
+                // longer than any valid line, and its end isn't mapped
+                parsed.rejected++;
+                break;
+            }
+            boolean header = chunk.start == 0 && position == 0;
+            if (!parser.parse(buffer, position, lineEnd, parsed) && !header) {
+                parsed.rejected++;
+            }
+            position = lineEnd + 1;
+        }
+        return parsed;
+    }
+
+    private static ParsedChunk parseBinary(FileChannel channel, Chunk chunk) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, chunk.start, chunk.end - chunk.start);
+        ParsedChunk parsed = new ParsedChunk();
+        while (buffer.hasRemaining()) {
+            int runStart = buffer.position();
+            byte[] id = new byte[Short.toUnsignedInt(buffer.getShort())];
+            buffer.get(id);
+            String smartMeterId = new String(id, StandardCharsets.UTF_8);
+            int count = buffer.getInt();
+            if (count < 0 || count > buffer.remaining() / ReadingFileFormat.BINARY_READING_BYTES) {
+                // binaryChunks checks every run before any is parsed, so only a file changed meanwhile gets here
+                throw new IOException("Readings file is corrupt: the run at offset " + (chunk.start + runStart)
+                        + " claims " + count + " readings");
+            }
+            if (!smartMeterId.matches(SMART_METER_ID_REGEX)) {
+                buffer.position(buffer.position() + count * ReadingFileFormat.BINARY_READING_BYTES);
+                parsed.rejected += count;
+                continue;
+            }
+            List<ElectricityReading> readings = parsed.readings.computeIfAbsent(smartMeterId, key -> new ArrayList<>(count));
+            for (int i = 0; i < count; i++) {
+                long epochSecond = buffer.getLong();
+                int nano = buffer.getInt();
+                long unscaledReading = buffer.getLong();
+                byte scale = buffer.get();
+                BigDecimal reading = BigDecimal.valueOf(unscaledReading, scale);
+                try {
+                    Instant time = Instant.ofEpochSecond(epochSecond, nano);
+                    if (MeterReadingSeries.isStorable(reading)) {
+                        readings.add(new ElectricityReading(time, reading));
+                        continue;
+                    }
+                } catch (DateTimeException | ArithmeticException e) {
+                    // a time outside the range of an Instant
+                }
+                parsed.rejected++;
+            }
+        }
+        return parsed;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Readings file is truncated at " + (position + buffer.position()) + " bytes");
+            }
+        }
+    }
+
+    private static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while importing readings", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw new UncheckedIOException(io);
+            }
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private record Chunk(long start, long end) {
+    }
+
+    private static final class ParsedChunk {
+
+        private final Map<String, List<ElectricityReading>> readings = new LinkedHashMap<>();
+        private long rejected;
+    }
+
+    /**
+     * Parses {@code smartMeterId,time,reading} lines from the mapped bytes. Files are usually grouped by meter, so
+     * the last meter id is remembered and reused while lines repeat it.
+     */
+    private static final class CsvLineParser {
+
+        private final char[] chars = new char[MAX_LINE_LENGTH];
+        private byte[] lastId = new byte[0];
+        private String lastSmartMeterId;
+        private List<ElectricityReading> lastReadings;
+
+        /**
+         * @return false if the line is malformed, for an invalid meter id, or has a time or reading out of range;
+         * blank lines are skipped
+         */
+        boolean parse(ByteBuffer buffer, int from, int to, ParsedChunk into) {
+            if (to > from && buffer.get(to - 1) == '\r') {
+                to--;
+            }
+            if (to == from) {
+                return true;
+            }
+            if (to - from > MAX_LINE_LENGTH) {
+                return false;
+            }
+            int firstComma = indexOf(buffer, ',', from, to);
+            int secondComma = firstComma < 0 ? -1 : indexOf(buffer, ',', firstComma + 1, to);
+            if (secondComma < 0) {
+                return false;
+            }
+            List<ElectricityReading> readings = readingsFor(buffer, from, firstComma, into);
+            if (readings == null) {
+                return false;
+            }
+            try {
+                Instant time = parseTime(buffer, firstComma + 1, secondComma);
+                BigDecimal reading = new BigDecimal(chars, 0, copy(buffer, secondComma + 1, to));
+                if (!MeterReadingSeries.isStorable(reading)) {
+                    return false;
+                }
+                readings.add(new ElectricityReading(time, reading));
+                return true;
+            } catch (NumberFormatException | DateTimeException e) {
+                // DateTimeException covers both unparseable times and epoch seconds outside the range of an Instant
+                return false;
+            }
+        }
+
+        private List<ElectricityReading> readingsFor(ByteBuffer buffer, int from, int to, ParsedChunk into) {
+            if (!sameBytes(buffer, from, to, lastId)) {
+                lastId = new byte[to - from];
+                buffer.get(from, lastId);
+                lastSmartMeterId = new String(lastId, StandardCharsets.UTF_8);
+                lastReadings = lastSmartMeterId.matches(SMART_METER_ID_REGEX)
+                        ? into.readings.computeIfAbsent(lastSmartMeterId, key -> new ArrayList<>())
+                        : null;
+            }
+            return lastReadings;
+        }
+
+        private Instant parseTime(ByteBuffer buffer, int from, int to) {
+            boolean epochSeconds = to > from;
+            for (int i = from; i < to && epochSeconds; i++) {
+                byte b = buffer.get(i);
+                epochSeconds = (b >= '0' && b <= '9') || (b == '-' && i == from && to - from > 1);
+            }
+            int length = copy(buffer, from, to);
+            if (epochSeconds) {
+                return Instant.ofEpochSecond(Long.parseLong(CharBuffer.wrap(chars, 0, length), 0, length, 10));
+            }
+            Instant utc = parseUtc(length);
+            return utc != null ? utc : DateTimeFormatter.ISO_INSTANT.parse(CharBuffer.wrap(chars, 0, length), Instant::from);
+        }
+
+        /**
+         * Parses the copied time if it has the usual {@code 2023-01-02T00:00:00Z} form, optionally with a fraction of
+         * a second, which is several times quicker than a {@link DateTimeFormatter}; null for anything else.
+         */
+        private Instant parseUtc(int length) {
+            if (length < 20 || length > 30 || chars[4] != '-' || chars[7] != '-' || chars[10] != 'T'
+                    || chars[13] != ':' || chars[16] != ':' || chars[length - 1] != 'Z') {
+                return null;
+            }
+            int year = digits(0, 4);
+            int month = digits(5, 7);
+            int day = digits(8, 10);
+            int hour = digits(11, 13);
+            int minute = digits(14, 16);
+            int second = digits(17, 19);
+            int nano = 0;
+            if (length > 20) {
+                if (chars[19] != '.' || length == 21) {
+                    return null;
+                }
+                nano = digits(20, length - 1);
+                for (int i = length - 1 - 20; i < 9; i++) {
+                    nano *= 10;
+                }
+            } else if (chars[19] != 'Z') {
+                return null;
+            }
+            if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31 || hour < 0 || hour > 23
+                    || minute < 0 || minute > 59 || second < 0 || second > 59 || nano < 0) {
+                return null;
+            }
+            try {
+                long epochDay = LocalDate.of(year, month, day).toEpochDay();
+                return Instant.ofEpochSecond(epochDay * SECONDS_PER_DAY + hour * 3600L + minute * 60L + second, nano);
+            } catch (DateTimeException e) {
+                return null;
+            }
+        }
+
+        /**
+         * The number in chars [from, to), or -1 if any of them isn't a digit.
+         */
+        private int digits(int from, int to) {
+            int value = 0;
+            for (int i = from; i < to; i++) {
+                char c = chars[i];
+                if (c < '0' || c > '9') {
+                    return -1;
+                }
+                value = value * 10 + (c - '0');
+            }
+            return value;
+        }
+
+        private int copy(ByteBuffer buffer, int from, int to) {
+            for (int i = from; i < to; i++) {
+                chars[i - from] = (char) (buffer.get(i) & 0xFF);
+            }
+            return to - from;
+        }
+
+        private static boolean sameBytes(ByteBuffer buffer, int from, int to, byte[] bytes) {
+            if (to - from != bytes.length) {
+                return false;
+            }
+            for (int i = from; i < to; i++) {
+                if (buffer.get(i) != bytes[i - from]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static int indexOf(ByteBuffer buffer, char c, int from, int to) {
+            for (int i = from; i < to; i++) {
+                if (buffer.get(i) == c) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
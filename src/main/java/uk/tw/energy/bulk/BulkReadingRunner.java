@@ -0,0 +1,75 @@
+package uk.tw.energy.bulk;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+import uk.tw.energy.service.MeterReadingService;
+import uk.tw.energy.store.MeterReadingStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Bulk imports readings at start up from readings.import.location, a file or a directory of .csv and .readings
+ * files, and then exports every meter's readings to readings.export.location if that is set. Together with
+ * app.exit-after-startup this makes the application a one-off backfill or dump tool.
+ */
+@Component
+public class BulkReadingRunner implements ApplicationRunner {
+
+    private static final Logger logger = Logger.getLogger(BulkReadingRunner.class.getName());
+    private static final int BYTES_PER_MB = 1024 * 1024;
+
+    private final MeterReadingService meterReadingService;
+    private final MeterReadingStore meterReadingStore;
+    private final String importLocation;
+    private final String exportLocation;
+    private final int threads;
+    private final int chunkBytes;
+
+    public BulkReadingRunner(MeterReadingService meterReadingService, MeterReadingStore meterReadingStore,
+                             @Value("${readings.import.location:}") String importLocation,
+                             @Value("${readings.export.location:}") String exportLocation,
+                             @Value("${readings.bulk.threads:0}") int threads,
+                             @Value("${readings.bulk.chunk-size-mb:16}") int chunkSizeMb) {
+        this.meterReadingService = meterReadingService;
+        this.meterReadingStore = meterReadingStore;
+        this.importLocation = importLocation;
+        this.exportLocation = exportLocation;
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.chunkBytes = chunkSizeMb * BYTES_PER_MB;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws IOException {
+        if (!importLocation.isBlank()) {
+            BulkReadingImporter importer = new BulkReadingImporter(meterReadingService, threads, chunkBytes);
+            for (Path file : importFiles(Path.of(importLocation))) {
+                logger.info("Imported " + importer.importFile(file) + " from " + file);
+            }
+        }
+        if (!exportLocation.isBlank()) {
+            Path file = Path.of(exportLocation);
+            logger.info("Exported " + new BulkReadingExporter(meterReadingStore, threads).exportFile(file) + " to " + file);
+        }
+    }
+
+    private static List<Path> importFiles(Path location) throws IOException {
+        if (!Files.isDirectory(location)) {
+            return List.of(location);
+        }
+        try (Stream<Path> files = Files.list(location)) {
+            return files.filter(file -> {
+                        String name = file.getFileName().toString();
+                        return name.endsWith(".csv") || name.endsWith(".readings");
+                    })
+                    .sorted()
+                    .toList();
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package uk.tw.energy.bulk;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What a bulk import or export moved, and how fast.
+ *
+ * @param rejected lines or readings that could not be imported, e.g. malformed or for an invalid meter id
+ */
+public record BulkTransferResult(long readings, int meters, long rejected, long bytes, long elapsedNanos) {
+
+    public double readingsPerSecond() {
+        return elapsedNanos == 0 ? 0 : readings * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%,d readings for %,d meters (%,d rejected, %,d bytes) in %.3f s: %,.0f readings/s",
+                readings, meters, rejected, bytes, elapsedNanos / 1e9, readingsPerSecond());
+    }
+}
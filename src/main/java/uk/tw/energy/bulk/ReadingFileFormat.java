@@ -0,0 +1,39 @@
+package uk.tw.energy.bulk;
+
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * The file formats readings can be bulk imported from and exported to, told apart by file extension.
+ * <ul>
+ *     <li>CSV ({@code .csv}): one {@code smartMeterId,time,reading} line per reading, e.g.
+ *     {@code smart-meter-0,2023-01-02T00:00:00Z,0.5031}. The time is ISO-8601 or epoch seconds, and a header line
+ *     is skipped.</li>
+ *     <li>Binary ({@code .readings}): {@link #BINARY_MAGIC} and {@link #BINARY_VERSION}, then runs of one meter's
+ *     readings, each the meter id (an unsigned short length and UTF-8 bytes), a reading count and that many
+ *     readings as epoch second, nano, unscaled reading and scale. Readings round trip exactly, and runs can be
+ *     found by skipping from header to header without parsing the readings in between.</li>
+ * </ul>
+ */
+public enum ReadingFileFormat {
+
+    CSV,
+    BINARY;
+
+    public static final int BINARY_MAGIC = 0x4A4F4952;
+    public static final int BINARY_VERSION = 1;
+    // epoch second, nano, unscaled reading and scale
+    static final int BINARY_READING_BYTES = Long.BYTES + Integer.BYTES + Long.BYTES + Byte.BYTES;
+    static final int BINARY_HEADER_BYTES = Integer.BYTES + Integer.BYTES;
+
+    public static ReadingFileFormat of(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        if (name.endsWith(".csv")) {
+            return CSV;
+        }
+        if (name.endsWith(".readings")) {
+            return BINARY;
+        }
+        throw new IllegalArgumentException("Unknown reading file format for " + file + ", expected .csv or .readings");
+    }
+}
@@ -0,0 +1,71 @@
+package uk.tw.energy.controller;
+
+import jakarta.validation.constraints.Pattern;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import uk.tw.energy.domain.PricePlanAssignments;
+import uk.tw.energy.domain.PricePlanSwitchRequest;
+import uk.tw.energy.exceptions.InvalidParametersException;
+import uk.tw.energy.service.AccountService;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static uk.tw.energy.exceptions.Constants.*;
+
+@RestController
+@RequestMapping("/accounts")
+public class AccountController {
+
+    private final AccountService accountService;
+
+    public AccountController(AccountService accountService) {
+        this.accountService = accountService;
+    }
+
+    /**
+     * The plan the account is on now and every plan it has been or is scheduled to be on, with when each took effect.
+     * @param smartMeterId
+     * @return
+     */
+    @GetMapping("/{smartMeterId}/price-plans")
+    public ResponseEntity<Map<String, Object>> pricePlanAssignments(
+            @PathVariable @Pattern(regexp = SMART_METER_ID_REGEX, message = INVALID_SMART_METER_ID) String smartMeterId) {
+        try {
+            Optional<PricePlanAssignments> assignments = accountService.getPricePlanAssignments(smartMeterId);
+            if (assignments.isEmpty()) {
+                return ResponseEntity.status(HttpStatus.NO_CONTENT).body(Collections.emptyMap());
+            }
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put(SMART_METER_ID_KEY, smartMeterId);
+            response.put(PRICE_PLAN_ID_KEY, accountService.getPricePlanIdForSmartMeterId(smartMeterId));
+            response.put(PRICE_PLAN_ASSIGNMENTS_KEY, assignments.get().asList());
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).
+                    body(Collections.singletonMap(ERROR, HttpStatus.INTERNAL_SERVER_ERROR.value() + e.getMessage()));
+        }
+    }
+
+    /**
+     * Switches many accounts' price plans in one call. Switches take effect from their own effectiveFrom, the
+     * request's, or now; entries that can't be applied are listed in the response and the rest still go through.
+     * @param request
+     * @return
+     */
+    @PostMapping("/price-plans/switch")
+    public ResponseEntity<Map<String, Object>> switchPricePlans(@RequestBody PricePlanSwitchRequest request) {
+        if (request == null || request.switches() == null || request.switches().isEmpty()) {
+            throw new InvalidParametersException(NO_PRICE_PLAN_SWITCHES);
+        }
+        try {
+            return ResponseEntity.ok(accountService.switchPricePlans(request));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).
+                    body(Collections.singletonMap(ERROR, HttpStatus.INTERNAL_SERVER_ERROR.value() + e.getMessage()));
+        }
+    }
+}
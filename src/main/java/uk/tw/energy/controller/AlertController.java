@@ -0,0 +1,33 @@
+package uk.tw.energy.controller;
+
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import uk.tw.energy.exceptions.InvalidParametersException;
+import uk.tw.energy.service.ConsumptionAlertService;
+
+import static uk.tw.energy.exceptions.Constants.*;
+
+@RestController
+@RequestMapping("/alerts")
+public class AlertController {
+
+    private final ConsumptionAlertService consumptionAlertService;
+
+    public AlertController(ConsumptionAlertService consumptionAlertService) {
+        this.consumptionAlertService = consumptionAlertService;
+    }
+
+    /**
+     * Server-sent events, one "alert" event per consumption alert raised from now on, for one meter or all of them.
+     * @param smartMeterId
+     * @return
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream(@RequestParam(value = SMART_METER_ID_KEY, required = false) String smartMeterId) {
+        if (smartMeterId != null && !smartMeterId.matches(SMART_METER_ID_REGEX)) {
+            throw new InvalidParametersException(INVALID_SMART_METER_ID);
+        }
+        return consumptionAlertService.subscribe(smartMeterId);
+    }
+}
@@ -0,0 +1,44 @@
+package uk.tw.energy.controller;
+
+import jakarta.validation.constraints.Pattern;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import uk.tw.energy.service.BillProjectionService;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static uk.tw.energy.exceptions.Constants.*;
+
+@RestController
+@RequestMapping("/price-plans")
+public class BillProjectionController {
+
+    private final BillProjectionService billProjectionService;
+
+    public BillProjectionController(BillProjectionService billProjectionService) {
+        this.billProjectionService = billProjectionService;
+    }
+
+    /**
+     * Projects the cost of the meter's current calendar month on every price plan, from its usage so far and its
+     * usual usage in each hour of the week for the rest of the month.
+     * @param smartMeterId
+     * @return
+     */
+    @GetMapping("/project/{smartMeterId}")
+    public ResponseEntity<Map<String, Object>> projectCosts(
+            @PathVariable @Pattern(regexp = SMART_METER_ID_REGEX, message = INVALID_SMART_METER_ID) String smartMeterId) {
+        try {
+            Map<String, Object> projection = billProjectionService.getProjectedCosts(smartMeterId);
+            if (projection.isEmpty()) {
+                return ResponseEntity.status(HttpStatus.NO_CONTENT).body(projection);
+            }
+            return ResponseEntity.status(HttpStatus.OK).body(projection);
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).
+                    body(Collections.singletonMap(ERROR, HttpStatus.INTERNAL_SERVER_ERROR.value() + e.getMessage()));
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package uk.tw.energy.controller;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import uk.tw.energy.service.BillingRunService;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+
+import static uk.tw.energy.exceptions.Constants.*;
+
+@RestController
+@RequestMapping("/billing")
+public class BillingController {
+
+    private final BillingRunService billingRunService;
+
+    public BillingController(BillingRunService billingRunService) {
+        this.billingRunService = billingRunService;
+    }
+
+    /**
+     * Progress of the billing run in progress, or the summary of the last one finished.
+     * @return
+     */
+    @GetMapping("/runs/latest")
+    public ResponseEntity<Map<String, Object>> latestRun() {
+        try {
+            Optional<Map<String, Object>> run = billingRunService.getLatestRun();
+            return run.isPresent()
+                    ? ResponseEntity.ok(run.get())
+                    : ResponseEntity.noContent().build();
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).
+                    body(Collections.singletonMap(ERROR, HttpStatus.INTERNAL_SERVER_ERROR.value() + e.getMessage()));
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package uk.tw.energy.controller;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import uk.tw.energy.exceptions.InvalidParametersException;
+import uk.tw.energy.service.FleetAggregationService;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static uk.tw.energy.exceptions.Constants.*;
+
+@RestController
+@RequestMapping("/fleet")
+public class FleetController {
+
+    private final FleetAggregationService fleetAggregationService;
+
+    public FleetController(FleetAggregationService fleetAggregationService) {
+        this.fleetAggregationService = fleetAggregationService;
+    }
+
+    /**
+     * Total consumption and cost across every meter, and per meter p50/p95, grouped by the price plan each meter is
+     * on now (?groupBy=price-plan, the default) or by that plan's energy supplier (?groupBy=supplier).
+     * @param groupBy
+     * @return
+     */
+    @GetMapping("/usage")
+    public ResponseEntity<Map<String, Object>> usage(
+            @RequestParam(value = GROUP_BY_KEY, defaultValue = FleetAggregationService.GROUP_BY_PRICE_PLAN) String groupBy) {
+        if (!FleetAggregationService.GROUP_BY_PRICE_PLAN.equals(groupBy) && !FleetAggregationService.GROUP_BY_SUPPLIER.equals(groupBy)) {
+            throw new InvalidParametersException(INVALID_GROUP_BY);
+        }
+        try {
+            return ResponseEntity.ok(fleetAggregationService.getFleetUsage(groupBy));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).
+                    body(Collections.singletonMap(ERROR, HttpStatus.INTERNAL_SERVER_ERROR.value() + e.getMessage()));
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package uk.tw.energy.controller;
+
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import uk.tw.energy.exceptions.InvalidParametersException;
+import uk.tw.energy.service.LiveReadingService;
+
+import static uk.tw.energy.exceptions.Constants.*;
+
+@RestController
+@RequestMapping("/readings")
+public class LiveReadingController {
+
+    private final LiveReadingService liveReadingService;
+
+    public LiveReadingController(LiveReadingService liveReadingService) {
+        this.liveReadingService = liveReadingService;
+    }
+
+    /**
+     * Server-sent events, one "readings" event per batch of readings stored from now on, with the meter's updated
+     * cost on every price plan. Without a smart meter id every meter's readings are sent.
+     * @param smartMeterId
+     * @return
+     */
+    @GetMapping(value = {"/live", "/live/{smartMeterId}"}, produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter live(@PathVariable(required = false) String smartMeterId) {
+        if (smartMeterId != null && !smartMeterId.matches(SMART_METER_ID_REGEX)) {
+            throw new InvalidParametersException(INVALID_SMART_METER_ID);
+        }
+        return liveReadingService.subscribe(smartMeterId);
+    }
+}
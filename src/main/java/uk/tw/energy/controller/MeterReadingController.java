@@ -1,17 +1,26 @@
 package uk.tw.energy.controller;
 
 import jakarta.validation.constraints.Pattern;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import uk.tw.energy.domain.ElectricityReading;
 import uk.tw.energy.domain.MeterReadings;
 import uk.tw.energy.exceptions.InvalidParametersException;
 import uk.tw.energy.exceptions.NoReadingsExistForMeterId;
 import uk.tw.energy.service.MeterReadingService;
+import uk.tw.energy.service.StoreReadingsResult;
+import uk.tw.energy.store.NdjsonReadingWriter;
+import uk.tw.energy.store.ReadingColumns;
+import uk.tw.energy.store.ReadingDownsampler;
 
+import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
+import java.util.OptionalLong;
 
 import static uk.tw.energy.exceptions.Constants.*;
 
@@ -26,18 +35,28 @@ public class MeterReadingController {
     }
 
     /**
-     * Refactored controller class
+     * Refactored controller class. A retry sent with the same Idempotency-Key header as a batch that was already
+     * stored is acknowledged without storing the readings again. The Readings-Stored and Readings-Dropped headers say
+     * how many readings were stored and how many were dropped for being older than the meter's retained history.
      * @param meterReadings
+     * @param idempotencyKey
      * @return
      * @throws InvalidParametersException
      */
     @PostMapping("/store")
-    public ResponseEntity<String> storeMeterReadings(@RequestBody MeterReadings meterReadings)throws InvalidParametersException {
-        String response = "";
+    public ResponseEntity<String> storeMeterReadings(@RequestBody MeterReadings meterReadings,
+                                                     @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey)throws InvalidParametersException {
+        StoreReadingsResult response;
         try {
-           response = meterReadingService.storeReadings(meterReadings);
-            if(response.equals(SUCCESS))
-                return ResponseEntity.ok(READINGS_STORED_SUCCESS);
+           response = meterReadingService.storeReadings(meterReadings, idempotencyKey);
+            if(response.status().equals(SUCCESS))
+                return ResponseEntity.ok()
+                        .header(READINGS_STORED_HEADER, Integer.toString(response.stored()))
+                        .header(READINGS_DROPPED_HEADER, Integer.toString(response.dropped()))
+                        .body(response.dropped() == 0 ? READINGS_STORED_SUCCESS : String.format(READINGS_PARTLY_STORED,
+                                response.stored(), response.stored() + response.dropped(), response.dropped()));
+            else if(response.status().equals(DUPLICATE_READINGS))
+                return ResponseEntity.ok(READINGS_ALREADY_STORED);
             else
                 return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new InvalidParametersException(INPUT_IS_INVALID).getMessage());
         } catch (Exception e) {
@@ -47,17 +66,71 @@ public class MeterReadingController {
 
     //Incorporating pattern check and having Optional List being returned for the generic ResponseEntity object.
 
+    /**
+     * The meter's readings. With points, only that many are returned, picked to keep the series' shape when charted.
+     * The response carries an ETag from the meter's version, and a request whose If-None-Match still matches it gets
+     * 304 Not Modified without the readings being read at all.
+     * @param smartMeterId
+     * @param points
+     * @param ifNoneMatch
+     * @return
+     */
     @GetMapping("/read/{smartMeterId}")
     @Pattern(regexp = SMART_METER_ID_REGEX, message = INVALID_SMART_METER_ID)
-    public ResponseEntity<Optional<List<ElectricityReading>>>  readReadings(@PathVariable String smartMeterId) {
-
+    public ResponseEntity<Optional<List<ElectricityReading>>>  readReadings(@PathVariable String smartMeterId,
+                                                                            @RequestParam(value = POINTS, required = false) Integer points,
+                                                                            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        if (points != null && points < ReadingDownsampler.MIN_POINTS) {
+            throw new InvalidParametersException(INVALID_POINTS);
+        }
         try{
-            Optional<List<ElectricityReading>> readings = meterReadingService.getReadings(smartMeterId);
+            // taken before the readings, so the tag can only be older than the body, which costs a refetch at worst
+            OptionalLong version = meterReadingService.getReadingsVersion(smartMeterId);
+            if (version.isEmpty()) {
+                return ResponseEntity.status(HttpStatus.NO_CONTENT).body(Optional.empty());
+            }
+            String eTag = ETags.of(Long.toString(version.getAsLong()));
+            if (ETags.matches(ifNoneMatch, eTag)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+            }
+            Optional<List<ElectricityReading>> readings = points == null
+                    ? meterReadingService.getReadings(smartMeterId)
+                    : meterReadingService.getReadings(smartMeterId, points);
             return readings.isPresent()
-                    ? ResponseEntity.ok(readings)
+                    ? ResponseEntity.ok().eTag(eTag).body(readings)
                     : ResponseEntity.status(HttpStatus.NO_CONTENT).body(Optional.empty());
         }catch(Exception e){
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Optional.empty());
         }
     }
+
+    /**
+     * The meter's readings as newline delimited JSON (application/x-ndjson), one reading per line. Readings are
+     * written from the store's columns as the response goes out instead of being collected into a list first, so
+     * memory use doesn't grow with the meter's history. Optional ISO-8601 from (inclusive) and to (exclusive)
+     * narrow it to a window.
+     * @param smartMeterId
+     * @param from
+     * @param to
+     * @return
+     */
+    @GetMapping(value = "/stream/{smartMeterId}", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamReadings(
+            @PathVariable @Pattern(regexp = SMART_METER_ID_REGEX, message = INVALID_SMART_METER_ID) String smartMeterId,
+            @RequestParam(value = FROM, required = false) Instant from,
+            @RequestParam(value = TO, required = false) Instant to) {
+        if (from != null && to != null && !from.isBefore(to)) {
+            throw new InvalidParametersException(INVALID_DATE_RANGE);
+        }
+        // the view is taken now, so the stream is consistent even if readings are stored while it is written
+        Optional<ReadingColumns> readingColumns = meterReadingService.getReadingColumns(smartMeterId);
+        if (readingColumns.isEmpty() || readingColumns.get().isEmpty()) {
+            return ResponseEntity.status(HttpStatus.NO_CONTENT).build();
+        }
+        ReadingColumns columns = readingColumns.get();
+        int first = from == null ? 0 : columns.indexAtOrAfter(from);
+        int last = to == null ? columns.size() : columns.indexAtOrAfter(to);
+        StreamingResponseBody body = outputStream -> new NdjsonReadingWriter(outputStream).write(columns, first, last);
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
 }
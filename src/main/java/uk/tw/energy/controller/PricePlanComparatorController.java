@@ -1,13 +1,17 @@
 package uk.tw.energy.controller;
 
 import jakarta.validation.constraints.Pattern;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import uk.tw.energy.domain.RankedPricePlans;
+import uk.tw.energy.exceptions.InvalidParametersException;
 import uk.tw.energy.exceptions.NoReadingsExistForMeterId;
 import uk.tw.energy.service.PricePlanService;
 
 import java.math.BigDecimal;
+import java.time.Instant;
 import java.util.*;
 
 import static uk.tw.energy.exceptions.Constants.*;
@@ -35,14 +39,25 @@ public class PricePlanComparatorController {
      * Made the below public method more abstract so that the internal implementations
      * are not visible for modification easily to the outside classes.
      * Also, have the ResponseEntity generic class return Map as ResponseEntity object.
+     * The response carries an ETag, and a request whose If-None-Match still matches it gets 304 Not Modified
+     * without anything being costed.
      */
     @GetMapping("/compare-all/{smartMeterId}")
     @Pattern(regexp = SMART_METER_ID_REGEX, message = INVALID_SMART_METER_ID)
-    public ResponseEntity<Map<String, Object>> calculatedCostForEachPricePlan(@PathVariable String smartMeterId) throws NoReadingsExistForMeterId {
+    public ResponseEntity<Map<String, Object>> calculatedCostForEachPricePlan(@PathVariable String smartMeterId,
+                                                                              @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch)
+            throws NoReadingsExistForMeterId {
         try {
+            // taken before costing, so the tag can only be older than the body, which costs a refetch at worst
+            String eTag = pricePlanService.getCostVersion(smartMeterId).map(ETags::of).orElse(null);
+            if (eTag != null && ETags.matches(ifNoneMatch, eTag)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+            }
             Map<String, Object> responseMap = pricePlanService.getCostForEachPricePlan(smartMeterId);
             if (!responseMap.isEmpty()) {
-                return ResponseEntity.status(HttpStatus.OK).body(responseMap);
+                return eTag == null
+                        ? ResponseEntity.status(HttpStatus.OK).body(responseMap)
+                        : ResponseEntity.status(HttpStatus.OK).eTag(eTag).body(responseMap);
             } else {
                 return ResponseEntity.status(HttpStatus.NO_CONTENT).body(responseMap);
             }
@@ -55,6 +70,8 @@ public class PricePlanComparatorController {
 
     /**
      * Suggestion Optional List can also be used if the response is not mandatory.
+     * The ranking is served as last refreshed, and the Staleness-Millis header says how far behind the meter's
+     * readings it was.
      * @param smartMeterId
      * @param limit
      * @return
@@ -77,6 +94,39 @@ public class PricePlanComparatorController {
             errorResponse.add(new AbstractMap.SimpleEntry<>(ERROR, BigDecimal.ZERO));
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(errorResponse);
         }
+        if (responseList instanceof RankedPricePlans rankedPricePlans) {
+            return ResponseEntity.status(HttpStatus.OK)
+                    .header(STALENESS_HEADER, Long.toString(rankedPricePlans.staleness().toMillis()))
+                    .body(responseList);
+        }
         return ResponseEntity.status(HttpStatus.OK).body(responseList);
     }
+
+    /**
+     * Simulates what the meter's usage would have cost on every price plan, optionally limited to a date range
+     * given as ISO-8601 instants, e.g. ?from=2023-01-01T00:00:00Z&to=2023-02-01T00:00:00Z
+     * @param smartMeterId
+     * @param from
+     * @param to
+     * @return
+     */
+    @GetMapping("/simulate/{smartMeterId}")
+    public ResponseEntity<Map<String, Object>> simulatePricePlans(
+            @PathVariable @Pattern(regexp = SMART_METER_ID_REGEX, message = INVALID_SMART_METER_ID) String smartMeterId,
+            @RequestParam(value = FROM, required = false) Instant from,
+            @RequestParam(value = TO, required = false) Instant to) {
+        if (from != null && to != null && !from.isBefore(to)) {
+            throw new InvalidParametersException(INVALID_DATE_RANGE);
+        }
+        try {
+            Map<String, Object> simulation = pricePlanService.getSimulatedCosts(smartMeterId, from, to);
+            if (simulation.isEmpty()) {
+                return ResponseEntity.status(HttpStatus.NO_CONTENT).body(simulation);
+            }
+            return ResponseEntity.status(HttpStatus.OK).body(simulation);
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).
+                    body(Collections.singletonMap(ERROR, HttpStatus.INTERNAL_SERVER_ERROR.value() + e.getMessage()));
+        }
+    }
 }
@@ -0,0 +1,53 @@
+package uk.tw.energy.controller;
+
+import jakarta.validation.constraints.Pattern;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import uk.tw.energy.exceptions.InvalidParametersException;
+import uk.tw.energy.service.UsageService;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Map;
+
+import static uk.tw.energy.exceptions.Constants.*;
+
+@RestController
+@RequestMapping("/usage")
+public class UsageController {
+
+    private final UsageService usageService;
+
+    public UsageController(UsageService usageService) {
+        this.usageService = usageService;
+    }
+
+    /**
+     * Energy used, average demand and cost on every price plan for any window of the meter's history, given as
+     * ISO-8601 instants, e.g. ?from=2023-01-01T00:00:00Z&to=2023-01-08T00:00:00Z
+     * @param smartMeterId
+     * @param from
+     * @param to
+     * @return
+     */
+    @GetMapping("/{smartMeterId}")
+    public ResponseEntity<Map<String, Object>> usage(
+            @PathVariable @Pattern(regexp = SMART_METER_ID_REGEX, message = INVALID_SMART_METER_ID) String smartMeterId,
+            @RequestParam(value = FROM, required = false) Instant from,
+            @RequestParam(value = TO, required = false) Instant to) {
+        if (from != null && to != null && !from.isBefore(to)) {
+            throw new InvalidParametersException(INVALID_DATE_RANGE);
+        }
+        try {
+            Map<String, Object> usage = usageService.getUsage(smartMeterId, from, to);
+            if (usage.isEmpty()) {
+                return ResponseEntity.status(HttpStatus.NO_CONTENT).body(usage);
+            }
+            return ResponseEntity.status(HttpStatus.OK).body(usage);
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).
+                    body(Collections.singletonMap(ERROR, HttpStatus.INTERNAL_SERVER_ERROR.value() + e.getMessage()));
+        }
+    }
+}
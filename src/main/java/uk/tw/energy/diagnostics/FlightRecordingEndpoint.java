@@ -0,0 +1,155 @@
+package uk.tw.energy.diagnostics;
+
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.actuate.endpoint.web.WebEndpointResponse;
+import org.springframework.boot.actuate.endpoint.web.annotation.WebEndpoint;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.MediaType;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static uk.tw.energy.exceptions.Constants.*;
+
+/**
+ * Flight recordings, as the actuator endpoint /actuator/flightrecordings rather than part of the public API, since a
+ * recording shows a lot about the process. Like every actuator endpoint but health and metrics it is only served once
+ * it is added to management.endpoints.web.exposure.include, ideally with management.server.port set so it is served
+ * on a port of its own.
+ */
+@Component
+@WebEndpoint(id = "flightrecordings")
+public class FlightRecordingEndpoint {
+
+    private final FlightRecordingService flightRecordingService;
+
+    public FlightRecordingEndpoint(FlightRecordingService flightRecordingService) {
+        this.flightRecordingService = flightRecordingService;
+    }
+
+    @ReadOperation
+    public List<Map<String, Object>> listRecordings() {
+        return flightRecordingService.getRecordings();
+    }
+
+    /**
+     * Starts a flight recording with the given JDK settings (default by default), for the given duration or until it
+     * is stopped.
+     * @param settings
+     * @param duration
+     * @return
+     */
+    @WriteOperation
+    public WebEndpointResponse<Map<String, Object>> startRecording(@Nullable String settings, @Nullable Duration duration) {
+        String recordingSettings = settings == null ? FlightRecordingService.DEFAULT_SETTINGS : settings;
+        if (!FlightRecordingService.isSettings(recordingSettings)) {
+            return error(INVALID_RECORDING_SETTINGS, WebEndpointResponse.STATUS_BAD_REQUEST);
+        }
+        if (duration != null && (duration.isNegative() || duration.isZero())) {
+            return error(INVALID_DURATION, WebEndpointResponse.STATUS_BAD_REQUEST);
+        }
+        try {
+            Optional<Map<String, Object>> recording = flightRecordingService.start(recordingSettings, duration);
+            return recording.isPresent()
+                    ? new WebEndpointResponse<>(recording.get(), 201)
+                    : error(TOO_MANY_RECORDINGS, WebEndpointResponse.STATUS_TOO_MANY_REQUESTS);
+        } catch (Exception e) {
+            return error(WebEndpointResponse.STATUS_INTERNAL_SERVER_ERROR + e.getMessage(),
+                    WebEndpointResponse.STATUS_INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Stops the recording; it is kept to be downloaded until diagnostics.recording.keep-stopped has passed.
+     * @param id
+     * @return
+     */
+    @WriteOperation
+    public WebEndpointResponse<Map<String, Object>> stopRecording(@Selector long id) {
+        Optional<Map<String, Object>> recording = flightRecordingService.stop(id);
+        return recording.isPresent()
+                ? new WebEndpointResponse<>(recording.get())
+                : new WebEndpointResponse<>(WebEndpointResponse.STATUS_NOT_FOUND);
+    }
+
+    /**
+     * What the recording holds so far as a .jfr file, for JDK Mission Control or the jfr tool. A running recording
+     * carries on.
+     * @param id
+     * @return
+     */
+    @ReadOperation(produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public WebEndpointResponse<Resource> downloadRecording(@Selector long id) {
+        try {
+            Optional<Path> dumped = flightRecordingService.dump(id);
+            return dumped.isPresent()
+                    ? new WebEndpointResponse<>(new TemporaryFileResource(dumped.get()))
+                    : new WebEndpointResponse<>(WebEndpointResponse.STATUS_NOT_FOUND);
+        } catch (Exception e) {
+            return new WebEndpointResponse<>(WebEndpointResponse.STATUS_INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Stops the recording and discards it.
+     * @param id
+     * @return
+     */
+    @DeleteOperation
+    public WebEndpointResponse<Void> deleteRecording(@Selector long id) {
+        return new WebEndpointResponse<>(flightRecordingService.close(id)
+                ? WebEndpointResponse.STATUS_NO_CONTENT
+                : WebEndpointResponse.STATUS_NOT_FOUND);
+    }
+
+    private static WebEndpointResponse<Map<String, Object>> error(String message, int status) {
+        return new WebEndpointResponse<>(Collections.singletonMap(ERROR, message), status);
+    }
+
+    /**
+     * A dumped recording, deleted once it has been sent.
+     */
+    private static final class TemporaryFileResource extends FileSystemResource {
+
+        private final Path file;
+
+        private TemporaryFileResource(Path file) {
+            super(file);
+            this.file = file;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return new FilterInputStream(super.getInputStream()) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        Files.deleteIfExists(file);
+                    }
+                }
+            };
+        }
+
+        @Override
+        public boolean isFile() {
+            // served through the stream rather than copied straight from the file, so it is deleted afterwards
+            return false;
+        }
+    }
+}
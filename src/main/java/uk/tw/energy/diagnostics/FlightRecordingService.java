@@ -0,0 +1,204 @@
+package uk.tw.energy.diagnostics;
+
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.Configuration;
+import jdk.jfr.Event;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+
+import static uk.tw.energy.exceptions.Constants.*;
+
+/**
+ * Starts, stops and dumps JDK Flight Recorder recordings of the running service. Recordings take one of the JDK's
+ * predefined settings, "default" (about 1% overhead, fit to leave running) or "profile" (more detail, more
+ * overhead), plus the service's own ingestion and pricing events, less the events that record the process's
+ * environment variables and system properties, which may hold secrets. They are kept on disk for at most
+ * diagnostics.recording.max-age or diagnostics.recording.max-size-mb, whichever is reached first.
+ * <p>
+ * At most diagnostics.recording.max-recordings are held at once, running or stopped. A stopped recording, whether
+ * stopped by hand or at the end of its duration, is closed and its data discarded once it has been stopped for
+ * diagnostics.recording.keep-stopped, which leaves time to download it.
+ * <p>
+ * With diagnostics.recording.continuous, a "default" recording runs from start up so the minutes before a latency
+ * spike can be dumped after the fact. Without any recording running the service's events are never committed and
+ * cost next to nothing.
+ */
+@Service
+// starts the continuous recording at start up even when beans are initialised lazily
+@Lazy(false)
+public class FlightRecordingService {
+
+    public static final String DEFAULT_SETTINGS = "default";
+    public static final String PROFILE_SETTINGS = "profile";
+    static final String CONTINUOUS = "continuous";
+    static final List<Class<? extends Event>> EVENT_TYPES = List.of(ReadingsParsedEvent.class,
+            ReadingsValidatedEvent.class, ReadingsAppendedEvent.class, MeterPricedEvent.class, PricePlanCostedEvent.class);
+    static final List<String> SENSITIVE_EVENT_TYPES = List.of("jdk.InitialEnvironmentVariable", "jdk.InitialSystemProperty");
+
+    private static final Logger logger = Logger.getLogger(FlightRecordingService.class.getName());
+
+    private final Duration maxAge;
+    private final long maxSizeBytes;
+    private final int maxRecordings;
+    private final Duration keepStopped;
+    private final ConcurrentMap<Long, Recording> recordings = new ConcurrentHashMap<>();
+
+    @Autowired
+    public FlightRecordingService(@Value("${diagnostics.recording.continuous:false}") boolean continuous,
+                                  @Value("${diagnostics.recording.max-age:PT30M}") Duration maxAge,
+                                  @Value("${diagnostics.recording.max-size-mb:256}") long maxSizeMb,
+                                  @Value("${diagnostics.recording.max-recordings:2}") int maxRecordings,
+                                  @Value("${diagnostics.recording.keep-stopped:PT10M}") Duration keepStopped)
+            throws IOException, ParseException {
+        this.maxAge = maxAge;
+        this.maxSizeBytes = maxSizeMb * 1024 * 1024;
+        this.maxRecordings = maxRecordings;
+        this.keepStopped = keepStopped;
+        if (continuous) {
+            start(CONTINUOUS, DEFAULT_SETTINGS, null);
+        }
+    }
+
+    public static boolean isSettings(String settings) {
+        return Configuration.getConfigurations().stream().anyMatch(configuration -> configuration.getName().equals(settings));
+    }
+
+    /**
+     * @param settings a predefined JDK configuration, see {@link #isSettings}
+     * @param duration how long to record for, or null to record until stopped
+     * @return the recording's description, including the id to stop and download it by; empty if
+     * diagnostics.recording.max-recordings are already held
+     */
+    public Optional<Map<String, Object>> start(String settings, Duration duration) throws IOException, ParseException {
+        return start(null, settings, duration);
+    }
+
+    public List<Map<String, Object>> getRecordings() {
+        List<Map<String, Object>> descriptions = new ArrayList<>(recordings.size());
+        for (Recording recording : recordings.values()) {
+            descriptions.add(describe(recording));
+        }
+        return descriptions;
+    }
+
+    public Optional<Map<String, Object>> stop(long id) {
+        Recording recording = recordings.get(id);
+        if (recording == null) {
+            return Optional.empty();
+        }
+        if (recording.getState() == RecordingState.RUNNING) {
+            recording.stop();
+        }
+        return Optional.of(describe(recording));
+    }
+
+    /**
+     * Writes what the recording holds so far to a temporary file, which the caller deletes once done with it. A
+     * running recording carries on.
+     */
+    public Optional<Path> dump(long id) throws IOException {
+        Recording recording = recordings.get(id);
+        if (recording == null) {
+            return Optional.empty();
+        }
+        Path file = Files.createTempFile(recording.getName() + "-", ".jfr");
+        try {
+            recording.dump(file);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        return Optional.of(file);
+    }
+
+    /**
+     * Stops the recording if it is running and discards its data.
+     */
+    public boolean close(long id) {
+        Recording recording = recordings.remove(id);
+        if (recording == null) {
+            return false;
+        }
+        recording.close();
+        return true;
+    }
+
+    /**
+     * Closes the recordings that have been stopped for longer than diagnostics.recording.keep-stopped.
+     */
+    @Scheduled(fixedDelayString = "${diagnostics.recording.check-interval-ms:60000}")
+    public void closeExpired() {
+        Instant expired = Instant.now().minus(keepStopped);
+        for (Recording recording : recordings.values()) {
+            if (recording.getState() == RecordingState.STOPPED && !recording.getStopTime().isAfter(expired)) {
+                logger.info("Discarding flight recording " + recording.getName() + ", stopped at " + recording.getStopTime());
+                close(recording.getId());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void closeAll() {
+        for (Long id : recordings.keySet()) {
+            close(id);
+        }
+    }
+
+    private synchronized Optional<Map<String, Object>> start(String name, String settings, Duration duration)
+            throws IOException, ParseException {
+        closeExpired();
+        if (recordings.size() >= maxRecordings) {
+            return Optional.empty();
+        }
+        Recording recording = new Recording(Configuration.getConfiguration(settings));
+        recording.setName(name != null ? name : settings + "-" + recording.getId());
+        recording.setToDisk(true);
+        recording.setMaxAge(maxAge);
+        recording.setMaxSize(maxSizeBytes);
+        if (duration != null) {
+            recording.setDuration(duration);
+        }
+        for (Class<? extends Event> eventType : EVENT_TYPES) {
+            recording.enable(eventType);
+        }
+        for (String eventType : SENSITIVE_EVENT_TYPES) {
+            recording.disable(eventType);
+        }
+        recordings.put(recording.getId(), recording);
+        recording.start();
+        logger.info("Started flight recording " + recording.getName() + " with " + settings + " settings");
+        return Optional.of(describe(recording));
+    }
+
+    private static Map<String, Object> describe(Recording recording) {
+        Map<String, Object> description = new LinkedHashMap<>();
+        description.put(RECORDING_ID_KEY, recording.getId());
+        description.put(NAME_KEY, recording.getName());
+        description.put(STATE_KEY, recording.getState().name().toLowerCase());
+        description.put(STARTED_AT_KEY, recording.getStartTime());
+        description.put(STOPPED_AT_KEY, recording.getStopTime());
+        description.put(DURATION_KEY, recording.getDuration());
+        description.put(SIZE_KEY, recording.getSize());
+        return description;
+    }
+}
@@ -0,0 +1,50 @@
+package uk.tw.energy.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Costing a meter on every plan in the catalogue for a comparison, recommendation or simulation. The
+ * {@link PricePlanCostedEvent}s for each plan are recorded on the same thread within it.
+ */
+@Name("uk.tw.energy.MeterPriced")
+@Label("Meter Priced")
+@Category({"JOI Energy", "Pricing"})
+@Description("A meter costed on every plan in the catalogue")
+@StackTrace(false)
+public class MeterPricedEvent extends Event {
+
+    public static final String COMPARE = "compare";
+    public static final String RECOMMEND = "recommend";
+    public static final String SIMULATE = "simulate";
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Smart Meter Id")
+    String smartMeterId;
+
+    @Label("Plans")
+    int plans;
+
+    @Label("Catalogue Version")
+    long catalogueVersion;
+
+    /**
+     * Ends the event and, if it is being recorded and took long enough, commits it.
+     */
+    public void commit(String operation, String smartMeterId, int plans, long catalogueVersion) {
+        end();
+        if (shouldCommit()) {
+            this.operation = operation;
+            this.smartMeterId = smartMeterId;
+            this.plans = plans;
+            this.catalogueVersion = catalogueVersion;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package uk.tw.energy.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Costing readings on one price plan.
+ */
+@Name("uk.tw.energy.PricePlanCosted")
+@Label("Price Plan Costed")
+@Category({"JOI Energy", "Pricing"})
+@Description("Readings costed on one price plan")
+@StackTrace(false)
+public class PricePlanCostedEvent extends Event {
+
+    @Label("Price Plan Id")
+    String pricePlanId;
+
+    @Label("Readings Scanned")
+    @Description("Readings walked for this plan; flat rates and work shared with an earlier plan walk none")
+    int readingsScanned;
+
+    /**
+     * Ends the event and, if it is being recorded and took long enough, commits it.
+     */
+    public void commit(String pricePlanId, int readingsScanned) {
+        end();
+        if (shouldCommit()) {
+            this.pricePlanId = pricePlanId;
+            this.readingsScanned = readingsScanned;
+            commit();
+        }
+    }
+}
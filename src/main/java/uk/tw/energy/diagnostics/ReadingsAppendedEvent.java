@@ -0,0 +1,50 @@
+package uk.tw.energy.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Appending a batch of readings to a meter's series, including waiting for the series and telling listeners about
+ * the batch.
+ */
+@Name("uk.tw.energy.ReadingsAppended")
+@Label("Readings Appended")
+@Category({"JOI Energy", "Ingestion"})
+@Description("A batch of readings appended to a meter's series and published to listeners")
+@StackTrace(false)
+public class ReadingsAppendedEvent extends Event {
+
+    @Label("Smart Meter Id")
+    String smartMeterId;
+
+    @Label("Readings")
+    int readings;
+
+    @Label("Appended")
+    @Description("Readings stored; ones from before the meter's evicted history are dropped")
+    int appended;
+
+    @Label("Lock Wait")
+    @Description("Time spent waiting for other batches for the same meter")
+    @Timespan(Timespan.NANOSECONDS)
+    long lockWait;
+
+    /**
+     * Ends the event and, if it is being recorded and took long enough, commits it.
+     */
+    public void commit(String smartMeterId, int readings, int appended, long lockWaitNanos) {
+        end();
+        if (shouldCommit()) {
+            this.smartMeterId = smartMeterId;
+            this.readings = readings;
+            this.appended = appended;
+            this.lockWait = lockWaitNanos;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package uk.tw.energy.diagnostics;
+
+import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.RequestBodyAdviceAdapter;
+import uk.tw.energy.domain.MeterReadings;
+
+import java.lang.reflect.Type;
+
+/**
+ * Records deserialising /readings/store request bodies as {@link ReadingsParsedEvent}s. The body is read on the
+ * request's thread between the two callbacks, so the event in progress is kept in a thread local; it is only started
+ * while a flight recording is running.
+ */
+@ControllerAdvice
+public class ReadingsParseTimingAdvice extends RequestBodyAdviceAdapter {
+
+    private static final ThreadLocal<ReadingsParsedEvent> parsing = new ThreadLocal<>();
+
+    @Override
+    public boolean supports(MethodParameter methodParameter, Type targetType,
+                            Class<? extends HttpMessageConverter<?>> converterType) {
+        return targetType == MeterReadings.class;
+    }
+
+    @Override
+    public HttpInputMessage beforeBodyRead(HttpInputMessage inputMessage, MethodParameter parameter, Type targetType,
+                                           Class<? extends HttpMessageConverter<?>> converterType) {
+        ReadingsParsedEvent event = new ReadingsParsedEvent();
+        if (event.isEnabled()) {
+            event.begin();
+            parsing.set(event);
+        } else {
+            // a body that failed to parse never reaches afterBodyRead, so don't let its event linger
+            parsing.remove();
+        }
+        return inputMessage;
+    }
+
+    @Override
+    public Object afterBodyRead(Object body, HttpInputMessage inputMessage, MethodParameter parameter, Type targetType,
+                                Class<? extends HttpMessageConverter<?>> converterType) {
+        ReadingsParsedEvent event = parsing.get();
+        if (event != null) {
+            parsing.remove();
+            MeterReadings meterReadings = (MeterReadings) body;
+            event.commit(meterReadings.smartMeterId(),
+                    meterReadings.electricityReadings() == null ? 0 : meterReadings.electricityReadings().size(),
+                    inputMessage.getHeaders().getContentLength());
+        }
+        return body;
+    }
+}
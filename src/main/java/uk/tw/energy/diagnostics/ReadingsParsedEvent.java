@@ -0,0 +1,45 @@
+package uk.tw.energy.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Deserialising a /readings/store request body.
+ */
+@Name("uk.tw.energy.ReadingsParsed")
+@Label("Readings Parsed")
+@Category({"JOI Energy", "Ingestion"})
+@Description("A /readings/store request body read and deserialised")
+@StackTrace(false)
+public class ReadingsParsedEvent extends Event {
+
+    @Label("Smart Meter Id")
+    String smartMeterId;
+
+    @Label("Readings")
+    int readings;
+
+    @Label("Body Size")
+    @DataAmount
+    long bodySize;
+
+    /**
+     * Ends the event and, if it is being recorded and took long enough, commits it.
+     *
+     * @param bodySize -1 if the request didn't say
+     */
+    public void commit(String smartMeterId, int readings, long bodySize) {
+        end();
+        if (shouldCommit()) {
+            this.smartMeterId = smartMeterId;
+            this.readings = readings;
+            this.bodySize = bodySize;
+            commit();
+        }
+    }
+}
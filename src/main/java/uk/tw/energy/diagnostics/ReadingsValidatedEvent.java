@@ -0,0 +1,41 @@
+package uk.tw.energy.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Validating a batch of readings before it is stored.
+ */
+@Name("uk.tw.energy.ReadingsValidated")
+@Label("Readings Validated")
+@Category({"JOI Energy", "Ingestion"})
+@Description("A batch of readings checked before being stored")
+@StackTrace(false)
+public class ReadingsValidatedEvent extends Event {
+
+    @Label("Smart Meter Id")
+    String smartMeterId;
+
+    @Label("Readings")
+    int readings;
+
+    @Label("Valid")
+    boolean valid;
+
+    /**
+     * Ends the event and, if it is being recorded and took long enough, commits it.
+     */
+    public void commit(String smartMeterId, int readings, boolean valid) {
+        end();
+        if (shouldCommit()) {
+            this.smartMeterId = smartMeterId;
+            this.readings = readings;
+            this.valid = valid;
+            commit();
+        }
+    }
+}
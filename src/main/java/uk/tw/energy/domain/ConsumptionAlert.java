@@ -0,0 +1,25 @@
+package uk.tw.energy.domain;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * Raised when a reading takes a meter over one of the alert thresholds; a rule alerts again only once the meter has
+ * dropped back under it.
+ *
+ * @param time      the reading that crossed the threshold
+ * @param value     kW, kWh over the window or projected cost a day, depending on the rule
+ * @param threshold what the value went over
+ */
+public record ConsumptionAlert(String smartMeterId, Rule rule, Instant time, BigDecimal value, BigDecimal threshold,
+                               String pricePlanId) {
+
+    public enum Rule {
+        /** Demand at a single reading, in kW. */
+        INSTANT_KW,
+        /** Energy used over the rolling window up to the reading, in kWh. */
+        WINDOW_KWH,
+        /** What a day would cost on the account's plan, at the window's average demand and the reading's rate. */
+        PROJECTED_DAILY_COST
+    }
+}
@@ -0,0 +1,77 @@
+package uk.tw.energy.domain;
+
+/**
+ * Turns consecutive kW readings into kWh. Power is assumed to change linearly between two readings, so the energy
+ * of an interval is the trapezoid (kW1 + kW2) / 2 * hours, split at every clock hour it crosses so that hourly
+ * tariffs can be applied to each piece.
+ */
+public final class EnergyIntegration {
+
+    public static final double SECONDS_PER_HOUR = 3600.0;
+
+    private static final long SECONDS_PER_HOUR_LONG = 3600;
+    private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+
+    private EnergyIntegration() {
+    }
+
+    @FunctionalInterface
+    public interface HourlyEnergyConsumer {
+        void accept(long epochHour, double kwh);
+    }
+
+    public static double kwh(double fromKw, double toKw, double seconds) {
+        return (fromKw + toKw) / 2 * seconds / SECONDS_PER_HOUR;
+    }
+
+    public static double secondsBetween(long fromSecond, int fromNano, long toSecond, int toNano) {
+        return (toSecond - fromSecond) + (toNano - fromNano) / NANOS_PER_SECOND;
+    }
+
+    /**
+     * Linearly interpolated power at an offset (in seconds) into an interval of the given length.
+     */
+    public static double interpolate(double fromKw, double toKw, double intervalSeconds, double offsetSeconds) {
+        if (intervalSeconds <= 0) {
+            return toKw;
+        }
+        return fromKw + (toKw - fromKw) * (offsetSeconds / intervalSeconds);
+    }
+
+    /**
+     * Integrates one interval, handing the consumer the kWh used in each clock hour (identified by hours since the
+     * epoch) the interval overlaps. Returns the interval's total kWh.
+     */
+    public static double integrateByHour(long fromSecond, int fromNano, double fromKw,
+                                         long toSecond, int toNano, double toKw,
+                                         HourlyEnergyConsumer consumer) {
+        double intervalSeconds = secondsBetween(fromSecond, fromNano, toSecond, toNano);
+        if (intervalSeconds <= 0) {
+            return 0;
+        }
+        long epochHour = Math.floorDiv(fromSecond, SECONDS_PER_HOUR_LONG);
+        long lastEpochHour = Math.floorDiv(toSecond, SECONDS_PER_HOUR_LONG);
+        if (epochHour == lastEpochHour) {
+            double kwh = kwh(fromKw, toKw, intervalSeconds);
+            consumer.accept(epochHour, kwh);
+            return kwh;
+        }
+        double total = 0;
+        double segmentStart = 0;
+        double segmentStartKw = fromKw;
+        while (segmentStart < intervalSeconds) {
+            double hourEnd = secondsBetween(fromSecond, fromNano, (epochHour + 1) * SECONDS_PER_HOUR_LONG, 0);
+            double segmentEnd = Math.min(hourEnd, intervalSeconds);
+            double segmentEndKw = interpolate(fromKw, toKw, intervalSeconds, segmentEnd);
+            double kwh = kwh(segmentStartKw, segmentEndKw, segmentEnd - segmentStart);
+            if (kwh != 0) {
+                consumer.accept(epochHour, kwh);
+            }
+            total += kwh;
+            segmentStart = segmentEnd;
+            segmentStartKw = segmentEndKw;
+            epochHour++;
+        }
+        return total;
+    }
+}
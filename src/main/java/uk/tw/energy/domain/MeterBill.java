@@ -0,0 +1,16 @@
+package uk.tw.energy.domain;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+/**
+ * A meter's bill for one billing period.
+ *
+ * @param pricePlanId    the plan the account was on at the end of the period
+ * @param billedCost     what the period cost on the plans the account was on, or null if one of them isn't in the
+ *                       catalogue
+ * @param pricePlanCosts what the period would have cost on each plan in the catalogue
+ */
+public record MeterBill(String smartMeterId, String pricePlanId, BigDecimal billedCost,
+                        Map<String, BigDecimal> pricePlanCosts) {
+}
@@ -3,6 +3,7 @@ package uk.tw.energy.domain;
 import java.math.BigDecimal;
 import java.time.DayOfWeek;
 import java.time.LocalDateTime;
+import java.util.Collections;
 import java.util.List;
 
 public class PricePlan {
@@ -11,12 +12,19 @@ public class PricePlan {
     private final String planName;
     private final BigDecimal unitRate; // unit price per kWh
     private final List<PeakTimeMultiplier> peakTimeMultipliers;
+    private final DemandCharge demandCharge; // null when the plan only charges for energy
 
     public PricePlan(String planName, String energySupplier, BigDecimal unitRate, List<PeakTimeMultiplier> peakTimeMultipliers) {
+        this(planName, energySupplier, unitRate, peakTimeMultipliers, null);
+    }
+
+    public PricePlan(String planName, String energySupplier, BigDecimal unitRate, List<PeakTimeMultiplier> peakTimeMultipliers,
+                     DemandCharge demandCharge) {
         this.planName = planName;
         this.energySupplier = energySupplier;
         this.unitRate = unitRate;
-        this.peakTimeMultipliers = peakTimeMultipliers;
+        this.peakTimeMultipliers = peakTimeMultipliers == null ? Collections.emptyList() : peakTimeMultipliers;
+        this.demandCharge = demandCharge;
     }
 
     public String getEnergySupplier() {
@@ -31,23 +39,97 @@ public class PricePlan {
         return unitRate;
     }
 
+    public List<PeakTimeMultiplier> getPeakTimeMultipliers() {
+        return peakTimeMultipliers;
+    }
+
+    public DemandCharge getDemandCharge() {
+        return demandCharge;
+    }
+
+    public boolean hasDemandCharge() {
+        return demandCharge != null;
+    }
+
     public BigDecimal getPrice(LocalDateTime dateTime) {
+        return getPrice(dateTime.getDayOfWeek(), dateTime.getHour());
+    }
+
+    /**
+     * The first multiplier covering the given day and hour wins, otherwise the plain unit rate applies.
+     */
+    public BigDecimal getPrice(DayOfWeek dayOfWeek, int hour) {
         return peakTimeMultipliers.stream()
-                .filter(multiplier -> multiplier.dayOfWeek.equals(dateTime.getDayOfWeek()))
+                .filter(multiplier -> multiplier.appliesTo(dayOfWeek, hour))
                 .findFirst()
                 .map(multiplier -> unitRate.multiply(multiplier.multiplier))
                 .orElse(unitRate);
     }
 
 
-    static class PeakTimeMultiplier {
+    /**
+     * A time-of-use tier. A null day of week applies to every day, and the hour range is [fromHour, toHour)
+     * so the default 0-24 covers the whole day.
+     */
+    public static class PeakTimeMultiplier {
 
         DayOfWeek dayOfWeek;
+        int fromHour;
+        int toHour;
         BigDecimal multiplier;
 
         public PeakTimeMultiplier(DayOfWeek dayOfWeek, BigDecimal multiplier) {
+            this(dayOfWeek, 0, 24, multiplier);
+        }
+
+        public PeakTimeMultiplier(DayOfWeek dayOfWeek, int fromHour, int toHour, BigDecimal multiplier) {
             this.dayOfWeek = dayOfWeek;
+            this.fromHour = fromHour;
+            this.toHour = toHour;
             this.multiplier = multiplier;
         }
+
+        public DayOfWeek getDayOfWeek() {
+            return dayOfWeek;
+        }
+
+        public int getFromHour() {
+            return fromHour;
+        }
+
+        public int getToHour() {
+            return toHour;
+        }
+
+        public BigDecimal getMultiplier() {
+            return multiplier;
+        }
+
+        boolean appliesTo(DayOfWeek day, int hour) {
+            return (dayOfWeek == null || dayOfWeek.equals(day)) && hour >= fromHour && hour < toHour;
+        }
+    }
+
+    /**
+     * A charge on peak demand, as commercial tariffs have: every calendar month the meter is charged ratePerKw for
+     * the highest average power it drew over any window of windowMinutes that month.
+     */
+    public static class DemandCharge {
+
+        int windowMinutes;
+        BigDecimal ratePerKw;
+
+        public DemandCharge(int windowMinutes, BigDecimal ratePerKw) {
+            this.windowMinutes = windowMinutes;
+            this.ratePerKw = ratePerKw;
+        }
+
+        public int getWindowMinutes() {
+            return windowMinutes;
+        }
+
+        public BigDecimal getRatePerKw() {
+            return ratePerKw;
+        }
     }
 }
@@ -0,0 +1,130 @@
+package uk.tw.energy.domain;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The price plans an account has been on, each from the time it took effect until the next one. The first
+ * assignment may have no effective time, meaning it has applied since the account was opened.
+ * <p>
+ * Immutable: switching plan returns a new instance, so readers can hold one and look plans up without locking.
+ */
+public final class PricePlanAssignments {
+
+    private final Instant[] effectiveFrom;
+    private final String[] pricePlanIds;
+    private final long[] versions;
+
+    private PricePlanAssignments(Instant[] effectiveFrom, String[] pricePlanIds, long[] versions) {
+        this.effectiveFrom = effectiveFrom;
+        this.pricePlanIds = pricePlanIds;
+        this.versions = versions;
+    }
+
+    /**
+     * An account that has been on the given plan from the start.
+     */
+    public static PricePlanAssignments of(String pricePlanId) {
+        return new PricePlanAssignments(new Instant[]{null}, new String[]{pricePlanId}, new long[]{0});
+    }
+
+    /**
+     * An account opened on the given plan from the given time; before it the account was on no plan.
+     */
+    public static PricePlanAssignments of(String pricePlanId, Instant effectiveFrom, long version) {
+        return new PricePlanAssignments(new Instant[]{effectiveFrom}, new String[]{pricePlanId}, new long[]{version});
+    }
+
+    /**
+     * @param pricePlanId
+     * @param effectiveFrom when the plan takes effect, which may be in the past or future; an existing assignment
+     *                      taking effect at the same time is replaced
+     * @param version       the registry version that made the switch
+     */
+    public PricePlanAssignments with(String pricePlanId, Instant effectiveFrom, long version) {
+        int index = indexAt(effectiveFrom);
+        boolean replace = index >= 0 && isSameTime(this.effectiveFrom[index], effectiveFrom);
+        int insertAt = replace ? index : index + 1;
+        int length = replace ? size() : size() + 1;
+
+        Instant[] newEffectiveFrom = new Instant[length];
+        String[] newPricePlanIds = new String[length];
+        long[] newVersions = new long[length];
+        System.arraycopy(this.effectiveFrom, 0, newEffectiveFrom, 0, insertAt);
+        System.arraycopy(pricePlanIds, 0, newPricePlanIds, 0, insertAt);
+        System.arraycopy(versions, 0, newVersions, 0, insertAt);
+        newEffectiveFrom[insertAt] = effectiveFrom;
+        newPricePlanIds[insertAt] = pricePlanId;
+        newVersions[insertAt] = version;
+        int from = replace ? insertAt + 1 : insertAt;
+        System.arraycopy(this.effectiveFrom, from, newEffectiveFrom, insertAt + 1, size() - from);
+        System.arraycopy(pricePlanIds, from, newPricePlanIds, insertAt + 1, size() - from);
+        System.arraycopy(versions, from, newVersions, insertAt + 1, size() - from);
+        return new PricePlanAssignments(newEffectiveFrom, newPricePlanIds, newVersions);
+    }
+
+    public int size() {
+        return pricePlanIds.length;
+    }
+
+    /**
+     * The plan in effect at the given time, or null if the account's first plan had not taken effect yet.
+     */
+    public String pricePlanIdAt(Instant time) {
+        int index = indexAt(time);
+        return index < 0 ? null : pricePlanIds[index];
+    }
+
+    /**
+     * Index of the assignment in effect at the given time, or -1 if none was.
+     */
+    public int indexAt(Instant time) {
+        int low = 0;
+        int high = effectiveFrom.length - 1;
+        int found = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (effectiveFrom[middle] == null || !effectiveFrom[middle].isAfter(time)) {
+                found = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return found;
+    }
+
+    public Instant effectiveFrom(int index) {
+        return effectiveFrom[index];
+    }
+
+    /**
+     * When the assignment at the given index stops applying, or null if it is the latest.
+     */
+    public Instant effectiveUntil(int index) {
+        return index + 1 < effectiveFrom.length ? effectiveFrom[index + 1] : null;
+    }
+
+    public String pricePlanId(int index) {
+        return pricePlanIds[index];
+    }
+
+    public List<Assignment> asList() {
+        List<Assignment> assignments = new ArrayList<>(size());
+        for (int i = 0; i < size(); i++) {
+            assignments.add(new Assignment(pricePlanIds[i], effectiveFrom[i], versions[i]));
+        }
+        return assignments;
+    }
+
+    private static boolean isSameTime(Instant time, Instant other) {
+        return time == null ? other == null : time.equals(other);
+    }
+
+    /**
+     * @param effectiveFrom null when the plan has applied since the account was opened
+     */
+    public record Assignment(String pricePlanId, Instant effectiveFrom, long version) {
+    }
+}
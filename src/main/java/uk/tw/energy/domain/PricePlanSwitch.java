@@ -0,0 +1,11 @@
+package uk.tw.energy.domain;
+
+import java.time.Instant;
+
+/**
+ * One account moving to a price plan.
+ *
+ * @param effectiveFrom optional, defaults to the request's effectiveFrom
+ */
+public record PricePlanSwitch(String smartMeterId, String pricePlanId, Instant effectiveFrom) {
+}
@@ -0,0 +1,12 @@
+package uk.tw.energy.domain;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * A batch of price plan switches, applied in one go.
+ *
+ * @param effectiveFrom when the switches take effect unless they say otherwise; now when omitted
+ */
+public record PricePlanSwitchRequest(Instant effectiveFrom, List<PricePlanSwitch> switches) {
+}
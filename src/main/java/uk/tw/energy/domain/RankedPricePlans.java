@@ -0,0 +1,46 @@
+package uk.tw.energy.domain;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Price plans and what the meter's usage costs on each, cheapest first, served from a ranking worked out ahead of
+ * time: it may leave out up to {@link #staleness()} worth of the meter's latest readings.
+ */
+public final class RankedPricePlans extends AbstractList<Map.Entry<String, BigDecimal>> {
+
+    private final List<Map.Entry<String, BigDecimal>> pricePlans;
+    private final Duration staleness;
+
+    public RankedPricePlans(List<Map.Entry<String, BigDecimal>> pricePlans, Duration staleness) {
+        this.pricePlans = pricePlans;
+        this.staleness = staleness;
+    }
+
+    @Override
+    public Map.Entry<String, BigDecimal> get(int index) {
+        return pricePlans.get(index);
+    }
+
+    @Override
+    public int size() {
+        return pricePlans.size();
+    }
+
+    /**
+     * How long ago the first reading the ranking doesn't include was stored; zero when it includes them all.
+     */
+    public Duration staleness() {
+        return staleness;
+    }
+
+    /**
+     * The cheapest {@code limit} plans.
+     */
+    public RankedPricePlans limit(int limit) {
+        return limit < pricePlans.size() ? new RankedPricePlans(pricePlans.subList(0, limit), staleness) : this;
+    }
+}
@@ -0,0 +1,69 @@
+package uk.tw.energy.domain;
+
+import java.time.DayOfWeek;
+import java.util.Arrays;
+
+/**
+ * A price plan flattened into one unit rate per hour of the week (Monday 00:00 UTC is slot 0), so pricing
+ * a reading is an array lookup instead of a scan over the plan's peak time multipliers.
+ */
+public final class RateSchedule {
+
+    public static final int HOURS_PER_DAY = 24;
+    public static final int HOURS_PER_WEEK = 7 * HOURS_PER_DAY;
+
+    private static final long SECONDS_PER_HOUR = 3600;
+    // 1970-01-01 was a Thursday, so the epoch sits 3 days into a Monday based week.
+    private static final int EPOCH_HOUR_OF_WEEK = 3 * HOURS_PER_DAY;
+
+    private final double[] hourlyRates;
+    private final boolean flat;
+
+    private RateSchedule(double[] hourlyRates) {
+        this.hourlyRates = hourlyRates;
+        this.flat = Arrays.stream(hourlyRates).allMatch(rate -> rate == hourlyRates[0]);
+    }
+
+    public static RateSchedule compile(PricePlan pricePlan) {
+        double[] hourlyRates = new double[HOURS_PER_WEEK];
+        for (int slot = 0; slot < HOURS_PER_WEEK; slot++) {
+            DayOfWeek dayOfWeek = DayOfWeek.of(slot / HOURS_PER_DAY + 1);
+            hourlyRates[slot] = pricePlan.getPrice(dayOfWeek, slot % HOURS_PER_DAY).doubleValue();
+        }
+        return new RateSchedule(hourlyRates);
+    }
+
+    /**
+     * True when every hour has the same rate, so energy can be priced without knowing when it was used.
+     */
+    public boolean isFlat() {
+        return flat;
+    }
+
+    public double rate(int hourOfWeek) {
+        return hourlyRates[hourOfWeek];
+    }
+
+    public double rateAt(long epochSecond) {
+        return hourlyRates[hourOfWeek(epochSecond)];
+    }
+
+    /**
+     * Prices a week shaped energy profile, i.e. the sum of kWh used in each hour of week slot times that slot's rate.
+     */
+    public double cost(double[] kwhByHourOfWeek) {
+        double cost = 0;
+        for (int slot = 0; slot < HOURS_PER_WEEK; slot++) {
+            cost += kwhByHourOfWeek[slot] * hourlyRates[slot];
+        }
+        return cost;
+    }
+
+    public static int hourOfWeek(long epochSecond) {
+        return hourOfWeekForEpochHour(Math.floorDiv(epochSecond, SECONDS_PER_HOUR));
+    }
+
+    public static int hourOfWeekForEpochHour(long epochHour) {
+        return (int) Math.floorMod(epochHour + EPOCH_HOUR_OF_WEEK, HOURS_PER_WEEK);
+    }
+}
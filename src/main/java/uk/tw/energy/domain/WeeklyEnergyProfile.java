@@ -0,0 +1,56 @@
+package uk.tw.energy.domain;
+
+import java.util.Arrays;
+
+/**
+ * kWh used in each hour of the week. Pricing it against a {@link RateSchedule} costs 168 multiplications no matter
+ * how many readings went into it, which is what lets many plans share a single pass over a meter's readings.
+ */
+public class WeeklyEnergyProfile implements EnergyIntegration.HourlyEnergyConsumer {
+
+    private final double[] kwhByHourOfWeek = new double[RateSchedule.HOURS_PER_WEEK];
+    private double totalKwh;
+
+    @Override
+    public void accept(long epochHour, double kwh) {
+        kwhByHourOfWeek[RateSchedule.hourOfWeekForEpochHour(epochHour)] += kwh;
+        totalKwh += kwh;
+    }
+
+    public void add(WeeklyEnergyProfile other) {
+        for (int slot = 0; slot < kwhByHourOfWeek.length; slot++) {
+            kwhByHourOfWeek[slot] += other.kwhByHourOfWeek[slot];
+        }
+        totalKwh += other.totalKwh;
+    }
+
+    public void subtract(WeeklyEnergyProfile other) {
+        for (int slot = 0; slot < kwhByHourOfWeek.length; slot++) {
+            kwhByHourOfWeek[slot] -= other.kwhByHourOfWeek[slot];
+        }
+        totalKwh -= other.totalKwh;
+    }
+
+    public double kwh(int hourOfWeek) {
+        return kwhByHourOfWeek[hourOfWeek];
+    }
+
+    public double totalKwh() {
+        return totalKwh;
+    }
+
+    public double cost(RateSchedule rateSchedule) {
+        return rateSchedule.cost(kwhByHourOfWeek);
+    }
+
+    public WeeklyEnergyProfile copy() {
+        WeeklyEnergyProfile copy = new WeeklyEnergyProfile();
+        copy.add(this);
+        return copy;
+    }
+
+    public void clear() {
+        Arrays.fill(kwhByHourOfWeek, 0);
+        totalKwh = 0;
+    }
+}
@@ -0,0 +1,12 @@
+package uk.tw.energy.event;
+
+import uk.tw.energy.store.AppendResult;
+import uk.tw.energy.store.MeterReadingSeries;
+
+/**
+ * Published once a batch of readings has been appended to a meter's series. It is published while the series is
+ * still held, so listeners see a meter's batches one at a time and in the order they were applied, and
+ * {@code series} is exactly as the append left it; listeners should do no more than fold the change in.
+ */
+public record MeterReadingsStoredEvent(String smartMeterId, MeterReadingSeries series, AppendResult result) {
+}
@@ -0,0 +1,10 @@
+package uk.tw.energy.event;
+
+import java.time.Instant;
+
+/**
+ * Published for every switch {@link uk.tw.energy.service.AccountService} applies, after the account's new
+ * assignments are in place.
+ */
+public record PricePlanSwitchedEvent(String smartMeterId, String pricePlanId, Instant effectiveFrom, long version) {
+}
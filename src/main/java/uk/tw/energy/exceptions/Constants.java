@@ -3,6 +3,44 @@ package uk.tw.energy.exceptions;
 public class Constants {
     public final static String PRICE_PLAN_ID_KEY = "pricePlanId";
     public final static String PRICE_PLAN_COMPARISONS_KEY = "pricePlanComparisons";
+    public final static String PRICE_PLAN_SIMULATIONS_KEY = "pricePlanSimulations";
+    public final static String CONSUMPTION_KWH_KEY = "consumptionKwh";
+    public final static String AVERAGE_KW_KEY = "averageKw";
+    public final static String BILLED_COST_KEY = "billedCost";
+    public final static String SMART_METER_ID_KEY = "smartMeterId";
+    public final static String PRICE_PLAN_ASSIGNMENTS_KEY = "pricePlanAssignments";
+    public final static String VERSION_KEY = "version";
+    public final static String SWITCHED_KEY = "switched";
+    public final static String REJECTED_KEY = "rejected";
+    public final static String ELECTRICITY_READINGS_KEY = "electricityReadings";
+    public final static String OMITTED_READINGS_KEY = "omittedReadings";
+    public final static String CHANGED_KEY = "changed";
+    public final static String GROUP_BY_KEY = "groupBy";
+    public final static String GROUPS_KEY = "groups";
+    public final static String ENERGY_SUPPLIER_KEY = "energySupplier";
+    public final static String METERS_KEY = "meters";
+    public final static String COST_KEY = "cost";
+    public final static String PERIOD_KEY = "period";
+    public final static String STATE_KEY = "state";
+    public final static String UNPRICED_METERS_KEY = "unpricedMeters";
+    public final static String FAILED_METERS_KEY = "failedMeters";
+    public final static String STARTED_AT_KEY = "startedAt";
+    public final static String COMPLETED_AT_KEY = "completedAt";
+    public final static String RECORDING_ID_KEY = "id";
+    public final static String NAME_KEY = "name";
+    public final static String STOPPED_AT_KEY = "stoppedAt";
+    public final static String DURATION_KEY = "duration";
+    public final static String SIZE_KEY = "size";
+    public final static String CONSUMPTION_KWH_PER_METER_KEY = "consumptionKwhPerMeter";
+    public final static String COST_PER_METER_KEY = "costPerMeter";
+    public final static String P50_KEY = "p50";
+    public final static String P95_KEY = "p95";
+    public final static String AS_OF_KEY = "asOf";
+    public final static String PROJECTED_CONSUMPTION_KWH_KEY = "projectedConsumptionKwh";
+    public final static String PRICE_PLAN_PROJECTIONS_KEY = "pricePlanProjections";
+    public final static String FROM = "from";
+    public final static String TO = "to";
+    public final static String POINTS = "points";
     public final static String NO_METER_READING_FOUND = "No meter readings were for found for price plan id";
     public final static String INPUT_IS_INVALID = "Input is invalid. Please give valid input.";
     public static final String PRICE_PLAN_1_ID = "test-supplier";
@@ -11,9 +49,26 @@ public class Constants {
     public static final String ERROR = "error";
     public static final String SMART_METER_ID = "smart-meter-id";
     public static final String SUCCESS = "success";
+    public static final String DUPLICATE_READINGS = "duplicate";
+    public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    public static final String STALENESS_HEADER = "Staleness-Millis";
+    public static final String READINGS_STORED_HEADER = "Readings-Stored";
+    public static final String READINGS_DROPPED_HEADER = "Readings-Dropped";
 
     public static final String READINGS_STORED_SUCCESS = "Readings stored successfully.";
+    public static final String READINGS_ALREADY_STORED = "Readings with this Idempotency-Key were already stored.";
+    public static final String READINGS_PARTLY_STORED =
+            "Stored %d of %d readings; %d were older than the meter's retained history and were dropped.";
     public static final String INVALID_SMART_METER_ID = "Invalid smart meter id.";
+    public static final String INVALID_DATE_RANGE = "The from date must be before the to date.";
+    public static final String INVALID_POINTS = "points must be at least 3.";
+    public static final String UNKNOWN_PRICE_PLAN = "Unknown price plan.";
+    public static final String INVALID_RECORDING_SETTINGS = "settings must be a JDK Flight Recorder configuration, e.g. default or profile.";
+    public static final String INVALID_DURATION = "duration must be positive.";
+    public static final String TOO_MANY_RECORDINGS = "Too many flight recordings are held; stop and delete one first.";
+    public static final String INVALID_GROUP_BY = "groupBy must be price-plan or supplier.";
+    public static final String SERVICE_OVERLOADED = "The service is too busy to take this request, please retry later.";
+    public static final String NO_PRICE_PLAN_SWITCHES = "At least one price plan switch is required.";
     public static final String SMART_METER_ID_REGEX = "^[^-]*-[^-]*-[^-]*$";
 
 }
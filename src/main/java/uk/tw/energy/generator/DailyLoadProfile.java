@@ -0,0 +1,54 @@
+package uk.tw.energy.generator;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+/**
+ * The expected demand of a household over a day: a base load plus a morning and an evening peak, each shaped as a
+ * bell curve around its peak hour, scaled down or up at weekends. Times are taken as UTC.
+ */
+public class DailyLoadProfile {
+
+    public static final DailyLoadProfile RESIDENTIAL = new DailyLoadProfile(0.25, 0.6, 7.5, 1.5, 1.4, 19.0, 2.5, 1.15);
+
+    private static final double SECONDS_PER_HOUR = 3600.0;
+
+    private final double baseKw;
+    private final double morningPeakKw;
+    private final double morningPeakHour;
+    private final double morningWidthHours;
+    private final double eveningPeakKw;
+    private final double eveningPeakHour;
+    private final double eveningWidthHours;
+    private final double weekendFactor;
+
+    public DailyLoadProfile(double baseKw, double morningPeakKw, double morningPeakHour, double morningWidthHours,
+                            double eveningPeakKw, double eveningPeakHour, double eveningWidthHours, double weekendFactor) {
+        this.baseKw = baseKw;
+        this.morningPeakKw = morningPeakKw;
+        this.morningPeakHour = morningPeakHour;
+        this.morningWidthHours = morningWidthHours;
+        this.eveningPeakKw = eveningPeakKw;
+        this.eveningPeakHour = eveningPeakHour;
+        this.eveningWidthHours = eveningWidthHours;
+        this.weekendFactor = weekendFactor;
+    }
+
+    public double expectedKw(Instant time) {
+        double hourOfDay = Math.floorMod(time.getEpochSecond(), 86_400L) / SECONDS_PER_HOUR;
+        double kw = baseKw
+                + peak(hourOfDay, morningPeakKw, morningPeakHour, morningWidthHours)
+                + peak(hourOfDay, eveningPeakKw, eveningPeakHour, eveningWidthHours);
+        DayOfWeek dayOfWeek = time.atOffset(ZoneOffset.UTC).getDayOfWeek();
+        boolean weekend = dayOfWeek == DayOfWeek.SATURDAY || dayOfWeek == DayOfWeek.SUNDAY;
+        return weekend ? kw * weekendFactor : kw;
+    }
+
+    private static double peak(double hourOfDay, double peakKw, double peakHour, double widthHours) {
+        double distance = Math.abs(hourOfDay - peakHour);
+        // the day wraps, so 23:00 is one hour from a 00:00 peak
+        distance = Math.min(distance, 24 - distance);
+        return peakKw * Math.exp(-(distance * distance) / (2 * widthHours * widthHours));
+    }
+}
@@ -4,6 +4,7 @@ import uk.tw.energy.domain.ElectricityReading;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Comparator;
@@ -12,11 +13,31 @@ import java.util.Random;
 
 public class ElectricityReadingsGenerator {
 
+    // The README promises there is always some consumption, so generated readings never drop to zero.
+    private static final double MINIMUM_KW = 0.0001;
+    private static final double NOISE = 0.15;
+
+    private final Random readingRandomiser;
+
+    public ElectricityReadingsGenerator() {
+        this(new Random());
+    }
+
+    /**
+     * The same seed always produces the same readings.
+     */
+    public ElectricityReadingsGenerator(long seed) {
+        this(new Random(seed));
+    }
+
+    private ElectricityReadingsGenerator(Random readingRandomiser) {
+        this.readingRandomiser = readingRandomiser;
+    }
+
     public List<ElectricityReading> generate(int number) {
         List<ElectricityReading> readings = new ArrayList<>();
         Instant now = Instant.now();
 
-        Random readingRandomiser = new Random();
         for (int i = 0; i < number; i++) {
             double positiveRandomValue = Math.abs(readingRandomiser.nextGaussian());
             BigDecimal randomReading = BigDecimal.valueOf(positiveRandomValue).setScale(4, RoundingMode.CEILING);
@@ -27,4 +48,27 @@ public class ElectricityReadingsGenerator {
         readings.sort(Comparator.comparing(ElectricityReading::time));
         return readings;
     }
+
+    /**
+     * Readings every {@code interval} starting at {@code start}, following the daily profile scaled by
+     * {@code meterScale} with some gaussian noise on top.
+     */
+    public List<ElectricityReading> generate(int number, Instant start, Duration interval, DailyLoadProfile profile, double meterScale) {
+        List<ElectricityReading> readings = new ArrayList<>(number);
+        Instant time = start;
+        for (int i = 0; i < number; i++) {
+            double kw = profile.expectedKw(time) * meterScale * (1 + NOISE * readingRandomiser.nextGaussian());
+            BigDecimal reading = BigDecimal.valueOf(Math.max(kw, MINIMUM_KW)).setScale(4, RoundingMode.HALF_UP);
+            readings.add(new ElectricityReading(time, reading));
+            time = time.plus(interval);
+        }
+        return readings;
+    }
+
+    /**
+     * How much bigger or smaller than the profile a household is; log-normal so a few meters use a lot more.
+     */
+    public double nextMeterScale() {
+        return Math.exp(0.4 * readingRandomiser.nextGaussian());
+    }
 }
@@ -0,0 +1,189 @@
+package uk.tw.energy.generator;
+
+import uk.tw.energy.domain.ElectricityReading;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives a running application over HTTP with a mix of reading uploads and price plan queries for the generated
+ * meters, then prints throughput and latency percentiles per operation.
+ * <p>
+ * Requests are sent open loop: each one has an intended send time fixed by the target rate, and its latency is
+ * measured from that time rather than from when a client thread got round to sending it. A slow server therefore
+ * shows up as queueing in the percentiles instead of quietly lowering the request rate (coordinated omission).
+ * <p>
+ * Run it with {@code ./gradlew loadTest -PloadArgs="--meters=100000 --rate=2000 --duration=PT1M"} against an
+ * application started with the same meters, seed and start pre-populated (see load-generator.populate.*).
+ */
+public class HttpLoadDriver {
+
+    private static final String STORE = "POST /readings/store";
+    private static final String COMPARE_ALL = "GET /price-plans/compare-all";
+    private static final String RECOMMEND = "GET /price-plans/recommend";
+    private static final String USAGE = "GET /usage";
+
+    private final LoadGeneratorSettings settings;
+    private final LoadGenerator loadGenerator;
+    private final HttpClient httpClient;
+    private final Map<String, LatencyRecorder> recorders = new LinkedHashMap<>();
+    private final ConcurrentMap<Integer, MeterUploads> uploads = new ConcurrentHashMap<>();
+
+    public HttpLoadDriver(LoadGeneratorSettings settings) {
+        this.settings = settings;
+        this.loadGenerator = new LoadGenerator(settings);
+        this.httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+        for (String operation : List.of(STORE, COMPARE_ALL, RECOMMEND, USAGE)) {
+            recorders.put(operation, new LatencyRecorder());
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        LoadGeneratorSettings settings = LoadGeneratorSettings.fromArgs(args);
+        HttpLoadDriver driver = new HttpLoadDriver(settings);
+        System.out.println("Driving " + settings.baseUrl() + " at " + settings.requestsPerSecond() + " requests/s for "
+                + settings.duration() + " across " + settings.meters() + " meters");
+        long elapsedNanos = driver.run();
+        driver.report(elapsedNanos).forEach(System.out::println);
+    }
+
+    /**
+     * Sends requests until the configured duration is up and waits for them to finish.
+     *
+     * @return how long the run took in nanoseconds
+     */
+    public long run() throws InterruptedException {
+        ExecutorService clients = Executors.newFixedThreadPool(settings.concurrency());
+        SplittableRandom random = new SplittableRandom(settings.seed());
+        long startNanos = System.nanoTime();
+        long endNanos = startNanos + settings.duration().toNanos();
+        long intendedNanos = startNanos;
+        while (intendedNanos < endNanos) {
+            long waitNanos = intendedNanos - System.nanoTime();
+            if (waitNanos > 0) {
+                LockSupport.parkNanos(waitNanos);
+            }
+            long sendAt = intendedNanos;
+            int meterIndex = random.nextInt(settings.meters());
+            boolean ingest = random.nextDouble() < settings.ingestShare();
+            int query = random.nextInt(3);
+            clients.execute(() -> send(sendAt, meterIndex, ingest, query));
+            double rate = settings.requestsPerSecondAt(Duration.ofNanos(intendedNanos - startNanos));
+            intendedNanos += (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        }
+        clients.shutdown();
+        clients.awaitTermination(1, TimeUnit.MINUTES);
+        return System.nanoTime() - startNanos;
+    }
+
+    public List<String> report(long elapsedNanos) {
+        return recorders.entrySet().stream()
+                .map(entry -> entry.getValue().summary(entry.getKey(), elapsedNanos))
+                .toList();
+    }
+
+    public Map<String, LatencyRecorder> recorders() {
+        return recorders;
+    }
+
+    private void send(long intendedNanos, int meterIndex, boolean ingest, int query) {
+        String smartMeterId = settings.smartMeterId(meterIndex);
+        if (ingest) {
+            MeterUploads meterUploads = uploads.computeIfAbsent(meterIndex, this::meterUploads);
+            // one upload per meter at a time, as from a head-end, so each meter's readings arrive in time order
+            synchronized (meterUploads) {
+                HttpRequest request = HttpRequest.newBuilder(uri("/readings/store"))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString(readingsJson(smartMeterId, meterUploads)))
+                        .build();
+                send(STORE, request, intendedNanos);
+            }
+        } else if (query == 0) {
+            send(COMPARE_ALL, HttpRequest.newBuilder(uri("/price-plans/compare-all/" + smartMeterId)).GET().build(), intendedNanos);
+        } else if (query == 1) {
+            send(RECOMMEND, HttpRequest.newBuilder(uri("/price-plans/recommend/" + smartMeterId + "?limit=2")).GET().build(),
+                    intendedNanos);
+        } else {
+            Instant to = settings.start().plus(settings.readingInterval().multipliedBy(settings.readingsPerMeter()));
+            Instant from = to.minus(Duration.ofDays(1));
+            send(USAGE, HttpRequest.newBuilder(uri("/usage/" + smartMeterId + "?from=" + from + "&to=" + to)).GET().build(),
+                    intendedNanos);
+        }
+    }
+
+    private void send(String operation, HttpRequest request, long intendedNanos) {
+        LatencyRecorder recorder = recorders.get(operation);
+        try {
+            HttpResponse<Void> response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+            if (response.statusCode() >= 500) {
+                recorder.recordError();
+            } else {
+                recorder.record(System.nanoTime() - intendedNanos);
+            }
+        } catch (IOException e) {
+            recorder.recordError();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            recorder.recordError();
+        }
+    }
+
+    private MeterUploads meterUploads(int meterIndex) {
+        // the pre-populated readings' scale, so uploads look like the same household
+        double meterScale = loadGenerator.generatorFor(meterIndex).nextMeterScale();
+        return new MeterUploads(loadGenerator.uploadGeneratorFor(meterIndex), meterScale);
+    }
+
+    /**
+     * The meter's next few readings, carrying on from the last ones sent for it (or its pre-populated ones), so
+     * uploads append rather than merge. Called with the meter's uploads held.
+     */
+    private String readingsJson(String smartMeterId, MeterUploads meterUploads) {
+        int perRequest = settings.readingsPerRequest();
+        Instant start = settings.start().plus(settings.readingInterval().multipliedBy(settings.readingsPerMeter() + meterUploads.readingsSent));
+        List<ElectricityReading> readings = meterUploads.generator.generate(perRequest, start, settings.readingInterval(),
+                DailyLoadProfile.RESIDENTIAL, meterUploads.meterScale);
+        meterUploads.readingsSent += perRequest;
+        StringBuilder json = new StringBuilder("{\"smartMeterId\":\"").append(smartMeterId).append("\",\"electricityReadings\":[");
+        for (int i = 0; i < readings.size(); i++) {
+            json.append(i == 0 ? "" : ",")
+                    .append("{\"time\":\"").append(readings.get(i).time())
+                    .append("\",\"reading\":").append(readings.get(i).reading().toPlainString()).append('}');
+        }
+        return json.append("]}").toString();
+    }
+
+    private URI uri(String path) {
+        return settings.baseUrl().resolve(path);
+    }
+
+    /**
+     * What the driver has uploaded for one meter so far.
+     */
+    private static final class MeterUploads {
+
+        private final ElectricityReadingsGenerator generator;
+        private final double meterScale;
+        private long readingsSent;
+
+        private MeterUploads(ElectricityReadingsGenerator generator, double meterScale) {
+            this.generator = generator;
+            this.meterScale = meterScale;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package uk.tw.energy.generator;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free latency histogram with log-linear buckets: every power of two range of nanoseconds is split into
+ * 128 sub-buckets, so recorded values keep better than 1% precision from 1 microsecond up to minutes while the
+ * whole histogram stays a few kilobytes.
+ */
+public class LatencyRecorder {
+
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAGNITUDES = 64 - SUB_BUCKET_BITS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(MAGNITUDES * SUB_BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        counts.incrementAndGet(bucketOf(value));
+        count.incrementAndGet();
+        maxNanos.accumulateAndGet(value, Math::max);
+    }
+
+    public void recordError() {
+        errors.incrementAndGet();
+    }
+
+    public long count() {
+        return count.get();
+    }
+
+    public long errors() {
+        return errors.get();
+    }
+
+    public long maxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * The value at the given percentile (0-100), as the upper edge of the bucket it falls into.
+     */
+    public long percentileNanos(double percentile) {
+        long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int bucket = 0; bucket < counts.length(); bucket++) {
+            seen += counts.get(bucket);
+            if (seen >= rank) {
+                return Math.min(upperEdgeOf(bucket), maxNanos.get());
+            }
+        }
+        return maxNanos.get();
+    }
+
+    public String summary(String name, long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        return String.format("%-28s count=%d errors=%d throughput=%.1f/s p50=%.2fms p99=%.2fms p999=%.2fms max=%.2fms",
+                name, count(), errors(), seconds > 0 ? count() / seconds : 0,
+                millis(percentileNanos(50)), millis(percentileNanos(99)), millis(percentileNanos(99.9)), millis(maxNanos()));
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        // shift the value down until it is in [SUB_BUCKETS, 2 * SUB_BUCKETS), its top bits pick the sub-bucket
+        int magnitude = 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS - 1;
+        int subBucket = (int) (value >>> magnitude) - SUB_BUCKETS;
+        return Math.min((magnitude + 1) * SUB_BUCKETS + subBucket, MAGNITUDES * SUB_BUCKETS - 1);
+    }
+
+    static long upperEdgeOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int magnitude = bucket / SUB_BUCKETS - 1;
+        long subBucket = bucket % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << magnitude) - 1;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,69 @@
+package uk.tw.energy.generator;
+
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.store.MeterReadingStore;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Generates a fleet of meters for load testing. Each meter gets its own generator seeded from the run's seed and
+ * the meter's index, so a meter's readings are the same however many meters are generated or threads are used.
+ */
+public class LoadGenerator {
+
+    private final LoadGeneratorSettings settings;
+
+    public LoadGenerator(LoadGeneratorSettings settings) {
+        this.settings = settings;
+    }
+
+    public ElectricityReadingsGenerator generatorFor(int meterIndex) {
+        // spread neighbouring indexes across the seed space so their random streams don't correlate
+        return new ElectricityReadingsGenerator(settings.seed() ^ (meterIndex * 0x9E3779B97F4A7C15L));
+    }
+
+    /**
+     * A generator for readings uploaded after the meter's pre-populated ones, with a random stream of its own so
+     * uploads don't repeat the history.
+     */
+    public ElectricityReadingsGenerator uploadGeneratorFor(int meterIndex) {
+        return new ElectricityReadingsGenerator(~settings.seed() ^ (meterIndex * 0x9E3779B97F4A7C15L));
+    }
+
+    public List<ElectricityReading> readingsFor(int meterIndex) {
+        ElectricityReadingsGenerator generator = generatorFor(meterIndex);
+        return generator.generate(settings.readingsPerMeter(), settings.start(), settings.readingInterval(),
+                DailyLoadProfile.RESIDENTIAL, generator.nextMeterScale());
+    }
+
+    /**
+     * Writes every generated meter straight into the store, in parallel, skipping HTTP and JSON entirely.
+     */
+    public void populate(MeterReadingStore store) {
+        IntStream.range(0, settings.meters())
+                .parallel()
+                .forEach(meterIndex -> store.getOrCreate(settings.smartMeterId(meterIndex)).append(readingsFor(meterIndex)));
+    }
+
+    /**
+     * Registers every generated meter with the store without generating anything; each meter's readings are generated
+     * the first time it is looked up.
+     */
+    public void populateLazily(MeterReadingStore store) {
+        for (int meterIndex = 0; meterIndex < settings.meters(); meterIndex++) {
+            int index = meterIndex;
+            store.seedLazily(settings.smartMeterId(meterIndex), () -> readingsFor(index));
+        }
+    }
+
+    /**
+     * Puts the generated meters on the given price plans in turn.
+     */
+    public void assignPricePlans(Map<String, String> smartMeterToPricePlanAccounts, List<String> pricePlanIds) {
+        for (int meterIndex = 0; meterIndex < settings.meters(); meterIndex++) {
+            smartMeterToPricePlanAccounts.put(settings.smartMeterId(meterIndex), pricePlanIds.get(meterIndex % pricePlanIds.size()));
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package uk.tw.energy.generator;
+
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Knobs for the load generator. Every setting can be given on the command line as --name=value, e.g.
+ * --meters=1000000 --rate=2000 --burst-every=PT1M --burst-length=PT10S --burst-multiplier=5
+ *
+ * @param meters                  how many distinct smart meters to generate
+ * @param readingsPerMeter        readings per meter when pre-populating the store
+ * @param readingInterval         time between consecutive readings of a meter
+ * @param start                   time of every meter's first pre-populated reading
+ * @param seed                    the same seed always generates the same meters and readings
+ * @param meterIdPrefix           generated meters are named prefix + index, which must still be a valid meter id
+ * @param baseUrl                 application to drive over HTTP
+ * @param concurrency             HTTP client threads
+ * @param requestsPerSecond       steady request rate
+ * @param duration                how long to drive the endpoints for
+ * @param burstEvery              how often a burst starts, zero for no bursts
+ * @param burstLength             how long each burst lasts
+ * @param burstMultiplier         request rate during a burst relative to the steady rate
+ * @param ingestShare             fraction of requests that store readings rather than query
+ * @param readingsPerRequest      readings sent in each store request
+ */
+public record LoadGeneratorSettings(int meters, int readingsPerMeter, Duration readingInterval, Instant start, long seed,
+                                    String meterIdPrefix, URI baseUrl, int concurrency, double requestsPerSecond,
+                                    Duration duration, Duration burstEvery, Duration burstLength, double burstMultiplier,
+                                    double ingestShare, int readingsPerRequest) {
+
+    public static final String DEFAULT_METER_ID_PREFIX = "generated-meter-";
+
+    public static LoadGeneratorSettings defaults() {
+        return fromArgs(new String[0]);
+    }
+
+    public static LoadGeneratorSettings fromArgs(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.contains("=")) {
+                options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            }
+        }
+        return new LoadGeneratorSettings(
+                Integer.parseInt(options.getOrDefault("meters", "1000")),
+                Integer.parseInt(options.getOrDefault("readings-per-meter", "96")),
+                Duration.parse(options.getOrDefault("reading-interval", "PT15M")),
+                Instant.parse(options.getOrDefault("start", "2023-01-01T00:00:00Z")),
+                Long.parseLong(options.getOrDefault("seed", "42")),
+                options.getOrDefault("meter-id-prefix", DEFAULT_METER_ID_PREFIX),
+                URI.create(options.getOrDefault("base-url", "http://localhost:8080")),
+                Integer.parseInt(options.getOrDefault("concurrency", "32")),
+                Double.parseDouble(options.getOrDefault("rate", "500")),
+                Duration.parse(options.getOrDefault("duration", "PT30S")),
+                Duration.parse(options.getOrDefault("burst-every", "PT0S")),
+                Duration.parse(options.getOrDefault("burst-length", "PT0S")),
+                Double.parseDouble(options.getOrDefault("burst-multiplier", "1")),
+                Double.parseDouble(options.getOrDefault("ingest-share", "0.8")),
+                Integer.parseInt(options.getOrDefault("readings-per-request", "4")));
+    }
+
+    /**
+     * These settings with a different set of generated meters.
+     */
+    public LoadGeneratorSettings withPopulation(int meters, int readingsPerMeter, Duration readingInterval, Instant start, long seed) {
+        return new LoadGeneratorSettings(meters, readingsPerMeter, readingInterval, start, seed, meterIdPrefix, baseUrl,
+                concurrency, requestsPerSecond, duration, burstEvery, burstLength, burstMultiplier, ingestShare, readingsPerRequest);
+    }
+
+    public String smartMeterId(int meterIndex) {
+        return meterIdPrefix + meterIndex;
+    }
+
+    /**
+     * Request rate at a given time into the run, taking bursts into account.
+     */
+    public double requestsPerSecondAt(Duration elapsed) {
+        if (burstEvery.isZero() || burstLength.isZero()) {
+            return requestsPerSecond;
+        }
+        long intoCycle = elapsed.toNanos() % burstEvery.toNanos();
+        return intoCycle < burstLength.toNanos() ? requestsPerSecond * burstMultiplier : requestsPerSecond;
+    }
+}
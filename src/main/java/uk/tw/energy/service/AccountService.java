@@ -1,19 +1,161 @@
 package uk.tw.energy.service;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import uk.tw.energy.domain.PricePlanAssignments;
+import uk.tw.energy.domain.PricePlanSwitch;
+import uk.tw.energy.domain.PricePlanSwitchRequest;
+import uk.tw.energy.event.PricePlanSwitchedEvent;
 
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
 
+import static uk.tw.energy.exceptions.Constants.*;
+
+/**
+ * Which price plan each account (smart meter) is on, and has been on. Every account maps to an immutable
+ * {@link PricePlanAssignments} that a switch replaces atomically, so looking a plan up is a single lock-free map
+ * read and never waits on switches, however many are in flight.
+ */
 @Service
 public class AccountService {
 
-    private final Map<String, String> smartMeterToPricePlanAccounts;
+    private static final Logger logger = Logger.getLogger(AccountService.class.getName());
+
+    private final ConcurrentMap<String, PricePlanAssignments> smartMeterToPricePlanAccounts;
+    private final PricePlanCatalogue pricePlanCatalogue;
+    private final Clock clock;
+    private final ApplicationEventPublisher eventPublisher;
+    private final AtomicLong version = new AtomicLong();
 
     public AccountService(Map<String, String> smartMeterToPricePlanAccounts) {
-        this.smartMeterToPricePlanAccounts = smartMeterToPricePlanAccounts;
+        this(smartMeterToPricePlanAccounts, null, Clock.systemUTC(), event -> { });
+    }
+
+    public AccountService(Map<String, String> smartMeterToPricePlanAccounts, PricePlanCatalogue pricePlanCatalogue) {
+        this(smartMeterToPricePlanAccounts, pricePlanCatalogue, Clock.systemUTC(), event -> { });
     }
 
+    @Autowired
+    public AccountService(Map<String, String> smartMeterToPricePlanAccounts, PricePlanCatalogue pricePlanCatalogue,
+                          ApplicationEventPublisher eventPublisher) {
+        this(smartMeterToPricePlanAccounts, pricePlanCatalogue, Clock.systemUTC(), eventPublisher);
+    }
+
+    AccountService(Map<String, String> smartMeterToPricePlanAccounts, PricePlanCatalogue pricePlanCatalogue, Clock clock) {
+        this(smartMeterToPricePlanAccounts, pricePlanCatalogue, clock, event -> { });
+    }
+
+    /**
+     * @param pricePlanCatalogue switches to plans it doesn't have are rejected; null accepts any plan
+     */
+    AccountService(Map<String, String> smartMeterToPricePlanAccounts, PricePlanCatalogue pricePlanCatalogue, Clock clock,
+                   ApplicationEventPublisher eventPublisher) {
+        this.smartMeterToPricePlanAccounts = new ConcurrentHashMap<>(smartMeterToPricePlanAccounts.size() * 2);
+        smartMeterToPricePlanAccounts.forEach((smartMeterId, pricePlanId) ->
+                this.smartMeterToPricePlanAccounts.put(smartMeterId, PricePlanAssignments.of(pricePlanId)));
+        this.pricePlanCatalogue = pricePlanCatalogue;
+        this.clock = clock;
+        this.eventPublisher = eventPublisher;
+    }
+
+    /**
+     * The plan the account is on now.
+     */
     public String getPricePlanIdForSmartMeterId(String smartMeterId) {
-        return smartMeterToPricePlanAccounts.get(smartMeterId);
+        PricePlanAssignments assignments = smartMeterToPricePlanAccounts.get(smartMeterId);
+        return assignments == null ? null : assignments.pricePlanIdAt(clock.instant());
+    }
+
+    public Optional<PricePlanAssignments> getPricePlanAssignments(String smartMeterId) {
+        return Optional.ofNullable(smartMeterToPricePlanAccounts.get(smartMeterId));
+    }
+
+    /**
+     * Every account, as a live view: accounts opened while it is being iterated may or may not be included.
+     */
+    public Set<String> smartMeterIds() {
+        return Collections.unmodifiableSet(smartMeterToPricePlanAccounts.keySet());
+    }
+
+    /**
+     * Bumped by every batch of switches that switches at least one account.
+     */
+    public long version() {
+        return version.get();
+    }
+
+    /**
+     * Applies a batch of switches under one new registry version. Each switch is validated on its own, so a bad
+     * entry is reported back without holding up the rest; accounts that don't exist yet are opened on the plan they
+     * switch to from the time it takes effect. A batch with no valid switches changes nothing, the version included.
+     *
+     * @param request
+     * @return the version, how many switches were applied and the ones that were rejected, with why
+     */
+    public Map<String, Object> switchPricePlans(PricePlanSwitchRequest request) {
+        Instant defaultEffectiveFrom = request.effectiveFrom() != null ? request.effectiveFrom() : clock.instant();
+        PricePlanCatalogue.Snapshot catalogue = pricePlanCatalogue == null ? null : pricePlanCatalogue.current();
+
+        List<PricePlanSwitch> valid = new ArrayList<>(request.switches().size());
+        List<Map<String, String>> rejected = new ArrayList<>();
+        for (PricePlanSwitch pricePlanSwitch : request.switches()) {
+            String rejection = validate(pricePlanSwitch, catalogue);
+            if (rejection != null) {
+                rejected.add(rejection(pricePlanSwitch, rejection));
+            } else {
+                valid.add(pricePlanSwitch);
+            }
+        }
+
+        long batchVersion = valid.isEmpty() ? version.get() : version.incrementAndGet();
+        for (PricePlanSwitch pricePlanSwitch : valid) {
+            Instant effectiveFrom = pricePlanSwitch.effectiveFrom() != null ? pricePlanSwitch.effectiveFrom() : defaultEffectiveFrom;
+            smartMeterToPricePlanAccounts.compute(pricePlanSwitch.smartMeterId(), (smartMeterId, assignments) -> assignments == null
+                    ? PricePlanAssignments.of(pricePlanSwitch.pricePlanId(), effectiveFrom, batchVersion)
+                    : assignments.with(pricePlanSwitch.pricePlanId(), effectiveFrom, batchVersion));
+            eventPublisher.publishEvent(new PricePlanSwitchedEvent(pricePlanSwitch.smartMeterId(), pricePlanSwitch.pricePlanId(),
+                    effectiveFrom, batchVersion));
+        }
+        int switched = valid.size();
+        logger.info("Switched " + switched + " accounts, rejected " + rejected.size() + ", as version " + batchVersion);
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put(VERSION_KEY, batchVersion);
+        result.put(SWITCHED_KEY, switched);
+        result.put(REJECTED_KEY, rejected);
+        return result;
+    }
+
+    private static String validate(PricePlanSwitch pricePlanSwitch, PricePlanCatalogue.Snapshot catalogue) {
+        if (pricePlanSwitch == null || pricePlanSwitch.smartMeterId() == null
+                || !pricePlanSwitch.smartMeterId().matches(SMART_METER_ID_REGEX)) {
+            return INVALID_SMART_METER_ID;
+        }
+        if (pricePlanSwitch.pricePlanId() == null
+                || (catalogue != null && catalogue.find(pricePlanSwitch.pricePlanId()).isEmpty())) {
+            return UNKNOWN_PRICE_PLAN;
+        }
+        return null;
+    }
+
+    private static Map<String, String> rejection(PricePlanSwitch pricePlanSwitch, String reason) {
+        Map<String, String> rejection = new LinkedHashMap<>();
+        rejection.put(SMART_METER_ID_KEY, pricePlanSwitch == null ? null : pricePlanSwitch.smartMeterId());
+        rejection.put(PRICE_PLAN_ID_KEY, pricePlanSwitch == null ? null : pricePlanSwitch.pricePlanId());
+        rejection.put(ERROR, reason);
+        return rejection;
     }
 }
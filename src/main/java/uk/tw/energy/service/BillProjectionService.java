@@ -0,0 +1,146 @@
+package uk.tw.energy.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import uk.tw.energy.domain.PricePlan;
+import uk.tw.energy.event.MeterReadingsStoredEvent;
+import uk.tw.energy.store.MeterReadingSeries;
+import uk.tw.energy.store.MeterReadingStore;
+import uk.tw.energy.store.MonthlyPeak;
+import uk.tw.energy.store.ReadingColumns;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static uk.tw.energy.exceptions.Constants.*;
+
+/**
+ * Projects what a meter's current billing period (a calendar month, UTC) will cost on every plan in the catalogue.
+ * <p>
+ * Each meter asked about gets a {@link LoadForecast}: its usage so far this period and a moving average of what it
+ * uses in each hour of the week, built once from projection.history of its readings and from then on updated only
+ * with the intervals each stored batch adds. A projection prices those two 168 slot profiles against each plan, so
+ * it takes the same few microseconds however much history the meter has. A batch that lands before readings already
+ * fed in rebuilds the meter's forecast, as the averages can't take usage back out.
+ * <p>
+ * Plans with a demand charge add the month's peak demand so far, which the rest of the month can only raise.
+ */
+@Service
+public class BillProjectionService {
+
+    private final MeterReadingStore meterReadingStore;
+    private final AccountService accountService;
+    private final PricePlanCatalogue pricePlanCatalogue;
+    private final double smoothing;
+    private final Duration history;
+    private final ConcurrentMap<String, LoadForecast> forecasts = new ConcurrentHashMap<>();
+
+    public BillProjectionService(MeterReadingStore meterReadingStore, AccountService accountService,
+                                 PricePlanCatalogue pricePlanCatalogue) {
+        this(meterReadingStore, accountService, pricePlanCatalogue, 0.3, Duration.ofDays(28));
+    }
+
+    @Autowired
+    public BillProjectionService(MeterReadingStore meterReadingStore, AccountService accountService,
+                                 PricePlanCatalogue pricePlanCatalogue,
+                                 @Value("${projection.smoothing:0.3}") double smoothing,
+                                 @Value("${projection.history:P28D}") Duration history) {
+        this.meterReadingStore = meterReadingStore;
+        this.accountService = accountService;
+        this.pricePlanCatalogue = pricePlanCatalogue;
+        this.smoothing = smoothing;
+        this.history = history;
+    }
+
+    /**
+     * Published with the series held, so a forecast is fed each batch exactly once and in order.
+     */
+    @EventListener
+    public void onReadingsStored(MeterReadingsStoredEvent event) {
+        LoadForecast forecast = forecasts.get(event.smartMeterId());
+        if (forecast == null) {
+            return;
+        }
+        ReadingColumns columns = event.series().columns();
+        int firstChangedIndex = event.result().firstChangedIndex();
+        if (forecast.hasSeen(columns, firstChangedIndex)) {
+            forecasts.put(event.smartMeterId(), build(columns));
+        } else {
+            forecast.integrate(columns, firstChangedIndex);
+        }
+    }
+
+    /**
+     * @param smartMeterId
+     * @return the period, usage so far and forecast, and the projected cost of the whole period on every plan, or an
+     * empty map when the meter has no readings
+     */
+    public Map<String, Object> getProjectedCosts(String smartMeterId) {
+        Optional<MeterReadingSeries> series = meterReadingStore.find(smartMeterId);
+        if (series.isEmpty() || series.get().columns().isEmpty()) {
+            return Collections.emptyMap();
+        }
+        LoadForecast forecast = forecasts.get(smartMeterId);
+        if (forecast == null) {
+            synchronized (series.get()) {
+                forecast = forecasts.computeIfAbsent(smartMeterId, ignored -> build(series.get().columns()));
+            }
+        }
+        LoadForecast.Projection projection = forecast.project();
+        PricePlanCatalogue.Snapshot catalogue = pricePlanCatalogue.current();
+
+        Map<String, BigDecimal> projectedCosts = new LinkedHashMap<>(catalogue.size() * 2);
+        List<PricePlan> pricePlans = catalogue.pricePlans();
+        for (int i = 0; i < pricePlans.size(); i++) {
+            double cost = projection.cost(catalogue.rateSchedules()[i]);
+            PricePlan.DemandCharge demandCharge = pricePlans.get(i).getDemandCharge();
+            if (demandCharge != null) {
+                cost += TariffSimulator.demandCost(peakSoFar(series.get(), demandCharge, projection.periodStart()), demandCharge);
+            }
+            projectedCosts.put(pricePlans.get(i).getPlanName(), TariffSimulator.toCost(cost));
+        }
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put(SMART_METER_ID_KEY, smartMeterId);
+        response.put(PRICE_PLAN_ID_KEY, accountService.getPricePlanIdForSmartMeterId(smartMeterId));
+        response.put(FROM, projection.periodStart());
+        response.put(TO, projection.periodEnd());
+        response.put(AS_OF_KEY, projection.asOf());
+        response.put(CONSUMPTION_KWH_KEY, TariffSimulator.toCost(projection.toDateTotalKwh()));
+        response.put(PROJECTED_CONSUMPTION_KWH_KEY,
+                TariffSimulator.toCost(projection.toDateTotalKwh() + projection.remainingTotalKwh()));
+        response.put(PRICE_PLAN_PROJECTIONS_KEY, projectedCosts);
+        return response;
+    }
+
+    private static List<MonthlyPeak> peakSoFar(MeterReadingSeries series, PricePlan.DemandCharge demandCharge, Instant periodStart) {
+        YearMonth month = YearMonth.from(periodStart.atOffset(ZoneOffset.UTC));
+        List<MonthlyPeak> peaks = series.peakDemand(demandCharge.getWindowMinutes());
+        return !peaks.isEmpty() && peaks.get(peaks.size() - 1).month().equals(month)
+                ? peaks.subList(peaks.size() - 1, peaks.size())
+                : Collections.emptyList();
+    }
+
+    /**
+     * Caller holds the series.
+     */
+    private LoadForecast build(ReadingColumns columns) {
+        Instant last = columns.time(columns.size() - 1);
+        Instant periodStart = LocalDate.ofInstant(last, ZoneOffset.UTC).withDayOfMonth(1).atStartOfDay(ZoneOffset.UTC).toInstant();
+        Instant historyStart = last.minus(history);
+        return LoadForecast.build(columns, historyStart.isBefore(periodStart) ? historyStart : periodStart, smoothing);
+    }
+}
@@ -0,0 +1,480 @@
+package uk.tw.energy.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import uk.tw.energy.admission.AdmissionControlFilter;
+import uk.tw.energy.domain.MeterBill;
+import uk.tw.energy.domain.PricePlanAssignments;
+import uk.tw.energy.store.MeterReadingSeries;
+import uk.tw.energy.store.MeterReadingStore;
+import uk.tw.energy.store.ReadingColumns;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static uk.tw.energy.exceptions.Constants.*;
+
+/**
+ * Bills every account for the last calendar month (UTC) in the background, once the month is over.
+ * <p>
+ * A run splits the accounts into billing.run.partitions partitions by smart meter id and bills each partition on its
+ * own worker thread: what the month cost on the plans the account was on, and what it would have cost on every plan
+ * in the catalogue. Each partition appends its bills to its own file under billing.run.directory, as one JSON line per
+ * meter, and forces the file to disk every billing.run.checkpoint-interval meters. Those files are the run's
+ * checkpoint as well as its output: a run that is cut short, by a crash or a shutdown, is picked up by the next check
+ * and skips every meter already on disk, so it carries on from its last checkpoint rather than starting over. A
+ * summary file marks the month as done.
+ * <p>
+ * A meter that can't be billed is logged, counted in the summary as a failed meter and left out, rather than failing
+ * its partition and so the whole run. Likewise a checkpoint line that can't be read back is moved to the partition's
+ * .quarantined file and its meter billed again.
+ * <p>
+ * Runs yield to interactive requests. Workers run at the lowest thread priority, bill at most
+ * billing.run.max-meters-per-second between them, and pause while billing.run.max-in-flight-requests or more requests
+ * are being served. Progress is published as billing.run.* metrics.
+ * <p>
+ * Runs are off unless billing.run.enabled is set, since each one writes files under billing.run.directory.
+ */
+@Service
+// scheduled, so created at start up even when beans are initialised lazily
+@Lazy(false)
+public class BillingRunService {
+
+    static final String SUMMARY_FILE = "summary.json";
+    static final String PARTITION_FILE_PREFIX = "partition-";
+    static final String PARTITION_FILE_SUFFIX = ".ndjson";
+    static final String QUARANTINE_FILE_SUFFIX = ".quarantined";
+    static final String RUNNING = "running";
+    static final String COMPLETE = "complete";
+    static final String FAILED = "failed";
+
+    private static final Logger logger = Logger.getLogger(BillingRunService.class.getName());
+    private static final long PAUSE_MILLIS = 50;
+
+    private final MeterReadingStore meterReadingStore;
+    private final AccountService accountService;
+    private final PricePlanCatalogue pricePlanCatalogue;
+    private final IntSupplier inFlightRequests;
+    private final Clock clock;
+    private final boolean enabled;
+    private final Path directory;
+    private final int partitions;
+    private final long nanosPerMeter;
+    private final int maxInFlightRequests;
+    private final int checkpointInterval;
+    private final ObjectMapper objectMapper = new ObjectMapper().enable(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS);
+    private final ExecutorService workers;
+
+    private final AtomicLong nextMeterNanos = new AtomicLong(Long.MIN_VALUE);
+    private final AtomicLong billedMeters = new AtomicLong();
+    private final AtomicLong resumedMeters = new AtomicLong();
+    private final AtomicLong throttledPauses = new AtomicLong();
+    private final AtomicLong completedRuns = new AtomicLong();
+    private final AtomicLong failedMeters = new AtomicLong();
+    private final AtomicLong quarantinedLines = new AtomicLong();
+
+    private volatile Run latest;
+
+    @Autowired
+    public BillingRunService(MeterReadingStore meterReadingStore, AccountService accountService,
+                             PricePlanCatalogue pricePlanCatalogue, AdmissionControlFilter admissionControlFilter,
+                             MeterRegistry meterRegistry,
+                             @Value("${billing.run.enabled:false}") boolean enabled,
+                             @Value("${billing.run.directory:billing-runs}") String directory,
+                             @Value("${billing.run.partitions:4}") int partitions,
+                             @Value("${billing.run.max-meters-per-second:5000}") int maxMetersPerSecond,
+                             @Value("${billing.run.max-in-flight-requests:20}") int maxInFlightRequests,
+                             @Value("${billing.run.checkpoint-interval:500}") int checkpointInterval) {
+        this(meterReadingStore, accountService, pricePlanCatalogue, admissionControlFilter::inFlight, meterRegistry,
+                Clock.systemUTC(), enabled, Path.of(directory), partitions, maxMetersPerSecond, maxInFlightRequests,
+                checkpointInterval);
+    }
+
+    /**
+     * @param inFlightRequests   interactive requests being served now
+     * @param maxMetersPerSecond 0 for no limit
+     */
+    BillingRunService(MeterReadingStore meterReadingStore, AccountService accountService,
+                      PricePlanCatalogue pricePlanCatalogue, IntSupplier inFlightRequests, MeterRegistry meterRegistry,
+                      Clock clock, boolean enabled, Path directory, int partitions, int maxMetersPerSecond,
+                      int maxInFlightRequests, int checkpointInterval) {
+        this.meterReadingStore = meterReadingStore;
+        this.accountService = accountService;
+        this.pricePlanCatalogue = pricePlanCatalogue;
+        this.inFlightRequests = inFlightRequests;
+        this.clock = clock;
+        this.enabled = enabled;
+        this.directory = directory;
+        this.partitions = partitions;
+        this.nanosPerMeter = maxMetersPerSecond <= 0 ? 0 : TimeUnit.SECONDS.toNanos(1) / maxMetersPerSecond;
+        this.maxInFlightRequests = maxInFlightRequests;
+        this.checkpointInterval = checkpointInterval;
+        AtomicInteger threads = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(partitions, runnable -> {
+            Thread thread = new Thread(runnable, "billing-run-" + threads.getAndIncrement());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+
+        FunctionCounter.builder("billing.run.billed.meters", billedMeters, AtomicLong::get)
+                .description("Meters billed by billing runs")
+                .register(meterRegistry);
+        FunctionCounter.builder("billing.run.resumed.meters", resumedMeters, AtomicLong::get)
+                .description("Meters a resumed billing run found already billed in its checkpoint")
+                .register(meterRegistry);
+        FunctionCounter.builder("billing.run.throttled.pauses", throttledPauses, AtomicLong::get)
+                .description("Pauses billing runs took to make way for interactive requests")
+                .register(meterRegistry);
+        FunctionCounter.builder("billing.run.completed", completedRuns, AtomicLong::get)
+                .description("Billing runs completed")
+                .register(meterRegistry);
+        FunctionCounter.builder("billing.run.failed.meters", failedMeters, AtomicLong::get)
+                .description("Meters billing runs left out because they could not be billed")
+                .register(meterRegistry);
+        FunctionCounter.builder("billing.run.quarantined.lines", quarantinedLines, AtomicLong::get)
+                .description("Checkpoint lines that could not be read back, moved aside and billed again")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Starts, or resumes, the run for last month if it hasn't been completed yet.
+     */
+    @Scheduled(fixedDelayString = "${billing.run.check-interval-ms:60000}")
+    public void startDueRun() {
+        if (enabled) {
+            start(YearMonth.now(clock).minusMonths(1));
+        }
+    }
+
+    /**
+     * Bills the given month, carrying on from any checkpoint left by an earlier attempt. Returns straight away; the
+     * run goes on in the background.
+     *
+     * @param period
+     * @return the run's summary once it is complete, or the one already running
+     */
+    public synchronized CompletableFuture<Map<String, Object>> start(YearMonth period) {
+        if (latest != null && (RUNNING.equals(latest.state) || (COMPLETE.equals(latest.state) && latest.period.equals(period)))) {
+            return latest.done;
+        }
+        Path runDirectory = directory.resolve(period.toString());
+        Path summaryFile = runDirectory.resolve(SUMMARY_FILE);
+        try {
+            if (Files.exists(summaryFile)) {
+                latest = Run.completed(period, objectMapper.readValue(summaryFile.toFile(), new TypeReference<>() { }));
+                return latest.done;
+            }
+            Files.createDirectories(runDirectory);
+            Run run = new Run(period, clock.instant());
+            Set<String> alreadyBilled = readCheckpoints(runDirectory, run);
+            resumedMeters.addAndGet(alreadyBilled.size());
+            if (!alreadyBilled.isEmpty()) {
+                logger.info("Resuming billing run for " + period + " with " + alreadyBilled.size() + " meters already billed");
+            }
+            latest = run;
+            billPartitions(run, runDirectory, alreadyBilled);
+            return run.done;
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not start billing run for " + period, e);
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * The run in progress, or the last one finished.
+     */
+    public Optional<Map<String, Object>> getLatestRun() {
+        Run run = latest;
+        return run == null ? Optional.empty() : Optional.of(run.summary());
+    }
+
+    @PreDestroy
+    public void close() throws InterruptedException {
+        // interrupted workers force what they have billed to disk, so the next start carries on from there
+        workers.shutdownNow();
+        workers.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    private void billPartitions(Run run, Path runDirectory, Set<String> alreadyBilled) {
+        List<List<String>> partitioned = new ArrayList<>(partitions);
+        for (int i = 0; i < partitions; i++) {
+            partitioned.add(new ArrayList<>());
+        }
+        for (String smartMeterId : accountService.smartMeterIds()) {
+            if (!alreadyBilled.contains(smartMeterId)) {
+                partitioned.get(Math.floorMod(smartMeterId.hashCode(), partitions)).add(smartMeterId);
+            }
+        }
+        PricePlanCatalogue.Snapshot catalogue = pricePlanCatalogue.current();
+        CompletableFuture<?>[] billing = new CompletableFuture<?>[partitions];
+        for (int i = 0; i < partitions; i++) {
+            Path file = runDirectory.resolve(PARTITION_FILE_PREFIX + i + PARTITION_FILE_SUFFIX);
+            List<String> smartMeterIds = partitioned.get(i);
+            billing[i] = CompletableFuture.runAsync(() -> billPartition(run, file, smartMeterIds, catalogue), workers);
+        }
+        CompletableFuture.allOf(billing).whenComplete((ignored, failure) -> {
+            if (failure != null) {
+                run.state = FAILED;
+                logger.log(Level.WARNING, "Billing run for " + run.period + " stopped after " + run.meters.get()
+                        + " meters; it will carry on from its checkpoint", failure);
+                run.done.completeExceptionally(failure);
+                return;
+            }
+            run.completedAt = clock.instant();
+            run.state = COMPLETE;
+            try {
+                writeSummary(runDirectory.resolve(SUMMARY_FILE), run.summary());
+                completedRuns.incrementAndGet();
+                logger.info("Billed " + run.meters.get() + " meters for " + run.period + " in "
+                        + (run.completedAt.toEpochMilli() - run.startedAt.toEpochMilli()) + " ms");
+                run.done.complete(run.summary());
+            } catch (IOException e) {
+                run.state = FAILED;
+                logger.log(Level.WARNING, "Could not mark billing run for " + run.period + " complete", e);
+                run.done.completeExceptionally(e);
+            }
+        });
+    }
+
+    private void billPartition(Run run, Path file, List<String> smartMeterIds, PricePlanCatalogue.Snapshot catalogue) {
+        Instant from = run.period.atDay(1).atStartOfDay(ZoneOffset.UTC).toInstant();
+        Instant to = run.period.plusMonths(1).atDay(1).atStartOfDay(ZoneOffset.UTC).toInstant();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+             Writer out = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8))) {
+            int sinceCheckpoint = 0;
+            try {
+                for (String smartMeterId : smartMeterIds) {
+                    throttle();
+                    Optional<MeterBill> bill;
+                    try {
+                        bill = bill(smartMeterId, from, to, catalogue);
+                    } catch (RuntimeException e) {
+                        run.failedMeters.incrementAndGet();
+                        failedMeters.incrementAndGet();
+                        logger.log(Level.WARNING, "Could not bill " + smartMeterId + " for " + run.period + "; leaving it out", e);
+                        continue;
+                    }
+                    if (bill.isEmpty()) {
+                        continue;
+                    }
+                    out.write(objectMapper.writeValueAsString(bill.get()));
+                    out.write('\n');
+                    run.add(bill.get());
+                    billedMeters.incrementAndGet();
+                    if (++sinceCheckpoint == checkpointInterval) {
+                        checkpoint(out, channel);
+                        sinceCheckpoint = 0;
+                    }
+                }
+            } finally {
+                checkpoint(out, channel);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Billing run for " + run.period + " interrupted", e);
+        }
+    }
+
+    private Optional<MeterBill> bill(String smartMeterId, Instant from, Instant to, PricePlanCatalogue.Snapshot catalogue) {
+        Optional<PricePlanAssignments> assignments = accountService.getPricePlanAssignments(smartMeterId);
+        Optional<ReadingColumns> readings = meterReadingStore.find(smartMeterId).map(MeterReadingSeries::columns);
+        if (assignments.isEmpty() || readings.isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.of(new MeterBill(smartMeterId, assignments.get().pricePlanIdAt(to.minusNanos(1)),
+                TariffSimulator.billedCost(readings.get(), from, to, assignments.get(), catalogue),
+                TariffSimulator.priceWindow(readings.get(), from, to, catalogue)));
+    }
+
+    /**
+     * Waits while interactive requests are busy, then for this meter's turn under the rate limit.
+     */
+    private void throttle() throws InterruptedException {
+        while (inFlightRequests.getAsInt() >= maxInFlightRequests) {
+            throttledPauses.incrementAndGet();
+            Thread.sleep(PAUSE_MILLIS);
+        }
+        if (nanosPerMeter == 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        // time left unused isn't saved up, so a quiet spell can't be followed by a burst
+        long turn = nextMeterNanos.getAndAccumulate(now, (next, current) -> Math.max(next, current) + nanosPerMeter);
+        if (turn > now) {
+            TimeUnit.NANOSECONDS.sleep(turn - now);
+        }
+    }
+
+    private static void checkpoint(Writer out, FileChannel channel) throws IOException {
+        out.flush();
+        channel.force(false);
+    }
+
+    /**
+     * Reads back what earlier attempts at the run billed, in whichever partition, and cuts off any line left half
+     * written by a crash. Lines that can't be read back are moved to the partition's quarantine file, so their meters
+     * are billed again.
+     */
+    private Set<String> readCheckpoints(Path runDirectory, Run run) throws IOException {
+        Set<String> billed = new HashSet<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(runDirectory, PARTITION_FILE_PREFIX + "*" + PARTITION_FILE_SUFFIX)) {
+            for (Path file : files) {
+                byte[] content = Files.readAllBytes(file);
+                ByteArrayOutputStream kept = new ByteArrayOutputStream(content.length);
+                ByteArrayOutputStream quarantined = new ByteArrayOutputStream();
+                int lineStart = 0;
+                for (int i = 0; i < content.length; i++) {
+                    if (content[i] == '\n') {
+                        if (readCheckpoint(content, lineStart, i - lineStart, billed, run)) {
+                            kept.write(content, lineStart, i + 1 - lineStart);
+                        } else {
+                            quarantined.write(content, lineStart, i + 1 - lineStart);
+                        }
+                        lineStart = i + 1;
+                    }
+                }
+                if (quarantined.size() > 0) {
+                    Path quarantine = file.resolveSibling(file.getFileName() + QUARANTINE_FILE_SUFFIX);
+                    logger.warning("Moved checkpoint lines that could not be read from " + file + " to " + quarantine);
+                    Files.write(quarantine, quarantined.toByteArray(), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                    Path written = file.resolveSibling(file.getFileName() + ".tmp");
+                    Files.write(written, kept.toByteArray());
+                    Files.move(written, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } else if (lineStart < content.length) {
+                    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                        channel.truncate(lineStart);
+                    }
+                }
+            }
+        }
+        return billed;
+    }
+
+    /**
+     * @return false if the line isn't a bill that can be read back
+     */
+    private boolean readCheckpoint(byte[] content, int offset, int length, Set<String> billed, Run run) {
+        MeterBill bill;
+        try {
+            bill = objectMapper.readValue(content, offset, length, MeterBill.class);
+            if (bill.smartMeterId() == null) {
+                throw new IOException("Bill without a smart meter id");
+            }
+            if (!billed.contains(bill.smartMeterId())) {
+                run.add(bill);
+                billed.add(bill.smartMeterId());
+            }
+            return true;
+        } catch (IOException | ArithmeticException e) {
+            quarantinedLines.incrementAndGet();
+            logger.log(Level.WARNING, "Could not read back a checkpoint line for the billing run for " + run.period, e);
+            return false;
+        }
+    }
+
+    private void writeSummary(Path file, Map<String, Object> summary) throws IOException {
+        Path written = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(written, objectMapper.writeValueAsBytes(summary));
+        Files.move(written, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static final class Run {
+
+        private final YearMonth period;
+        private final Instant startedAt;
+        private final AtomicLong meters = new AtomicLong();
+        private final AtomicLong unpricedMeters = new AtomicLong();
+        private final AtomicLong failedMeters = new AtomicLong();
+        // in units of the cost scale, so adding up is exact
+        private final LongAdder billedCost = new LongAdder();
+        private final CompletableFuture<Map<String, Object>> done = new CompletableFuture<>();
+        private volatile String state = RUNNING;
+        private volatile Instant completedAt;
+        private Map<String, Object> completedSummary;
+
+        private Run(YearMonth period, Instant startedAt) {
+            this.period = period;
+            this.startedAt = startedAt;
+        }
+
+        private static Run completed(YearMonth period, Map<String, Object> summary) {
+            Run run = new Run(period, null);
+            run.state = COMPLETE;
+            run.completedSummary = summary;
+            run.done.complete(summary);
+            return run;
+        }
+
+        private void add(MeterBill bill) {
+            if (bill.billedCost() == null) {
+                unpricedMeters.incrementAndGet();
+            } else {
+                billedCost.add(bill.billedCost().setScale(TariffSimulator.COST_SCALE).unscaledValue().longValueExact());
+            }
+            meters.incrementAndGet();
+        }
+
+        private Map<String, Object> summary() {
+            if (completedSummary != null) {
+                return completedSummary;
+            }
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put(PERIOD_KEY, period.toString());
+            summary.put(STATE_KEY, state);
+            summary.put(METERS_KEY, meters.get());
+            summary.put(UNPRICED_METERS_KEY, unpricedMeters.get());
+            summary.put(FAILED_METERS_KEY, failedMeters.get());
+            summary.put(BILLED_COST_KEY, BigDecimal.valueOf(billedCost.sum(), TariffSimulator.COST_SCALE));
+            summary.put(STARTED_AT_KEY, startedAt.toString());
+            summary.put(COMPLETED_AT_KEY, completedAt == null ? null : completedAt.toString());
+            return Collections.unmodifiableMap(summary);
+        }
+    }
+}
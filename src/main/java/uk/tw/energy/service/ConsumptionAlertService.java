@@ -0,0 +1,249 @@
+package uk.tw.energy.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import uk.tw.energy.domain.ConsumptionAlert;
+import uk.tw.energy.domain.EnergyIntegration;
+import uk.tw.energy.domain.RateSchedule;
+import uk.tw.energy.event.MeterReadingsStoredEvent;
+import uk.tw.energy.store.ReadingColumns;
+import uk.tw.energy.stream.SseBroadcaster;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Checks every stored reading against the alert rules as part of storing it, and pushes the alerts it raises to
+ * server-sent event subscribers, so nobody has to poll meters to spot a spike.
+ * <p>
+ * Each meter keeps the readings of the last alerts.window as a ring of (time, running kWh total) pairs, so a reading
+ * is checked in constant time however long the meter's history: the window's energy is the reading's running total
+ * less the total where the window starts, interpolated between the two ring entries either side of it. A rule alerts
+ * when the meter crosses its threshold and then stays quiet until the meter drops back under. Readings that arrive
+ * out of order, for a time before the meter's latest reading, are stored but not checked. A threshold of 0 turns its
+ * rule off.
+ */
+@Service
+public class ConsumptionAlertService {
+
+    public static final String ALERT_EVENT = "alert";
+
+    private static final Logger logger = Logger.getLogger(ConsumptionAlertService.class.getName());
+
+    private static final double HOURS_PER_DAY = 24;
+
+    private final AccountService accountService;
+    private final PricePlanCatalogue pricePlanCatalogue;
+    private final Thresholds thresholds;
+    private final SseBroadcaster broadcaster;
+    private final Consumer<ConsumptionAlert> sink;
+    private final ConcurrentMap<String, MeterWindow> windows = new ConcurrentHashMap<>();
+
+    @Autowired
+    public ConsumptionAlertService(AccountService accountService, PricePlanCatalogue pricePlanCatalogue,
+                                   @Value("${alerts.max-kw:0}") double maxKw,
+                                   @Value("${alerts.window:PT1H}") Duration window,
+                                   @Value("${alerts.max-window-kwh:0}") double maxWindowKwh,
+                                   @Value("${alerts.max-projected-daily-cost:0}") double maxProjectedDailyCost,
+                                   @Value("${streams.buffer-size:256}") int bufferSize,
+                                   @Value("${streams.timeout:PT30M}") Duration timeout,
+                                   @Value("${streams.sender-threads:2}") int senderThreads) {
+        this(accountService, pricePlanCatalogue, new Thresholds(maxKw, window, maxWindowKwh, maxProjectedDailyCost),
+                new SseBroadcaster("alerts", bufferSize, timeout.toMillis(), senderThreads));
+    }
+
+    ConsumptionAlertService(AccountService accountService, PricePlanCatalogue pricePlanCatalogue, Thresholds thresholds,
+                            SseBroadcaster broadcaster) {
+        this(accountService, pricePlanCatalogue, thresholds, broadcaster,
+                alert -> broadcaster.publish(alert.smartMeterId(), ALERT_EVENT, alert));
+    }
+
+    ConsumptionAlertService(AccountService accountService, PricePlanCatalogue pricePlanCatalogue, Thresholds thresholds,
+                            SseBroadcaster broadcaster, Consumer<ConsumptionAlert> sink) {
+        this.accountService = accountService;
+        this.pricePlanCatalogue = pricePlanCatalogue;
+        this.thresholds = thresholds;
+        this.broadcaster = broadcaster;
+        this.sink = sink;
+    }
+
+    /**
+     * @param smartMeterId the meter to follow, or null for every meter
+     */
+    public SseEmitter subscribe(String smartMeterId) {
+        return broadcaster.subscribe(smartMeterId == null ? SseBroadcaster.ALL : smartMeterId);
+    }
+
+    /**
+     * Published with the series held, so a meter's readings are checked one batch at a time and in order.
+     */
+    @EventListener
+    public void onReadingsStored(MeterReadingsStoredEvent event) {
+        if (!thresholds.anyEnabled()) {
+            return;
+        }
+        ReadingColumns columns = event.series().columns();
+        int first = Math.max(event.result().firstChangedIndex(), 0);
+        String smartMeterId = event.smartMeterId();
+        MeterWindow window = windows.get(smartMeterId);
+        if (window == null) {
+            window = new MeterWindow();
+            window.preload(columns, first, thresholds.windowSeconds());
+            windows.put(smartMeterId, window);
+        }
+
+        String pricePlanId = accountService.getPricePlanIdForSmartMeterId(smartMeterId);
+        RateSchedule rateSchedule = thresholds.maxProjectedDailyCost() > 0
+                ? pricePlanCatalogue.current().rateSchedule(pricePlanId).orElse(null)
+                : null;
+        for (int i = first; i < columns.size(); i++) {
+            if (window.isAfterLatest(columns.epochSecond(i), columns.nano(i))) {
+                check(smartMeterId, pricePlanId, rateSchedule, window, columns, i);
+            }
+        }
+    }
+
+    private void check(String smartMeterId, String pricePlanId, RateSchedule rateSchedule, MeterWindow window,
+                       ReadingColumns columns, int index) {
+        long epochSecond = columns.epochSecond(index);
+        int nano = columns.nano(index);
+        window.add(epochSecond, nano, columns.cumulativeKwh(index), thresholds.windowSeconds());
+
+        double kw = columns.kw(index);
+        raiseOnCrossing(window, ConsumptionAlert.Rule.INSTANT_KW, thresholds.maxKw(), kw, smartMeterId, pricePlanId, columns, index);
+        double windowKwh = window.windowKwh();
+        raiseOnCrossing(window, ConsumptionAlert.Rule.WINDOW_KWH, thresholds.maxWindowKwh(), windowKwh, smartMeterId, pricePlanId, columns, index);
+        if (rateSchedule != null && window.coveredSeconds() > 0) {
+            double averageKw = windowKwh / (window.coveredSeconds() / EnergyIntegration.SECONDS_PER_HOUR);
+            double projectedDailyCost = averageKw * HOURS_PER_DAY * rateSchedule.rateAt(epochSecond);
+            raiseOnCrossing(window, ConsumptionAlert.Rule.PROJECTED_DAILY_COST, thresholds.maxProjectedDailyCost(), projectedDailyCost,
+                    smartMeterId, pricePlanId, columns, index);
+        }
+    }
+
+    private void raiseOnCrossing(MeterWindow window, ConsumptionAlert.Rule rule, double threshold, double value,
+                                 String smartMeterId, String pricePlanId, ReadingColumns columns, int index) {
+        if (threshold <= 0) {
+            return;
+        }
+        boolean over = value > threshold;
+        if (over && !window.over[rule.ordinal()]) {
+            ConsumptionAlert alert = new ConsumptionAlert(smartMeterId, rule, columns.time(index),
+                    TariffSimulator.toCost(value), TariffSimulator.toCost(threshold), pricePlanId);
+            logger.fine("Raised " + alert);
+            sink.accept(alert);
+        }
+        window.over[rule.ordinal()] = over;
+    }
+
+    /**
+     * @param maxKw                 alert on a reading above this demand
+     * @param window                how far back the rolling window reaches
+     * @param maxWindowKwh          alert when the window's energy goes above this
+     * @param maxProjectedDailyCost alert when a day at the window's average demand would cost more than this
+     */
+    public record Thresholds(double maxKw, Duration window, double maxWindowKwh, double maxProjectedDailyCost) {
+
+        boolean anyEnabled() {
+            return maxKw > 0 || maxWindowKwh > 0 || maxProjectedDailyCost > 0;
+        }
+
+        double windowSeconds() {
+            return window.toNanos() / 1e9;
+        }
+    }
+
+    /**
+     * The readings within the window of a meter's latest, oldest first, plus the one just before the window starts.
+     * Only touched with the meter's series held.
+     */
+    private static final class MeterWindow {
+
+        private final boolean[] over = new boolean[ConsumptionAlert.Rule.values().length];
+        private double[] seconds = new double[8];
+        private double[] cumulativeKwh = new double[8];
+        private int head;
+        private int count;
+        private long latestSecond = Long.MIN_VALUE;
+        private int latestNano;
+        private double windowKwh;
+        private double coveredSeconds;
+
+        /**
+         * Fills the window from the readings already stored before {@code first}, without checking them.
+         */
+        void preload(ReadingColumns columns, int first, double windowSeconds) {
+            if (first == 0 || first >= columns.size()) {
+                return;
+            }
+            long windowStart = columns.epochSecond(first) - (long) Math.ceil(windowSeconds);
+            for (int i = Math.max(columns.indexAtOrAfter(windowStart, 0) - 1, 0); i < first; i++) {
+                add(columns.epochSecond(i), columns.nano(i), columns.cumulativeKwh(i), windowSeconds);
+            }
+        }
+
+        boolean isAfterLatest(long epochSecond, int nano) {
+            return epochSecond > latestSecond || (epochSecond == latestSecond && nano > latestNano);
+        }
+
+        /**
+         * Adds the latest reading, drops what has fallen out of the window and works out the window's energy.
+         */
+        void add(long epochSecond, int nano, double kwhSoFar, double windowSeconds) {
+            double time = epochSecond + nano / 1e9;
+            if (count == seconds.length) {
+                grow();
+            }
+            int tail = (head + count) % seconds.length;
+            seconds[tail] = time;
+            cumulativeKwh[tail] = kwhSoFar;
+            count++;
+            latestSecond = epochSecond;
+            latestNano = nano;
+
+            double windowStart = time - windowSeconds;
+            // keep one reading at or before the window start to interpolate from
+            while (count >= 2 && seconds[(head + 1) % seconds.length] <= windowStart) {
+                head = (head + 1) % seconds.length;
+                count--;
+            }
+            double oldest = seconds[head];
+            if (count == 1 || oldest >= windowStart) {
+                windowKwh = kwhSoFar - cumulativeKwh[head];
+                coveredSeconds = time - oldest;
+                return;
+            }
+            int next = (head + 1) % seconds.length;
+            double fraction = (windowStart - oldest) / (seconds[next] - oldest);
+            double kwhAtWindowStart = cumulativeKwh[head] + fraction * (cumulativeKwh[next] - cumulativeKwh[head]);
+            windowKwh = kwhSoFar - kwhAtWindowStart;
+            coveredSeconds = windowSeconds;
+        }
+
+        double windowKwh() {
+            return windowKwh;
+        }
+
+        double coveredSeconds() {
+            return coveredSeconds;
+        }
+
+        private void grow() {
+            double[] newSeconds = new double[seconds.length * 2];
+            double[] newCumulativeKwh = new double[seconds.length * 2];
+            for (int i = 0; i < count; i++) {
+                newSeconds[i] = seconds[(head + i) % seconds.length];
+                newCumulativeKwh[i] = cumulativeKwh[(head + i) % seconds.length];
+            }
+            seconds = newSeconds;
+            cumulativeKwh = newCumulativeKwh;
+            head = 0;
+        }
+    }
+}
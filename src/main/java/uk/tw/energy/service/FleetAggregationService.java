@@ -0,0 +1,275 @@
+package uk.tw.energy.service;
+
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import uk.tw.energy.domain.PricePlan;
+import uk.tw.energy.domain.WeeklyEnergyProfile;
+import uk.tw.energy.event.MeterReadingsStoredEvent;
+import uk.tw.energy.event.PricePlanSwitchedEvent;
+import uk.tw.energy.store.MeterReadingSeries;
+import uk.tw.energy.store.MeterReadingStore;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+
+import static uk.tw.energy.exceptions.Constants.*;
+
+/**
+ * Fleet wide consumption and cost, grouped by the price plan each meter is on now or by that plan's energy supplier.
+ * <p>
+ * Every plan keeps a running group total: how many meters are on it, the weekly energy profile they add up to and a
+ * histogram of each meter's consumption. Stored readings fold their energy delta into the meter's group and a switch
+ * moves the meter's whole profile across, so a query prices one profile per plan and walks one histogram per group
+ * instead of visiting every meter. The totals are built from the store the first time they're asked for; from then
+ * on they only ever change incrementally.
+ * <p>
+ * A meter's group is the plan it was on when it last reported or switched, so a switch scheduled for the future moves
+ * the meter once it has taken effect and the meter next reports. Group costs are priced against the current
+ * catalogue when queried. A meter's own cost is taken as its consumption at its group's average unit rate, which is
+ * exact for flat plans and an estimate for time of use plans.
+ */
+@Service
+public class FleetAggregationService {
+
+    public static final String GROUP_BY_PRICE_PLAN = "price-plan";
+    public static final String GROUP_BY_SUPPLIER = "supplier";
+
+    private static final Logger logger = Logger.getLogger(FleetAggregationService.class.getName());
+
+    // ConcurrentHashMap keys can't be null, so meters without a plan are grouped under this
+    private static final String NO_PRICE_PLAN = "";
+
+    private final MeterReadingStore meterReadingStore;
+    private final AccountService accountService;
+    private final PricePlanCatalogue pricePlanCatalogue;
+    private final ConcurrentMap<String, MeterTotals> meters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, PlanGroup> groups = new ConcurrentHashMap<>();
+    private volatile boolean initialised;
+
+    public FleetAggregationService(MeterReadingStore meterReadingStore, AccountService accountService,
+                                   PricePlanCatalogue pricePlanCatalogue) {
+        this.meterReadingStore = meterReadingStore;
+        this.accountService = accountService;
+        this.pricePlanCatalogue = pricePlanCatalogue;
+    }
+
+    /**
+     * Published with the series held, which is what keeps a meter's totals in step with its series.
+     */
+    @EventListener
+    public void onReadingsStored(MeterReadingsStoredEvent event) {
+        MeterTotals totals = meters.get(event.smartMeterId());
+        if (totals == null) {
+            track(event.smartMeterId(), event.series());
+            return;
+        }
+        WeeklyEnergyProfile energyDelta = event.result().energyDelta();
+        double kwh = totals.kwh + energyDelta.totalKwh();
+        String pricePlanId = currentPricePlanId(event.smartMeterId());
+        if (pricePlanId.equals(totals.pricePlanId)) {
+            group(pricePlanId).update(energyDelta, totals.kwh, kwh);
+        } else {
+            WeeklyEnergyProfile profile = event.series().profile();
+            WeeklyEnergyProfile before = profile.copy();
+            before.subtract(energyDelta);
+            group(totals.pricePlanId).remove(before, totals.kwh);
+            group(pricePlanId).add(profile, kwh);
+            totals.pricePlanId = pricePlanId;
+        }
+        totals.kwh = kwh;
+    }
+
+    @EventListener
+    public void onPricePlanSwitched(PricePlanSwitchedEvent event) {
+        Optional<MeterReadingSeries> series = meterReadingStore.find(event.smartMeterId());
+        if (series.isEmpty()) {
+            return;
+        }
+        synchronized (series.get()) {
+            MeterTotals totals = meters.get(event.smartMeterId());
+            if (totals == null) {
+                track(event.smartMeterId(), series.get());
+                return;
+            }
+            String pricePlanId = currentPricePlanId(event.smartMeterId());
+            if (!pricePlanId.equals(totals.pricePlanId)) {
+                WeeklyEnergyProfile profile = series.get().profile();
+                group(totals.pricePlanId).remove(profile, totals.kwh);
+                group(pricePlanId).add(profile, totals.kwh);
+                totals.pricePlanId = pricePlanId;
+            }
+        }
+    }
+
+    /**
+     * @param groupBy {@link #GROUP_BY_PRICE_PLAN} or {@link #GROUP_BY_SUPPLIER}
+     * @return the fleet's totals and one entry per group, in group name order
+     */
+    public Map<String, Object> getFleetUsage(String groupBy) {
+        initialise();
+        PricePlanCatalogue.Snapshot catalogue = pricePlanCatalogue.current();
+        boolean bySupplier = GROUP_BY_SUPPLIER.equals(groupBy);
+
+        Map<String, Aggregate> aggregates = new LinkedHashMap<>();
+        Aggregate fleet = new Aggregate();
+        for (Map.Entry<String, PlanGroup> entry : groups.entrySet()) {
+            String pricePlanId = NO_PRICE_PLAN.equals(entry.getKey()) ? null : entry.getKey();
+            PlanGroup.Snapshot group = entry.getValue().snapshot();
+            if (group.meters() == 0) {
+                continue;
+            }
+            Double cost = catalogue.rateSchedule(pricePlanId).map(group.profile()::cost).orElse(null);
+            String key = bySupplier ? catalogue.find(pricePlanId).map(PricePlan::getEnergySupplier).orElse(null) : pricePlanId;
+            aggregates.computeIfAbsent(key, ignored -> new Aggregate()).add(group, cost);
+            fleet.add(group, cost);
+        }
+
+        List<Map<String, Object>> results = new ArrayList<>();
+        aggregates.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey(Comparator.nullsLast(Comparator.naturalOrder())))
+                .forEach(entry -> {
+                    Map<String, Object> result = new LinkedHashMap<>();
+                    result.put(bySupplier ? ENERGY_SUPPLIER_KEY : PRICE_PLAN_ID_KEY, entry.getKey());
+                    entry.getValue().describeInto(result);
+                    results.add(result);
+                });
+
+        Map<String, Object> usage = new LinkedHashMap<>();
+        usage.put(GROUP_BY_KEY, bySupplier ? GROUP_BY_SUPPLIER : GROUP_BY_PRICE_PLAN);
+        fleet.describeInto(usage);
+        usage.put(GROUPS_KEY, results);
+        return usage;
+    }
+
+    private void initialise() {
+        if (initialised) {
+            return;
+        }
+        synchronized (this) {
+            if (initialised) {
+                return;
+            }
+            long start = System.nanoTime();
+            for (String smartMeterId : meterReadingStore.smartMeterIds()) {
+                meterReadingStore.find(smartMeterId).ifPresent(series -> {
+                    synchronized (series) {
+                        if (!meters.containsKey(smartMeterId)) {
+                            track(smartMeterId, series);
+                        }
+                    }
+                });
+            }
+            initialised = true;
+            logger.info("Built fleet totals for " + meters.size() + " meters in " + (System.nanoTime() - start) / 1_000_000 + "ms");
+        }
+    }
+
+    /**
+     * Starts tracking a meter from its whole profile; the caller holds the series.
+     */
+    private void track(String smartMeterId, MeterReadingSeries series) {
+        WeeklyEnergyProfile profile = series.profile();
+        MeterTotals totals = new MeterTotals(currentPricePlanId(smartMeterId), profile.totalKwh());
+        group(totals.pricePlanId).add(profile, totals.kwh);
+        meters.put(smartMeterId, totals);
+    }
+
+    private String currentPricePlanId(String smartMeterId) {
+        String pricePlanId = accountService.getPricePlanIdForSmartMeterId(smartMeterId);
+        return pricePlanId == null ? NO_PRICE_PLAN : pricePlanId;
+    }
+
+    private PlanGroup group(String pricePlanId) {
+        return groups.computeIfAbsent(pricePlanId, ignored -> new PlanGroup());
+    }
+
+    /**
+     * Only touched with the meter's series held.
+     */
+    private static final class MeterTotals {
+
+        private String pricePlanId;
+        private double kwh;
+
+        private MeterTotals(String pricePlanId, double kwh) {
+            this.pricePlanId = pricePlanId;
+            this.kwh = kwh;
+        }
+    }
+
+    private static final class PlanGroup {
+
+        private final WeeklyEnergyProfile profile = new WeeklyEnergyProfile();
+        private final ValueHistogram meterKwh = new ValueHistogram();
+
+        synchronized void add(WeeklyEnergyProfile meterProfile, double kwh) {
+            profile.add(meterProfile);
+            meterKwh.add(kwh);
+        }
+
+        synchronized void remove(WeeklyEnergyProfile meterProfile, double kwh) {
+            profile.subtract(meterProfile);
+            meterKwh.remove(kwh);
+        }
+
+        synchronized void update(WeeklyEnergyProfile energyDelta, double kwhBefore, double kwhAfter) {
+            profile.add(energyDelta);
+            meterKwh.move(kwhBefore, kwhAfter);
+        }
+
+        synchronized Snapshot snapshot() {
+            return new Snapshot(meterKwh.count(), profile.copy(), meterKwh.copy());
+        }
+
+        record Snapshot(long meters, WeeklyEnergyProfile profile, ValueHistogram meterKwh) {
+        }
+    }
+
+    /**
+     * One or more plan groups added together for a response.
+     */
+    private static final class Aggregate {
+
+        private final ValueHistogram meterKwh = new ValueHistogram();
+        private final ValueHistogram meterCost = new ValueHistogram();
+        private long meters;
+        private double kwh;
+        private double cost;
+        private boolean costKnown = true;
+
+        void add(PlanGroup.Snapshot group, Double groupCost) {
+            double groupKwh = group.profile().totalKwh();
+            meters += group.meters();
+            kwh += groupKwh;
+            meterKwh.addScaled(group.meterKwh(), 1);
+            if (groupCost == null) {
+                costKnown = false;
+                return;
+            }
+            cost += groupCost;
+            meterCost.addScaled(group.meterKwh(), groupKwh > 0 ? groupCost / groupKwh : 0);
+        }
+
+        void describeInto(Map<String, Object> result) {
+            result.put(METERS_KEY, meters);
+            result.put(CONSUMPTION_KWH_KEY, TariffSimulator.toCost(kwh));
+            result.put(COST_KEY, costKnown ? TariffSimulator.toCost(cost) : null);
+            result.put(CONSUMPTION_KWH_PER_METER_KEY, percentiles(meterKwh));
+            result.put(COST_PER_METER_KEY, costKnown ? percentiles(meterCost) : null);
+        }
+
+        private static Map<String, Object> percentiles(ValueHistogram histogram) {
+            Map<String, Object> percentiles = new LinkedHashMap<>();
+            percentiles.put(P50_KEY, TariffSimulator.toCost(histogram.percentile(50)));
+            percentiles.put(P95_KEY, TariffSimulator.toCost(histogram.percentile(95)));
+            return percentiles;
+        }
+    }
+}
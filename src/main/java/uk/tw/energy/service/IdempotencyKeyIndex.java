@@ -0,0 +1,201 @@
+package uk.tw.energy.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.time.Duration;
+
+/**
+ * Remembers the idempotency keys readings were stored under, per meter, so a head-end that retries a batch it already
+ * sent doesn't have its readings counted twice. Checking a key is constant time and never looks at the readings.
+ * <p>
+ * Keys are kept as 64 bit fingerprints of the meter id and key in two generations. A generation is retired once it
+ * is readings.idempotency.ttl old or holds readings.idempotency.keys-per-generation keys, and the one before it is
+ * dropped, so a key is remembered for at least the ttl unless more keys than that arrive within it, and memory is
+ * bounded either way. Each generation has a Bloom filter in front of its fingerprint set: nearly every key is new,
+ * and the filter answers that from a bit array a tenth the size of the set, without probing the set at all.
+ */
+@Service
+public class IdempotencyKeyIndex {
+
+    private static final int BLOOM_BITS_PER_KEY = 10;
+    private static final int BLOOM_HASHES = 7;
+
+    private final long ttlMillis;
+    private final int keysPerGeneration;
+    private final Clock clock;
+    private Generation current;
+    private Generation previous;
+    private long duplicates;
+
+    @Autowired
+    public IdempotencyKeyIndex(@Value("${readings.idempotency.ttl:PT24H}") Duration ttl,
+                               @Value("${readings.idempotency.keys-per-generation:1000000}") int keysPerGeneration) {
+        this(ttl, keysPerGeneration, Clock.systemUTC());
+    }
+
+    IdempotencyKeyIndex(Duration ttl, int keysPerGeneration, Clock clock) {
+        this.ttlMillis = ttl.toMillis();
+        this.keysPerGeneration = keysPerGeneration;
+        this.clock = clock;
+        this.current = new Generation(clock.millis(), keysPerGeneration);
+    }
+
+    /**
+     * Records the key for the meter.
+     *
+     * @return false when it was already recorded, i.e. the request is a repeat
+     */
+    public synchronized boolean firstSeen(String smartMeterId, String idempotencyKey) {
+        long now = clock.millis();
+        if (now - current.startedMillis >= ttlMillis || current.size >= keysPerGeneration) {
+            previous = current;
+            current = new Generation(now, keysPerGeneration);
+        }
+        long fingerprint = fingerprint(smartMeterId, idempotencyKey);
+        if (current.contains(fingerprint) || (previous != null && previous.contains(fingerprint))) {
+            duplicates++;
+            return false;
+        }
+        current.add(fingerprint);
+        return true;
+    }
+
+    /**
+     * Forgets a key recorded by {@link #firstSeen}, for a batch that turned out not to be stored, so a retry of it is
+     * stored rather than acknowledged as a repeat.
+     */
+    public synchronized void forget(String smartMeterId, String idempotencyKey) {
+        long fingerprint = fingerprint(smartMeterId, idempotencyKey);
+        current.remove(fingerprint);
+        if (previous != null) {
+            previous.remove(fingerprint);
+        }
+    }
+
+    public synchronized long duplicates() {
+        return duplicates;
+    }
+
+    /**
+     * FNV-1a over the meter id, a separator and the key, finished with a 64 bit avalanche mix. Never 0, which marks
+     * an empty slot in the fingerprint set.
+     */
+    static long fingerprint(String smartMeterId, String idempotencyKey) {
+        long hash = 0xcbf29ce484222325L;
+        hash = fnv(hash, smartMeterId);
+        hash = (hash ^ 0xFFFF) * 0x100000001b3L;
+        hash = fnv(hash, idempotencyKey);
+        hash = mix(hash);
+        return hash == 0 ? 1 : hash;
+    }
+
+    private static long fnv(long hash, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static final class Generation {
+
+        private final long startedMillis;
+        private final long[] bloom;
+        private final long bloomMask;
+        private long[] fingerprints = new long[1024];
+        private int size;
+
+        private Generation(long startedMillis, int keys) {
+            this.startedMillis = startedMillis;
+            long bits = Long.highestOneBit(Math.max((long) keys * BLOOM_BITS_PER_KEY, Long.SIZE) - 1) << 1;
+            this.bloom = new long[(int) (bits / Long.SIZE)];
+            this.bloomMask = bits - 1;
+        }
+
+        boolean contains(long fingerprint) {
+            // the fingerprint is already well mixed, so it and a remix of it serve as the two hashes
+            long second = mix(fingerprint) | 1;
+            for (int i = 0; i < BLOOM_HASHES; i++) {
+                long bit = (fingerprint + i * second) & bloomMask;
+                if ((bloom[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            int mask = fingerprints.length - 1;
+            for (int slot = (int) fingerprint & mask; fingerprints[slot] != 0; slot = (slot + 1) & mask) {
+                if (fingerprints[slot] == fingerprint) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void add(long fingerprint) {
+            long second = mix(fingerprint) | 1;
+            for (int i = 0; i < BLOOM_HASHES; i++) {
+                long bit = (fingerprint + i * second) & bloomMask;
+                bloom[(int) (bit >>> 6)] |= 1L << bit;
+            }
+            if (size * 2 >= fingerprints.length) {
+                grow();
+            }
+            insert(fingerprints, fingerprint);
+            size++;
+        }
+
+        /**
+         * Takes the fingerprint out of the set; its Bloom filter bits stay set, which only costs a probe of the set.
+         */
+        void remove(long fingerprint) {
+            int mask = fingerprints.length - 1;
+            int slot = (int) fingerprint & mask;
+            while (fingerprints[slot] != fingerprint) {
+                if (fingerprints[slot] == 0) {
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            // shift later entries of the probe run back into the gap, so lookups never stop short at it
+            int gap = slot;
+            for (int next = (gap + 1) & mask; fingerprints[next] != 0; next = (next + 1) & mask) {
+                int home = (int) fingerprints[next] & mask;
+                if (((next - home) & mask) >= ((next - gap) & mask)) {
+                    fingerprints[gap] = fingerprints[next];
+                    gap = next;
+                }
+            }
+            fingerprints[gap] = 0;
+            size--;
+        }
+
+        private void grow() {
+            long[] grown = new long[fingerprints.length * 2];
+            for (long fingerprint : fingerprints) {
+                if (fingerprint != 0) {
+                    insert(grown, fingerprint);
+                }
+            }
+            fingerprints = grown;
+        }
+
+        private static void insert(long[] table, long fingerprint) {
+            int mask = table.length - 1;
+            int slot = (int) fingerprint & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = fingerprint;
+        }
+    }
+}
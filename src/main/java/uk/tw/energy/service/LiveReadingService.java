@@ -0,0 +1,94 @@
+package uk.tw.energy.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.event.MeterReadingsStoredEvent;
+import uk.tw.energy.store.ReadingColumns;
+import uk.tw.energy.stream.SseBroadcaster;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static uk.tw.energy.exceptions.Constants.*;
+
+/**
+ * Pushes readings to server-sent event subscribers as they are stored, each batch together with what the meter's
+ * whole history now costs on every price plan. Nothing is built for meters nobody is following, and storing readings
+ * only ever queues the event, see {@link SseBroadcaster}.
+ * <p>
+ * An event carries only the batch's own readings, at most streams.max-readings-per-event of them, since it is built
+ * while the series is held. A batch that arrived out of order also shifted readings stored after it, so every event
+ * names the time range it changed, for clients to read back if they keep more than the latest readings.
+ */
+@Service
+public class LiveReadingService {
+
+    public static final String READINGS_EVENT = "readings";
+
+    private final PricePlanCatalogue pricePlanCatalogue;
+    private final SseBroadcaster broadcaster;
+    private final int maxReadingsPerEvent;
+
+    @Autowired
+    public LiveReadingService(PricePlanCatalogue pricePlanCatalogue,
+                              @Value("${streams.buffer-size:256}") int bufferSize,
+                              @Value("${streams.timeout:PT30M}") Duration timeout,
+                              @Value("${streams.sender-threads:2}") int senderThreads,
+                              @Value("${streams.max-readings-per-event:1000}") int maxReadingsPerEvent) {
+        this(pricePlanCatalogue, new SseBroadcaster("readings", bufferSize, timeout.toMillis(), senderThreads),
+                maxReadingsPerEvent);
+    }
+
+    LiveReadingService(PricePlanCatalogue pricePlanCatalogue, SseBroadcaster broadcaster, int maxReadingsPerEvent) {
+        this.pricePlanCatalogue = pricePlanCatalogue;
+        this.broadcaster = broadcaster;
+        this.maxReadingsPerEvent = maxReadingsPerEvent;
+    }
+
+    /**
+     * @param smartMeterId the meter to follow, or null for every meter
+     */
+    public SseEmitter subscribe(String smartMeterId) {
+        return broadcaster.subscribe(smartMeterId == null ? SseBroadcaster.ALL : smartMeterId);
+    }
+
+    /**
+     * Published with the series held, so the costs match the readings sent with them.
+     */
+    @EventListener
+    public void onReadingsStored(MeterReadingsStoredEvent event) {
+        if (!broadcaster.hasSubscribers(event.smartMeterId())) {
+            return;
+        }
+        broadcaster.publish(event.smartMeterId(), READINGS_EVENT, message(event));
+    }
+
+    /**
+     * The batch's readings, or the latest maxReadingsPerEvent of them, and the time range from the earliest reading
+     * the batch changed to the meter's latest, which for a batch that arrives in order is just the batch's.
+     */
+    Map<String, Object> message(MeterReadingsStoredEvent event) {
+        ReadingColumns columns = event.series().columns();
+        List<ElectricityReading> stored = event.result().stored();
+        int omitted = Math.max(0, stored.size() - maxReadingsPerEvent);
+        Map<String, Object> message = new LinkedHashMap<>();
+        message.put(SMART_METER_ID_KEY, event.smartMeterId());
+        // a view, copied only when the event is written out after the series is let go
+        message.put(ELECTRICITY_READINGS_KEY, stored.subList(omitted, stored.size()));
+        if (omitted > 0) {
+            message.put(OMITTED_READINGS_KEY, omitted);
+        }
+        Map<String, Object> changed = new LinkedHashMap<>();
+        changed.put(FROM, columns.time(event.result().firstChangedIndex()));
+        changed.put(TO, columns.time(columns.size() - 1));
+        message.put(CHANGED_KEY, changed);
+        message.put(PRICE_PLAN_COMPARISONS_KEY, TariffSimulator.price(event.series(), pricePlanCatalogue.current()));
+        return message;
+    }
+}
@@ -0,0 +1,178 @@
+package uk.tw.energy.service;
+
+import uk.tw.energy.domain.EnergyIntegration;
+import uk.tw.energy.domain.RateSchedule;
+import uk.tw.energy.store.ReadingColumns;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Constant size forecasting state for one meter: an exponentially weighted moving average of the kWh it uses in each
+ * hour of the week, and the kWh it has used so far in the current billing period (a calendar month, UTC), by hour of
+ * the week. Both are fixed arrays of 168 slots, so the state is the same few KB however long the meter's history is.
+ * <p>
+ * Usage is fed in hour by hour, in time order, as readings are integrated; an hour joins its slot's average once a
+ * later hour starts, so a partly reported hour never drags the average down. Slots that haven't been seen yet are
+ * forecast from the average over all hours.
+ */
+final class LoadForecast implements EnergyIntegration.HourlyEnergyConsumer {
+
+    private static final long SECONDS_PER_HOUR = 3600;
+    private static final int HOURS_PER_DAY = RateSchedule.HOURS_PER_DAY;
+    private static final int HOURS_PER_WEEK = RateSchedule.HOURS_PER_WEEK;
+
+    private final double smoothing;
+    private final double[] expectedKwh = new double[HOURS_PER_WEEK];
+    private final double[] periodKwh = new double[HOURS_PER_WEEK];
+    private double expectedHourlyKwh = Double.NaN;
+    private double periodTotalKwh;
+    private long periodStartHour = Long.MIN_VALUE;
+    private long periodEndHour = Long.MIN_VALUE;
+    private long openEpochHour = Long.MIN_VALUE;
+    private double openHourKwh;
+    private long lastEpochSecond = Long.MIN_VALUE;
+    private int lastNano;
+
+    /**
+     * @param smoothing weight of each new week's observation of an hour, between 0 and 1
+     */
+    LoadForecast(double smoothing) {
+        this.smoothing = smoothing;
+        Arrays.fill(expectedKwh, Double.NaN);
+    }
+
+    /**
+     * A forecast built from the meter's usage since {@code from}, including rolled up history.
+     */
+    static LoadForecast build(ReadingColumns columns, Instant from, double smoothing) {
+        LoadForecast forecast = new LoadForecast(smoothing);
+        columns.forEachRolledUpHour(from, null, forecast);
+        forecast.integrate(columns, Math.max(columns.indexAtOrAfter(from), 1));
+        return forecast;
+    }
+
+    /**
+     * Feeds in the intervals ending at each reading from {@code fromIndex} on.
+     */
+    synchronized void integrate(ReadingColumns columns, int fromIndex) {
+        for (int i = Math.max(fromIndex, 1); i < columns.size(); i++) {
+            EnergyIntegration.integrateByHour(columns.epochSecond(i - 1), columns.nano(i - 1), columns.kw(i - 1),
+                    columns.epochSecond(i), columns.nano(i), columns.kw(i), this);
+        }
+        if (!columns.isEmpty()) {
+            lastEpochSecond = columns.epochSecond(columns.size() - 1);
+            lastNano = columns.nano(columns.size() - 1);
+        }
+    }
+
+    /**
+     * True if the reading at the index is no later than the last reading fed in, i.e. appending from it would count
+     * usage twice.
+     */
+    synchronized boolean hasSeen(ReadingColumns columns, int index) {
+        long epochSecond = columns.epochSecond(index);
+        return epochSecond < lastEpochSecond || (epochSecond == lastEpochSecond && columns.nano(index) <= lastNano);
+    }
+
+    @Override
+    public void accept(long epochHour, double kwh) {
+        if (epochHour > openEpochHour) {
+            if (openEpochHour != Long.MIN_VALUE) {
+                closeHour();
+            }
+            openEpochHour = epochHour;
+            openHourKwh = 0;
+        }
+        if (epochHour == openEpochHour) {
+            openHourKwh += kwh;
+        }
+        if (epochHour >= periodEndHour) {
+            startPeriod(epochHour);
+        }
+        if (epochHour >= periodStartHour) {
+            periodKwh[RateSchedule.hourOfWeekForEpochHour(epochHour)] += kwh;
+            periodTotalKwh += kwh;
+        }
+    }
+
+    /**
+     * Usage so far in the billing period of the last reading, and the usage forecast for the rest of it.
+     *
+     * @return null if there are no readings yet
+     */
+    synchronized Projection project() {
+        if (lastEpochSecond == Long.MIN_VALUE) {
+            return null;
+        }
+        long asOfHour = Math.floorDiv(lastEpochSecond, SECONDS_PER_HOUR);
+        long[] period = periodOf(asOfHour);
+        boolean samePeriod = period[0] == periodStartHour;
+        double[] toDateKwh = samePeriod ? periodKwh.clone() : new double[HOURS_PER_WEEK];
+        double toDateTotalKwh = samePeriod ? periodTotalKwh : 0;
+
+        double[] remainingKwh = new double[HOURS_PER_WEEK];
+        double remainingTotalKwh = 0;
+        long fullHours = period[1] - asOfHour - 1;
+        int firstSlot = RateSchedule.hourOfWeekForEpochHour(asOfHour + 1);
+        for (int slot = 0; slot < HOURS_PER_WEEK; slot++) {
+            long occurrences = fullHours / HOURS_PER_WEEK
+                    + (Math.floorMod(slot - firstSlot, HOURS_PER_WEEK) < fullHours % HOURS_PER_WEEK ? 1 : 0);
+            remainingKwh[slot] = occurrences * expected(slot);
+            remainingTotalKwh += remainingKwh[slot];
+        }
+        // the rest of the hour the last reading is in
+        int asOfSlot = RateSchedule.hourOfWeekForEpochHour(asOfHour);
+        double observed = openEpochHour == asOfHour ? openHourKwh : 0;
+        double restOfHour = Math.max(expected(asOfSlot) - observed, 0);
+        remainingKwh[asOfSlot] += restOfHour;
+        remainingTotalKwh += restOfHour;
+
+        return new Projection(Instant.ofEpochSecond(period[0] * SECONDS_PER_HOUR), Instant.ofEpochSecond(period[1] * SECONDS_PER_HOUR),
+                Instant.ofEpochSecond(lastEpochSecond, lastNano), toDateKwh, toDateTotalKwh, remainingKwh, remainingTotalKwh);
+    }
+
+    private void closeHour() {
+        int slot = RateSchedule.hourOfWeekForEpochHour(openEpochHour);
+        expectedKwh[slot] = smooth(expectedKwh[slot], openHourKwh);
+        expectedHourlyKwh = smooth(expectedHourlyKwh, openHourKwh);
+    }
+
+    private double smooth(double average, double observation) {
+        return Double.isNaN(average) ? observation : average + smoothing * (observation - average);
+    }
+
+    private double expected(int slot) {
+        double expected = Double.isNaN(expectedKwh[slot]) ? expectedHourlyKwh : expectedKwh[slot];
+        // nothing to go on until the first whole hour
+        return Double.isNaN(expected) ? 0 : expected;
+    }
+
+    private void startPeriod(long epochHour) {
+        long[] period = periodOf(epochHour);
+        periodStartHour = period[0];
+        periodEndHour = period[1];
+        Arrays.fill(periodKwh, 0);
+        periodTotalKwh = 0;
+    }
+
+    /**
+     * The first and last-plus-one epoch hours of the calendar month the hour falls in.
+     */
+    private static long[] periodOf(long epochHour) {
+        LocalDate firstDay = LocalDate.ofEpochDay(Math.floorDiv(epochHour, HOURS_PER_DAY)).withDayOfMonth(1);
+        return new long[]{firstDay.toEpochDay() * HOURS_PER_DAY, firstDay.plusMonths(1).toEpochDay() * HOURS_PER_DAY};
+    }
+
+    /**
+     * kWh per hour of the week used so far in the period and forecast for the rest of it.
+     */
+    record Projection(Instant periodStart, Instant periodEnd, Instant asOf,
+                      double[] toDateKwh, double toDateTotalKwh, double[] remainingKwh, double remainingTotalKwh) {
+
+        double cost(RateSchedule rateSchedule) {
+            return rateSchedule.cost(toDateKwh) + rateSchedule.cost(remainingKwh);
+        }
+    }
+}
@@ -1,18 +1,29 @@
 package uk.tw.energy.service;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import uk.tw.energy.diagnostics.ReadingsAppendedEvent;
+import uk.tw.energy.diagnostics.ReadingsValidatedEvent;
 import uk.tw.energy.domain.ElectricityReading;
 import uk.tw.energy.domain.MeterReadings;
+import uk.tw.energy.event.MeterReadingsStoredEvent;
 import uk.tw.energy.exceptions.InvalidParametersException;
+import uk.tw.energy.store.AppendResult;
+import uk.tw.energy.store.MeterReadingSeries;
+import uk.tw.energy.store.MeterReadingStore;
+import uk.tw.energy.store.ReadingColumns;
+import uk.tw.energy.store.ReadingDownsampler;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.logging.Logger;
 
 import static uk.tw.energy.exceptions.Constants.*;
@@ -22,14 +33,69 @@ public class MeterReadingService {
 
     //The Meter Reading Service class could have implemented an interface in order to use the methods.
     private static final Logger logger = Logger.getLogger(MeterReadingService.class.getName());
-    private final Map<String, List<ElectricityReading>> meterAssociatedReadings;
+    private final MeterReadingStore meterAssociatedReadings;
+    private final ApplicationEventPublisher eventPublisher;
+    private final IdempotencyKeyIndex idempotencyKeys;
 
-    public MeterReadingService(Map<String, List<ElectricityReading>> meterAssociatedReadings) {
+    public MeterReadingService(MeterReadingStore meterAssociatedReadings) {
+        this(meterAssociatedReadings, event -> { });
+    }
+
+    public MeterReadingService(MeterReadingStore meterAssociatedReadings, ApplicationEventPublisher eventPublisher) {
+        this(meterAssociatedReadings, eventPublisher, new IdempotencyKeyIndex(Duration.ofHours(24), 10_000));
+    }
+
+    @Autowired
+    public MeterReadingService(MeterReadingStore meterAssociatedReadings, ApplicationEventPublisher eventPublisher,
+                               IdempotencyKeyIndex idempotencyKeys) {
         this.meterAssociatedReadings = meterAssociatedReadings;
+        this.eventPublisher = eventPublisher;
+        this.idempotencyKeys = idempotencyKeys;
     }
 
+    /**
+     * The meter's readings in time order, copied out of the store.
+     */
     public Optional<List<ElectricityReading>> getReadings(String smartMeterId) {
-        return Optional.ofNullable(meterAssociatedReadings.get(smartMeterId));
+        return getReadingColumns(smartMeterId).map(ReadingColumns::toList);
+    }
+
+    /**
+     * At most {@code points} of the meter's readings, chosen to keep the shape of the series when charted, in time
+     * order. Meters with no more readings than that get them all.
+     * @param smartMeterId
+     * @param points at least {@link ReadingDownsampler#MIN_POINTS}
+     * @return
+     */
+    public Optional<List<ElectricityReading>> getReadings(String smartMeterId, int points) {
+        return getReadingColumns(smartMeterId).map(columns -> {
+            int[] indexes = ReadingDownsampler.largestTriangleThreeBuckets(columns, 0, columns.size(), points);
+            List<ElectricityReading> readings = new ArrayList<>(indexes.length);
+            for (int index : indexes) {
+                readings.add(columns.get(index));
+            }
+            return readings;
+        });
+    }
+
+    /**
+     * The meter's readings, energy totals included, as a read-only view that is not copied.
+     */
+    public Optional<ReadingColumns> getReadingColumns(String smartMeterId) {
+        return meterAssociatedReadings.find(smartMeterId).map(MeterReadingSeries::columns);
+    }
+
+    /**
+     * The version of the meter's readings, which changes whenever readings are stored for it; empty for a meter with
+     * no readings.
+     */
+    public OptionalLong getReadingsVersion(String smartMeterId) {
+        Optional<MeterReadingSeries> series = meterAssociatedReadings.find(smartMeterId);
+        return series.isPresent() ? OptionalLong.of(series.get().version()) : OptionalLong.empty();
+    }
+
+    public Optional<MeterReadingSeries> getSeries(String smartMeterId) {
+        return meterAssociatedReadings.find(smartMeterId);
     }
 
     /**
@@ -39,18 +105,79 @@ public class MeterReadingService {
      * @return
      */
     public String storeReadings(MeterReadings meterReadings) {
+        return storeReadings(meterReadings, null).status();
+    }
+
+    /**
+     * @param meterReadings
+     * @param idempotencyKey identifies the batch, so a retry of it is recognised and not stored again; may be null
+     * @return SUCCESS, INPUT_IS_INVALID, or DUPLICATE_READINGS when the key was already used for the meter, with how
+     * many readings were stored and how many dropped for being older than the meter's evicted history
+     */
+    public StoreReadingsResult storeReadings(MeterReadings meterReadings, String idempotencyKey) {
         boolean response;
         logger.info("Going for the validation of input parameters.");
+        ReadingsValidatedEvent validated = new ReadingsValidatedEvent();
+        validated.begin();
         response = validateMeterReadings(meterReadings);
+        validated.commit(meterReadings == null ? null : meterReadings.smartMeterId(),
+                meterReadings == null || meterReadings.electricityReadings() == null ? 0 : meterReadings.electricityReadings().size(),
+                response);
         if(!response)
-            return INPUT_IS_INVALID;
-        // Appending all the new entries to the existing key value pair.
-        if (meterAssociatedReadings.containsKey(meterReadings.smartMeterId())) {
-            meterAssociatedReadings.get(meterReadings.smartMeterId()).addAll(meterReadings.electricityReadings());
+            return new StoreReadingsResult(INPUT_IS_INVALID, 0, 0);
+        boolean keyed = idempotencyKey != null && !idempotencyKey.isBlank();
+        if (keyed && !idempotencyKeys.firstSeen(meterReadings.smartMeterId(), idempotencyKey)) {
+            logger.info("Ignoring a repeat of batch " + idempotencyKey + " for " + meterReadings.smartMeterId());
+            return new StoreReadingsResult(DUPLICATE_READINGS, 0, 0);
+        }
+        // the key is held while the batch is stored, so a concurrent retry isn't stored too, and let go if it isn't
+        int appended = appendReadings(meterReadings.smartMeterId(), meterReadings.electricityReadings(), keyed
+                ? () -> idempotencyKeys.forget(meterReadings.smartMeterId(), idempotencyKey)
+                : () -> { });
+        int dropped = meterReadings.electricityReadings().size() - appended;
+        if (dropped > 0) {
+            logger.info("Dropped " + dropped + " readings older than the evicted history of " + meterReadings.smartMeterId());
+        }
+        return new StoreReadingsResult(SUCCESS, appended, dropped);
+    }
+
+    /**
+     * Stores readings that are already known to be valid, e.g. from a bulk import, and tells listeners about them
+     * the same way {@link #storeReadings} does.
+     * @param smartMeterId
+     * @param electricityReadings
+     * @return how many were stored; readings from before the meter's evicted history are dropped
+     */
+    public int appendReadings(String smartMeterId, List<ElectricityReading> electricityReadings) {
+        return appendReadings(smartMeterId, electricityReadings, () -> { });
+    }
+
+    /**
+     * @param notStored run if the append fails without storing anything, before the failure is rethrown
+     */
+    private int appendReadings(String smartMeterId, List<ElectricityReading> electricityReadings, Runnable notStored) {
+        ReadingsAppendedEvent appended = new ReadingsAppendedEvent();
+        appended.begin();
+        // The series keeps the readings in time order and integrates the new intervals into its energy totals.
+        MeterReadingSeries series = meterAssociatedReadings.getOrCreate(smartMeterId);
+        // only timed while recording, so storing readings doesn't pay for two clock reads otherwise
+        long waiting = appended.isEnabled() ? System.nanoTime() : 0;
+        long lockWaitNanos;
+        AppendResult result;
+        synchronized (series) {
+            lockWaitNanos = waiting == 0 ? 0 : System.nanoTime() - waiting;
+            try {
+                result = series.append(electricityReadings);
+            } catch (RuntimeException e) {
+                notStored.run();
+                throw e;
+            }
+            if (result.appended() > 0) {
+                eventPublisher.publishEvent(new MeterReadingsStoredEvent(smartMeterId, series, result));
+            }
         }
-        //Adding the entry if it's not already present.
-        meterAssociatedReadings.put(meterReadings.smartMeterId(), new ArrayList<>());
-        return SUCCESS;
+        appended.commit(smartMeterId, electricityReadings.size(), result.appended(), lockWaitNanos);
+        return result.appended();
     }
 
     private boolean validateMeterReadings(MeterReadings meterReadings) {
@@ -92,7 +219,9 @@ public class MeterReadingService {
     private static boolean isValidElectricityReading(ElectricityReading electricityReading) {
         // Check the data types of the parameters
         boolean isTimeValid = electricityReading.time() instanceof Instant;
-        boolean isReadingValid = electricityReading.reading() instanceof BigDecimal;
+        // the store rounds readings with too many digits, but can't hold ones too large for its columns
+        boolean isReadingValid = electricityReading.reading() instanceof BigDecimal
+                && MeterReadingSeries.isStorable(electricityReading.reading());
 
         return isTimeValid && isReadingValid;
     }
@@ -0,0 +1,113 @@
+package uk.tw.energy.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import uk.tw.energy.domain.PricePlan;
+import uk.tw.energy.domain.RateSchedule;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Holds the price plans the service prices against. The catalogue starts from the seeded plans and, when
+ * price-plans.catalogue.location points at a file, is replaced by that file's plans and reloaded whenever the
+ * file changes. Every load is compiled into an immutable {@link Snapshot} and swapped in atomically, so callers
+ * that grab {@link #current()} once keep pricing against a consistent catalogue while a reload happens.
+ */
+@Service
+// scheduled, so created at start up even when beans are initialised lazily
+@Lazy(false)
+public class PricePlanCatalogue {
+
+    private static final Logger logger = Logger.getLogger(PricePlanCatalogue.class.getName());
+
+    private final PricePlanCatalogueLoader loader = new PricePlanCatalogueLoader();
+    private final AtomicReference<Snapshot> current;
+    private final Path location;
+    private BasicFileAttributes loadedFileAttributes;
+
+    public PricePlanCatalogue(List<PricePlan> pricePlans) {
+        this(pricePlans, "");
+    }
+
+    @Autowired
+    public PricePlanCatalogue(List<PricePlan> pricePlans, @Value("${price-plans.catalogue.location:}") String location) {
+        this.current = new AtomicReference<>(Snapshot.of(0, pricePlans));
+        this.location = location == null || location.isBlank() ? null : Paths.get(location);
+        reloadIfChanged();
+    }
+
+    public Snapshot current() {
+        return current.get();
+    }
+
+    /**
+     * Polled by the scheduler; a file that fails to load or validate is logged and the previous catalogue stays live.
+     */
+    @Scheduled(fixedDelayString = "${price-plans.catalogue.reload-interval-ms:5000}")
+    public synchronized void reloadIfChanged() {
+        if (location == null) {
+            return;
+        }
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(location, BasicFileAttributes.class);
+            if (loadedFileAttributes != null
+                    && attributes.lastModifiedTime().equals(loadedFileAttributes.lastModifiedTime())
+                    && attributes.size() == loadedFileAttributes.size()) {
+                return;
+            }
+            List<PricePlan> pricePlans = loader.load(location);
+            Snapshot snapshot = Snapshot.of(current.get().version() + 1, pricePlans);
+            current.set(snapshot);
+            loadedFileAttributes = attributes;
+            logger.info("Loaded " + pricePlans.size() + " price plans from " + location + " as catalogue version " + snapshot.version());
+        } catch (IOException | RuntimeException e) {
+            logger.log(Level.WARNING, "Keeping catalogue version " + current.get().version() + ", could not load " + location, e);
+        }
+    }
+
+    /**
+     * An immutable, compiled view of the catalogue. Rate schedules are indexed like the price plan list.
+     */
+    public record Snapshot(long version, List<PricePlan> pricePlans, Map<String, Integer> planIndex, RateSchedule[] rateSchedules) {
+
+        static Snapshot of(long version, List<PricePlan> pricePlans) {
+            List<PricePlan> plans = List.copyOf(pricePlans);
+            Map<String, Integer> planIndex = new HashMap<>(plans.size() * 2);
+            RateSchedule[] rateSchedules = new RateSchedule[plans.size()];
+            for (int i = 0; i < plans.size(); i++) {
+                planIndex.put(plans.get(i).getPlanName(), i);
+                rateSchedules[i] = RateSchedule.compile(plans.get(i));
+            }
+            return new Snapshot(version, plans, Collections.unmodifiableMap(planIndex), rateSchedules);
+        }
+
+        public int size() {
+            return pricePlans.size();
+        }
+
+        public Optional<PricePlan> find(String planName) {
+            Integer index = planName == null ? null : planIndex.get(planName);
+            return index == null ? Optional.empty() : Optional.of(pricePlans.get(index));
+        }
+
+        public Optional<RateSchedule> rateSchedule(String planName) {
+            Integer index = planName == null ? null : planIndex.get(planName);
+            return index == null ? Optional.empty() : Optional.of(rateSchedules[index]);
+        }
+    }
+}
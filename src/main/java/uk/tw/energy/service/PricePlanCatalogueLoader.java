@@ -0,0 +1,132 @@
+package uk.tw.energy.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.yaml.snakeyaml.LoaderOptions;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.SafeConstructor;
+import uk.tw.energy.domain.PricePlan;
+import uk.tw.energy.store.MeterReadingSeries;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DayOfWeek;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Reads a price plan catalogue file. Files ending in .yml or .yaml are read as YAML, anything else as JSON.
+ * YAML is read with SnakeYAML's safe constructor, so a tag in the file can't make it build arbitrary Java objects.
+ * Both use the same layout:
+ * <pre>
+ * pricePlans:
+ *   - planName: price-plan-0
+ *     energySupplier: Dr Evil's Dark Energy
+ *     unitRate: 10
+ *     peakTimeMultipliers:
+ *       - dayOfWeek: MONDAY    # optional, every day when omitted
+ *         fromHour: 17         # optional, defaults to 0
+ *         toHour: 20           # optional, defaults to 24
+ *         multiplier: 1.5
+ *     demandCharge:            # optional
+ *       windowMinutes: 30      # 15, 30 or 60
+ *       ratePerKw: 12.5
+ * </pre>
+ */
+class PricePlanCatalogueLoader {
+
+    static final String PRICE_PLANS = "pricePlans";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    List<PricePlan> load(Path location) throws IOException {
+        JsonNode root;
+        if (isYaml(location)) {
+            try (Reader reader = Files.newBufferedReader(location)) {
+                root = objectMapper.valueToTree(new Yaml(new SafeConstructor(new LoaderOptions())).load(reader));
+            }
+        } else {
+            root = objectMapper.readTree(location.toFile());
+        }
+        return parse(root);
+    }
+
+    List<PricePlan> parse(JsonNode root) {
+        JsonNode plans = root == null ? null : root.get(PRICE_PLANS);
+        if (plans == null || !plans.isArray()) {
+            throw new IllegalArgumentException("Price plan catalogue must contain a '" + PRICE_PLANS + "' list.");
+        }
+        List<PricePlan> pricePlans = new ArrayList<>(plans.size());
+        Set<String> planNames = new HashSet<>();
+        for (JsonNode plan : plans) {
+            PricePlan pricePlan = parsePricePlan(plan);
+            if (!planNames.add(pricePlan.getPlanName())) {
+                throw new IllegalArgumentException("Duplicate price plan " + pricePlan.getPlanName());
+            }
+            pricePlans.add(pricePlan);
+        }
+        return pricePlans;
+    }
+
+    private PricePlan parsePricePlan(JsonNode plan) {
+        String planName = requiredText(plan, "planName");
+        BigDecimal unitRate = nonNegativeDecimal(plan, "unitRate", planName);
+        List<PricePlan.PeakTimeMultiplier> multipliers = new ArrayList<>();
+        JsonNode peakTimeMultipliers = plan.path("peakTimeMultipliers");
+        for (JsonNode multiplier : peakTimeMultipliers) {
+            multipliers.add(parsePeakTimeMultiplier(multiplier, planName));
+        }
+        PricePlan.DemandCharge demandCharge = plan.hasNonNull("demandCharge") ? parseDemandCharge(plan.get("demandCharge"), planName) : null;
+        return new PricePlan(planName, plan.path("energySupplier").asText(null), unitRate, multipliers, demandCharge);
+    }
+
+    private PricePlan.DemandCharge parseDemandCharge(JsonNode demandCharge, String planName) {
+        int windowMinutes = demandCharge.path("windowMinutes").asInt(30);
+        if (!MeterReadingSeries.DEMAND_WINDOW_MINUTES.contains(windowMinutes)) {
+            throw new IllegalArgumentException("Price plan " + planName + " has a demand charge window of " + windowMinutes
+                    + " minutes; it must be one of " + MeterReadingSeries.DEMAND_WINDOW_MINUTES);
+        }
+        return new PricePlan.DemandCharge(windowMinutes, nonNegativeDecimal(demandCharge, "ratePerKw", planName));
+    }
+
+    private PricePlan.PeakTimeMultiplier parsePeakTimeMultiplier(JsonNode multiplier, String planName) {
+        DayOfWeek dayOfWeek = multiplier.hasNonNull("dayOfWeek")
+                ? DayOfWeek.valueOf(multiplier.get("dayOfWeek").asText().toUpperCase(Locale.ROOT))
+                : null;
+        int fromHour = multiplier.path("fromHour").asInt(0);
+        int toHour = multiplier.path("toHour").asInt(24);
+        if (fromHour < 0 || toHour > 24 || fromHour >= toHour) {
+            throw new IllegalArgumentException("Invalid hour range " + fromHour + "-" + toHour + " for price plan " + planName);
+        }
+        return new PricePlan.PeakTimeMultiplier(dayOfWeek, fromHour, toHour, nonNegativeDecimal(multiplier, "multiplier", planName));
+    }
+
+    private static String requiredText(JsonNode node, String field) {
+        if (!node.hasNonNull(field) || node.get(field).asText().isEmpty()) {
+            throw new IllegalArgumentException("Price plan is missing '" + field + "'.");
+        }
+        return node.get(field).asText();
+    }
+
+    private static BigDecimal nonNegativeDecimal(JsonNode node, String field, String planName) {
+        if (!node.hasNonNull(field)) {
+            throw new IllegalArgumentException("Price plan " + planName + " is missing '" + field + "'.");
+        }
+        BigDecimal value = new BigDecimal(node.get(field).asText());
+        if (value.signum() < 0) {
+            throw new IllegalArgumentException("Price plan " + planName + " has a negative '" + field + "'.");
+        }
+        return value;
+    }
+
+    private static boolean isYaml(Path location) {
+        String fileName = location.getFileName().toString().toLowerCase(Locale.ROOT);
+        return fileName.endsWith(".yml") || fileName.endsWith(".yaml");
+    }
+}
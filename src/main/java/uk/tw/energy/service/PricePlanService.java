@@ -1,70 +1,64 @@
 package uk.tw.energy.service;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
-import uk.tw.energy.domain.ElectricityReading;
-import uk.tw.energy.domain.PricePlan;
-import uk.tw.energy.exceptions.NoReadingsExistForMeterId;
+import uk.tw.energy.diagnostics.MeterPricedEvent;
+import uk.tw.energy.domain.RankedPricePlans;
+import uk.tw.energy.store.MeterReadingSeries;
+import uk.tw.energy.store.ReadingColumns;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
-import java.time.Duration;
+import java.time.Instant;
 import java.util.*;
-import java.util.stream.Collectors;
 
 import static uk.tw.energy.exceptions.Constants.*;
 
 @Service
 public class PricePlanService {
 
-    private final List<PricePlan> pricePlans;
+    private final PricePlanCatalogue pricePlanCatalogue;
     private final MeterReadingService meterReadingService;
 
     /**
      * Added the accountService class object in the constructor for initialization and injection.
      */
     private final AccountService accountService;
+    private final RecommendationService recommendationService;
 
-    public PricePlanService(List<PricePlan> pricePlans, MeterReadingService meterReadingService, AccountService accountService) {
-        this.pricePlans = pricePlans;
+    /**
+     * Without a {@link RecommendationService} bean to refresh rankings as readings are stored, recommendations are
+     * ranked on demand by every read.
+     */
+    public PricePlanService(PricePlanCatalogue pricePlanCatalogue, MeterReadingService meterReadingService, AccountService accountService) {
+        this(pricePlanCatalogue, meterReadingService, accountService, new RecommendationService(meterReadingService, pricePlanCatalogue));
+    }
+
+    @Autowired
+    public PricePlanService(PricePlanCatalogue pricePlanCatalogue, MeterReadingService meterReadingService, AccountService accountService,
+                            RecommendationService recommendationService) {
+        this.pricePlanCatalogue = pricePlanCatalogue;
         this.meterReadingService = meterReadingService;
         this.accountService = accountService;
+        this.recommendationService = recommendationService;
     }
 
+    /**
+     * Costs the meter's whole history on every plan. The series keeps its energy use per hour of the week and its
+     * monthly peak demand up to date as readings arrive, so this is a fixed amount of work per plan however many
+     * readings the meter has.
+     */
     private Optional<Map<String, BigDecimal>> getConsumptionCostOfElectricityReadingsForEachPricePlan(String smartMeterId) {
-        Optional<List<ElectricityReading>> electricityReadings = meterReadingService.getReadings(smartMeterId);
-        if (!electricityReadings.isPresent()) {
+        Optional<MeterReadingSeries> series = meterReadingService.getSeries(smartMeterId);
+        if (!series.isPresent()) {
             return Optional.empty();
         }
-        return Optional.of(pricePlans.stream().collect(
-                Collectors.toMap(PricePlan::getPlanName, t -> calculateCost(electricityReadings.get(), t))));
-    }
-
-    private BigDecimal calculateCost(List<ElectricityReading> electricityReadings, PricePlan pricePlan) {
-        BigDecimal average = calculateAverageReading(electricityReadings);
-        BigDecimal timeElapsed = calculateTimeElapsed(electricityReadings);
-
-        BigDecimal averagedCost = average.divide(timeElapsed, RoundingMode.HALF_UP);
-        return averagedCost.multiply(pricePlan.getUnitRate());
-    }
-
-    private BigDecimal calculateAverageReading(List<ElectricityReading> electricityReadings) {
-        BigDecimal summedReadings = electricityReadings.stream()
-                .map(ElectricityReading::reading)
-                .reduce(BigDecimal.ZERO, (reading, accumulator) -> reading.add(accumulator));
-
-        return summedReadings.divide(BigDecimal.valueOf(electricityReadings.size()), RoundingMode.HALF_UP);
-    }
-
-    private BigDecimal calculateTimeElapsed(List<ElectricityReading> electricityReadings) {
-        ElectricityReading first = electricityReadings.stream()
-                .min(Comparator.comparing(ElectricityReading::time))
-                .get();
-
-        ElectricityReading last = electricityReadings.stream()
-                .max(Comparator.comparing(ElectricityReading::time))
-                .get();
-
-        return BigDecimal.valueOf(Duration.between(first.time(), last.time()).getSeconds() / 3600.0);
+        MeterPricedEvent priced = new MeterPricedEvent();
+        priced.begin();
+        // One snapshot per calculation so a catalogue reload never mixes plans from two versions.
+        PricePlanCatalogue.Snapshot catalogue = pricePlanCatalogue.current();
+        Map<String, BigDecimal> costs = TariffSimulator.price(series.get(), catalogue);
+        priced.commit(MeterPricedEvent.COMPARE, smartMeterId, catalogue.size(), catalogue.version());
+        return Optional.of(costs);
     }
 
     /**
@@ -79,10 +73,26 @@ public class PricePlanService {
         if (consumptionsForPricePlans.isPresent()) {
             return createResponseMapForComparisons(pricePlanId, consumptionsForPricePlans.get());
         } else {
-            //preparing the response map which can be used in creating response entity in controller class.
-            return (Map<String, Object>) new HashMap<>()
-                    .put(PRICE_PLAN_ID_KEY, new NoReadingsExistForMeterId(NO_METER_READING_FOUND + pricePlanId));
+            //an empty map lets the controller answer with NO_CONTENT (Map.put returned null here before).
+            return Collections.emptyMap();
+        }
+    }
+
+    /**
+     * Identifies the answer {@link #getCostForEachPricePlan} would give: it changes when readings are stored for the
+     * meter, the catalogue is reloaded, or the account switches plan or reaches a switch that was booked ahead.
+     *
+     * @param smartMeterId
+     * @return empty when the meter has no readings
+     */
+    public Optional<String> getCostVersion(String smartMeterId) {
+        Optional<MeterReadingSeries> series = meterReadingService.getSeries(smartMeterId);
+        if (!series.isPresent()) {
+            return Optional.empty();
         }
+        String pricePlanId = accountService.getPricePlanIdForSmartMeterId(smartMeterId);
+        return Optional.of(series.get().version() + "." + pricePlanCatalogue.current().version() + "."
+                + accountService.version() + "." + Integer.toHexString(Objects.hashCode(pricePlanId)));
     }
 
     //private method for cleaner code.
@@ -93,23 +103,51 @@ public class PricePlanService {
         return pricePlanComparisons;
     }
 
+    /**
+     * What-if costs of the meter's readings within [from, to) under every plan in the catalogue, including each plan's
+     * time of use multipliers. The readings are walked once however many plans there are.
+     *
+     * @param smartMeterId
+     * @param from inclusive start, or null for the first reading
+     * @param to exclusive end, or null for the last reading
+     * @return an empty map when the meter has no readings
+     */
+    public Map<String, Object> getSimulatedCosts(String smartMeterId, Instant from, Instant to) {
+        Optional<ReadingColumns> readingColumns = meterReadingService.getReadingColumns(smartMeterId);
+        if (!readingColumns.isPresent()) {
+            return Collections.emptyMap();
+        }
+        MeterPricedEvent priced = new MeterPricedEvent();
+        priced.begin();
+        PricePlanCatalogue.Snapshot catalogue = pricePlanCatalogue.current();
+
+        Map<String, Object> simulation = new LinkedHashMap<>();
+        simulation.put(PRICE_PLAN_ID_KEY, accountService.getPricePlanIdForSmartMeterId(smartMeterId));
+        simulation.put(FROM, from);
+        simulation.put(TO, to);
+        simulation.put(CONSUMPTION_KWH_KEY, TariffSimulator.toCost(readingColumns.get().energyKwh(from, to)));
+        simulation.put(PRICE_PLAN_SIMULATIONS_KEY, TariffSimulator.priceWindow(readingColumns.get(), from, to, catalogue));
+        priced.commit(MeterPricedEvent.SIMULATE, smartMeterId, catalogue.size(), catalogue.version());
+        return simulation;
+    }
+
+    /**
+     * The meter's price plans, cheapest first, from its materialised ranking; see {@link RecommendationService}.
+     *
+     * @param smartMeterId
+     * @param limit how many of the cheapest plans to return, or null for all of them
+     * @return a {@link RankedPricePlans}, or a single ERROR entry when the meter has no readings
+     */
     public List<Map.Entry<String, BigDecimal>> getRecommendations(String smartMeterId, Integer limit) {
-        Optional<Map<String, BigDecimal>> consumptionsForPricePlans =
-                getConsumptionCostOfElectricityReadingsForEachPricePlan(smartMeterId);
+        Optional<RankedPricePlans> rankedPricePlans = recommendationService.getRankedPricePlans(smartMeterId);
 
         List<Map.Entry<String, BigDecimal>> recommendations = null;
-        if (!consumptionsForPricePlans.isPresent()) {
+        if (!rankedPricePlans.isPresent()) {
             //setting the response when consumptionsForPricePlans is empty.
             recommendations = new ArrayList<>();
             recommendations.add(new AbstractMap.SimpleEntry<>(ERROR, BigDecimal.ZERO));
             return recommendations;
         }
-        recommendations = new ArrayList<>(consumptionsForPricePlans.get().entrySet());
-        recommendations.sort(Comparator.comparing(Map.Entry::getValue));
-
-        if (limit != null && limit < recommendations.size()) {
-            recommendations = recommendations.subList(0, limit);
-        }
-        return recommendations;
+        return limit != null ? rankedPricePlans.get().limit(limit) : rankedPricePlans.get();
     }
 }
@@ -0,0 +1,228 @@
+package uk.tw.energy.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import uk.tw.energy.store.ColdBlockStore;
+import uk.tw.energy.store.EvictionResult;
+import uk.tw.energy.store.MeterReadingSeries;
+import uk.tw.energy.store.MeterReadingStore;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the reading store from growing without bound. Raw readings are kept for readings.retention.raw-days, then
+ * rolled up into hourly totals and evicted a block at a time; the hourly totals are kept for
+ * readings.retention.rollup-days and then dropped too. Each meter's whole-history weekly profile and running
+ * totals are untouched, so price plan comparisons still cover everything the meter ever used.
+ * <p>
+ * The store is compacted incrementally: every scheduled step carries on from where the last one stopped and gives
+ * up its turn once it has used readings.retention.step-budget-ms, and each meter gives up at most
+ * readings.retention.max-blocks-per-step blocks per step, so no step holds a meter, or the scheduler, for long.
+ * Progress is published as readings.retention.* metrics.
+ * <p>
+ * With readings.tiering.enabled, the same steps spill full blocks older than readings.tiering.hot-days to disk under
+ * readings.tiering.directory, so heap only holds recent readings. Spilled blocks are read back through a cache of
+ * readings.tiering.cache-size-mb; its use is published as readings.tiering.* metrics.
+ */
+@Service
+// scheduled, so created at start up even when beans are initialised lazily
+@Lazy(false)
+public class ReadingRetentionService {
+
+    private static final Logger logger = Logger.getLogger(ReadingRetentionService.class.getName());
+    private static final long SEGMENT_BYTES = 64L * 1024 * 1024;
+
+    private final MeterReadingStore meterReadingStore;
+    private final Clock clock;
+    private final int rawRetentionDays;
+    private final int rollupRetentionDays;
+    private final long stepBudgetNanos;
+    private final int maxBlocksPerStep;
+    private final ColdBlockStore coldBlockStore;
+    private final int hotDays;
+
+    private final AtomicLong evictedReadings = new AtomicLong();
+    private final AtomicLong reclaimedBytes = new AtomicLong();
+    private final AtomicLong rolledUpHours = new AtomicLong();
+    private final AtomicLong droppedRollupHours = new AtomicLong();
+    private final AtomicLong completedPasses = new AtomicLong();
+    private final Timer stepTimer;
+
+    private Iterator<MeterReadingSeries> cursor;
+
+    @Autowired
+    public ReadingRetentionService(MeterReadingStore meterReadingStore, MeterRegistry meterRegistry,
+                                   @Value("${readings.retention.raw-days:90}") int rawRetentionDays,
+                                   @Value("${readings.retention.rollup-days:730}") int rollupRetentionDays,
+                                   @Value("${readings.retention.step-budget-ms:5}") long stepBudgetMillis,
+                                   @Value("${readings.retention.max-blocks-per-step:1}") int maxBlocksPerStep,
+                                   @Value("${readings.tiering.enabled:true}") boolean tieringEnabled,
+                                   @Value("${readings.tiering.directory:${java.io.tmpdir}/joi-energy-blocks}") String tieringDirectory,
+                                   @Value("${readings.tiering.hot-days:7}") int hotDays,
+                                   @Value("${readings.tiering.cache-size-mb:256}") long cacheSizeMb) throws IOException {
+        this(meterReadingStore, meterRegistry, Clock.systemUTC(), rawRetentionDays, rollupRetentionDays, stepBudgetMillis, maxBlocksPerStep,
+                tieringEnabled ? new ColdBlockStore(Path.of(tieringDirectory), cacheSizeMb * 1024 * 1024, SEGMENT_BYTES) : null, hotDays);
+    }
+
+    ReadingRetentionService(MeterReadingStore meterReadingStore, MeterRegistry meterRegistry, Clock clock,
+                            int rawRetentionDays, int rollupRetentionDays, long stepBudgetMillis, int maxBlocksPerStep) {
+        this(meterReadingStore, meterRegistry, clock, rawRetentionDays, rollupRetentionDays, stepBudgetMillis, maxBlocksPerStep, null, 0);
+    }
+
+    /**
+     * @param coldBlockStore where to spill blocks older than hotDays, or null to keep every reading on the heap
+     */
+    ReadingRetentionService(MeterReadingStore meterReadingStore, MeterRegistry meterRegistry, Clock clock,
+                            int rawRetentionDays, int rollupRetentionDays, long stepBudgetMillis, int maxBlocksPerStep,
+                            ColdBlockStore coldBlockStore, int hotDays) {
+        this.meterReadingStore = meterReadingStore;
+        this.clock = clock;
+        this.rawRetentionDays = rawRetentionDays;
+        // rollups only exist for evicted readings, so there's no sense keeping them for less time than raw readings
+        this.rollupRetentionDays = rollupRetentionDays <= 0 ? 0 : Math.max(rollupRetentionDays, rawRetentionDays);
+        this.stepBudgetNanos = TimeUnit.MILLISECONDS.toNanos(stepBudgetMillis);
+        this.maxBlocksPerStep = maxBlocksPerStep;
+        this.coldBlockStore = coldBlockStore;
+        this.hotDays = hotDays;
+
+        FunctionCounter.builder("readings.retention.evicted.readings", evictedReadings, AtomicLong::get)
+                .description("Raw readings evicted after being rolled up into hourly totals")
+                .register(meterRegistry);
+        FunctionCounter.builder("readings.retention.reclaimed", reclaimedBytes, AtomicLong::get)
+                .description("Approximate heap freed by evicting readings and dropping old hourly totals")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        FunctionCounter.builder("readings.retention.rolled.up.hours", rolledUpHours, AtomicLong::get)
+                .description("Hourly totals created from evicted readings")
+                .register(meterRegistry);
+        FunctionCounter.builder("readings.retention.dropped.rollup.hours", droppedRollupHours, AtomicLong::get)
+                .description("Hourly totals dropped for being older than the rollup retention")
+                .register(meterRegistry);
+        FunctionCounter.builder("readings.retention.passes", completedPasses, AtomicLong::get)
+                .description("Completed passes over every meter in the store")
+                .register(meterRegistry);
+        this.stepTimer = Timer.builder("readings.retention.step")
+                .description("Time spent in each incremental compaction step")
+                .register(meterRegistry);
+        if (coldBlockStore != null) {
+            registerTieringMetrics(coldBlockStore, meterRegistry);
+        }
+    }
+
+    /**
+     * Compacts meters until the step budget runs out.
+     *
+     * @return true when the step reached the end of a pass over every meter
+     */
+    @Scheduled(fixedDelayString = "${readings.retention.step-interval-ms:1000}")
+    public synchronized boolean step() {
+        if (rawRetentionDays <= 0 && coldBlockStore == null) {
+            return true;
+        }
+        long start = System.nanoTime();
+        Instant now = clock.instant();
+        Instant rawCutoff = rawRetentionDays <= 0 ? null : now.minus(Duration.ofDays(rawRetentionDays));
+        Instant rollupCutoff = rollupRetentionDays <= 0 ? null : now.minus(Duration.ofDays(rollupRetentionDays));
+        Instant hotCutoff = now.minus(Duration.ofDays(hotDays));
+        if (cursor == null) {
+            cursor = meterReadingStore.series().iterator();
+        }
+        try {
+            while (cursor.hasNext()) {
+                MeterReadingSeries series = cursor.next();
+                if (rawCutoff != null) {
+                    record(series.evict(rawCutoff, rollupCutoff, maxBlocksPerStep));
+                }
+                if (coldBlockStore != null) {
+                    spill(series, hotCutoff);
+                }
+                if (System.nanoTime() - start >= stepBudgetNanos) {
+                    return false;
+                }
+            }
+            cursor = null;
+            completedPasses.incrementAndGet();
+            return true;
+        } finally {
+            stepTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        if (coldBlockStore != null) {
+            coldBlockStore.close();
+        }
+    }
+
+    public long evictedReadings() {
+        return evictedReadings.get();
+    }
+
+    public long reclaimedBytes() {
+        return reclaimedBytes.get();
+    }
+
+    private void spill(MeterReadingSeries series, Instant hotCutoff) {
+        try {
+            int spilled = series.spill(hotCutoff, coldBlockStore, maxBlocksPerStep);
+            if (spilled > 0) {
+                logger.fine("Spilled " + spilled + " blocks to disk");
+            }
+        } catch (UncheckedIOException e) {
+            // the blocks stay on the heap, and the next pass tries again
+            logger.log(Level.WARNING, "Could not spill reading blocks", e);
+        }
+    }
+
+    private static void registerTieringMetrics(ColdBlockStore coldBlockStore, MeterRegistry meterRegistry) {
+        FunctionCounter.builder("readings.tiering.spilled.blocks", coldBlockStore, ColdBlockStore::spilledBlocks)
+                .description("Blocks of readings spilled from the heap to disk")
+                .register(meterRegistry);
+        FunctionCounter.builder("readings.tiering.cache.misses", coldBlockStore, ColdBlockStore::loads)
+                .description("Spilled blocks read back from disk because they were not in the block cache")
+                .register(meterRegistry);
+        FunctionCounter.builder("readings.tiering.cache.evictions", coldBlockStore, ColdBlockStore::cacheEvictions)
+                .description("Blocks dropped from the block cache to keep it within its size")
+                .register(meterRegistry);
+        Gauge.builder("readings.tiering.disk", coldBlockStore, ColdBlockStore::diskBytes)
+                .description("Disk taken by spilled blocks")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("readings.tiering.cache", coldBlockStore, ColdBlockStore::residentBytes)
+                .description("Heap taken by spilled blocks held in the block cache")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    private void record(EvictionResult result) {
+        if (!result.changed()) {
+            return;
+        }
+        evictedReadings.addAndGet(result.evictedReadings());
+        rolledUpHours.addAndGet(result.rolledUpHours());
+        droppedRollupHours.addAndGet(result.droppedRollupHours());
+        if (result.reclaimedBytes() > 0) {
+            reclaimedBytes.addAndGet(result.reclaimedBytes());
+        }
+        logger.fine("Evicted " + result.evictedReadings() + " readings and " + result.droppedRollupHours() + " rolled up hours");
+    }
+}
@@ -0,0 +1,264 @@
+package uk.tw.energy.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import uk.tw.energy.diagnostics.MeterPricedEvent;
+import uk.tw.energy.domain.RankedPricePlans;
+import uk.tw.energy.event.MeterReadingsStoredEvent;
+import uk.tw.energy.store.MeterReadingSeries;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Every meter's price plans ranked cheapest first, kept ready so a recommendation is a map lookup rather than
+ * costing and sorting the whole catalogue per request.
+ * <p>
+ * Storing readings only marks the meter's ranking stale and queues it for a refresh on a small pool of
+ * recommendations.refresh-threads threads; batches that arrive while a refresh is already queued share it, so a
+ * meter reporting in bursts is ranked once per burst rather than once per batch. Reads serve the ranking as it is
+ * along with how stale it is, unless that is more than recommendations.max-staleness, the catalogue has changed
+ * since, or the meter has no ranking yet, in which case the read ranks the meter itself. Staleness as served, the
+ * refreshes and the updates they coalesced are published as recommendations.* metrics.
+ */
+@Service
+public class RecommendationService {
+
+    private final MeterReadingService meterReadingService;
+    private final PricePlanCatalogue pricePlanCatalogue;
+    private final Executor refresher;
+    private final long maxStalenessNanos;
+    private final ConcurrentMap<String, MeterRanking> rankings = new ConcurrentHashMap<>();
+
+    private final AtomicLong queuedRefreshes = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong coalescedUpdates = new AtomicLong();
+    private final AtomicLong readRefreshes = new AtomicLong();
+    private final Timer servedStaleness;
+
+    /**
+     * Ranks the meter on every read. Built outside Spring nothing calls {@link #onReadingsStored} unless the caller
+     * does, in which case the refresh runs on the calling thread, and no staleness is allowed so a read never serves
+     * an out of date ranking either way. Its metrics go nowhere.
+     */
+    public RecommendationService(MeterReadingService meterReadingService, PricePlanCatalogue pricePlanCatalogue) {
+        // a composite with no registries in it hands out meters that record nothing
+        this(meterReadingService, pricePlanCatalogue, Runnable::run, Duration.ZERO, new CompositeMeterRegistry());
+    }
+
+    @Autowired
+    public RecommendationService(MeterReadingService meterReadingService, PricePlanCatalogue pricePlanCatalogue,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${recommendations.refresh-threads:2}") int refreshThreads,
+                                 @Value("${recommendations.max-staleness:PT1S}") Duration maxStaleness) {
+        this(meterReadingService, pricePlanCatalogue, refreshPool(refreshThreads), maxStaleness, meterRegistry);
+    }
+
+    RecommendationService(MeterReadingService meterReadingService, PricePlanCatalogue pricePlanCatalogue,
+                          Executor refresher, Duration maxStaleness, MeterRegistry meterRegistry) {
+        this.meterReadingService = meterReadingService;
+        this.pricePlanCatalogue = pricePlanCatalogue;
+        this.refresher = refresher;
+        this.maxStalenessNanos = maxStaleness.toNanos();
+
+        Gauge.builder("recommendations.queued.refreshes", queuedRefreshes, AtomicLong::get)
+                .description("Meters waiting for their ranking to be refreshed")
+                .register(meterRegistry);
+        FunctionCounter.builder("recommendations.refreshes", refreshes, AtomicLong::get)
+                .description("Rankings refreshed in the background after readings were stored")
+                .register(meterRegistry);
+        FunctionCounter.builder("recommendations.coalesced.updates", coalescedUpdates, AtomicLong::get)
+                .description("Batches of readings folded into a refresh that was already queued")
+                .register(meterRegistry);
+        FunctionCounter.builder("recommendations.read.refreshes", readRefreshes, AtomicLong::get)
+                .description("Rankings worked out by a read because they were missing or too stale to serve")
+                .register(meterRegistry);
+        this.servedStaleness = Timer.builder("recommendations.staleness")
+                .description("How far behind the meter's readings each served ranking was")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Published with the series held, so this only marks the ranking stale and queues the meter.
+     */
+    @EventListener
+    public void onReadingsStored(MeterReadingsStoredEvent event) {
+        MeterRanking meterRanking = rankings.computeIfAbsent(event.smartMeterId(), smartMeterId -> new MeterRanking(event.series()));
+        if (!meterRanking.markStale(System.nanoTime())) {
+            coalescedUpdates.incrementAndGet();
+            return;
+        }
+        queuedRefreshes.incrementAndGet();
+        try {
+            refresher.execute(() -> refresh(event.smartMeterId(), meterRanking));
+        } catch (RejectedExecutionException e) {
+            // shutting down; reads rank the meter themselves once it is too stale
+            queuedRefreshes.decrementAndGet();
+            meterRanking.dequeue();
+        }
+    }
+
+    /**
+     * @param smartMeterId
+     * @return the meter's price plans, cheapest first; empty if the meter has no readings
+     */
+    public Optional<RankedPricePlans> getRankedPricePlans(String smartMeterId) {
+        MeterRanking meterRanking = rankings.get(smartMeterId);
+        if (meterRanking == null) {
+            Optional<MeterReadingSeries> series = meterReadingService.getSeries(smartMeterId);
+            if (series.isEmpty()) {
+                return Optional.empty();
+            }
+            meterRanking = rankings.computeIfAbsent(smartMeterId, id -> new MeterRanking(series.get()));
+        }
+        Ranking ranking = meterRanking.ranking;
+        long stalenessNanos = ranking == null || ranking.catalogueVersion != pricePlanCatalogue.current().version()
+                ? Long.MAX_VALUE
+                : meterRanking.stalenessNanos(ranking, System.nanoTime());
+        if (stalenessNanos > maxStalenessNanos) {
+            readRefreshes.incrementAndGet();
+            ranking = rank(smartMeterId, meterRanking, meterRanking.refreshing());
+            stalenessNanos = 0;
+        }
+        servedStaleness.record(stalenessNanos, TimeUnit.NANOSECONDS);
+        return Optional.of(new RankedPricePlans(ranking.pricePlans, Duration.ofNanos(stalenessNanos)));
+    }
+
+    @PreDestroy
+    public void close() {
+        if (refresher instanceof ExecutorService executorService) {
+            executorService.shutdownNow();
+        }
+    }
+
+    private void refresh(String smartMeterId, MeterRanking meterRanking) {
+        queuedRefreshes.decrementAndGet();
+        Refresh refresh = meterRanking.dequeue();
+        rank(smartMeterId, meterRanking, refresh);
+        refreshes.incrementAndGet();
+    }
+
+    private Ranking rank(String smartMeterId, MeterRanking meterRanking, Refresh refresh) {
+        MeterPricedEvent priced = new MeterPricedEvent();
+        priced.begin();
+        // taken before costing, so the ranking can only be newer than its version says
+        long seriesVersion = meterRanking.series.version();
+        PricePlanCatalogue.Snapshot catalogue = pricePlanCatalogue.current();
+        List<Map.Entry<String, BigDecimal>> pricePlans = new ArrayList<>(TariffSimulator.price(meterRanking.series, catalogue).entrySet());
+        pricePlans.sort(Map.Entry.comparingByValue());
+        Ranking ranking = new Ranking(List.copyOf(pricePlans), seriesVersion, catalogue.version());
+        priced.commit(MeterPricedEvent.RECOMMEND, smartMeterId, catalogue.size(), catalogue.version());
+        return meterRanking.install(ranking, refresh);
+    }
+
+    private static ExecutorService refreshPool(int threads) {
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "recommendation-refresh-" + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private record Ranking(List<Map.Entry<String, BigDecimal>> pricePlans, long seriesVersion, long catalogueVersion) {
+
+        private boolean isNewerThan(Ranking other) {
+            return other == null || seriesVersion > other.seriesVersion
+                    || (seriesVersion == other.seriesVersion && catalogueVersion >= other.catalogueVersion);
+        }
+    }
+
+    /**
+     * What a refresh starts from: the updates seen so far, all of which its ranking will include.
+     */
+    private record Refresh(long updates, long startedNanos) {
+    }
+
+    private static final class MeterRanking {
+
+        private final MeterReadingSeries series;
+        private volatile Ranking ranking;
+        // the rest are guarded by this
+        private long updates;
+        private boolean stale;
+        private long staleSinceNanos;
+        private boolean queued;
+
+        private MeterRanking(MeterReadingSeries series) {
+            this.series = series;
+        }
+
+        /**
+         * @return true if the meter needs queueing for a refresh, false if one is already queued
+         */
+        private synchronized boolean markStale(long nowNanos) {
+            updates++;
+            if (!stale) {
+                stale = true;
+                staleSinceNanos = nowNanos;
+            }
+            if (queued) {
+                return false;
+            }
+            queued = true;
+            return true;
+        }
+
+        /**
+         * Takes the meter off the queue; updates from now on queue it again.
+         */
+        private synchronized Refresh dequeue() {
+            queued = false;
+            return refreshing();
+        }
+
+        private synchronized Refresh refreshing() {
+            return new Refresh(updates, System.nanoTime());
+        }
+
+        private synchronized long stalenessNanos(Ranking ranking, long nowNanos) {
+            if (ranking.seriesVersion == series.version()) {
+                return 0;
+            }
+            // readings stored without an event being published, e.g. in tests; only a refresh can tell how stale
+            return stale ? nowNanos - staleSinceNanos : Long.MAX_VALUE;
+        }
+
+        /**
+         * Keeps whichever of the new and current rankings is newer, and works out what is still left out.
+         */
+        private synchronized Ranking install(Ranking newRanking, Refresh refresh) {
+            if (newRanking.isNewerThan(ranking)) {
+                ranking = newRanking;
+            }
+            if (updates == refresh.updates()) {
+                stale = false;
+            } else {
+                // the ranking includes everything stored before the refresh started, so only later batches are missing
+                staleSinceNanos = Math.max(staleSinceNanos, refresh.startedNanos());
+            }
+            return ranking;
+        }
+    }
+}
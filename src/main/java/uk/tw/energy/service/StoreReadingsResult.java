@@ -0,0 +1,11 @@
+package uk.tw.energy.service;
+
+/**
+ * The outcome of storing a batch of readings.
+ *
+ * @param status SUCCESS, INPUT_IS_INVALID or DUPLICATE_READINGS
+ * @param stored readings stored
+ * @param dropped readings left out for being older than the meter's evicted history
+ */
+public record StoreReadingsResult(String status, int stored, int dropped) {
+}
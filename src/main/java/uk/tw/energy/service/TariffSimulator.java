@@ -0,0 +1,236 @@
+package uk.tw.energy.service;
+
+import uk.tw.energy.diagnostics.PricePlanCostedEvent;
+import uk.tw.energy.domain.EnergyIntegration;
+import uk.tw.energy.domain.PricePlan;
+import uk.tw.energy.domain.PricePlanAssignments;
+import uk.tw.energy.domain.RateSchedule;
+import uk.tw.energy.domain.WeeklyEnergyProfile;
+import uk.tw.energy.store.MeterReadingSeries;
+import uk.tw.energy.store.MonthlyPeak;
+import uk.tw.energy.store.PeakDemand;
+import uk.tw.energy.store.ReadingColumns;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Prices a meter's readings against every plan in the catalogue at once. The readings are walked a single time to
+ * build a {@link WeeklyEnergyProfile}, and each plan then prices that profile through its compiled rate schedule,
+ * so comparing P plans over R readings costs O(R + P) rather than O(R * P). Plans with a demand charge add each
+ * month's peak demand at their rate per kW.
+ * <p>
+ * Each plan costed is recorded as a {@link PricePlanCostedEvent} while a flight recording is running.
+ */
+public class TariffSimulator {
+
+    public static final int COST_SCALE = 4;
+
+    private TariffSimulator() {
+    }
+
+    /**
+     * Builds the energy profile of the readings that fall within [from, to). Either bound may be null for an open
+     * range; intervals straddling a bound are cut at the bound using the interpolated power. Rolled up history from
+     * evicted readings is included hour by hour.
+     */
+    public static WeeklyEnergyProfile profile(ReadingColumns readings, Instant from, Instant to) {
+        WeeklyEnergyProfile profile = new WeeklyEnergyProfile();
+        readings.forEachRolledUpHour(from, to, profile);
+        int first = from == null ? 0 : Math.max(readings.indexAtOrAfter(from) - 1, 0);
+        int last = to == null ? readings.size() - 1 : Math.min(readings.indexAtOrAfter(to), readings.size() - 1);
+        for (int i = first + 1; i <= last; i++) {
+            addClipped(profile, readings, i - 1, i, from, to);
+        }
+        return profile;
+    }
+
+    /**
+     * Costs the meter's whole history on every plan. The series keeps both its weekly energy profile and its monthly
+     * peak demand up to date as readings arrive, so this doesn't look at the readings at all.
+     */
+    public static Map<String, BigDecimal> price(MeterReadingSeries series, PricePlanCatalogue.Snapshot catalogue) {
+        WeeklyEnergyProfile profile;
+        Map<Integer, List<MonthlyPeak>> peaksByWindow = new HashMap<>();
+        synchronized (series) {
+            profile = series.profile();
+            for (PricePlan pricePlan : catalogue.pricePlans()) {
+                if (pricePlan.hasDemandCharge()) {
+                    peaksByWindow.computeIfAbsent(pricePlan.getDemandCharge().getWindowMinutes(), series::peakDemand);
+                }
+            }
+        }
+        Map<String, BigDecimal> costs = new LinkedHashMap<>(catalogue.size() * 2);
+        List<PricePlan> pricePlans = catalogue.pricePlans();
+        for (int i = 0; i < pricePlans.size(); i++) {
+            PricePlanCostedEvent event = new PricePlanCostedEvent();
+            event.begin();
+            double cost = profile.cost(catalogue.rateSchedules()[i]);
+            PricePlan.DemandCharge demandCharge = pricePlans.get(i).getDemandCharge();
+            if (demandCharge != null) {
+                cost += demandCost(peaksByWindow.get(demandCharge.getWindowMinutes()), demandCharge);
+            }
+            costs.put(pricePlans.get(i).getPlanName(), toCost(cost));
+            event.commit(pricePlans.get(i).getPlanName(), 0);
+        }
+        return costs;
+    }
+
+    /**
+     * Energy costs only; demand charges need the readings the profile was built from.
+     */
+    public static Map<String, BigDecimal> price(WeeklyEnergyProfile profile, PricePlanCatalogue.Snapshot catalogue) {
+        Map<String, BigDecimal> costs = new LinkedHashMap<>(catalogue.size() * 2);
+        List<PricePlan> pricePlans = catalogue.pricePlans();
+        for (int i = 0; i < pricePlans.size(); i++) {
+            costs.put(pricePlans.get(i).getPlanName(), toCost(profile.cost(catalogue.rateSchedules()[i])));
+        }
+        return costs;
+    }
+
+    /**
+     * Costs the readings within [from, to) on every plan. Flat rate plans only need the window's energy, which the
+     * cumulative kWh column answers with two binary searches; the readings in the window are only walked (once)
+     * if the catalogue has a time of use plan, and once more per demand charge window length.
+     */
+    public static Map<String, BigDecimal> priceWindow(ReadingColumns readings, Instant from, Instant to,
+                                                      PricePlanCatalogue.Snapshot catalogue) {
+        double energyKwh = readings.energyKwh(from, to);
+        WeeklyEnergyProfile profile = null;
+        Map<Integer, List<MonthlyPeak>> peaksByWindow = new HashMap<>();
+        Map<String, BigDecimal> costs = new LinkedHashMap<>(catalogue.size() * 2);
+        List<PricePlan> pricePlans = catalogue.pricePlans();
+        for (int i = 0; i < pricePlans.size(); i++) {
+            PricePlanCostedEvent event = new PricePlanCostedEvent();
+            event.begin();
+            int walks = 0;
+            RateSchedule rateSchedule = catalogue.rateSchedules()[i];
+            double cost;
+            if (rateSchedule.isFlat()) {
+                cost = energyKwh * rateSchedule.rate(0);
+            } else {
+                if (profile == null) {
+                    profile = profile(readings, from, to);
+                    walks++;
+                }
+                cost = profile.cost(rateSchedule);
+            }
+            PricePlan.DemandCharge demandCharge = pricePlans.get(i).getDemandCharge();
+            if (demandCharge != null) {
+                List<MonthlyPeak> peaks = peaksByWindow.get(demandCharge.getWindowMinutes());
+                if (peaks == null) {
+                    peaks = PeakDemand.peaks(readings, from, to, demandCharge.getWindowMinutes());
+                    peaksByWindow.put(demandCharge.getWindowMinutes(), peaks);
+                    walks++;
+                }
+                cost += demandCost(peaks, demandCharge);
+            }
+            costs.put(pricePlans.get(i).getPlanName(), toCost(cost));
+            event.commit(pricePlans.get(i).getPlanName(), walks == 0 ? 0 : walks * readingsWithin(readings, from, to));
+        }
+        return costs;
+    }
+
+    /**
+     * What the readings within [from, to) actually cost the account: each stretch of the window is priced on the plan
+     * the account was on at the time. Returns null if any of those plans isn't in the catalogue.
+     */
+    public static BigDecimal billedCost(ReadingColumns readings, Instant from, Instant to,
+                                        PricePlanAssignments assignments, PricePlanCatalogue.Snapshot catalogue) {
+        int first = from == null ? 0 : Math.max(assignments.indexAt(from), 0);
+        double cost = 0;
+        for (int i = first; i < assignments.size(); i++) {
+            Instant periodFrom = latest(from, assignments.effectiveFrom(i));
+            Instant periodTo = earliest(to, assignments.effectiveUntil(i));
+            if (periodFrom != null && periodTo != null && !periodFrom.isBefore(periodTo)) {
+                if (to != null && !periodFrom.isBefore(to)) {
+                    break;
+                }
+                continue;
+            }
+            Optional<RateSchedule> rateSchedule = catalogue.rateSchedule(assignments.pricePlanId(i));
+            if (rateSchedule.isEmpty()) {
+                return null;
+            }
+            cost += rateSchedule.get().isFlat()
+                    ? readings.energyKwh(periodFrom, periodTo) * rateSchedule.get().rate(0)
+                    : profile(readings, periodFrom, periodTo).cost(rateSchedule.get());
+            PricePlan.DemandCharge demandCharge = catalogue.find(assignments.pricePlanId(i)).map(PricePlan::getDemandCharge).orElse(null);
+            if (demandCharge != null) {
+                cost += demandCost(PeakDemand.peaks(readings, periodFrom, periodTo, demandCharge.getWindowMinutes()), demandCharge);
+            }
+        }
+        return toCost(cost);
+    }
+
+    /**
+     * Each month's peak at the demand charge's rate per kW.
+     */
+    static double demandCost(List<MonthlyPeak> peaks, PricePlan.DemandCharge demandCharge) {
+        double peakKw = 0;
+        for (MonthlyPeak peak : peaks) {
+            peakKw += peak.kw();
+        }
+        return peakKw * demandCharge.getRatePerKw().doubleValue();
+    }
+
+    private static int readingsWithin(ReadingColumns readings, Instant from, Instant to) {
+        return (to == null ? readings.size() : readings.indexAtOrAfter(to)) - (from == null ? 0 : readings.indexAtOrAfter(from));
+    }
+
+    static BigDecimal toCost(double cost) {
+        return BigDecimal.valueOf(cost).setScale(COST_SCALE, RoundingMode.HALF_UP);
+    }
+
+    private static void addClipped(WeeklyEnergyProfile profile, ReadingColumns readings, int start, int end,
+                                   Instant from, Instant to) {
+        long startSecond = readings.epochSecond(start);
+        int startNano = readings.nano(start);
+        double startKw = readings.kw(start);
+        long endSecond = readings.epochSecond(end);
+        int endNano = readings.nano(end);
+        double endKw = readings.kw(end);
+        double intervalSeconds = EnergyIntegration.secondsBetween(startSecond, startNano, endSecond, endNano);
+        if (to != null && isAfter(endSecond, endNano, to)) {
+            if (!isAfter(to.getEpochSecond(), to.getNano(), startSecond, startNano)) {
+                return;
+            }
+            endKw = EnergyIntegration.interpolate(startKw, endKw, intervalSeconds,
+                    EnergyIntegration.secondsBetween(startSecond, startNano, to.getEpochSecond(), to.getNano()));
+            endSecond = to.getEpochSecond();
+            endNano = to.getNano();
+        }
+        if (from != null && isAfter(from.getEpochSecond(), from.getNano(), startSecond, startNano)) {
+            if (!isAfter(endSecond, endNano, from)) {
+                return;
+            }
+            startKw = EnergyIntegration.interpolate(readings.kw(start), readings.kw(end), intervalSeconds,
+                    EnergyIntegration.secondsBetween(startSecond, startNano, from.getEpochSecond(), from.getNano()));
+            startSecond = from.getEpochSecond();
+            startNano = from.getNano();
+        }
+        EnergyIntegration.integrateByHour(startSecond, startNano, startKw, endSecond, endNano, endKw, profile);
+    }
+
+    private static Instant latest(Instant time, Instant other) {
+        return time == null ? other : other == null || time.isAfter(other) ? time : other;
+    }
+
+    private static Instant earliest(Instant time, Instant other) {
+        return time == null ? other : other == null || time.isBefore(other) ? time : other;
+    }
+
+    private static boolean isAfter(long epochSecond, int nano, Instant other) {
+        return isAfter(epochSecond, nano, other.getEpochSecond(), other.getNano());
+    }
+
+    private static boolean isAfter(long epochSecond, int nano, long otherSecond, int otherNano) {
+        return epochSecond > otherSecond || (epochSecond == otherSecond && nano > otherNano);
+    }
+}
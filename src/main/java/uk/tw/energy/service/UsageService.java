@@ -0,0 +1,67 @@
+package uk.tw.energy.service;
+
+import org.springframework.stereotype.Service;
+import uk.tw.energy.domain.EnergyIntegration;
+import uk.tw.energy.store.ReadingColumns;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static uk.tw.energy.exceptions.Constants.*;
+
+/**
+ * Answers "how much did this meter use between t1 and t2, and what did it cost" from the meter's cumulative
+ * energy column instead of streaming its readings.
+ */
+@Service
+public class UsageService {
+
+    private final MeterReadingService meterReadingService;
+    private final PricePlanCatalogue pricePlanCatalogue;
+    private final AccountService accountService;
+
+    public UsageService(MeterReadingService meterReadingService, PricePlanCatalogue pricePlanCatalogue, AccountService accountService) {
+        this.meterReadingService = meterReadingService;
+        this.pricePlanCatalogue = pricePlanCatalogue;
+        this.accountService = accountService;
+    }
+
+    /**
+     * @param smartMeterId
+     * @param from inclusive start, or null for the first reading
+     * @param to exclusive end, or null for the last reading
+     * @return an empty map when the meter has no readings
+     */
+    public Map<String, Object> getUsage(String smartMeterId, Instant from, Instant to) {
+        Optional<ReadingColumns> readingColumns = meterReadingService.getReadingColumns(smartMeterId);
+        if (!readingColumns.isPresent() || readingColumns.get().isEmpty()) {
+            return Collections.emptyMap();
+        }
+        ReadingColumns readings = readingColumns.get();
+        double energyKwh = readings.energyKwh(from, to);
+
+        Map<String, Object> usage = new LinkedHashMap<>();
+        usage.put(PRICE_PLAN_ID_KEY, accountService.getPricePlanIdForSmartMeterId(smartMeterId));
+        usage.put(FROM, from);
+        usage.put(TO, to);
+        usage.put(CONSUMPTION_KWH_KEY, TariffSimulator.toCost(energyKwh));
+        usage.put(AVERAGE_KW_KEY, TariffSimulator.toCost(averageKw(readings, from, to, energyKwh)));
+        PricePlanCatalogue.Snapshot catalogue = pricePlanCatalogue.current();
+        usage.put(BILLED_COST_KEY, accountService.getPricePlanAssignments(smartMeterId)
+                .map(assignments -> TariffSimulator.billedCost(readings, from, to, assignments, catalogue))
+                .orElse(null));
+        usage.put(PRICE_PLAN_COMPARISONS_KEY, TariffSimulator.priceWindow(readings, from, to, catalogue));
+        return usage;
+    }
+
+    private static double averageKw(ReadingColumns readings, Instant from, Instant to, double energyKwh) {
+        int last = readings.size() - 1;
+        Instant start = from == null || from.isBefore(readings.firstCoveredTime()) ? readings.firstCoveredTime() : from;
+        Instant end = to == null || to.isAfter(readings.time(last)) ? readings.time(last) : to;
+        double seconds = EnergyIntegration.secondsBetween(start.getEpochSecond(), start.getNano(), end.getEpochSecond(), end.getNano());
+        return seconds <= 0 ? 0 : energyKwh / (seconds / EnergyIntegration.SECONDS_PER_HOUR);
+    }
+}
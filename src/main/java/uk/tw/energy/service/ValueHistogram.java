@@ -0,0 +1,101 @@
+package uk.tw.energy.service;
+
+/**
+ * Counts of non-negative values in log buckets 1% wide, from a millionth up to beyond a billion, so a percentile
+ * is a walk over a fixed few thousand buckets however many values went in, and a value can be moved from one bucket
+ * to another when it changes. Not thread-safe; callers guard it.
+ */
+final class ValueHistogram {
+
+    private static final double MIN_VALUE = 1e-6;
+    private static final double GROWTH = 1.01;
+    private static final double LOG_GROWTH = Math.log(GROWTH);
+    // bucket 0 holds zero (and anything negative), bucket 1 everything up to MIN_VALUE
+    private static final int BUCKETS = 2 + (int) Math.ceil(Math.log(1e15) / LOG_GROWTH);
+
+    private final long[] counts = new long[BUCKETS];
+    private long count;
+
+    void add(double value) {
+        counts[bucketOf(value)]++;
+        count++;
+    }
+
+    void remove(double value) {
+        counts[bucketOf(value)]--;
+        count--;
+    }
+
+    void move(double from, double to) {
+        int fromBucket = bucketOf(from);
+        int toBucket = bucketOf(to);
+        if (fromBucket != toBucket) {
+            counts[fromBucket]--;
+            counts[toBucket]++;
+        }
+    }
+
+    /**
+     * Adds every value counted by the other histogram, multiplied by the factor.
+     */
+    void addScaled(ValueHistogram other, double factor) {
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            if (other.counts[bucket] != 0) {
+                counts[bucketOf(valueOf(bucket) * factor)] += other.counts[bucket];
+            }
+        }
+        count += other.count;
+    }
+
+    ValueHistogram copy() {
+        ValueHistogram copy = new ValueHistogram();
+        System.arraycopy(counts, 0, copy.counts, 0, BUCKETS);
+        copy.count = count;
+        return copy;
+    }
+
+    long count() {
+        return count;
+    }
+
+    /**
+     * The value at the given percentile (0-100), to within the 1% width of its bucket, or 0 when empty.
+     */
+    double percentile(double percentile) {
+        if (count <= 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += counts[bucket];
+            if (seen >= rank) {
+                return valueOf(bucket);
+            }
+        }
+        return valueOf(BUCKETS - 1);
+    }
+
+    static int bucketOf(double value) {
+        if (!(value > 0)) {
+            return 0;
+        }
+        if (value <= MIN_VALUE) {
+            return 1;
+        }
+        return (int) Math.min(2 + (long) (Math.log(value / MIN_VALUE) / LOG_GROWTH), BUCKETS - 1);
+    }
+
+    /**
+     * The geometric middle of the bucket.
+     */
+    static double valueOf(int bucket) {
+        if (bucket == 0) {
+            return 0;
+        }
+        if (bucket == 1) {
+            return MIN_VALUE;
+        }
+        return MIN_VALUE * Math.pow(GROWTH, bucket - 2 + 0.5);
+    }
+}
@@ -0,0 +1,16 @@
+package uk.tw.energy.store;
+
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.domain.WeeklyEnergyProfile;
+
+import java.util.List;
+
+/**
+ * What an append changed: readings from {@code firstChangedIndex} onwards are new or were shifted by an out of
+ * order batch, and {@code energyDelta} is how the meter's weekly energy profile moved as a result. {@code appended}
+ * leaves out readings dropped for being older than the meter's evicted history; {@code stored} is the readings that
+ * were appended, in time order.
+ */
+public record AppendResult(int firstChangedIndex, int appended, WeeklyEnergyProfile energyDelta, long version,
+                           List<ElectricityReading> stored) {
+}
@@ -0,0 +1,15 @@
+package uk.tw.energy.store;
+
+/**
+ * Where one block of a meter's readings lives: on the heap as a {@link ReadingBlock}, or spilled to disk as a
+ * {@link SpilledBlock} and read back through the {@link ColdBlockStore} cache when it's needed.
+ */
+interface BlockSource {
+
+    ReadingBlock block();
+
+    /**
+     * Time of the block's last reading; only asked of full blocks.
+     */
+    long lastEpochSecond();
+}
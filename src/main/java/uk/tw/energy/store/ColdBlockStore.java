@@ -0,0 +1,287 @@
+package uk.tw.energy.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Disk storage for sealed reading blocks, so a meter's older history costs disk rather than heap. Blocks are appended
+ * to segment files in a directory of their own and read back through a cache bounded to {@code cacheBytes}.
+ * <p>
+ * The cache evicts least recently used blocks, approximated with the clock algorithm: a read only sets a flag on the
+ * block, and the sweep that makes room gives each flagged block a second chance. That keeps reads of a cached block
+ * as cheap as reads of a block on the heap. Evicting a block only drops the cache's reference, so a reader part way
+ * through it carries on unaffected.
+ * <p>
+ * A segment's file is deleted once every block in it has been evicted by retention or rewritten; its channel stays
+ * open until no block refers to the segment any more, so views taken before then can still read it.
+ * <p>
+ * The store holds a lock on a lock file of its own in its directory for as long as it is open. A process that dies
+ * without closing its store leaves the directory behind with the lock file unlocked, so the next store created in the
+ * same parent deletes it. Directories without that lock file are never touched, whatever their name.
+ */
+public class ColdBlockStore implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(ColdBlockStore.class.getName());
+    private static final Cleaner CLEANER = Cleaner.create();
+    private static final String DIRECTORY_PREFIX = "blocks-";
+    static final String LOCK_FILE = ".cold-block-store.lock";
+
+    private final Path directory;
+    private final long cacheBytes;
+    private final long segmentBytes;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+
+    // all guarded by this
+    private final List<SpilledBlock> resident = new ArrayList<>();
+    private final List<Segment> segments = new ArrayList<>();
+    private int hand;
+    private long residentBytes;
+    private Segment current;
+    private int nextSegment;
+    private long spilledBlocks;
+    private long diskBytes;
+    private long loads;
+    private long cacheEvictions;
+
+    /**
+     * @param parent       directory to create this store's own directory in
+     * @param cacheBytes   upper bound on the heap taken by blocks read back from disk
+     * @param segmentBytes size at which a segment file is closed to new blocks
+     */
+    public ColdBlockStore(Path parent, long cacheBytes, long segmentBytes) throws IOException {
+        Files.createDirectories(parent);
+        deleteAbandonedDirectories(parent);
+        this.directory = Files.createTempDirectory(parent, DIRECTORY_PREFIX);
+        this.lockChannel = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        this.lock = lockChannel.lock();
+        this.cacheBytes = cacheBytes;
+        this.segmentBytes = segmentBytes;
+        logger.info("Spilling sealed reading blocks to " + directory);
+    }
+
+    SpilledBlock spill(ReadingBlock block) {
+        ByteBuffer buffer = ByteBuffer.allocate(block.capacity() * ReadingBlock.BYTES_PER_READING);
+        block.writeTo(buffer);
+        buffer.flip();
+        synchronized (this) {
+            try {
+                if (current == null || current.size + buffer.remaining() > segmentBytes) {
+                    Segment previous = current;
+                    current = new Segment(directory.resolve("segment-" + nextSegment++ + ".blocks"));
+                    segments.add(current);
+                    // release() keeps the current segment even when it's empty, so it goes now it can't be added to
+                    if (previous != null && previous.live == 0) {
+                        delete(previous);
+                    }
+                }
+                long offset = current.size;
+                while (buffer.hasRemaining()) {
+                    current.channel.write(buffer, offset + buffer.position());
+                }
+                current.size += buffer.limit();
+                current.live++;
+                spilledBlocks++;
+                diskBytes += buffer.limit();
+                return new SpilledBlock(this, current, offset, block.capacity(), block.lastEpochSecond());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not spill a reading block to " + directory, e);
+            }
+        }
+    }
+
+    ReadingBlock load(SpilledBlock spilled) {
+        ByteBuffer buffer = ByteBuffer.allocate(spilled.bytes());
+        try {
+            while (buffer.hasRemaining()) {
+                if (spilled.segment.channel.read(buffer, spilled.offset + buffer.position()) < 0) {
+                    throw new IOException("Unexpected end of " + spilled.segment.path);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read a reading block back from " + spilled.segment.path, e);
+        }
+        buffer.flip();
+        ReadingBlock block = ReadingBlock.readFrom(buffer, spilled.capacity);
+        synchronized (this) {
+            // another reader may have loaded it meanwhile
+            if (spilled.resident != null) {
+                return spilled.resident;
+            }
+            spilled.resident = block;
+            spilled.referenced = true;
+            resident.add(spilled);
+            residentBytes += spilled.bytes();
+            loads++;
+            makeRoom();
+        }
+        return block;
+    }
+
+    synchronized void release(Segment segment) {
+        segment.live--;
+        if (segment.live == 0 && segment != current) {
+            delete(segment);
+        }
+    }
+
+    private void delete(Segment segment) {
+        segments.remove(segment);
+        diskBytes -= segment.size;
+        deleteQuietly(segment.path);
+    }
+
+    public synchronized long spilledBlocks() {
+        return spilledBlocks;
+    }
+
+    public synchronized long diskBytes() {
+        return diskBytes;
+    }
+
+    public synchronized long residentBytes() {
+        return residentBytes;
+    }
+
+    /**
+     * Blocks read back from disk, i.e. cache misses.
+     */
+    public synchronized long loads() {
+        return loads;
+    }
+
+    public synchronized long cacheEvictions() {
+        return cacheEvictions;
+    }
+
+    @Override
+    public synchronized void close() {
+        for (Segment segment : segments) {
+            deleteQuietly(segment.path);
+        }
+        segments.clear();
+        try {
+            lock.release();
+            lockChannel.close();
+        } catch (IOException e) {
+            logger.log(Level.FINE, "Could not unlock " + directory, e);
+        }
+        deleteQuietly(directory.resolve(LOCK_FILE));
+        deleteQuietly(directory);
+    }
+
+    /**
+     * Deletes the directories of stores in {@code parent} that are no longer open, i.e. that have a store's lock file
+     * and nobody holds its lock.
+     */
+    private static void deleteAbandonedDirectories(Path parent) throws IOException {
+        try (DirectoryStream<Path> directories = Files.newDirectoryStream(parent, DIRECTORY_PREFIX + "*")) {
+            for (Path candidate : directories) {
+                if (Files.isDirectory(candidate) && isAbandoned(candidate)) {
+                    logger.info("Deleting reading blocks abandoned in " + candidate);
+                    deleteRecursively(candidate);
+                }
+            }
+        }
+    }
+
+    private static boolean isAbandoned(Path candidate) {
+        Path lockFile = candidate.resolve(LOCK_FILE);
+        try {
+            if (!Files.isRegularFile(lockFile)) {
+                // not a store's, or one still starting up
+                return false;
+            }
+            try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.WRITE)) {
+                // closing the channel releases the lock again
+                return channel.tryLock() != null;
+            } catch (OverlappingFileLockException e) {
+                // held by a store open in this JVM
+                return false;
+            }
+        } catch (IOException e) {
+            logger.log(Level.FINE, "Could not tell whether " + candidate + " is still in use", e);
+            return false;
+        }
+    }
+
+    private static void deleteRecursively(Path root) {
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(ColdBlockStore::deleteQuietly);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not delete " + root, e);
+        }
+    }
+
+    /**
+     * Sweeps the clock hand round the cached blocks until they fit, always keeping the one just loaded.
+     */
+    private void makeRoom() {
+        while (residentBytes > cacheBytes && resident.size() > 1) {
+            if (hand >= resident.size()) {
+                hand = 0;
+            }
+            SpilledBlock candidate = resident.get(hand);
+            if (candidate.referenced) {
+                candidate.referenced = false;
+                hand++;
+                continue;
+            }
+            candidate.resident = null;
+            residentBytes -= candidate.bytes();
+            cacheEvictions++;
+            SpilledBlock last = resident.remove(resident.size() - 1);
+            if (hand < resident.size()) {
+                resident.set(hand, last);
+            }
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not delete " + path, e);
+        }
+    }
+
+    /**
+     * One file of spilled blocks. Its channel is closed once the segment is unreachable, i.e. no block refers to it.
+     */
+    static final class Segment {
+
+        final Path path;
+        final FileChannel channel;
+        long size;
+        int live;
+
+        Segment(Path path) throws IOException {
+            this.path = path;
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            FileChannel channel = this.channel;
+            CLEANER.register(this, () -> {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    logger.log(Level.FINE, "Could not close " + path, e);
+                }
+            });
+        }
+    }
+}
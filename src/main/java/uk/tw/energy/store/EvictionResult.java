@@ -0,0 +1,14 @@
+package uk.tw.energy.store;
+
+/**
+ * What one eviction pass over a series did: raw readings dropped (after rolling them up), the hourly totals they
+ * were rolled into, rolled up hours that aged out themselves, and roughly how many bytes of heap that freed.
+ */
+public record EvictionResult(int evictedReadings, int rolledUpHours, int droppedRollupHours, long reclaimedBytes) {
+
+    public static final EvictionResult NONE = new EvictionResult(0, 0, 0, 0);
+
+    public boolean changed() {
+        return evictedReadings > 0 || droppedRollupHours > 0;
+    }
+}
@@ -0,0 +1,174 @@
+package uk.tw.energy.store;
+
+import uk.tw.energy.domain.EnergyIntegration;
+
+import java.util.Arrays;
+
+/**
+ * The energy a meter used in each clock hour before its oldest raw reading, kept once those readings have been
+ * evicted. Like the raw cumulative kWh column it stores the running total at the end of each hour, so it carries on
+ * seamlessly into the raw readings and a window's energy is still two lookups and a subtraction.
+ * <p>
+ * Immutable; eviction builds a new rollup and publishes it with the next {@link ReadingColumns} view. Within an
+ * hour usage is taken as spread evenly, which is all the rollup can know.
+ */
+final class HourlyRollup {
+
+    static final HourlyRollup EMPTY = new HourlyRollup(new long[0], new double[0], 0, 0, 0);
+
+    // an epoch hour and a cumulative kWh per hour
+    static final int BYTES_PER_HOUR = Long.BYTES + Double.BYTES;
+
+    private static final long SECONDS_PER_HOUR = 3600;
+
+    private final long[] epochHours;
+    private final double[] cumulativeKwh;
+    private final double startCumulativeKwh;
+    private final long startEpochSecond;
+    private final int startNano;
+
+    private HourlyRollup(long[] epochHours, double[] cumulativeKwh, double startCumulativeKwh, long startEpochSecond, int startNano) {
+        this.epochHours = epochHours;
+        this.cumulativeKwh = cumulativeKwh;
+        this.startCumulativeKwh = startCumulativeKwh;
+        this.startEpochSecond = startEpochSecond;
+        this.startNano = startNano;
+    }
+
+    int size() {
+        return epochHours.length;
+    }
+
+    boolean isEmpty() {
+        return epochHours.length == 0;
+    }
+
+    long startEpochSecond() {
+        return startEpochSecond;
+    }
+
+    int startNano() {
+        return startNano;
+    }
+
+    double startCumulativeKwh() {
+        return startCumulativeKwh;
+    }
+
+    /**
+     * A rollup with the given hourly energies added on the end. Hours must be ascending and may repeat the current
+     * last hour, whose energy is then added to. The coverage start (the running total and time the rollup starts
+     * from) is only used when it is empty.
+     */
+    HourlyRollup append(long[] hours, double[] kwh, int count, double coverageStartKwh, long coverageStartSecond, int coverageStartNano) {
+        if (count == 0) {
+            return this;
+        }
+        boolean empty = isEmpty();
+        int merged = !empty && hours[0] == epochHours[epochHours.length - 1] ? 1 : 0;
+        long[] newHours = Arrays.copyOf(epochHours, epochHours.length + count - merged);
+        double[] newCumulative = Arrays.copyOf(cumulativeKwh, newHours.length);
+        double running = empty ? coverageStartKwh : cumulativeKwh[cumulativeKwh.length - 1];
+        int slot = epochHours.length - merged;
+        for (int i = 0; i < count; i++, slot++) {
+            running += kwh[i];
+            newHours[slot] = hours[i];
+            newCumulative[slot] = running;
+        }
+        return empty
+                ? new HourlyRollup(newHours, newCumulative, coverageStartKwh, coverageStartSecond, coverageStartNano)
+                : new HourlyRollup(newHours, newCumulative, startCumulativeKwh, startEpochSecond, startNano);
+    }
+
+    /**
+     * Number of hours that start before the given epoch hour, i.e. what {@link #dropBefore(long)} would drop.
+     */
+    int hoursBefore(long epochHour) {
+        int index = Arrays.binarySearch(epochHours, epochHour);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    /**
+     * A rollup without the hours that start before the given epoch hour; the energy they held is gone from windows
+     * but the running total carries on from where they left off.
+     */
+    HourlyRollup dropBefore(long epochHour) {
+        int dropped = hoursBefore(epochHour);
+        if (dropped == 0) {
+            return this;
+        }
+        if (dropped == epochHours.length) {
+            return EMPTY;
+        }
+        return new HourlyRollup(Arrays.copyOfRange(epochHours, dropped, epochHours.length),
+                Arrays.copyOfRange(cumulativeKwh, dropped, cumulativeKwh.length),
+                cumulativeKwh[dropped - 1], epochHours[dropped] * SECONDS_PER_HOUR, 0);
+    }
+
+    /**
+     * kWh used from the start of the meter's history up to the given time, for times before {@code endSecond/endNano}
+     * (the oldest raw reading). Times before the rollup starts are clamped to its start.
+     */
+    double cumulativeKwhAt(long epochSecond, int nano, long endSecond, int endNano) {
+        if (isEmpty() || compare(epochSecond, nano, startEpochSecond, startNano) <= 0) {
+            return startCumulativeKwh;
+        }
+        long epochHour = Math.floorDiv(epochSecond, SECONDS_PER_HOUR);
+        int index = Arrays.binarySearch(epochHours, epochHour);
+        if (index < 0) {
+            // in a gap between rolled up hours, or after the last one
+            int before = -index - 2;
+            return before < 0 ? startCumulativeKwh : cumulativeKwh[before];
+        }
+        double previous = index == 0 ? startCumulativeKwh : cumulativeKwh[index - 1];
+        return previous + (cumulativeKwh[index] - previous) * fractionOfHour(index, epochSecond, nano, endSecond, endNano);
+    }
+
+    /**
+     * Hands the consumer the kWh of each rolled up hour, cut down to the part that falls within [from, to).
+     */
+    void forEachHour(long fromSecond, int fromNano, long toSecond, int toNano, long endSecond, int endNano,
+                     EnergyIntegration.HourlyEnergyConsumer consumer) {
+        int first = hoursBefore(Math.floorDiv(fromSecond, SECONDS_PER_HOUR));
+        for (int i = first; i < epochHours.length && compare(epochHours[i] * SECONDS_PER_HOUR, 0, toSecond, toNano) < 0; i++) {
+            double previous = i == 0 ? startCumulativeKwh : cumulativeKwh[i - 1];
+            double kwh = cumulativeKwh[i] - previous;
+            double fraction = fractionOfHour(i, toSecond, toNano, endSecond, endNano)
+                    - fractionOfHour(i, fromSecond, fromNano, endSecond, endNano);
+            if (kwh * fraction > 0) {
+                consumer.accept(epochHours[i], kwh * fraction);
+            }
+        }
+    }
+
+    /**
+     * How far through the covered part of the hour at {@code index} the given time is, from 0 to 1. The first hour
+     * is covered from the rollup's start and the last up to the oldest raw reading.
+     */
+    private double fractionOfHour(int index, long epochSecond, int nano, long endSecond, int endNano) {
+        long hourStartSecond = epochHours[index] * SECONDS_PER_HOUR;
+        long fromSecond = hourStartSecond;
+        int fromNano = 0;
+        if (index == 0 && compare(startEpochSecond, startNano, fromSecond, fromNano) > 0) {
+            fromSecond = startEpochSecond;
+            fromNano = startNano;
+        }
+        long untilSecond = hourStartSecond + SECONDS_PER_HOUR;
+        int untilNano = 0;
+        if (index == epochHours.length - 1 && compare(endSecond, endNano, untilSecond, untilNano) < 0) {
+            untilSecond = endSecond;
+            untilNano = endNano;
+        }
+        double covered = EnergyIntegration.secondsBetween(fromSecond, fromNano, untilSecond, untilNano);
+        if (covered <= 0) {
+            return compare(epochSecond, nano, fromSecond, fromNano) < 0 ? 0 : 1;
+        }
+        double elapsed = EnergyIntegration.secondsBetween(fromSecond, fromNano, epochSecond, nano);
+        return Math.min(Math.max(elapsed / covered, 0), 1);
+    }
+
+    private static int compare(long epochSecond, int nano, long otherSecond, int otherNano) {
+        int comparison = Long.compare(epochSecond, otherSecond);
+        return comparison != 0 ? comparison : Integer.compare(nano, otherNano);
+    }
+}
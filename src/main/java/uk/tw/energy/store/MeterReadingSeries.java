@@ -0,0 +1,309 @@
+package uk.tw.energy.store;
+
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.domain.EnergyIntegration;
+import uk.tw.energy.domain.WeeklyEnergyProfile;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A single meter's readings, kept in time order in columnar blocks together with the running energy totals.
+ * <p>
+ * Appending integrates only the new intervals, so the cumulative kWh column and the meter's weekly energy profile
+ * are always up to date without rescanning history. Batches that arrive out of order are merged in and the
+ * totals rebuilt from the first reading they displaced. Writers are serialised on the series; readers take a
+ * {@link #columns()} view and never block.
+ * <p>
+ * Old readings can be {@link #evict evicted} a block at a time; their energy is rolled up into hourly totals first,
+ * so windows reaching back before the oldest reading left still add up, and the running totals stay absolute.
+ * Readings that arrive for a time before the oldest reading left are dropped, as the intervals they would change
+ * have already been rolled up.
+ * <p>
+ * The series also keeps the meter's {@link PeakDemand peak demand} per month over each of
+ * {@link #DEMAND_WINDOW_MINUTES}, for pricing demand charges.
+ * <p>
+ * Full blocks older than the recent, frequently read readings can be {@link #spill spilled} to a
+ * {@link ColdBlockStore}, leaving only their place in the series on the heap.
+ */
+public class MeterReadingSeries {
+
+    /**
+     * Window lengths peak demand is tracked over.
+     */
+    public static final List<Integer> DEMAND_WINDOW_MINUTES = List.of(15, 30, 60);
+
+    private static final int INITIAL_BLOCK_CAPACITY = 16;
+    // Dropping rolled up hours copies the rollup, so let a week of them age out before doing it.
+    private static final int ROLLUP_DROP_BATCH_HOURS = 7 * 24;
+
+    private final WeeklyEnergyProfile profile = new WeeklyEnergyProfile();
+    private final PeakDemand peakDemand = new PeakDemand();
+    private volatile ReadingColumns columns = ReadingColumns.EMPTY;
+    private BlockSource[] blocks = new BlockSource[0];
+    private HourlyRollup rollup = HourlyRollup.EMPTY;
+    private int size;
+    // only written under the lock, but read without it so conditional requests never wait on appends
+    private volatile long version;
+
+    /**
+     * Whether a reading is within the range the columns can hold; {@link #append} rejects batches with any that
+     * aren't.
+     */
+    public static boolean isStorable(BigDecimal reading) {
+        return ReadingBlock.fits(reading);
+    }
+
+    public ReadingColumns columns() {
+        return columns;
+    }
+
+    /**
+     * Bumped whenever the readings change, i.e. by every append that stores readings and every eviction.
+     */
+    public long version() {
+        return version;
+    }
+
+    /**
+     * A copy of the kWh the meter has used in each hour of the week, over its whole history.
+     */
+    public synchronized WeeklyEnergyProfile profile() {
+        return profile.copy();
+    }
+
+    /**
+     * The meter's peak demand in each month over windows of the given length, one of {@link #DEMAND_WINDOW_MINUTES}.
+     */
+    public synchronized List<MonthlyPeak> peakDemand(int windowMinutes) {
+        if (!DEMAND_WINDOW_MINUTES.contains(windowMinutes)) {
+            throw new IllegalArgumentException("Peak demand is not tracked over " + windowMinutes + " minutes");
+        }
+        return peakDemand.peaks(windowMinutes);
+    }
+
+    public synchronized AppendResult append(List<ElectricityReading> electricityReadings) {
+        // checked before anything is written, so a bad reading never leaves the series half updated
+        for (ElectricityReading reading : electricityReadings) {
+            if (!isStorable(reading.reading())) {
+                throw new IllegalArgumentException("Reading " + reading.reading() + " is out of range.");
+            }
+        }
+        ReadingColumns before = columns;
+        List<ElectricityReading> batch = new ArrayList<>(electricityReadings);
+        if (!rollup.isEmpty()) {
+            Instant oldest = before.time(0);
+            batch.removeIf(reading -> reading.time().isBefore(oldest));
+        }
+        batch.sort(Comparator.comparing(ElectricityReading::time));
+        if (batch.isEmpty()) {
+            return new AppendResult(size, 0, new WeeklyEnergyProfile(), version, List.of());
+        }
+
+        int firstChangedIndex = before.indexAfter(batch.get(0).time().getEpochSecond(), batch.get(0).time().getNano());
+        WeeklyEnergyProfile energyDelta = new WeeklyEnergyProfile();
+        List<ElectricityReading> toWrite = batch;
+        boolean merged = firstChangedIndex < size;
+        if (merged) {
+            toWrite = merge(before, firstChangedIndex, batch);
+            WeeklyEnergyProfile displaced = new WeeklyEnergyProfile();
+            integrate(before, Math.max(firstChangedIndex - 1, 0), size, displaced);
+            energyDelta.subtract(displaced);
+            truncate(firstChangedIndex);
+        }
+
+        for (ElectricityReading reading : toWrite) {
+            write(reading);
+        }
+        columns = new ReadingColumns(blocks, size, rollup);
+        integrate(columns, Math.max(firstChangedIndex - 1, 0), size, energyDelta);
+        profile.add(energyDelta);
+        peakDemand.update(columns, firstChangedIndex, merged);
+        version++;
+        return new AppendResult(firstChangedIndex, batch.size(), energyDelta, version, Collections.unmodifiableList(batch));
+    }
+
+    /**
+     * Evicts the oldest blocks whose readings were all taken before {@code rawCutoff}, after rolling the energy up to
+     * the oldest reading that stays into hourly totals, then drops rolled up hours from before {@code rollupCutoff}
+     * (null to keep them). The newest block is never evicted, so the running totals always have a reading to carry
+     * on from.
+     *
+     * @param maxBlocks evict at most this many blocks, which bounds how long appends wait on the series
+     */
+    public synchronized EvictionResult evict(Instant rawCutoff, Instant rollupCutoff, int maxBlocks) {
+        int evictedBlocks = 0;
+        while (evictedBlocks < maxBlocks && evictedBlocks < blocks.length - 1
+                && blocks[evictedBlocks].lastEpochSecond() < rawCutoff.getEpochSecond()) {
+            evictedBlocks++;
+        }
+
+        int rolledUpHours = 0;
+        // spilled blocks cost disk, not heap
+        int reclaimedHeapReadings = 0;
+        int evictedReadings = evictedBlocks * ReadingColumns.BLOCK_SIZE;
+        if (evictedBlocks > 0) {
+            HourlyTotals totals = new HourlyTotals();
+            // up to and including the interval that ends at the oldest reading kept, where the rollup hands over
+            integrate(columns, 0, evictedReadings + 1, totals);
+            int hoursBefore = rollup.size();
+            rollup = rollup.append(totals.epochHours, totals.kwh, totals.count,
+                    columns.cumulativeKwh(0), columns.epochSecond(0), columns.nano(0));
+            rolledUpHours = rollup.size() - hoursBefore;
+            for (int i = 0; i < evictedBlocks; i++) {
+                if (blocks[i] instanceof SpilledBlock spilled) {
+                    spilled.release();
+                } else {
+                    reclaimedHeapReadings += ReadingColumns.BLOCK_SIZE;
+                }
+            }
+            blocks = Arrays.copyOfRange(blocks, evictedBlocks, blocks.length);
+            size -= evictedReadings;
+        }
+
+        int droppedRollupHours = 0;
+        if (rollupCutoff != null) {
+            long cutoffHour = Math.floorDiv(rollupCutoff.getEpochSecond(), (long) EnergyIntegration.SECONDS_PER_HOUR);
+            if (rollup.hoursBefore(cutoffHour) >= ROLLUP_DROP_BATCH_HOURS) {
+                droppedRollupHours = rollup.hoursBefore(cutoffHour);
+                rollup = rollup.dropBefore(cutoffHour);
+            }
+        }
+
+        if (evictedReadings == 0 && droppedRollupHours == 0) {
+            return EvictionResult.NONE;
+        }
+        columns = new ReadingColumns(blocks, size, rollup);
+        version++;
+        long reclaimedBytes = (long) reclaimedHeapReadings * ReadingBlock.BYTES_PER_READING
+                + (long) (droppedRollupHours - rolledUpHours) * HourlyRollup.BYTES_PER_HOUR;
+        return new EvictionResult(evictedReadings, rolledUpHours, droppedRollupHours, reclaimedBytes);
+    }
+
+    /**
+     * Moves the oldest blocks still on the heap to the cold store, as long as every reading in them was taken before
+     * {@code cutoff}. Only full blocks other than the newest are spilled, so appends never write to a spilled block.
+     * Views already published keep reading the heap copy; the data is the same either way, so the version is not
+     * bumped.
+     *
+     * @param maxBlocks spill at most this many blocks, which bounds how long appends wait on the series
+     * @return the number of blocks spilled
+     */
+    public synchronized int spill(Instant cutoff, ColdBlockStore coldBlockStore, int maxBlocks) {
+        int spilled = 0;
+        for (int i = 0; i < blocks.length - 1 && spilled < maxBlocks; i++) {
+            if (blocks[i] instanceof SpilledBlock) {
+                continue;
+            }
+            if (blocks[i].lastEpochSecond() >= cutoff.getEpochSecond()) {
+                break;
+            }
+            if (spilled == 0) {
+                blocks = blocks.clone();
+            }
+            blocks[i] = coldBlockStore.spill((ReadingBlock) blocks[i]);
+            spilled++;
+        }
+        if (spilled > 0) {
+            columns = new ReadingColumns(blocks, size, rollup);
+        }
+        return spilled;
+    }
+
+    private void write(ElectricityReading reading) {
+        int blockIndex = size >>> ReadingColumns.BLOCK_SHIFT;
+        int slot = size & ReadingColumns.BLOCK_MASK;
+        if (blockIndex == blocks.length) {
+            blocks = Arrays.copyOf(blocks, blockIndex + 1);
+            // only the first block starts small, so meters with a handful of readings stay cheap
+            blocks[blockIndex] = new ReadingBlock(blockIndex == 0 ? INITIAL_BLOCK_CAPACITY : ReadingColumns.BLOCK_SIZE);
+        } else if (slot == blocks[blockIndex].block().capacity()) {
+            // Published views may share this array, so swap in a copy rather than writing into it.
+            blocks = blocks.clone();
+            blocks[blockIndex] = blocks[blockIndex].block().copy(Math.min(slot * 2, ReadingColumns.BLOCK_SIZE), slot);
+        }
+
+        double cumulativeKwh = 0;
+        if (size > 0) {
+            ReadingBlock previousBlock = blocks[(size - 1) >>> ReadingColumns.BLOCK_SHIFT].block();
+            int previousSlot = (size - 1) & ReadingColumns.BLOCK_MASK;
+            double seconds = EnergyIntegration.secondsBetween(previousBlock.epochSeconds[previousSlot], previousBlock.nanos[previousSlot],
+                    reading.time().getEpochSecond(), reading.time().getNano());
+            cumulativeKwh = previousBlock.cumulativeKwh[previousSlot]
+                    + EnergyIntegration.kwh(previousBlock.kw[previousSlot], reading.reading().doubleValue(), seconds);
+        }
+        blocks[blockIndex].block().set(slot, reading.time().getEpochSecond(), reading.time().getNano(), reading.reading(), cumulativeKwh);
+        size++;
+    }
+
+    /**
+     * Drops everything from the given index so it can be rewritten, copying the block it falls in because
+     * published views still read from it.
+     */
+    private void truncate(int index) {
+        int blockIndex = index >>> ReadingColumns.BLOCK_SHIFT;
+        int slot = index & ReadingColumns.BLOCK_MASK;
+        for (int i = slot == 0 ? blockIndex : blockIndex + 1; i < blocks.length; i++) {
+            if (blocks[i] instanceof SpilledBlock spilled) {
+                spilled.release();
+            }
+        }
+        BlockSource kept = slot == 0 ? null : blocks[blockIndex];
+        blocks = Arrays.copyOf(blocks, slot == 0 ? blockIndex : blockIndex + 1);
+        if (kept != null) {
+            // back on the heap, as it is about to be written to
+            blocks[blockIndex] = kept.block().copy(kept.block().capacity(), slot);
+            if (kept instanceof SpilledBlock spilled) {
+                spilled.release();
+            }
+        }
+        size = index;
+    }
+
+    private static List<ElectricityReading> merge(ReadingColumns existing, int from, List<ElectricityReading> batch) {
+        List<ElectricityReading> merged = new ArrayList<>(existing.size() - from + batch.size());
+        for (int i = from; i < existing.size(); i++) {
+            merged.add(existing.get(i));
+        }
+        merged.addAll(batch);
+        // stable, so readings already stored stay ahead of new readings with the same time
+        merged.sort(Comparator.comparing(ElectricityReading::time));
+        return merged;
+    }
+
+    private static void integrate(ReadingColumns columns, int from, int to, EnergyIntegration.HourlyEnergyConsumer into) {
+        for (int i = from + 1; i < to; i++) {
+            EnergyIntegration.integrateByHour(columns.epochSecond(i - 1), columns.nano(i - 1), columns.kw(i - 1),
+                    columns.epochSecond(i), columns.nano(i), columns.kw(i), into);
+        }
+    }
+
+    /**
+     * Collects integrated energy per clock hour, in the ascending order the integration produces it.
+     */
+    private static final class HourlyTotals implements EnergyIntegration.HourlyEnergyConsumer {
+
+        private long[] epochHours = new long[64];
+        private double[] kwh = new double[64];
+        private int count;
+
+        @Override
+        public void accept(long epochHour, double hourKwh) {
+            if (count > 0 && epochHours[count - 1] == epochHour) {
+                kwh[count - 1] += hourKwh;
+                return;
+            }
+            if (count == epochHours.length) {
+                epochHours = Arrays.copyOf(epochHours, count * 2);
+                kwh = Arrays.copyOf(kwh, count * 2);
+            }
+            epochHours[count] = epochHour;
+            kwh[count++] = hourKwh;
+        }
+    }
+}
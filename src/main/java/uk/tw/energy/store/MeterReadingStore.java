@@ -0,0 +1,76 @@
+package uk.tw.energy.store;
+
+import uk.tw.energy.domain.ElectricityReading;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Every meter's reading series, keyed by smart meter id.
+ * <p>
+ * Meters can also be {@link #seedLazily seeded lazily}: their starting readings are only generated and stored the
+ * first time the meter is looked up, so a large seeded fleet costs nothing at start up.
+ */
+public class MeterReadingStore {
+
+    private final ConcurrentMap<String, MeterReadingSeries> meterAssociatedReadings = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Supplier<List<ElectricityReading>>> seeds = new ConcurrentHashMap<>();
+
+    public Optional<MeterReadingSeries> find(String smartMeterId) {
+        MeterReadingSeries series = meterAssociatedReadings.get(smartMeterId);
+        if (series == null && seeds.containsKey(smartMeterId)) {
+            series = getOrCreate(smartMeterId);
+        }
+        return Optional.ofNullable(series);
+    }
+
+    public MeterReadingSeries getOrCreate(String smartMeterId) {
+        return meterAssociatedReadings.computeIfAbsent(smartMeterId, this::newSeries);
+    }
+
+    /**
+     * Gives the meter the supplied readings when it is first looked up; a meter that already exists is left alone.
+     */
+    public void seedLazily(String smartMeterId, Supplier<List<ElectricityReading>> readings) {
+        if (!meterAssociatedReadings.containsKey(smartMeterId)) {
+            seeds.put(smartMeterId, readings);
+        }
+    }
+
+    public Set<String> smartMeterIds() {
+        if (seeds.isEmpty()) {
+            return Collections.unmodifiableSet(meterAssociatedReadings.keySet());
+        }
+        Set<String> smartMeterIds = new HashSet<>(meterAssociatedReadings.keySet());
+        smartMeterIds.addAll(seeds.keySet());
+        return Collections.unmodifiableSet(smartMeterIds);
+    }
+
+    /**
+     * A live view of every series; iterating it is weakly consistent, so meters added meanwhile may or may not be seen.
+     * Lazily seeded meters that haven't been looked up yet aren't included.
+     */
+    public Collection<MeterReadingSeries> series() {
+        return Collections.unmodifiableCollection(meterAssociatedReadings.values());
+    }
+
+    public int size() {
+        return meterAssociatedReadings.size() + seeds.size();
+    }
+
+    private MeterReadingSeries newSeries(String smartMeterId) {
+        MeterReadingSeries series = new MeterReadingSeries();
+        Supplier<List<ElectricityReading>> seed = seeds.remove(smartMeterId);
+        if (seed != null) {
+            series.append(seed.get());
+        }
+        return series;
+    }
+}
@@ -0,0 +1,11 @@
+package uk.tw.energy.store;
+
+import java.time.Instant;
+import java.time.YearMonth;
+
+/**
+ * A meter's highest average power over any window of a given length in a calendar month (UTC), and when the window
+ * that reached it ended.
+ */
+public record MonthlyPeak(YearMonth month, double kw, Instant windowEnd) {
+}
@@ -0,0 +1,165 @@
+package uk.tw.energy.store;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDate;
+
+/**
+ * Writes readings straight from a {@link ReadingColumns} view as newline delimited JSON, one
+ * {@code {"time":"2023-01-02T00:00:00Z","reading":1.2345}} object per line, formatted the same way Jackson writes an
+ * {@code ElectricityReading}.
+ * <p>
+ * Nothing is materialised per reading: times and readings are formatted from the primitive columns into a fixed
+ * size buffer that is flushed to the stream whenever it fills, so memory stays flat however long the meter's
+ * history is.
+ */
+public class NdjsonReadingWriter {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // the longest line we can write, with room to spare: a 28 character reading (see writeDecimal) and a time with
+    // a 6 digit year and nanoseconds
+    private static final int MAX_LINE_LENGTH = 128;
+    private static final long SECONDS_PER_DAY = 86_400;
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final byte[] digits = new byte[19];
+    private int position;
+    private long cachedEpochDay = Long.MIN_VALUE;
+    private byte[] cachedDate;
+
+    public NdjsonReadingWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Writes the readings at indexes [from, to) and flushes them to the stream.
+     */
+    public void write(ReadingColumns columns, int from, int to) throws IOException {
+        for (int i = from; i < to; i++) {
+            if (position > BUFFER_SIZE - MAX_LINE_LENGTH) {
+                drain();
+            }
+            writeAscii("{\"time\":\"");
+            writeTime(columns.epochSecond(i), columns.nano(i));
+            writeAscii("\",\"reading\":");
+            writeDecimal(columns.unscaledReading(i), columns.readingScale(i));
+            writeAscii("}\n");
+        }
+        drain();
+        out.flush();
+    }
+
+    private void drain() throws IOException {
+        out.write(buffer, 0, position);
+        position = 0;
+    }
+
+    /**
+     * ISO-8601 in UTC, with the fraction of a second in groups of three digits and left out when zero, like
+     * {@code Instant.toString()}.
+     */
+    private void writeTime(long epochSecond, int nano) {
+        long epochDay = Math.floorDiv(epochSecond, SECONDS_PER_DAY);
+        if (epochDay != cachedEpochDay) {
+            // readings arrive in time order, so most lines reuse the previous line's date
+            cachedDate = LocalDate.ofEpochDay(epochDay).toString().getBytes();
+            cachedEpochDay = epochDay;
+        }
+        System.arraycopy(cachedDate, 0, buffer, position, cachedDate.length);
+        position += cachedDate.length;
+
+        int secondOfDay = (int) Math.floorMod(epochSecond, SECONDS_PER_DAY);
+        buffer[position++] = 'T';
+        writeTwoDigits(secondOfDay / 3600);
+        buffer[position++] = ':';
+        writeTwoDigits(secondOfDay / 60 % 60);
+        buffer[position++] = ':';
+        writeTwoDigits(secondOfDay % 60);
+        if (nano != 0) {
+            buffer[position++] = '.';
+            int fractionDigits = nano % 1_000_000 == 0 ? 3 : nano % 1_000 == 0 ? 6 : 9;
+            int fraction = fractionDigits == 3 ? nano / 1_000_000 : fractionDigits == 6 ? nano / 1_000 : nano;
+            writePadded(fraction, fractionDigits);
+        }
+        buffer[position++] = 'Z';
+    }
+
+    /**
+     * {@code BigDecimal.toString()} without building the BigDecimal, which is how Jackson writes it: plain notation,
+     * or scientific when the scale is negative or the value is below 1E-6. Either way at most 28 characters.
+     */
+    private void writeDecimal(long unscaled, int scale) {
+        if (unscaled < 0) {
+            buffer[position++] = '-';
+        }
+        int length = 0;
+        long remaining = unscaled;
+        do {
+            // abs of each remainder rather than of the value, so Long.MIN_VALUE needs no special case
+            digits[length++] = (byte) ('0' + Math.abs(remaining % 10));
+            remaining /= 10;
+        } while (remaining != 0);
+
+        long adjustedExponent = (long) length - 1 - scale;
+        if (scale >= 0 && adjustedExponent >= -6) {
+            int integerDigits = length - scale;
+            if (integerDigits <= 0) {
+                buffer[position++] = '0';
+            }
+            for (int i = length - 1; i >= scale; i--) {
+                buffer[position++] = digits[i];
+            }
+            if (scale > 0) {
+                buffer[position++] = '.';
+                for (int i = integerDigits; i < 0; i++) {
+                    buffer[position++] = '0';
+                }
+                for (int i = Math.min(scale, length) - 1; i >= 0; i--) {
+                    buffer[position++] = digits[i];
+                }
+            }
+            return;
+        }
+        buffer[position++] = digits[length - 1];
+        if (length > 1) {
+            buffer[position++] = '.';
+            for (int i = length - 2; i >= 0; i--) {
+                buffer[position++] = digits[i];
+            }
+        }
+        buffer[position++] = 'E';
+        buffer[position++] = adjustedExponent < 0 ? (byte) '-' : (byte) '+';
+        long exponent = Math.abs(adjustedExponent);
+        if (exponent >= 100) {
+            buffer[position++] = (byte) ('0' + exponent / 100);
+        }
+        if (exponent >= 10) {
+            buffer[position++] = (byte) ('0' + exponent / 10 % 10);
+        }
+        buffer[position++] = (byte) ('0' + exponent % 10);
+    }
+
+    private void writeTwoDigits(int value) {
+        buffer[position++] = (byte) ('0' + value / 10);
+        buffer[position++] = (byte) ('0' + value % 10);
+    }
+
+    private void writePadded(int value, int digits) {
+        for (int i = position + digits - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        position += digits;
+    }
+
+    private void writeAscii(String text) {
+        writeAscii(text, 0, text.length());
+    }
+
+    private void writeAscii(String text, int from, int to) {
+        for (int i = from; i < to; i++) {
+            buffer[position++] = (byte) text.charAt(i);
+        }
+    }
+}
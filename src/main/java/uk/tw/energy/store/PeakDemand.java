@@ -0,0 +1,151 @@
+package uk.tw.energy.store;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A meter's peak demand per calendar month (UTC) for each of {@link MeterReadingSeries#DEMAND_WINDOW_MINUTES}: the
+ * highest average power over a window of that length, taking the window ending at each reading. A window's energy is
+ * two lookups in the cumulative kWh column, so an append only looks at the windows ending at its new readings and the
+ * peaks are always current without rescanning the month. A batch merged in among readings already stored recomputes
+ * the peaks from the start of the month it lands in.
+ * <p>
+ * Only touched with the series held. Evicting readings leaves the peaks alone, the same as the series' other running
+ * totals; windows reaching back before the oldest reading left are measured against the rolled up history.
+ */
+public final class PeakDemand {
+
+    private static final long SECONDS_PER_DAY = 86_400;
+    private static final int WINDOWS = MeterReadingSeries.DEMAND_WINDOW_MINUTES.size();
+
+    // year * 12 + month - 1 of each month with a peak, ascending; peaks are indexed month * WINDOWS + window
+    private int[] months = new int[0];
+    private double[] peakKw = new double[0];
+    private long[] peakEpochSeconds = new long[0];
+    private int count;
+
+    /**
+     * Takes in the windows ending at readings from {@code fromIndex} on.
+     *
+     * @param merged true if the readings from {@code fromIndex} were merged in among readings already stored
+     */
+    void update(ReadingColumns columns, int fromIndex, boolean merged) {
+        if (fromIndex >= columns.size()) {
+            return;
+        }
+        if (merged) {
+            int month = monthOf(columns.epochSecond(fromIndex));
+            dropFrom(month);
+            fromIndex = columns.indexAtOrAfter(firstSecondOf(month), 0);
+        }
+        forEachWindow(columns, fromIndex, columns.size(), null, this::record);
+    }
+
+    /**
+     * Peaks per month for the given window length, oldest month first.
+     */
+    List<MonthlyPeak> peaks(int windowMinutes) {
+        int window = MeterReadingSeries.DEMAND_WINDOW_MINUTES.indexOf(windowMinutes);
+        List<MonthlyPeak> peaks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int slot = i * WINDOWS + window;
+            if (peakEpochSeconds[slot] != Long.MIN_VALUE) {
+                peaks.add(new MonthlyPeak(yearMonth(months[i]), peakKw[slot], Instant.ofEpochSecond(peakEpochSeconds[slot])));
+            }
+        }
+        return peaks;
+    }
+
+    /**
+     * Peaks per month for the given window length over the windows that lie within [from, to), found by walking the
+     * readings in the range; null bounds are open. For ad hoc ranges, where the running peaks don't apply.
+     */
+    public static List<MonthlyPeak> peaks(ReadingColumns columns, Instant from, Instant to, int windowMinutes) {
+        int window = MeterReadingSeries.DEMAND_WINDOW_MINUTES.indexOf(windowMinutes);
+        if (window < 0) {
+            throw new IllegalArgumentException("Peak demand is not tracked over " + windowMinutes + " minutes");
+        }
+        PeakDemand peakDemand = new PeakDemand();
+        int first = from == null ? 0 : columns.indexAtOrAfter(from);
+        int last = to == null ? columns.size() : columns.indexAtOrAfter(to);
+        forEachWindow(columns, first, last, from, (month, w, kw, epochSecond) -> {
+            if (w == window) {
+                peakDemand.record(month, w, kw, epochSecond);
+            }
+        });
+        return peakDemand.peaks(windowMinutes);
+    }
+
+    private static void forEachWindow(ReadingColumns columns, int fromIndex, int toIndex, Instant notBefore, WindowConsumer consumer) {
+        Instant covered = columns.isEmpty() ? null : columns.firstCoveredTime();
+        if (notBefore != null && (covered == null || notBefore.isAfter(covered))) {
+            covered = notBefore;
+        }
+        for (int i = fromIndex; i < toIndex; i++) {
+            long endSecond = columns.epochSecond(i);
+            int endNano = columns.nano(i);
+            int month = monthOf(endSecond);
+            double endKwh = columns.cumulativeKwh(i);
+            for (int w = 0; w < WINDOWS; w++) {
+                int minutes = MeterReadingSeries.DEMAND_WINDOW_MINUTES.get(w);
+                long startSecond = endSecond - minutes * 60L;
+                // a window reaching back before anything is known about usage would understate it
+                if (startSecond < covered.getEpochSecond() || (startSecond == covered.getEpochSecond() && endNano < covered.getNano())) {
+                    continue;
+                }
+                double kw = (endKwh - columns.cumulativeKwhAt(startSecond, endNano)) * 60.0 / minutes;
+                consumer.accept(month, w, kw, endSecond);
+            }
+        }
+    }
+
+    private void record(int month, int window, double kw, long epochSecond) {
+        if (count == 0 || months[count - 1] < month) {
+            if (count == months.length) {
+                int capacity = Math.max(4, count * 2);
+                months = Arrays.copyOf(months, capacity);
+                peakKw = Arrays.copyOf(peakKw, capacity * WINDOWS);
+                peakEpochSeconds = Arrays.copyOf(peakEpochSeconds, capacity * WINDOWS);
+            }
+            months[count] = month;
+            Arrays.fill(peakEpochSeconds, count * WINDOWS, (count + 1) * WINDOWS, Long.MIN_VALUE);
+            count++;
+        }
+        // readings are taken in time order, so the month is almost always the latest
+        int index = months[count - 1] == month ? count - 1 : Arrays.binarySearch(months, 0, count, month);
+        if (index < 0) {
+            return;
+        }
+        int slot = index * WINDOWS + window;
+        if (peakEpochSeconds[slot] == Long.MIN_VALUE || kw > peakKw[slot]) {
+            peakKw[slot] = kw;
+            peakEpochSeconds[slot] = epochSecond;
+        }
+    }
+
+    private void dropFrom(int month) {
+        int index = Arrays.binarySearch(months, 0, count, month);
+        count = index >= 0 ? index : -index - 1;
+    }
+
+    private static int monthOf(long epochSecond) {
+        LocalDate date = LocalDate.ofEpochDay(Math.floorDiv(epochSecond, SECONDS_PER_DAY));
+        return date.getYear() * 12 + date.getMonthValue() - 1;
+    }
+
+    private static long firstSecondOf(int month) {
+        return yearMonth(month).atDay(1).toEpochDay() * SECONDS_PER_DAY;
+    }
+
+    private static YearMonth yearMonth(int month) {
+        return YearMonth.of(Math.floorDiv(month, 12), Math.floorMod(month, 12) + 1);
+    }
+
+    private interface WindowConsumer {
+        void accept(int month, int window, double kw, long epochSecond);
+    }
+}
@@ -0,0 +1,152 @@
+package uk.tw.energy.store;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * One chunk of a meter's reading columns. Readings are kept as primitives rather than {@link BigDecimal} and
+ * {@link java.time.Instant} objects; the reading's unscaled value and scale are stored so it can be rebuilt exactly.
+ */
+final class ReadingBlock implements BlockSource {
+
+    // time, nanos, unscaled reading, scale, kW and cumulative kWh
+    static final int BYTES_PER_READING = Long.BYTES + Integer.BYTES + Long.BYTES + Byte.BYTES + Double.BYTES + Double.BYTES;
+
+    private static final MathContext LONG_PRECISION = new MathContext(18, RoundingMode.HALF_UP);
+
+    final long[] epochSeconds;
+    final int[] nanos;
+    final long[] unscaledReadings;
+    final byte[] readingScales;
+    final double[] kw;
+    final double[] cumulativeKwh;
+
+    ReadingBlock(int capacity) {
+        epochSeconds = new long[capacity];
+        nanos = new int[capacity];
+        unscaledReadings = new long[capacity];
+        readingScales = new byte[capacity];
+        kw = new double[capacity];
+        cumulativeKwh = new double[capacity];
+    }
+
+    private ReadingBlock(ReadingBlock source, int capacity, int used) {
+        epochSeconds = Arrays.copyOf(source.epochSeconds, capacity);
+        nanos = Arrays.copyOf(source.nanos, capacity);
+        unscaledReadings = Arrays.copyOf(source.unscaledReadings, capacity);
+        readingScales = Arrays.copyOf(source.readingScales, capacity);
+        kw = Arrays.copyOf(source.kw, capacity);
+        cumulativeKwh = Arrays.copyOf(source.cumulativeKwh, capacity);
+        if (used < capacity) {
+            Arrays.fill(cumulativeKwh, used, capacity, 0);
+        }
+    }
+
+    int capacity() {
+        return epochSeconds.length;
+    }
+
+    @Override
+    public ReadingBlock block() {
+        return this;
+    }
+
+    @Override
+    public long lastEpochSecond() {
+        return epochSeconds[epochSeconds.length - 1];
+    }
+
+    /**
+     * Writes every slot, column by column, into the buffer, which needs {@code capacity() * BYTES_PER_READING} bytes.
+     */
+    void writeTo(ByteBuffer buffer) {
+        for (long epochSecond : epochSeconds) {
+            buffer.putLong(epochSecond);
+        }
+        for (int nano : nanos) {
+            buffer.putInt(nano);
+        }
+        for (long unscaledReading : unscaledReadings) {
+            buffer.putLong(unscaledReading);
+        }
+        buffer.put(readingScales);
+        for (double value : kw) {
+            buffer.putDouble(value);
+        }
+        for (double value : cumulativeKwh) {
+            buffer.putDouble(value);
+        }
+    }
+
+    static ReadingBlock readFrom(ByteBuffer buffer, int capacity) {
+        ReadingBlock block = new ReadingBlock(capacity);
+        for (int i = 0; i < capacity; i++) {
+            block.epochSeconds[i] = buffer.getLong();
+        }
+        for (int i = 0; i < capacity; i++) {
+            block.nanos[i] = buffer.getInt();
+        }
+        for (int i = 0; i < capacity; i++) {
+            block.unscaledReadings[i] = buffer.getLong();
+        }
+        buffer.get(block.readingScales);
+        for (int i = 0; i < capacity; i++) {
+            block.kw[i] = buffer.getDouble();
+        }
+        for (int i = 0; i < capacity; i++) {
+            block.cumulativeKwh[i] = buffer.getDouble();
+        }
+        return block;
+    }
+
+    ReadingBlock copy(int capacity, int used) {
+        return new ReadingBlock(this, capacity, used);
+    }
+
+    void set(int slot, long epochSecond, int nano, BigDecimal reading, double cumulative) {
+        BigDecimal value = compact(reading);
+        epochSeconds[slot] = epochSecond;
+        nanos[slot] = nano;
+        unscaledReadings[slot] = value.unscaledValue().longValue();
+        readingScales[slot] = (byte) value.scale();
+        kw[slot] = value.doubleValue();
+        cumulativeKwh[slot] = cumulative;
+    }
+
+    /**
+     * Readings with more than 18 significant digits or an extreme scale are rounded so they fit the columns.
+     */
+    static BigDecimal compact(BigDecimal reading) {
+        BigDecimal value = rounded(reading);
+        if (value.scale() < Byte.MIN_VALUE) {
+            throw new IllegalArgumentException("Reading " + reading + " is out of range.");
+        }
+        return value;
+    }
+
+    /**
+     * Whether {@link #compact} can store the reading, i.e. it is smaller than 1E+146.
+     */
+    static boolean fits(BigDecimal reading) {
+        return rounded(reading).scale() >= Byte.MIN_VALUE;
+    }
+
+    private static BigDecimal rounded(BigDecimal reading) {
+        BigDecimal value = reading;
+        if (value.scale() > Byte.MAX_VALUE) {
+            value = value.setScale(Byte.MAX_VALUE, RoundingMode.HALF_UP);
+        }
+        if (value.precision() > LONG_PRECISION.getPrecision()) {
+            value = value.round(LONG_PRECISION);
+        }
+        if (value.scale() < Byte.MIN_VALUE && (value.signum() == 0
+                || value.precision() - value.scale() + Byte.MIN_VALUE <= LONG_PRECISION.getPrecision())) {
+            // e.g. 1E+140, whose digits still fit a long at the smallest scale the columns hold
+            value = value.setScale(Byte.MIN_VALUE);
+        }
+        return value;
+    }
+}
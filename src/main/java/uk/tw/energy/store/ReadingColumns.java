@@ -0,0 +1,228 @@
+package uk.tw.energy.store;
+
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.domain.EnergyIntegration;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An immutable, time ordered view of a meter's readings at one point in time. Alongside the time and reading
+ * columns it carries the cumulative energy (kWh) used from the first reading up to each reading, so the energy
+ * between any two readings is a subtraction.
+ * <p>
+ * Views are cheap to take and stay valid while the series keeps growing: appends only write past the end of a
+ * published view, and anything that rewrites existing readings does so into fresh blocks.
+ * <p>
+ * Once old readings have been evicted the view also carries their {@link HourlyRollup}, and the energy queries
+ * ({@link #cumulativeKwhAt}, {@link #energyKwh}, {@link #forEachRolledUpHour}) answer from it for times before the
+ * oldest reading left. The reading accessors and indexes only ever cover the readings themselves.
+ * <p>
+ * Older blocks may have been spilled to disk; reading from one loads it back through the block cache.
+ */
+public final class ReadingColumns {
+
+    static final int BLOCK_SHIFT = 12;
+    static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+    static final int BLOCK_MASK = BLOCK_SIZE - 1;
+
+    static final ReadingColumns EMPTY = new ReadingColumns(new BlockSource[0], 0, HourlyRollup.EMPTY);
+
+    private final BlockSource[] blocks;
+    private final int size;
+    private final HourlyRollup rollup;
+
+    ReadingColumns(BlockSource[] blocks, int size, HourlyRollup rollup) {
+        this.blocks = blocks;
+        this.size = size;
+        this.rollup = rollup;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long epochSecond(int index) {
+        return blocks[index >>> BLOCK_SHIFT].block().epochSeconds[index & BLOCK_MASK];
+    }
+
+    public int nano(int index) {
+        return blocks[index >>> BLOCK_SHIFT].block().nanos[index & BLOCK_MASK];
+    }
+
+    public Instant time(int index) {
+        return Instant.ofEpochSecond(epochSecond(index), nano(index));
+    }
+
+    public double kw(int index) {
+        return blocks[index >>> BLOCK_SHIFT].block().kw[index & BLOCK_MASK];
+    }
+
+    public long unscaledReading(int index) {
+        return blocks[index >>> BLOCK_SHIFT].block().unscaledReadings[index & BLOCK_MASK];
+    }
+
+    public int readingScale(int index) {
+        return blocks[index >>> BLOCK_SHIFT].block().readingScales[index & BLOCK_MASK];
+    }
+
+    public BigDecimal reading(int index) {
+        return BigDecimal.valueOf(unscaledReading(index), readingScale(index));
+    }
+
+    /**
+     * kWh used between the meter's first ever reading, evicted or not, and the reading at the given index.
+     */
+    public double cumulativeKwh(int index) {
+        return blocks[index >>> BLOCK_SHIFT].block().cumulativeKwh[index & BLOCK_MASK];
+    }
+
+    HourlyRollup rollup() {
+        return rollup;
+    }
+
+    /**
+     * Whether readings have been evicted and rolled up into hourly totals.
+     */
+    public boolean hasRolledUpHistory() {
+        return !rollup.isEmpty();
+    }
+
+    /**
+     * The earliest time usage is known for: the start of the rolled up history if there is any, otherwise the
+     * first reading.
+     */
+    public Instant firstCoveredTime() {
+        return rollup.isEmpty() ? time(0) : Instant.ofEpochSecond(rollup.startEpochSecond(), rollup.startNano());
+    }
+
+    /**
+     * Hands the consumer the kWh of each rolled up hour within [from, to), cut at the bounds; null bounds are open.
+     * Together with the intervals between the readings themselves this covers the meter's whole known history.
+     */
+    public void forEachRolledUpHour(Instant from, Instant to, EnergyIntegration.HourlyEnergyConsumer consumer) {
+        if (rollup.isEmpty() || size == 0) {
+            return;
+        }
+        long fromSecond = from == null ? rollup.startEpochSecond() : from.getEpochSecond();
+        int fromNano = from == null ? rollup.startNano() : from.getNano();
+        long toSecond = to == null ? epochSecond(0) : to.getEpochSecond();
+        int toNano = to == null ? nano(0) : to.getNano();
+        rollup.forEachHour(fromSecond, fromNano, toSecond, toNano, epochSecond(0), nano(0), consumer);
+    }
+
+    public ElectricityReading get(int index) {
+        return new ElectricityReading(time(index), reading(index));
+    }
+
+    /**
+     * A read-only list backed by the columns; readings are materialised as they are accessed.
+     */
+    public List<ElectricityReading> asList() {
+        return new AbstractList<>() {
+            @Override
+            public ElectricityReading get(int index) {
+                if (index < 0 || index >= size) {
+                    throw new IndexOutOfBoundsException(index);
+                }
+                return ReadingColumns.this.get(index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    public List<ElectricityReading> toList() {
+        return new ArrayList<>(asList());
+    }
+
+    /**
+     * Index of the first reading taken at or after the given time, or {@link #size()} if there is none.
+     */
+    public int indexAtOrAfter(long epochSecond, int nano) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compareTime(middle, epochSecond, nano) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Index of the first reading taken strictly after the given time, or {@link #size()} if there is none.
+     */
+    public int indexAfter(long epochSecond, int nano) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compareTime(middle, epochSecond, nano) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * kWh used from the first reading up to the given time, interpolating within the interval the time falls in.
+     * Times before the first reading (or the rolled up history) or after the last are clamped, as nothing is known
+     * about usage out there.
+     * Two of these and a subtraction give the energy of any window in O(log n).
+     */
+    public double cumulativeKwhAt(long epochSecond, int nano) {
+        if (size == 0) {
+            return 0;
+        }
+        int next = indexAfter(epochSecond, nano);
+        if (next == 0) {
+            return rollup.isEmpty() ? cumulativeKwh(0) : rollup.cumulativeKwhAt(epochSecond, nano, epochSecond(0), nano(0));
+        }
+        if (next == size) {
+            return cumulativeKwh(size - 1);
+        }
+        int previous = next - 1;
+        double intervalSeconds = EnergyIntegration.secondsBetween(epochSecond(previous), nano(previous), epochSecond(next), nano(next));
+        double elapsedSeconds = EnergyIntegration.secondsBetween(epochSecond(previous), nano(previous), epochSecond, nano);
+        double kwAtTime = EnergyIntegration.interpolate(kw(previous), kw(next), intervalSeconds, elapsedSeconds);
+        return cumulativeKwh(previous) + EnergyIntegration.kwh(kw(previous), kwAtTime, elapsedSeconds);
+    }
+
+    /**
+     * kWh used within [from, to); null bounds mean the start of the known history and the last reading respectively.
+     */
+    public double energyKwh(Instant from, Instant to) {
+        if (size == 0) {
+            return 0;
+        }
+        double historyStart = rollup.isEmpty() ? cumulativeKwh(0) : rollup.startCumulativeKwh();
+        double start = from == null ? historyStart : cumulativeKwhAt(from.getEpochSecond(), from.getNano());
+        double end = to == null ? cumulativeKwh(size - 1) : cumulativeKwhAt(to.getEpochSecond(), to.getNano());
+        return Math.max(end - start, 0);
+    }
+
+    public int indexAtOrAfter(Instant time) {
+        return indexAtOrAfter(time.getEpochSecond(), time.getNano());
+    }
+
+    private int compareTime(int index, long epochSecond, int nano) {
+        int comparison = Long.compare(epochSecond(index), epochSecond);
+        return comparison != 0 ? comparison : Integer.compare(nano(index), nano);
+    }
+}
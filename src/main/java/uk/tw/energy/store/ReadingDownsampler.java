@@ -0,0 +1,93 @@
+package uk.tw.energy.store;
+
+/**
+ * Picks the readings that best keep the shape of a meter's series when it is drawn with far fewer points, using
+ * Largest-Triangle-Three-Buckets: the first and last readings are always kept, the ones between are split into equal
+ * buckets, and from each bucket the reading kept is the one making the largest triangle with the reading kept from
+ * the bucket before and the average of the bucket after. Peaks and troughs survive where plain striding would skip
+ * them.
+ * <p>
+ * Works straight off the columns in one pass, reading each reading's time and kW at most twice, and only the chosen
+ * readings are ever materialised.
+ */
+public final class ReadingDownsampler {
+
+    /**
+     * The fewest points a downsample can have: the first reading, the last, and one bucket between them.
+     */
+    public static final int MIN_POINTS = 3;
+
+    private ReadingDownsampler() {
+    }
+
+    /**
+     * Indexes of the readings to keep from [from, to), in time order.
+     *
+     * @param points how many readings to keep, at least {@link #MIN_POINTS}; every index is kept if there are no more
+     *               readings than this
+     */
+    public static int[] largestTriangleThreeBuckets(ReadingColumns columns, int from, int to, int points) {
+        if (points < MIN_POINTS) {
+            throw new IllegalArgumentException("At least " + MIN_POINTS + " points are needed, not " + points);
+        }
+        int count = to - from;
+        if (count <= points) {
+            int[] all = new int[Math.max(count, 0)];
+            for (int i = 0; i < all.length; i++) {
+                all[i] = from + i;
+            }
+            return all;
+        }
+
+        // times are taken relative to the first reading so the areas are not swamped by the size of epoch seconds
+        long originSecond = columns.epochSecond(from);
+        int buckets = points - 2;
+        int[] selected = new int[points];
+        selected[0] = from;
+        int previous = from;
+        for (int bucket = 0; bucket < buckets; bucket++) {
+            int bucketStart = bucketStart(from, count, buckets, bucket);
+            int bucketEnd = bucketStart(from, count, buckets, bucket + 1);
+            // the last bucket looks ahead to the last reading, which is always kept
+            int nextEnd = bucket + 1 == buckets ? to : bucketStart(from, count, buckets, bucket + 2);
+            double nextX = 0;
+            double nextY = 0;
+            for (int i = bucketEnd; i < nextEnd; i++) {
+                nextX += x(columns, i, originSecond);
+                nextY += columns.kw(i);
+            }
+            nextX /= nextEnd - bucketEnd;
+            nextY /= nextEnd - bucketEnd;
+
+            double previousX = x(columns, previous, originSecond);
+            double previousY = columns.kw(previous);
+            double largestArea = -1;
+            int chosen = bucketStart;
+            for (int i = bucketStart; i < bucketEnd; i++) {
+                // twice the triangle's area, which is all the comparison needs
+                double area = Math.abs((previousX - nextX) * (columns.kw(i) - previousY)
+                        - (previousX - x(columns, i, originSecond)) * (nextY - previousY));
+                if (area > largestArea) {
+                    largestArea = area;
+                    chosen = i;
+                }
+            }
+            selected[bucket + 1] = chosen;
+            previous = chosen;
+        }
+        selected[points - 1] = to - 1;
+        return selected;
+    }
+
+    /**
+     * First index of the given bucket, the readings between the first and last being shared out as evenly as whole
+     * readings allow; bucket {@code buckets} starts at the last reading.
+     */
+    private static int bucketStart(int from, int count, int buckets, int bucket) {
+        return from + 1 + (int) ((long) bucket * (count - 2) / buckets);
+    }
+
+    private static double x(ReadingColumns columns, int index, long originSecond) {
+        return (columns.epochSecond(index) - originSecond) + columns.nano(index) / 1e9;
+    }
+}
@@ -0,0 +1,54 @@
+package uk.tw.energy.store;
+
+/**
+ * A sealed block that has been written to disk. While the {@link ColdBlockStore} cache holds it the block is read
+ * straight from memory; otherwise the first read loads it back in.
+ */
+final class SpilledBlock implements BlockSource {
+
+    final ColdBlockStore.Segment segment;
+    final long offset;
+    final int capacity;
+    private final ColdBlockStore coldBlockStore;
+    private final long lastEpochSecond;
+
+    // managed by the cache: the loaded block, and whether it has been read since the cache last swept past it
+    volatile ReadingBlock resident;
+    boolean referenced;
+
+    SpilledBlock(ColdBlockStore coldBlockStore, ColdBlockStore.Segment segment, long offset, int capacity, long lastEpochSecond) {
+        this.coldBlockStore = coldBlockStore;
+        this.segment = segment;
+        this.offset = offset;
+        this.capacity = capacity;
+        this.lastEpochSecond = lastEpochSecond;
+    }
+
+    @Override
+    public ReadingBlock block() {
+        ReadingBlock block = resident;
+        if (block == null) {
+            return coldBlockStore.load(this);
+        }
+        if (!referenced) {
+            referenced = true;
+        }
+        return block;
+    }
+
+    @Override
+    public long lastEpochSecond() {
+        return lastEpochSecond;
+    }
+
+    int bytes() {
+        return capacity * ReadingBlock.BYTES_PER_READING;
+    }
+
+    /**
+     * The series no longer holds this block; its disk space goes once nothing in its segment is held.
+     */
+    void release() {
+        coldBlockStore.release(segment);
+    }
+}
@@ -0,0 +1,182 @@
+package uk.tw.energy.stream;
+
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Fans events out to server-sent event subscribers, each of which follows one smart meter or {@link #ALL} of them.
+ * <p>
+ * Publishing never blocks: an event is put on each subscriber's bounded buffer and a small pool of sender threads
+ * writes it to the connection. A subscriber whose buffer fills up isn't keeping up, so it is disconnected rather than
+ * being allowed to hold events (or the publisher) back; it can reconnect and carry on from the live stream.
+ */
+public class SseBroadcaster {
+
+    public static final String ALL = "*";
+
+    private static final Logger logger = Logger.getLogger(SseBroadcaster.class.getName());
+
+    private final String name;
+    private final int bufferSize;
+    private final long timeoutMillis;
+    private final ExecutorService sender;
+    private final ConcurrentMap<String, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    private final AtomicLong droppedSubscribers = new AtomicLong();
+
+    /**
+     * @param name          names the sender threads
+     * @param bufferSize    events a subscriber may fall behind by before it is disconnected
+     * @param timeoutMillis how long a subscription stays open, after which clients reconnect
+     * @param senderThreads threads writing to subscribers' connections
+     */
+    public SseBroadcaster(String name, int bufferSize, long timeoutMillis, int senderThreads) {
+        this.name = name;
+        this.bufferSize = bufferSize;
+        this.timeoutMillis = timeoutMillis;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.sender = Executors.newFixedThreadPool(senderThreads, runnable -> {
+            Thread thread = new Thread(runnable, name + "-sender-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @param key a smart meter id, or {@link #ALL}
+     */
+    public SseEmitter subscribe(String key) {
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        Subscriber subscriber = new Subscriber(key, emitter);
+        subscribers.computeIfAbsent(key, ignored -> ConcurrentHashMap.newKeySet()).add(subscriber);
+        subscriberCount.incrementAndGet();
+        emitter.onCompletion(subscriber::close);
+        emitter.onTimeout(subscriber::close);
+        emitter.onError(error -> subscriber.close());
+        return emitter;
+    }
+
+    /**
+     * True when anyone would receive an event published for the key, so publishers can skip building it.
+     */
+    public boolean hasSubscribers(String key) {
+        return isFollowed(key) || isFollowed(ALL);
+    }
+
+    /**
+     * Queues the event for the key's subscribers and those following {@link #ALL}.
+     */
+    public void publish(String key, String eventName, Object data) {
+        if (subscriberCount.get() == 0) {
+            return;
+        }
+        Message message = new Message(eventName, data);
+        offer(subscribers.get(key), message);
+        if (!ALL.equals(key)) {
+            offer(subscribers.get(ALL), message);
+        }
+    }
+
+    public int subscriberCount() {
+        return subscriberCount.get();
+    }
+
+    /**
+     * Subscribers disconnected for falling too far behind.
+     */
+    public long droppedSubscribers() {
+        return droppedSubscribers.get();
+    }
+
+    private boolean isFollowed(String key) {
+        Set<Subscriber> following = subscribers.get(key);
+        return following != null && !following.isEmpty();
+    }
+
+    private void offer(Set<Subscriber> following, Message message) {
+        if (following == null) {
+            return;
+        }
+        for (Subscriber subscriber : following) {
+            subscriber.offer(message);
+        }
+    }
+
+    private record Message(String eventName, Object data) {
+    }
+
+    private final class Subscriber {
+
+        private final String key;
+        private final SseEmitter emitter;
+        private final BlockingQueue<Message> buffer = new ArrayBlockingQueue<>(bufferSize);
+        private final AtomicBoolean sending = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Subscriber(String key, SseEmitter emitter) {
+            this.key = key;
+            this.emitter = emitter;
+        }
+
+        void offer(Message message) {
+            if (closed.get()) {
+                return;
+            }
+            if (!buffer.offer(message)) {
+                droppedSubscribers.incrementAndGet();
+                logger.info("Disconnecting a slow " + name + " subscriber to " + key + " after " + bufferSize + " unsent events");
+                close();
+                emitter.complete();
+                return;
+            }
+            if (sending.compareAndSet(false, true)) {
+                sender.execute(this::send);
+            }
+        }
+
+        /**
+         * Runs on a sender thread, one at a time per subscriber so events go out in order.
+         */
+        private void send() {
+            try {
+                Message message;
+                while (!closed.get() && (message = buffer.poll()) != null) {
+                    emitter.send(SseEmitter.event().name(message.eventName()).data(message.data(), MediaType.APPLICATION_JSON));
+                }
+            } catch (Exception e) {
+                // the client went away
+                close();
+                emitter.completeWithError(e);
+            } finally {
+                sending.set(false);
+            }
+            // an event offered while this was finishing up would otherwise wait for the next one
+            if (!closed.get() && !buffer.isEmpty() && sending.compareAndSet(false, true)) {
+                sender.execute(this::send);
+            }
+        }
+
+        void close() {
+            if (closed.compareAndSet(false, true)) {
+                Set<Subscriber> following = subscribers.get(key);
+                if (following != null) {
+                    following.remove(this);
+                }
+                subscriberCount.decrementAndGet();
+                buffer.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package uk.tw.energy.admission;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AdaptiveConcurrencyLimitTest {
+
+    @Test
+    public void shouldRefusePermitsBeyondTheLimit() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(2, 1, 10, 50, TimeUnit.MILLISECONDS);
+
+        assertThat(limit.tryAcquire()).isTrue();
+        assertThat(limit.tryAcquire()).isTrue();
+        assertThat(limit.tryAcquire()).isFalse();
+        assertThat(limit.inFlight()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldRaiseTheLimitWhileRequestsFinishWithinTheTarget() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(2, 1, 10, 50, TimeUnit.MILLISECONDS);
+
+        for (int round = 0; round < 10; round++) {
+            while (limit.tryAcquire()) {
+            }
+            for (int inFlight = limit.inFlight(); inFlight > 0; inFlight--) {
+                limit.release(1, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        assertThat(limit.limit()).isGreaterThan(2).isLessThanOrEqualTo(10);
+    }
+
+    @Test
+    public void shouldCutTheLimitOnceForABurstOfSlowRequests() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(10, 1, 10, 1, TimeUnit.HOURS);
+        for (int i = 0; i < 5; i++) {
+            limit.tryAcquire();
+        }
+
+        for (int i = 0; i < 5; i++) {
+            limit.release(2, TimeUnit.HOURS);
+        }
+
+        assertThat(limit.limit()).isEqualTo(9);
+        assertThat(limit.inFlight()).isZero();
+    }
+
+    @Test
+    public void shouldHandAReleasedPermitToAWaitingCaller() throws Exception {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(1, 1, 1, 50, TimeUnit.MILLISECONDS);
+        limit.tryAcquire();
+
+        CompletableFuture<Boolean> waiter = CompletableFuture.supplyAsync(() -> {
+            try {
+                return limit.tryAcquire(10, TimeUnit.SECONDS, 1);
+            } catch (InterruptedException e) {
+                return false;
+            }
+        });
+        Thread.sleep(20);
+        limit.release(1, TimeUnit.MILLISECONDS);
+
+        assertThat(waiter.get(10, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    public void shouldGiveUpWaitingAfterTheTimeoutOrWhenTooManyAreWaiting() throws Exception {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(1, 1, 1, 50, TimeUnit.MILLISECONDS);
+        limit.tryAcquire();
+
+        assertThat(limit.tryAcquire(10, TimeUnit.MILLISECONDS, 1)).isFalse();
+        assertThat(limit.tryAcquire(10, TimeUnit.SECONDS, 0)).isFalse();
+    }
+}
@@ -0,0 +1,113 @@
+package uk.tw.energy.admission;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AdmissionControlFilterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    // two requests in flight in total, of which analytics may use one
+    private final AdmissionControlFilter filter = new AdmissionControlFilter(meterRegistry, true, 2, 0.5,
+            Duration.ofSeconds(1), Duration.ofSeconds(1), Duration.ZERO, 0, 4);
+
+    @Test
+    public void shouldOnlyLimitKnownEndpoints() {
+        assertThat(filter.shouldNotFilter(new MockHttpServletRequest("POST", "/readings/store"))).isFalse();
+        assertThat(filter.shouldNotFilter(new MockHttpServletRequest("GET", "/readings/read/smart-meter-0"))).isFalse();
+        assertThat(filter.shouldNotFilter(new MockHttpServletRequest("GET", "/readings/live"))).isTrue();
+        assertThat(filter.shouldNotFilter(new MockHttpServletRequest("GET", "/alerts/stream"))).isTrue();
+        assertThat(filter.shouldNotFilter(new MockHttpServletRequest("GET", "/actuator/health"))).isTrue();
+    }
+
+    @Test
+    public void shouldRejectAnalyticsBeyondItsShareWithRetryAfter() throws Exception {
+        MockHttpServletResponse rejected = new MockHttpServletResponse();
+        FilterChain whileAnalyticsInFlight = (request, response) ->
+                filter.doFilterInternal(new MockHttpServletRequest("GET", "/usage/smart-meter-1"), rejected, new MockFilterChain());
+
+        filter.doFilterInternal(new MockHttpServletRequest("GET", "/price-plans/compare-all/smart-meter-0"),
+                new MockHttpServletResponse(), whileAnalyticsInFlight);
+
+        assertThat(rejected.getStatus()).isEqualTo(503);
+        assertThat(rejected.getHeader("Retry-After")).isEqualTo(AdmissionControlFilter.RETRY_AFTER_SECONDS);
+        assertThat(rejected.getContentAsString()).contains("\"error\"");
+        assertThat(meterRegistry.get("http.admission.rejected").tag("endpoint", "usage").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldAdmitReadingsWhileAnalyticsHasUsedItsShare() throws Exception {
+        MockFilterChain storeChain = new MockFilterChain();
+        MockHttpServletResponse storeResponse = new MockHttpServletResponse();
+        FilterChain whileAnalyticsInFlight = (request, response) ->
+                filter.doFilterInternal(new MockHttpServletRequest("POST", "/readings/store"), storeResponse, storeChain);
+
+        filter.doFilterInternal(new MockHttpServletRequest("GET", "/usage/smart-meter-0"),
+                new MockHttpServletResponse(), whileAnalyticsInFlight);
+
+        assertThat(storeChain.getRequest()).isNotNull();
+        assertThat(storeResponse.getStatus()).isEqualTo(200);
+        assertThat(meterRegistry.get("http.admission.service").tag("endpoint", "readings.store").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("http.admission.queue").tag("endpoint", "usage").timer().totalTime(TimeUnit.NANOSECONDS))
+                .isGreaterThanOrEqualTo(0);
+    }
+
+    @Test
+    public void shouldHoldAStreamedResponsesPermitUntilTheBodyIsWritten() throws Exception {
+        MockHttpServletRequest request = streamRequest();
+
+        filter.doFilterInternal(request, new MockHttpServletResponse(), (req, res) -> req.startAsync());
+
+        assertThat(filter.inFlight()).isEqualTo(1);
+        request.getAsyncContext().complete();
+        assertThat(filter.inFlight()).isZero();
+        assertThat(meterRegistry.get("http.admission.service").tag("endpoint", "readings.stream").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("http.admission.async").tag("endpoint", "readings.stream").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldHoldStreamsToAFixedLimitHoweverLongTheyTake() throws Exception {
+        SimpleMeterRegistry streamRegistry = new SimpleMeterRegistry();
+        AdmissionControlFilter streams = new AdmissionControlFilter(streamRegistry, true, 10, 1.0,
+                Duration.ofSeconds(1), Duration.ofMillis(1), Duration.ZERO, 0, 2);
+        for (int i = 0; i < 5; i++) {
+            MockHttpServletRequest request = streamRequest();
+            streams.doFilterInternal(request, new MockHttpServletResponse(), (req, res) -> req.startAsync());
+            // far longer than the analytics target latency
+            Thread.sleep(5);
+            request.getAsyncContext().complete();
+        }
+
+        MockHttpServletRequest first = streamRequest();
+        MockHttpServletRequest second = streamRequest();
+        MockHttpServletResponse third = new MockHttpServletResponse();
+        streams.doFilterInternal(first, new MockHttpServletResponse(), (req, res) -> req.startAsync());
+        streams.doFilterInternal(second, new MockHttpServletResponse(), (req, res) -> req.startAsync());
+        streams.doFilterInternal(streamRequest(), third, new MockFilterChain());
+
+        assertThat(streamRegistry.get("http.admission.limit").tag("endpoint", "readings.stream").gauge().value()).isEqualTo(2);
+        assertThat(third.getStatus()).isEqualTo(503);
+        double streamed = streamRegistry.get("http.admission.async").tag("endpoint", "readings.stream").timer()
+                .totalTime(TimeUnit.MILLISECONDS);
+        assertThat(streamed).isGreaterThanOrEqualTo(25);
+        assertThat(streamRegistry.get("http.admission.service").tag("endpoint", "readings.stream").timer()
+                .totalTime(TimeUnit.MILLISECONDS)).isLessThan(streamed);
+        first.getAsyncContext().complete();
+        second.getAsyncContext().complete();
+        assertThat(streams.inFlight()).isZero();
+    }
+
+    private static MockHttpServletRequest streamRequest() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/readings/stream/smart-meter-0");
+        request.setAsyncSupported(true);
+        return request;
+    }
+}
@@ -9,7 +9,7 @@ import java.util.List;
 
 public class MeterReadingsBuilder {
 
-    private static final String DEFAULT_METER_ID = "id";
+    private static final String DEFAULT_METER_ID = "smart-meter-id";
 
     private String smartMeterId = DEFAULT_METER_ID;
     private List<ElectricityReading> electricityReadings = new ArrayList<>();
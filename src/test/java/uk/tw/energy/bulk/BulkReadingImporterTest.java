@@ -0,0 +1,141 @@
+package uk.tw.energy.bulk;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.service.MeterReadingService;
+import uk.tw.energy.store.MeterReadingStore;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class BulkReadingImporterTest {
+
+    private static final Instant START = Instant.parse("2023-01-02T00:00:00Z");
+
+    @TempDir
+    Path directory;
+
+    private final MeterReadingStore store = new MeterReadingStore();
+
+    @Test
+    public void shouldRoundTripEveryMeterThroughCsv() throws IOException {
+        shouldRoundTripEveryMeterThrough(directory.resolve("readings.csv"));
+    }
+
+    @Test
+    public void shouldRoundTripEveryMeterThroughTheBinaryFormat() throws IOException {
+        shouldRoundTripEveryMeterThrough(directory.resolve("readings.readings"));
+    }
+
+    @Test
+    public void shouldSkipTheHeaderAndCountMalformedLines() throws IOException {
+        Path file = directory.resolve("backfill.csv");
+        Files.writeString(file, """
+                smartMeterId,time,reading
+                smart-meter-0,1672531200,0.5\r
+                meter,2023-01-01T00:30:00Z,1.0
+                smart-meter-0,2023-01-01T01:00:00Z,lots
+
+                smart-meter-0,2023-01-01T02:00:00.250Z,1.5""");
+
+        BulkTransferResult result = new BulkReadingImporter(new MeterReadingService(store), 2, 16).importFile(file);
+
+        assertThat(result.readings()).isEqualTo(2);
+        assertThat(result.rejected()).isEqualTo(2);
+        assertThat(store.find("smart-meter-0").orElseThrow().columns().toList()).containsExactly(
+                new ElectricityReading(Instant.parse("2023-01-01T00:00:00Z"), new BigDecimal("0.5")),
+                new ElectricityReading(Instant.parse("2023-01-01T02:00:00.250Z"), new BigDecimal("1.5")));
+    }
+
+    @Test
+    public void shouldCountTimesAndReadingsOutOfRangeAsRejected() throws IOException {
+        Path file = directory.resolve("backfill.csv");
+        Files.writeString(file, """
+                smart-meter-0,1672531200,0.5
+                smart-meter-0,99999999999999999,1.0
+                smart-meter-0,1672534800,1E+200
+                smart-meter-0,1672538400,1.5""");
+
+        BulkTransferResult result = new BulkReadingImporter(new MeterReadingService(store), 2, 1024).importFile(file);
+
+        assertThat(result.readings()).isEqualTo(2);
+        assertThat(result.rejected()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldCountBinaryTimesAndReadingsOutOfRangeAsRejected() throws IOException {
+        byte[] id = "smart-meter-0".getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(ReadingFileFormat.BINARY_HEADER_BYTES + Short.BYTES + id.length
+                + Integer.BYTES + 3 * ReadingFileFormat.BINARY_READING_BYTES);
+        buffer.putInt(ReadingFileFormat.BINARY_MAGIC).putInt(ReadingFileFormat.BINARY_VERSION)
+                .putShort((short) id.length).put(id).putInt(3);
+        buffer.putLong(START.getEpochSecond()).putInt(0).putLong(5).put((byte) 1);
+        buffer.putLong(Long.MAX_VALUE).putInt(0).putLong(5).put((byte) 1);
+        buffer.putLong(START.getEpochSecond() + 60).putInt(0).putLong(Long.MAX_VALUE).put((byte) -128);
+        Path file = directory.resolve("backfill.readings");
+        Files.write(file, buffer.array());
+
+        BulkTransferResult result = new BulkReadingImporter(new MeterReadingService(store), 2, 1024).importFile(file);
+
+        assertThat(result.readings()).isEqualTo(1);
+        assertThat(result.rejected()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldRefuseABinaryFileWithARunThatDoesNotFit() throws IOException {
+        for (int count : new int[]{-1, 2}) {
+            byte[] id = "smart-meter-0".getBytes(StandardCharsets.UTF_8);
+            ByteBuffer buffer = ByteBuffer.allocate(ReadingFileFormat.BINARY_HEADER_BYTES + Short.BYTES + id.length
+                    + Integer.BYTES + ReadingFileFormat.BINARY_READING_BYTES);
+            buffer.putInt(ReadingFileFormat.BINARY_MAGIC).putInt(ReadingFileFormat.BINARY_VERSION)
+                    .putShort((short) id.length).put(id).putInt(count);
+            buffer.putLong(START.getEpochSecond()).putInt(0).putLong(5).put((byte) 1);
+            Path file = directory.resolve("corrupt.readings");
+            Files.write(file, buffer.array());
+
+            assertThatThrownBy(() -> new BulkReadingImporter(new MeterReadingService(store), 2, 1024).importFile(file))
+                    .isInstanceOf(IOException.class)
+                    .hasMessageContaining("offset " + ReadingFileFormat.BINARY_HEADER_BYTES);
+        }
+    }
+
+    private void shouldRoundTripEveryMeterThrough(Path file) throws IOException {
+        MeterReadingService meterReadingService = new MeterReadingService(store);
+        for (int meter = 0; meter < 5; meter++) {
+            meterReadingService.appendReadings("smart-meter-" + meter, minuteReadings(meter, 3 * BulkReadingExporter.RUN_READINGS + meter));
+        }
+
+        BulkTransferResult exported = new BulkReadingExporter(store, 3).exportFile(file);
+        MeterReadingStore imported = new MeterReadingStore();
+        // small chunks, so meters are split across chunks and waves
+        BulkTransferResult result = new BulkReadingImporter(new MeterReadingService(imported), 3, 64 * 1024).importFile(file);
+
+        assertThat(exported.readings()).isEqualTo(result.readings());
+        assertThat(result.meters()).isEqualTo(5);
+        assertThat(result.rejected()).isZero();
+        for (int meter = 0; meter < 5; meter++) {
+            String smartMeterId = "smart-meter-" + meter;
+            assertThat(imported.find(smartMeterId).orElseThrow().columns().toList())
+                    .isEqualTo(store.find(smartMeterId).orElseThrow().columns().toList());
+        }
+    }
+
+    private static List<ElectricityReading> minuteReadings(int meter, int count) {
+        List<ElectricityReading> readings = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            readings.add(new ElectricityReading(START.plusSeconds(60L * i), BigDecimal.valueOf(i * 7L + meter, 4)));
+        }
+        return readings;
+    }
+}
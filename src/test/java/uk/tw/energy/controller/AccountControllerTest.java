@@ -0,0 +1,58 @@
+package uk.tw.energy.controller;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import uk.tw.energy.domain.PricePlanAssignments;
+import uk.tw.energy.domain.PricePlanSwitch;
+import uk.tw.energy.domain.PricePlanSwitchRequest;
+import uk.tw.energy.exceptions.InvalidParametersException;
+import uk.tw.energy.service.AccountService;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static uk.tw.energy.exceptions.Constants.*;
+
+public class AccountControllerTest {
+
+    private static final String SMART_METER_ID = "smart-meter-0";
+
+    private AccountController accountController;
+
+    @BeforeEach
+    public void setUp() {
+        accountController = new AccountController(new AccountService(Map.of(SMART_METER_ID, "price-plan-0")));
+    }
+
+    @Test
+    public void shouldSwitchPlansAndListTheAccountsAssignments() {
+        Instant effectiveFrom = Instant.parse("2023-01-02T00:00:00Z");
+        ResponseEntity<Map<String, Object>> switched = accountController.switchPricePlans(new PricePlanSwitchRequest(effectiveFrom,
+                List.of(new PricePlanSwitch(SMART_METER_ID, "price-plan-1", null))));
+
+        ResponseEntity<Map<String, Object>> response = accountController.pricePlanAssignments(SMART_METER_ID);
+
+        assertThat(switched.getBody().get(SWITCHED_KEY)).isEqualTo(1);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBody().get(PRICE_PLAN_ID_KEY)).isEqualTo("price-plan-1");
+        assertThat(response.getBody().get(PRICE_PLAN_ASSIGNMENTS_KEY)).isEqualTo(List.of(
+                new PricePlanAssignments.Assignment("price-plan-0", null, 0),
+                new PricePlanAssignments.Assignment("price-plan-1", effectiveFrom, 1)));
+    }
+
+    @Test
+    public void givenNoSwitchesShouldRejectTheRequest() {
+        assertThatThrownBy(() -> accountController.switchPricePlans(new PricePlanSwitchRequest(null, List.of())))
+                .isInstanceOf(InvalidParametersException.class);
+    }
+
+    @Test
+    public void givenUnknownAccountShouldReturnNoContent() {
+        assertThat(accountController.pricePlanAssignments("smart-meter-99").getStatusCode()).isEqualTo(HttpStatus.NO_CONTENT);
+    }
+}
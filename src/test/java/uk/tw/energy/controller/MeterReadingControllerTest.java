@@ -3,46 +3,59 @@ package uk.tw.energy.controller;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import uk.tw.energy.builders.MeterReadingsBuilder;
 import uk.tw.energy.domain.ElectricityReading;
 import uk.tw.energy.domain.MeterReadings;
+import uk.tw.energy.exceptions.InvalidParametersException;
 import uk.tw.energy.service.MeterReadingService;
+import uk.tw.energy.store.MeterReadingStore;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Optional;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
+import static uk.tw.energy.exceptions.Constants.*;
 
 public class MeterReadingControllerTest {
 
-    private static final String SMART_METER_ID = "10101010";
+    private static final String SMART_METER_ID = "smart-meter-10";
     private MeterReadingController meterReadingController;
     private MeterReadingService meterReadingService;
+    private MeterReadingStore meterReadingStore;
 
     @BeforeEach
     public void setUp() {
-        this.meterReadingService = new MeterReadingService(new HashMap<>());
+        this.meterReadingStore = new MeterReadingStore();
+        this.meterReadingService = new MeterReadingService(meterReadingStore);
         this.meterReadingController = new MeterReadingController(meterReadingService);
     }
 
     @Test
     public void givenNoMeterIdIsSuppliedWhenStoringShouldReturnErrorResponse() {
         MeterReadings meterReadings = new MeterReadings(null, Collections.emptyList());
-        assertThat(meterReadingController.storeReadings(meterReadings).getStatusCode()).isEqualTo(HttpStatus.INTERNAL_SERVER_ERROR);
+        assertThat(meterReadingController.storeMeterReadings(meterReadings, null).getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
     }
 
     @Test
     public void givenEmptyMeterReadingShouldReturnErrorResponse() {
         MeterReadings meterReadings = new MeterReadings(SMART_METER_ID, Collections.emptyList());
-        assertThat(meterReadingController.storeReadings(meterReadings).getStatusCode()).isEqualTo(HttpStatus.INTERNAL_SERVER_ERROR);
+        assertThat(meterReadingController.storeMeterReadings(meterReadings, null).getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
     }
 
     @Test
     public void givenNullReadingsAreSuppliedWhenStoringShouldReturnErrorResponse() {
         MeterReadings meterReadings = new MeterReadings(SMART_METER_ID, null);
-        assertThat(meterReadingController.storeReadings(meterReadings).getStatusCode()).isEqualTo(HttpStatus.INTERNAL_SERVER_ERROR);
+        assertThat(meterReadingController.storeMeterReadings(meterReadings, null).getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
     }
 
     @Test
@@ -55,12 +68,13 @@ public class MeterReadingControllerTest {
                 .generateElectricityReadings()
                 .build();
 
-        meterReadingController.storeReadings(meterReadings);
-        meterReadingController.storeReadings(otherMeterReadings);
+        meterReadingController.storeMeterReadings(meterReadings, null);
+        meterReadingController.storeMeterReadings(otherMeterReadings, null);
 
         List<ElectricityReading> expectedElectricityReadings = new ArrayList<>();
         expectedElectricityReadings.addAll(meterReadings.electricityReadings());
         expectedElectricityReadings.addAll(otherMeterReadings.electricityReadings());
+        expectedElectricityReadings.sort(Comparator.comparing(ElectricityReading::time));
 
         assertThat(meterReadingService.getReadings(SMART_METER_ID).get()).isEqualTo(expectedElectricityReadings);
     }
@@ -71,18 +85,112 @@ public class MeterReadingControllerTest {
                 .generateElectricityReadings()
                 .build();
 
-        MeterReadings otherMeterReadings = new MeterReadingsBuilder().setSmartMeterId("00001")
+        MeterReadings otherMeterReadings = new MeterReadingsBuilder().setSmartMeterId("smart-meter-11")
                 .generateElectricityReadings()
                 .build();
 
-        meterReadingController.storeReadings(meterReadings);
-        meterReadingController.storeReadings(otherMeterReadings);
+        meterReadingController.storeMeterReadings(meterReadings, null);
+        meterReadingController.storeMeterReadings(otherMeterReadings, null);
 
         assertThat(meterReadingService.getReadings(SMART_METER_ID).get()).isEqualTo(meterReadings.electricityReadings());
     }
 
     @Test
-    public void givenMeterIdThatIsNotRecognisedShouldReturnNotFound() {
-        assertThat(meterReadingController.readReadings(SMART_METER_ID).getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+    public void givenMeterIdThatIsNotRecognisedShouldReturnNoContent() {
+        assertThat(meterReadingController.readReadings(SMART_METER_ID, null, null).getStatusCode()).isEqualTo(HttpStatus.NO_CONTENT);
+    }
+
+    @Test
+    public void givenPointsShouldReturnThatManyReadingsIncludingTheFirstAndLast() {
+        List<ElectricityReading> readings = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            readings.add(new ElectricityReading(Instant.parse("2023-01-02T00:00:00Z").plusSeconds(60L * i), BigDecimal.valueOf(i % 7)));
+        }
+        meterReadingController.storeMeterReadings(new MeterReadings(SMART_METER_ID, readings), null);
+
+        List<ElectricityReading> downsampled = meterReadingController.readReadings(SMART_METER_ID, 50, null).getBody().get();
+
+        assertThat(downsampled.size()).isEqualTo(50);
+        assertThat(downsampled.get(0)).isEqualTo(readings.get(0));
+        assertThat(downsampled.get(49)).isEqualTo(readings.get(499));
+    }
+
+    @Test
+    public void givenAnUnchangedETagShouldReturnNotModifiedUntilReadingsAreStored() {
+        meterReadingController.storeMeterReadings(new MeterReadings(SMART_METER_ID, List.of(
+                new ElectricityReading(Instant.parse("2023-01-02T00:00:00Z"), new BigDecimal("0.5")))), null);
+        String eTag = meterReadingController.readReadings(SMART_METER_ID, null, null).getHeaders().getETag();
+
+        ResponseEntity<Optional<List<ElectricityReading>>> unchanged = meterReadingController.readReadings(SMART_METER_ID, null, eTag);
+        meterReadingController.storeMeterReadings(new MeterReadings(SMART_METER_ID, List.of(
+                new ElectricityReading(Instant.parse("2023-01-02T01:00:00Z"), new BigDecimal("1.5")))), null);
+        ResponseEntity<Optional<List<ElectricityReading>>> changed = meterReadingController.readReadings(SMART_METER_ID, null, eTag);
+
+        assertThat(unchanged.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(unchanged.getBody()).isNull();
+        assertThat(changed.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(changed.getHeaders().getETag()).isNotEqualTo(eTag);
+        assertThat(changed.getBody().get().size()).isEqualTo(2);
+    }
+
+    @Test
+    public void givenTooFewPointsShouldRejectTheRequest() {
+        assertThatThrownBy(() -> meterReadingController.readReadings(SMART_METER_ID, 2, null))
+                .isInstanceOf(InvalidParametersException.class);
+    }
+
+    @Test
+    public void givenAWindowShouldStreamTheReadingsInItAsNdjson() throws IOException {
+        meterReadingController.storeMeterReadings(new MeterReadings(SMART_METER_ID, List.of(
+                new ElectricityReading(Instant.parse("2023-01-02T00:00:00Z"), new BigDecimal("0.5")),
+                new ElectricityReading(Instant.parse("2023-01-02T01:00:00Z"), new BigDecimal("1.5")),
+                new ElectricityReading(Instant.parse("2023-01-02T02:00:00Z"), new BigDecimal("2.5")))), null);
+
+        ResponseEntity<StreamingResponseBody> response = meterReadingController.streamReadings(SMART_METER_ID,
+                Instant.parse("2023-01-02T00:30:00Z"), Instant.parse("2023-01-02T02:00:00Z"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(out.toString()).isEqualTo("{\"time\":\"2023-01-02T01:00:00Z\",\"reading\":1.5}\n");
+    }
+
+    @Test
+    public void givenARetriedBatchWithTheSameIdempotencyKeyShouldStoreItOnce() {
+        MeterReadings meterReadings = new MeterReadings(SMART_METER_ID, List.of(
+                new ElectricityReading(Instant.parse("2023-01-02T00:00:00Z"), new BigDecimal("0.5"))));
+
+        ResponseEntity<String> first = meterReadingController.storeMeterReadings(meterReadings, "batch-1");
+        ResponseEntity<String> retry = meterReadingController.storeMeterReadings(meterReadings, "batch-1");
+
+        assertThat(first.getBody()).isEqualTo(READINGS_STORED_SUCCESS);
+        assertThat(retry.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(retry.getBody()).isEqualTo(READINGS_ALREADY_STORED);
+        assertThat(meterReadingController.readReadings(SMART_METER_ID, null, null).getBody().get()).isEqualTo(meterReadings.electricityReadings());
+    }
+
+    @Test
+    public void givenReadingsOlderThanTheRetainedHistoryShouldSayHowManyWereDropped() {
+        Instant start = Instant.parse("2023-01-02T00:00:00Z");
+        List<ElectricityReading> readings = new ArrayList<>();
+        for (int i = 0; i < 4096 + 10; i++) {
+            readings.add(new ElectricityReading(start.plusSeconds(60L * i), new BigDecimal("0.5")));
+        }
+        meterReadingController.storeMeterReadings(new MeterReadings(SMART_METER_ID, readings), null);
+        meterReadingStore.find(SMART_METER_ID).orElseThrow().evict(start.plusSeconds(60L * 2 * 4096), null, 10);
+
+        ResponseEntity<String> response = meterReadingController.storeMeterReadings(new MeterReadings(SMART_METER_ID, List.of(
+                new ElectricityReading(start, new BigDecimal("5.0")),
+                new ElectricityReading(start.plusSeconds(60L * (4096 + 10)), new BigDecimal("0.5")))), null);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getHeaders().getFirst(READINGS_STORED_HEADER)).isEqualTo("1");
+        assertThat(response.getHeaders().getFirst(READINGS_DROPPED_HEADER)).isEqualTo("1");
+        assertThat(response.getBody()).isEqualTo(String.format(READINGS_PARTLY_STORED, 1, 2, 1));
+    }
+
+    @Test
+    public void givenMeterIdThatIsNotRecognisedWhenStreamingShouldReturnNoContent() {
+        assertThat(meterReadingController.streamReadings(SMART_METER_ID, null, null).getStatusCode()).isEqualTo(HttpStatus.NO_CONTENT);
     }
 }
@@ -4,10 +4,15 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.http.HttpStatus;
 import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.domain.MeterReadings;
 import uk.tw.energy.domain.PricePlan;
+import uk.tw.energy.domain.PricePlanSwitch;
+import uk.tw.energy.domain.PricePlanSwitchRequest;
 import uk.tw.energy.service.AccountService;
 import uk.tw.energy.service.MeterReadingService;
+import uk.tw.energy.service.PricePlanCatalogue;
 import uk.tw.energy.service.PricePlanService;
+import uk.tw.energy.store.MeterReadingStore;
 
 import java.math.BigDecimal;
 import java.time.Instant;
@@ -19,32 +24,29 @@ import java.util.List;
 import java.util.Map;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static uk.tw.energy.exceptions.Constants.*;
 
 public class PricePlanComparatorControllerTest {
 
-    private static final String PRICE_PLAN_1_ID = "test-supplier";
-    private static final String PRICE_PLAN_2_ID = "best-supplier";
-    private static final String PRICE_PLAN_3_ID = "second-best-supplier";
-    private static final String SMART_METER_ID = "smart-meter-id";
     private PricePlanComparatorController controller;
     private MeterReadingService meterReadingService;
     private AccountService accountService;
 
     @BeforeEach
     public void setUp() {
-        meterReadingService = new MeterReadingService(new HashMap<>());
+        meterReadingService = new MeterReadingService(new MeterReadingStore());
         PricePlan pricePlan1 = new PricePlan(PRICE_PLAN_1_ID, null, BigDecimal.TEN, null);
         PricePlan pricePlan2 = new PricePlan(PRICE_PLAN_2_ID, null, BigDecimal.ONE, null);
         PricePlan pricePlan3 = new PricePlan(PRICE_PLAN_3_ID, null, BigDecimal.valueOf(2), null);
 
         List<PricePlan> pricePlans = Arrays.asList(pricePlan1, pricePlan2, pricePlan3);
-        PricePlanService tariffService = new PricePlanService(pricePlans, meterReadingService);
 
         Map<String, String> meterToTariffs = new HashMap<>();
         meterToTariffs.put(SMART_METER_ID, PRICE_PLAN_1_ID);
         accountService = new AccountService(meterToTariffs);
 
-        controller = new PricePlanComparatorController(tariffService, accountService);
+        PricePlanService tariffService = new PricePlanService(new PricePlanCatalogue(pricePlans), meterReadingService, accountService);
+        controller = new PricePlanComparatorController(tariffService);
     }
 
     @Test
@@ -52,17 +54,17 @@ public class PricePlanComparatorControllerTest {
 
         ElectricityReading electricityReading = new ElectricityReading(Instant.now().minusSeconds(3600), BigDecimal.valueOf(15.0));
         ElectricityReading otherReading = new ElectricityReading(Instant.now(), BigDecimal.valueOf(5.0));
-        meterReadingService.storeReadings(SMART_METER_ID, Arrays.asList(electricityReading, otherReading));
+        meterReadingService.storeReadings(new MeterReadings(SMART_METER_ID, Arrays.asList(electricityReading, otherReading)));
 
         Map<String, BigDecimal> expectedPricePlanToCost = new HashMap<>();
-        expectedPricePlanToCost.put(PRICE_PLAN_1_ID, BigDecimal.valueOf(100.0));
-        expectedPricePlanToCost.put(PRICE_PLAN_2_ID, BigDecimal.valueOf(10.0));
-        expectedPricePlanToCost.put(PRICE_PLAN_3_ID, BigDecimal.valueOf(20.0));
+        expectedPricePlanToCost.put(PRICE_PLAN_1_ID, new BigDecimal("100.0000"));
+        expectedPricePlanToCost.put(PRICE_PLAN_2_ID, new BigDecimal("10.0000"));
+        expectedPricePlanToCost.put(PRICE_PLAN_3_ID, new BigDecimal("20.0000"));
 
         Map<String, Object> expected = new HashMap<>();
-        expected.put(PricePlanComparatorController.PRICE_PLAN_ID_KEY, PRICE_PLAN_1_ID);
-        expected.put(PricePlanComparatorController.PRICE_PLAN_COMPARISONS_KEY, expectedPricePlanToCost);
-        assertThat(controller.calculatedCostForEachPricePlan(SMART_METER_ID).getBody()).isEqualTo(expected);
+        expected.put(PRICE_PLAN_ID_KEY, PRICE_PLAN_1_ID);
+        expected.put(PRICE_PLAN_COMPARISONS_KEY, expectedPricePlanToCost);
+        assertThat(controller.calculatedCostForEachPricePlan(SMART_METER_ID, null).getBody()).isEqualTo(expected);
     }
 
     @Test
@@ -70,12 +72,12 @@ public class PricePlanComparatorControllerTest {
 
         ElectricityReading electricityReading = new ElectricityReading(Instant.now().minusSeconds(1800), BigDecimal.valueOf(35.0));
         ElectricityReading otherReading = new ElectricityReading(Instant.now(), BigDecimal.valueOf(3.0));
-        meterReadingService.storeReadings(SMART_METER_ID, Arrays.asList(electricityReading, otherReading));
+        meterReadingService.storeReadings(new MeterReadings(SMART_METER_ID, Arrays.asList(electricityReading, otherReading)));
 
         List<Map.Entry<String, BigDecimal>> expectedPricePlanToCost = new ArrayList<>();
-        expectedPricePlanToCost.add(new AbstractMap.SimpleEntry<>(PRICE_PLAN_2_ID, BigDecimal.valueOf(38.0)));
-        expectedPricePlanToCost.add(new AbstractMap.SimpleEntry<>(PRICE_PLAN_3_ID, BigDecimal.valueOf(76.0)));
-        expectedPricePlanToCost.add(new AbstractMap.SimpleEntry<>(PRICE_PLAN_1_ID, BigDecimal.valueOf(380.0)));
+        expectedPricePlanToCost.add(new AbstractMap.SimpleEntry<>(PRICE_PLAN_2_ID, new BigDecimal("9.5000")));
+        expectedPricePlanToCost.add(new AbstractMap.SimpleEntry<>(PRICE_PLAN_3_ID, new BigDecimal("19.0000")));
+        expectedPricePlanToCost.add(new AbstractMap.SimpleEntry<>(PRICE_PLAN_1_ID, new BigDecimal("95.0000")));
 
         assertThat(controller.recommendCheapestPricePlans(SMART_METER_ID, null).getBody()).isEqualTo(expectedPricePlanToCost);
     }
@@ -86,11 +88,11 @@ public class PricePlanComparatorControllerTest {
 
         ElectricityReading electricityReading = new ElectricityReading(Instant.now().minusSeconds(2700), BigDecimal.valueOf(5.0));
         ElectricityReading otherReading = new ElectricityReading(Instant.now(), BigDecimal.valueOf(20.0));
-        meterReadingService.storeReadings(SMART_METER_ID, Arrays.asList(electricityReading, otherReading));
+        meterReadingService.storeReadings(new MeterReadings(SMART_METER_ID, Arrays.asList(electricityReading, otherReading)));
 
         List<Map.Entry<String, BigDecimal>> expectedPricePlanToCost = new ArrayList<>();
-        expectedPricePlanToCost.add(new AbstractMap.SimpleEntry<>(PRICE_PLAN_2_ID, BigDecimal.valueOf(16.7)));
-        expectedPricePlanToCost.add(new AbstractMap.SimpleEntry<>(PRICE_PLAN_3_ID, BigDecimal.valueOf(33.4)));
+        expectedPricePlanToCost.add(new AbstractMap.SimpleEntry<>(PRICE_PLAN_2_ID, new BigDecimal("9.3750")));
+        expectedPricePlanToCost.add(new AbstractMap.SimpleEntry<>(PRICE_PLAN_3_ID, new BigDecimal("18.7500")));
 
         assertThat(controller.recommendCheapestPricePlans(SMART_METER_ID, 2).getBody()).isEqualTo(expectedPricePlanToCost);
     }
@@ -100,18 +102,40 @@ public class PricePlanComparatorControllerTest {
 
         ElectricityReading electricityReading = new ElectricityReading(Instant.now().minusSeconds(3600), BigDecimal.valueOf(25.0));
         ElectricityReading otherReading = new ElectricityReading(Instant.now(), BigDecimal.valueOf(3.0));
-        meterReadingService.storeReadings(SMART_METER_ID, Arrays.asList(electricityReading, otherReading));
+        meterReadingService.storeReadings(new MeterReadings(SMART_METER_ID, Arrays.asList(electricityReading, otherReading)));
 
         List<Map.Entry<String, BigDecimal>> expectedPricePlanToCost = new ArrayList<>();
-        expectedPricePlanToCost.add(new AbstractMap.SimpleEntry<>(PRICE_PLAN_2_ID, BigDecimal.valueOf(14.0)));
-        expectedPricePlanToCost.add(new AbstractMap.SimpleEntry<>(PRICE_PLAN_3_ID, BigDecimal.valueOf(28.0)));
-        expectedPricePlanToCost.add(new AbstractMap.SimpleEntry<>(PRICE_PLAN_1_ID, BigDecimal.valueOf(140.0)));
+        expectedPricePlanToCost.add(new AbstractMap.SimpleEntry<>(PRICE_PLAN_2_ID, new BigDecimal("14.0000")));
+        expectedPricePlanToCost.add(new AbstractMap.SimpleEntry<>(PRICE_PLAN_3_ID, new BigDecimal("28.0000")));
+        expectedPricePlanToCost.add(new AbstractMap.SimpleEntry<>(PRICE_PLAN_1_ID, new BigDecimal("140.0000")));
 
         assertThat(controller.recommendCheapestPricePlans(SMART_METER_ID, 5).getBody()).isEqualTo(expectedPricePlanToCost);
     }
 
     @Test
-    public void givenNoMatchingMeterIdShouldReturnNotFound() {
-        assertThat(controller.calculatedCostForEachPricePlan("not-found").getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+    public void givenNoMatchingMeterIdShouldReturnNoContent() {
+        assertThat(controller.calculatedCostForEachPricePlan("not-found", null).getStatusCode()).isEqualTo(HttpStatus.NO_CONTENT);
+    }
+
+    @Test
+    public void givenASingleReadingShouldCostNothingRatherThanFail() {
+        meterReadingService.storeReadings(new MeterReadings(SMART_METER_ID,
+                List.of(new ElectricityReading(Instant.now(), BigDecimal.valueOf(5.0)))));
+
+        assertThat(controller.calculatedCostForEachPricePlan(SMART_METER_ID, null).getStatusCode()).isEqualTo(HttpStatus.OK);
+    }
+
+    @Test
+    public void givenAnUnchangedETagShouldReturnNotModifiedUntilThePlanChanges() {
+        meterReadingService.storeReadings(new MeterReadings(SMART_METER_ID, Arrays.asList(
+                new ElectricityReading(Instant.now().minusSeconds(3600), BigDecimal.valueOf(15.0)),
+                new ElectricityReading(Instant.now(), BigDecimal.valueOf(5.0)))));
+        String eTag = controller.calculatedCostForEachPricePlan(SMART_METER_ID, null).getHeaders().getETag();
+
+        assertThat(controller.calculatedCostForEachPricePlan(SMART_METER_ID, eTag).getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+
+        accountService.switchPricePlans(new PricePlanSwitchRequest(null, List.of(new PricePlanSwitch(SMART_METER_ID, PRICE_PLAN_2_ID, null))));
+
+        assertThat(controller.calculatedCostForEachPricePlan(SMART_METER_ID, eTag).getStatusCode()).isEqualTo(HttpStatus.OK);
     }
 }
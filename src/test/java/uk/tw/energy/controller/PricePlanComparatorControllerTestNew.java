@@ -8,13 +8,16 @@ import org.mockito.Mock;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import uk.tw.energy.exceptions.InvalidParametersException;
 import uk.tw.energy.exceptions.NoReadingsExistForMeterId;
 import uk.tw.energy.service.PricePlanService;
 
 import java.math.BigDecimal;
+import java.time.Instant;
 import java.util.*;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.when;
 import static uk.tw.energy.exceptions.Constants.PRICE_PLAN_COMPARISONS_KEY;
 import static uk.tw.energy.exceptions.Constants.PRICE_PLAN_ID_KEY;
@@ -57,7 +60,7 @@ public class PricePlanComparatorControllerTestNew {
         Map<String, Object> pricePlanComparisons = createSamplePricePlanComparisons();
         when(pricePlanService.getCostForEachPricePlan(smartMeterId)).thenReturn(pricePlanComparisons);
 
-        ResponseEntity<Map<String, Object>> response = controller.calculatedCostForEachPricePlan(smartMeterId);
+        ResponseEntity<Map<String, Object>> response = controller.calculatedCostForEachPricePlan(smartMeterId, null);
 
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertEquals(pricePlanComparisons, response.getBody());
@@ -68,7 +71,7 @@ public class PricePlanComparatorControllerTestNew {
         String smartMeterId = INVALID_METER_ID;
         when(pricePlanService.getCostForEachPricePlan(smartMeterId)).thenThrow(NoReadingsExistForMeterId.class);
 
-        ResponseEntity<Map<String, Object>> response = controller.calculatedCostForEachPricePlan(smartMeterId);
+        ResponseEntity<Map<String, Object>> response = controller.calculatedCostForEachPricePlan(smartMeterId, null);
 
         assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, response.getStatusCode());
         assertEquals(Collections.singletonMap(ERROR, HttpStatus.INTERNAL_SERVER_ERROR.value() + "null"), response.getBody());
@@ -81,7 +84,7 @@ public class PricePlanComparatorControllerTestNew {
 
         when(pricePlanService.getCostForEachPricePlan(smartMeterId)).thenReturn(responseMap);
 
-        ResponseEntity<Map<String, Object>> response = controller.calculatedCostForEachPricePlan(smartMeterId);
+        ResponseEntity<Map<String, Object>> response = controller.calculatedCostForEachPricePlan(smartMeterId, null);
 
         assertEquals(HttpStatus.NO_CONTENT, response.getStatusCode());
         assertEquals(responseMap, response.getBody());
@@ -141,6 +144,27 @@ public class PricePlanComparatorControllerTestNew {
         assertEquals(BigDecimal.ZERO, errorEntry.getValue());
     }
 
+    @Test
+    public void testSimulationWithValidData() {
+        Instant from = Instant.parse("2023-01-01T00:00:00Z");
+        Instant to = Instant.parse("2023-02-01T00:00:00Z");
+        Map<String, Object> simulation = createSamplePricePlanComparisons();
+        when(pricePlanService.getSimulatedCosts(VALID_METER_ID, from, to)).thenReturn(simulation);
+
+        ResponseEntity<Map<String, Object>> response = controller.simulatePricePlans(VALID_METER_ID, from, to);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(simulation, response.getBody());
+    }
+
+    @Test
+    public void testSimulationWithInvertedDateRange() {
+        Instant from = Instant.parse("2023-02-01T00:00:00Z");
+        Instant to = Instant.parse("2023-01-01T00:00:00Z");
+
+        assertThrows(InvalidParametersException.class, () -> controller.simulatePricePlans(VALID_METER_ID, from, to));
+    }
+
     private List<Map.Entry<String, BigDecimal>> createSampleRecommendationList() {
         List<Map.Entry<String, BigDecimal>> recommendations = new ArrayList<>();
         recommendations.add(new AbstractMap.SimpleEntry<>("price-plan-1", new BigDecimal("10.0")));
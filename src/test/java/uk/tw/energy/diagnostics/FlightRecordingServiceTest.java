@@ -0,0 +1,149 @@
+package uk.tw.energy.diagnostics;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.domain.MeterReadings;
+import uk.tw.energy.domain.PricePlan;
+import uk.tw.energy.service.AccountService;
+import uk.tw.energy.service.MeterReadingService;
+import uk.tw.energy.service.PricePlanCatalogue;
+import uk.tw.energy.service.PricePlanService;
+import uk.tw.energy.store.MeterReadingStore;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Collections.emptyList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.tw.energy.exceptions.Constants.*;
+
+public class FlightRecordingServiceTest {
+
+    private static final Instant START = Instant.parse("2023-01-02T00:00:00Z");
+
+    private final FlightRecordingService flightRecordingService = flightRecordingService(Duration.ofMinutes(10));
+
+    @AfterEach
+    public void tearDown() {
+        flightRecordingService.closeAll();
+    }
+
+    @Test
+    public void shouldRecordIngestionAndPricingEventsWhileRecording() throws Exception {
+        PricePlanCatalogue catalogue = new PricePlanCatalogue(List.of(
+                new PricePlan("cheap", "supplier-a", BigDecimal.ONE, emptyList()),
+                new PricePlan("dear", "supplier-b", BigDecimal.valueOf(2), emptyList())));
+        MeterReadingService meterReadingService = new MeterReadingService(new MeterReadingStore());
+        PricePlanService pricePlanService = new PricePlanService(catalogue, meterReadingService,
+                new AccountService(Map.of("smart-meter-0", "cheap"), catalogue));
+        long id = start(flightRecordingService, FlightRecordingService.DEFAULT_SETTINGS, null);
+
+        meterReadingService.storeReadings(new MeterReadings("smart-meter-0", readings(10)));
+        pricePlanService.getCostForEachPricePlan("smart-meter-0");
+
+        List<RecordedEvent> events = recordedEvents(id);
+        assertThat(events).anyMatch(event -> event.getEventType().getName().equals("uk.tw.energy.ReadingsValidated")
+                && event.getBoolean("valid"));
+        assertThat(events).anyMatch(event -> event.getEventType().getName().equals("uk.tw.energy.ReadingsAppended")
+                && event.getString("smartMeterId").equals("smart-meter-0") && event.getInt("appended") == 10);
+        assertThat(events).anyMatch(event -> event.getEventType().getName().equals("uk.tw.energy.MeterPriced")
+                && event.getString("operation").equals(MeterPricedEvent.COMPARE) && event.getInt("plans") == 2);
+        assertThat(events).filteredOn(event -> event.getEventType().getName().equals("uk.tw.energy.PricePlanCosted"))
+                .extracting(event -> event.getString("pricePlanId"))
+                .containsExactly("cheap", "dear");
+    }
+
+    @Test
+    public void shouldStopAndCloseRecordings() throws Exception {
+        long id = start(flightRecordingService, FlightRecordingService.PROFILE_SETTINGS, Duration.ofMinutes(1));
+
+        assertThat(flightRecordingService.getRecordings()).hasSize(1);
+        assertThat(flightRecordingService.stop(id).orElseThrow().get(STATE_KEY)).isEqualTo("stopped");
+        assertThat(flightRecordingService.close(id)).isTrue();
+        assertThat(flightRecordingService.getRecordings()).isEmpty();
+        assertThat(flightRecordingService.stop(id)).isEmpty();
+        assertThat(flightRecordingService.dump(id)).isEmpty();
+        assertThat(flightRecordingService.close(id)).isFalse();
+    }
+
+    @Test
+    public void shouldLeaveOutEnvironmentVariablesAndSystemProperties() throws Exception {
+        long id = start(flightRecordingService, FlightRecordingService.PROFILE_SETTINGS, null);
+
+        assertThat(recordedEvents(id)).isNotEmpty()
+                .noneMatch(event -> FlightRecordingService.SENSITIVE_EVENT_TYPES.contains(event.getEventType().getName()));
+    }
+
+    @Test
+    public void shouldRefuseRecordingsBeyondTheLimit() throws Exception {
+        long id = start(flightRecordingService, FlightRecordingService.DEFAULT_SETTINGS, null);
+        start(flightRecordingService, FlightRecordingService.DEFAULT_SETTINGS, null);
+
+        assertThat(flightRecordingService.start(FlightRecordingService.DEFAULT_SETTINGS, null)).isEmpty();
+        flightRecordingService.close(id);
+        assertThat(flightRecordingService.start(FlightRecordingService.DEFAULT_SETTINGS, null)).isPresent();
+    }
+
+    @Test
+    public void shouldDiscardStoppedRecordingsOnceTheyHaveBeenKept() throws Exception {
+        FlightRecordingService discarding = flightRecordingService(Duration.ZERO);
+        try {
+            long stopped = start(discarding, FlightRecordingService.DEFAULT_SETTINGS, null);
+            long running = start(discarding, FlightRecordingService.DEFAULT_SETTINGS, null);
+            discarding.stop(stopped);
+
+            discarding.closeExpired();
+
+            assertThat(discarding.getRecordings()).extracting(recording -> recording.get(RECORDING_ID_KEY))
+                    .containsExactly(running);
+        } finally {
+            discarding.closeAll();
+        }
+    }
+
+    @Test
+    public void shouldOnlyAcceptTheJdkSettings() {
+        assertThat(FlightRecordingService.isSettings("default")).isTrue();
+        assertThat(FlightRecordingService.isSettings("profile")).isTrue();
+        assertThat(FlightRecordingService.isSettings("everything")).isFalse();
+    }
+
+    private List<RecordedEvent> recordedEvents(long id) throws Exception {
+        Path file = flightRecordingService.dump(id).orElseThrow();
+        try {
+            return RecordingFile.readAllEvents(file);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static long start(FlightRecordingService flightRecordingService, String settings, Duration duration)
+            throws Exception {
+        return (Long) flightRecordingService.start(settings, duration).orElseThrow().get(RECORDING_ID_KEY);
+    }
+
+    private static List<ElectricityReading> readings(int count) {
+        List<ElectricityReading> readings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            readings.add(new ElectricityReading(START.plusSeconds(900L * i), BigDecimal.ONE));
+        }
+        return readings;
+    }
+
+    private static FlightRecordingService flightRecordingService(Duration keepStopped) {
+        try {
+            return new FlightRecordingService(false, Duration.ofMinutes(5), 64, 2, keepStopped);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
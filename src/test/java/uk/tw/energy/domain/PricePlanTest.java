@@ -58,4 +58,15 @@ public class PricePlanTest {
 
         assertThat(price).isCloseTo(BigDecimal.TEN, Percentage.withPercentage(1));
     }
+
+    @Test
+    public void shouldOnlyApplyHourlyMultipliersWithinTheirHours() {
+        LocalDateTime eveningPeak = LocalDateTime.of(2017, Month.AUGUST, 30, 18, 0, 0);
+        LocalDateTime morning = LocalDateTime.of(2017, Month.AUGUST, 30, 9, 0, 0);
+        PricePlan.PeakTimeMultiplier peakTimeMultiplier = new PricePlan.PeakTimeMultiplier(DayOfWeek.WEDNESDAY, 17, 20, BigDecimal.TEN);
+        PricePlan pricePlan = new PricePlan(null, null, BigDecimal.ONE, singletonList(peakTimeMultiplier));
+
+        assertThat(pricePlan.getPrice(eveningPeak)).isCloseTo(BigDecimal.TEN, Percentage.withPercentage(1));
+        assertThat(pricePlan.getPrice(morning)).isCloseTo(BigDecimal.ONE, Percentage.withPercentage(1));
+    }
 }
@@ -0,0 +1,34 @@
+package uk.tw.energy.domain;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RateScheduleTest {
+
+    @Test
+    public void shouldNumberHoursOfTheWeekFromMondayMidnight() {
+        assertThat(RateSchedule.hourOfWeek(Instant.parse("2023-01-02T00:00:00Z").getEpochSecond())).isEqualTo(0);
+        assertThat(RateSchedule.hourOfWeek(Instant.parse("2023-01-04T23:59:59Z").getEpochSecond())).isEqualTo(71);
+        assertThat(RateSchedule.hourOfWeek(Instant.parse("2023-01-08T23:00:00Z").getEpochSecond())).isEqualTo(167);
+        assertThat(RateSchedule.hourOfWeek(Instant.parse("1969-12-31T23:00:00Z").getEpochSecond())).isEqualTo(71);
+    }
+
+    @Test
+    public void shouldApplyTheFirstMatchingMultiplierToEachHour() {
+        PricePlan pricePlan = new PricePlan("plan", null, BigDecimal.ONE, List.of(
+                new PricePlan.PeakTimeMultiplier(DayOfWeek.SATURDAY, BigDecimal.valueOf(2)),
+                new PricePlan.PeakTimeMultiplier(null, 7, 9, BigDecimal.valueOf(3))));
+
+        RateSchedule rateSchedule = RateSchedule.compile(pricePlan);
+
+        assertThat(rateSchedule.rate(5 * 24 + 8)).isEqualTo(2.0);
+        assertThat(rateSchedule.rate(8)).isEqualTo(3.0);
+        assertThat(rateSchedule.rate(9)).isEqualTo(1.0);
+    }
+}
@@ -0,0 +1,39 @@
+package uk.tw.energy.generator;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class LatencyRecorderTest {
+
+    private final LatencyRecorder recorder = new LatencyRecorder();
+
+    @Test
+    public void shouldReportPercentilesWithinOnePercent() {
+        for (long micros = 1; micros <= 100_000; micros++) {
+            recorder.record(micros * 1_000);
+        }
+
+        assertThat(recorder.count()).isEqualTo(100_000);
+        assertThat((double) recorder.percentileNanos(50)).isCloseTo(50_000_000.0, within(500_000.0));
+        assertThat((double) recorder.percentileNanos(99)).isCloseTo(99_000_000.0, within(990_000.0));
+        assertThat((double) recorder.percentileNanos(99.9)).isCloseTo(99_900_000.0, within(999_000.0));
+        assertThat(recorder.maxNanos()).isEqualTo(100_000_000L);
+    }
+
+    @Test
+    public void shouldNeverReportMoreThanTheMaximum() {
+        recorder.record(1_000_001);
+
+        assertThat(recorder.percentileNanos(50)).isEqualTo(1_000_001L);
+    }
+
+    @Test
+    public void shouldReportZeroWhenNothingWasRecorded() {
+        recorder.recordError();
+
+        assertThat(recorder.percentileNanos(99)).isEqualTo(0);
+        assertThat(recorder.errors()).isEqualTo(1);
+    }
+}
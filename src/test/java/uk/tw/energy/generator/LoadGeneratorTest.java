@@ -0,0 +1,86 @@
+package uk.tw.energy.generator;
+
+import org.junit.jupiter.api.Test;
+import uk.tw.energy.store.MeterReadingStore;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LoadGeneratorTest {
+
+    private static final LoadGeneratorSettings SETTINGS = LoadGeneratorSettings.fromArgs(new String[]{
+            "--meters=50", "--readings-per-meter=96", "--reading-interval=PT15M", "--start=2023-01-02T00:00:00Z", "--seed=7"});
+
+    @Test
+    public void shouldGenerateTheSameReadingsForTheSameSeed() {
+        assertThat(new LoadGenerator(SETTINGS).readingsFor(3)).isEqualTo(new LoadGenerator(SETTINGS).readingsFor(3));
+        assertThat(new LoadGenerator(SETTINGS).readingsFor(3)).isNotEqualTo(new LoadGenerator(SETTINGS).readingsFor(4));
+    }
+
+    @Test
+    public void shouldGenerateUploadsFromTheirOwnStream() {
+        LoadGenerator loadGenerator = new LoadGenerator(SETTINGS);
+        Instant start = Instant.parse("2023-01-02T00:00:00Z");
+
+        assertThat(loadGenerator.uploadGeneratorFor(3).generate(96, start, Duration.ofMinutes(15), DailyLoadProfile.RESIDENTIAL, 1.0))
+                .isEqualTo(loadGenerator.uploadGeneratorFor(3).generate(96, start, Duration.ofMinutes(15), DailyLoadProfile.RESIDENTIAL, 1.0))
+                .isNotEqualTo(loadGenerator.generatorFor(3).generate(96, start, Duration.ofMinutes(15), DailyLoadProfile.RESIDENTIAL, 1.0));
+    }
+
+    @Test
+    public void shouldPopulateTheStoreWithEveryMeter() {
+        MeterReadingStore store = new MeterReadingStore();
+        Map<String, String> accounts = new HashMap<>();
+        LoadGenerator loadGenerator = new LoadGenerator(SETTINGS);
+
+        loadGenerator.populate(store);
+        loadGenerator.assignPricePlans(accounts, List.of("price-plan-0", "price-plan-1"));
+
+        assertThat(store.size()).isEqualTo(50);
+        assertThat(store.find("generated-meter-49").orElseThrow().columns().size()).isEqualTo(96);
+        assertThat(store.find("generated-meter-49").orElseThrow().columns().asList())
+                .isEqualTo(loadGenerator.readingsFor(49));
+        assertThat(accounts).containsEntry("generated-meter-0", "price-plan-0").containsEntry("generated-meter-1", "price-plan-1");
+    }
+
+    @Test
+    public void shouldOnlyGenerateLazilyPopulatedMetersWhenTheyAreLookedUp() {
+        MeterReadingStore store = new MeterReadingStore();
+        LoadGenerator loadGenerator = new LoadGenerator(SETTINGS);
+
+        loadGenerator.populateLazily(store);
+
+        assertThat(store.size()).isEqualTo(50);
+        assertThat(store.series()).isEmpty();
+        assertThat(store.smartMeterIds()).contains("generated-meter-49");
+        assertThat(store.find("generated-meter-49").orElseThrow().columns().asList())
+                .isEqualTo(loadGenerator.readingsFor(49));
+        assertThat(store.series()).hasSize(1);
+        assertThat(store.size()).isEqualTo(50);
+    }
+
+    @Test
+    public void shouldPeakInTheEvening() {
+        Instant evening = Instant.parse("2023-01-02T19:00:00Z");
+        Instant night = Instant.parse("2023-01-02T03:00:00Z");
+
+        assertThat(DailyLoadProfile.RESIDENTIAL.expectedKw(evening))
+                .isGreaterThan(DailyLoadProfile.RESIDENTIAL.expectedKw(night) * 3);
+        assertThat(DailyLoadProfile.RESIDENTIAL.expectedKw(evening.plus(Duration.ofDays(5))))
+                .isGreaterThan(DailyLoadProfile.RESIDENTIAL.expectedKw(evening));
+    }
+
+    @Test
+    public void shouldBurstAtTheConfiguredMultiple() {
+        LoadGeneratorSettings settings = LoadGeneratorSettings.fromArgs(new String[]{
+                "--rate=100", "--burst-every=PT1M", "--burst-length=PT10S", "--burst-multiplier=5"});
+
+        assertThat(settings.requestsPerSecondAt(Duration.ofSeconds(65))).isEqualTo(500.0);
+        assertThat(settings.requestsPerSecondAt(Duration.ofSeconds(75))).isEqualTo(100.0);
+    }
+}
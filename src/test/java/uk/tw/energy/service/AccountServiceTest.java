@@ -2,16 +2,30 @@ package uk.tw.energy.service;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import uk.tw.energy.domain.PricePlan;
+import uk.tw.energy.domain.PricePlanAssignments;
+import uk.tw.energy.domain.PricePlanSwitch;
+import uk.tw.energy.domain.PricePlanSwitchRequest;
 
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
-import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static java.util.Collections.emptyList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.tw.energy.exceptions.Constants.*;
 
 public class AccountServiceTest {
 
     private static final String PRICE_PLAN_ID = "price-plan-id";
+    private static final String OTHER_PRICE_PLAN_ID = "other-price-plan-id";
     private static final String SMART_METER_ID = "smart-meter-id";
+    private static final Instant NOW = Instant.parse("2023-06-01T00:00:00Z");
 
     private AccountService accountService;
 
@@ -19,12 +33,74 @@ public class AccountServiceTest {
     public void setUp() {
         Map<String, String> smartMeterToPricePlanAccounts = new HashMap<>();
         smartMeterToPricePlanAccounts.put(SMART_METER_ID, PRICE_PLAN_ID);
+        PricePlanCatalogue catalogue = new PricePlanCatalogue(List.of(
+                new PricePlan(PRICE_PLAN_ID, null, BigDecimal.ONE, emptyList()),
+                new PricePlan(OTHER_PRICE_PLAN_ID, null, BigDecimal.TEN, emptyList())));
 
-        accountService = new AccountService(smartMeterToPricePlanAccounts);
+        accountService = new AccountService(smartMeterToPricePlanAccounts, catalogue, Clock.fixed(NOW, ZoneOffset.UTC));
     }
 
     @Test
     public void givenTheSmartMeterIdReturnsThePricePlanId() throws Exception {
         assertThat(accountService.getPricePlanIdForSmartMeterId(SMART_METER_ID)).isEqualTo(PRICE_PLAN_ID);
     }
+
+    @Test
+    public void shouldKeepThePlanInEffectAtEachTime() {
+        Instant switchedAt = NOW.minusSeconds(3600);
+        accountService.switchPricePlans(new PricePlanSwitchRequest(switchedAt,
+                List.of(new PricePlanSwitch(SMART_METER_ID, OTHER_PRICE_PLAN_ID, null))));
+        accountService.switchPricePlans(new PricePlanSwitchRequest(null,
+                List.of(new PricePlanSwitch(SMART_METER_ID, PRICE_PLAN_ID, NOW.plusSeconds(3600)))));
+
+        assertThat(accountService.getPricePlanIdForSmartMeterId(SMART_METER_ID)).isEqualTo(OTHER_PRICE_PLAN_ID);
+        PricePlanAssignments assignments = accountService.getPricePlanAssignments(SMART_METER_ID).orElseThrow();
+        assertThat(assignments.pricePlanIdAt(switchedAt.minusSeconds(1))).isEqualTo(PRICE_PLAN_ID);
+        assertThat(assignments.pricePlanIdAt(NOW.plusSeconds(7200))).isEqualTo(PRICE_PLAN_ID);
+        assertThat(assignments.asList()).extracting(PricePlanAssignments.Assignment::version).containsExactly(0L, 1L, 2L);
+    }
+
+    @Test
+    public void shouldApplyABulkSwitchAndReportTheEntriesItRejected() {
+        List<PricePlanSwitch> switches = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            switches.add(new PricePlanSwitch("smart-meter-" + i, OTHER_PRICE_PLAN_ID, null));
+        }
+        switches.add(new PricePlanSwitch("smart-meter-20000", "no-such-plan", null));
+        switches.add(new PricePlanSwitch("not a meter", OTHER_PRICE_PLAN_ID, null));
+
+        Map<String, Object> result = accountService.switchPricePlans(new PricePlanSwitchRequest(null, switches));
+
+        assertThat(result.get(VERSION_KEY)).isEqualTo(1L);
+        assertThat(result.get(SWITCHED_KEY)).isEqualTo(20_000);
+        assertThat((List<?>) result.get(REJECTED_KEY)).hasSize(2);
+        assertThat(accountService.getPricePlanIdForSmartMeterId("smart-meter-19999")).isEqualTo(OTHER_PRICE_PLAN_ID);
+        assertThat(accountService.getPricePlanIdForSmartMeterId("smart-meter-20000")).isNull();
+        assertThat(accountService.version()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldOpenANewAccountFromWhenItsPlanTakesEffect() {
+        Instant opensAt = NOW.plusSeconds(86_400);
+        accountService.switchPricePlans(new PricePlanSwitchRequest(null,
+                List.of(new PricePlanSwitch("smart-meter-new", OTHER_PRICE_PLAN_ID, opensAt))));
+
+        PricePlanAssignments assignments = accountService.getPricePlanAssignments("smart-meter-new").orElseThrow();
+        assertThat(assignments.pricePlanIdAt(NOW)).isNull();
+        assertThat(assignments.pricePlanIdAt(opensAt)).isEqualTo(OTHER_PRICE_PLAN_ID);
+        assertThat(assignments.asList()).containsExactly(new PricePlanAssignments.Assignment(OTHER_PRICE_PLAN_ID, opensAt, 1L));
+        assertThat(accountService.getPricePlanIdForSmartMeterId("smart-meter-new")).isNull();
+    }
+
+    @Test
+    public void shouldNotChangeTheVersionWhenEverySwitchIsRejected() {
+        Map<String, Object> result = accountService.switchPricePlans(new PricePlanSwitchRequest(null, List.of(
+                new PricePlanSwitch(SMART_METER_ID, "no-such-plan", null),
+                new PricePlanSwitch("not a meter", OTHER_PRICE_PLAN_ID, null))));
+
+        assertThat(result.get(VERSION_KEY)).isEqualTo(0L);
+        assertThat(result.get(SWITCHED_KEY)).isEqualTo(0);
+        assertThat(accountService.version()).isZero();
+        assertThat(accountService.getPricePlanIdForSmartMeterId(SMART_METER_ID)).isEqualTo(PRICE_PLAN_ID);
+    }
 }
@@ -0,0 +1,133 @@
+package uk.tw.energy.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.domain.MeterReadings;
+import uk.tw.energy.domain.PricePlan;
+import uk.tw.energy.event.MeterReadingsStoredEvent;
+import uk.tw.energy.store.MeterReadingStore;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Collections.emptyList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.tw.energy.exceptions.Constants.*;
+
+public class BillProjectionServiceTest {
+
+    private static final Instant START = Instant.parse("2023-01-01T00:00:00Z");
+
+    private MeterReadingStore store;
+    private MeterReadingService meterReadingService;
+    private AccountService accountService;
+    private PricePlanCatalogue catalogue;
+    private BillProjectionService billProjectionService;
+
+    @BeforeEach
+    public void setUp() {
+        store = new MeterReadingStore();
+        catalogue = new PricePlanCatalogue(List.of(
+                new PricePlan("cheap", "supplier-a", BigDecimal.ONE, emptyList()),
+                new PricePlan("dear", "supplier-b", BigDecimal.valueOf(2), emptyList())));
+        meterReadingService = new MeterReadingService(store, this::publish);
+        accountService = new AccountService(Map.of("smart-meter-0", "cheap"), catalogue);
+        billProjectionService = new BillProjectionService(store, accountService, catalogue);
+    }
+
+    private void publish(Object event) {
+        if (event instanceof MeterReadingsStoredEvent stored) {
+            billProjectionService.onReadingsStored(stored);
+        }
+    }
+
+    @Test
+    public void shouldProjectSteadyUsageToTheEndOfTheMonth() {
+        // 1 kW for the first two weeks of January
+        meterReadingService.storeReadings(hourlyReadings(START, 14 * 24 + 1, 1.0));
+
+        Map<String, Object> projection = billProjectionService.getProjectedCosts("smart-meter-0");
+
+        assertThat(projection.get(PRICE_PLAN_ID_KEY)).isEqualTo("cheap");
+        assertThat(projection.get(FROM)).isEqualTo(START);
+        assertThat(projection.get(TO)).isEqualTo(Instant.parse("2023-02-01T00:00:00Z"));
+        assertThat(projection.get(AS_OF_KEY)).isEqualTo(Instant.parse("2023-01-15T00:00:00Z"));
+        assertThat((BigDecimal) projection.get(CONSUMPTION_KWH_KEY)).isEqualByComparingTo("336");
+        assertThat((BigDecimal) projection.get(PROJECTED_CONSUMPTION_KWH_KEY)).isEqualByComparingTo("744");
+        Map<String, BigDecimal> costs = projectedCosts(projection);
+        assertThat(costs.get("cheap")).isEqualByComparingTo("744");
+        assertThat(costs.get("dear")).isEqualByComparingTo("1488");
+    }
+
+    @Test
+    public void shouldForecastEachHourOfTheWeekFromTheSameHourInEarlierWeeks() {
+        // 2 kW from 18:00 to 19:00 each day and nothing otherwise
+        List<ElectricityReading> readings = new ArrayList<>();
+        for (int hour = 0; hour <= 14 * 24; hour++) {
+            double kw = hour % 24 == 18 ? 2.0 : 0.0;
+            readings.add(new ElectricityReading(START.plusSeconds(hour * 3600L), BigDecimal.valueOf(kw)));
+            readings.add(new ElectricityReading(START.plusSeconds(hour * 3600L + 3599), BigDecimal.valueOf(kw)));
+        }
+        meterReadingService.storeReadings(new MeterReadings("smart-meter-0", readings));
+
+        Map<String, Object> projection = billProjectionService.getProjectedCosts("smart-meter-0");
+
+        // 17 more evenings in January, each close to the 2 kWh of the ones so far
+        double toDate = ((BigDecimal) projection.get(CONSUMPTION_KWH_KEY)).doubleValue();
+        double projected = ((BigDecimal) projection.get(PROJECTED_CONSUMPTION_KWH_KEY)).doubleValue();
+        assertThat(projected - toDate).isBetween(17 * 1.9, 17 * 2.1);
+    }
+
+    @Test
+    public void shouldKeepTheProjectionUpToDateAsReadingsArrive() {
+        meterReadingService.storeReadings(hourlyReadings(START, 7 * 24 + 1, 1.0));
+        billProjectionService.getProjectedCosts("smart-meter-0");
+
+        meterReadingService.storeReadings(hourlyReadings(START.plusSeconds((7 * 24 + 1) * 3600L), 7 * 24, 3.0));
+        Map<String, Object> updated = billProjectionService.getProjectedCosts("smart-meter-0");
+
+        assertThat(updated.get(AS_OF_KEY)).isEqualTo(Instant.parse("2023-01-15T00:00:00Z"));
+        assertThat((BigDecimal) updated.get(CONSUMPTION_KWH_KEY)).isEqualByComparingTo("671");
+        assertThat(updated).isEqualTo(freshProjection());
+    }
+
+    @Test
+    public void shouldRebuildTheForecastWhenReadingsArriveOutOfOrder() {
+        List<ElectricityReading> readings = hourlyReadings(START, 7 * 24 + 1, 1.0).electricityReadings();
+        meterReadingService.storeReadings(new MeterReadings("smart-meter-0", readings.subList(0, 24)));
+        meterReadingService.storeReadings(new MeterReadings("smart-meter-0", readings.subList(48, readings.size())));
+        billProjectionService.getProjectedCosts("smart-meter-0");
+
+        meterReadingService.storeReadings(new MeterReadings("smart-meter-0", readings.subList(24, 48)));
+        Map<String, Object> projection = billProjectionService.getProjectedCosts("smart-meter-0");
+
+        assertThat((BigDecimal) projection.get(CONSUMPTION_KWH_KEY)).isEqualByComparingTo("168");
+        assertThat(projection).isEqualTo(freshProjection());
+    }
+
+    @Test
+    public void shouldReturnNothingForAMeterWithoutReadings() {
+        assertThat(billProjectionService.getProjectedCosts("smart-meter-9")).isEmpty();
+    }
+
+    private Map<String, Object> freshProjection() {
+        return new BillProjectionService(store, accountService, catalogue).getProjectedCosts("smart-meter-0");
+    }
+
+    private static MeterReadings hourlyReadings(Instant start, int count, double kw) {
+        List<ElectricityReading> readings = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            readings.add(new ElectricityReading(start.plusSeconds(i * 3600L), BigDecimal.valueOf(kw)));
+        }
+        return new MeterReadings("smart-meter-0", readings);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, BigDecimal> projectedCosts(Map<String, Object> projection) {
+        return (Map<String, BigDecimal>) projection.get(PRICE_PLAN_PROJECTIONS_KEY);
+    }
+}
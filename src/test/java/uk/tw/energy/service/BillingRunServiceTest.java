@@ -0,0 +1,174 @@
+package uk.tw.energy.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.domain.PricePlan;
+import uk.tw.energy.store.MeterReadingSeries;
+import uk.tw.energy.store.MeterReadingStore;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
+import java.util.stream.Stream;
+
+import static java.util.Collections.emptyList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.tw.energy.exceptions.Constants.*;
+
+public class BillingRunServiceTest {
+
+    private static final YearMonth JANUARY = YearMonth.of(2023, 1);
+    private static final Instant JANUARY_START = Instant.parse("2023-01-01T00:00:00Z");
+    private static final Instant FEBRUARY_START = Instant.parse("2023-02-01T00:00:00Z");
+
+    @TempDir
+    Path directory;
+
+    private String unreadableMeter;
+    private final MeterReadingStore store = new MeterReadingStore() {
+        @Override
+        public Optional<MeterReadingSeries> find(String smartMeterId) {
+            if (smartMeterId.equals(unreadableMeter)) {
+                throw new IllegalStateException("Could not read " + smartMeterId);
+            }
+            return super.find(smartMeterId);
+        }
+    };
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private PricePlanCatalogue catalogue;
+    private AccountService accountService;
+
+    @BeforeEach
+    public void setUp() {
+        catalogue = new PricePlanCatalogue(List.of(
+                new PricePlan("cheap", "supplier-a", BigDecimal.ONE, emptyList()),
+                new PricePlan("dear", "supplier-b", BigDecimal.valueOf(2), emptyList())));
+        accountService = new AccountService(Map.of("smart-meter-0", "cheap", "smart-meter-1", "dear", "smart-meter-2", "cheap"),
+                catalogue);
+        // a steady 1 kW from before January to after it: 744 kWh in the month
+        store.getOrCreate("smart-meter-0").append(steadyKw(1));
+        store.getOrCreate("smart-meter-1").append(steadyKw(2));
+    }
+
+    @Test
+    public void shouldBillEveryAccountWithReadingsForTheMonthOnItsPlanAndEveryPlan() throws Exception {
+        BillingRunService billingRunService = billingRunService(() -> 0);
+
+        Map<String, Object> summary = billingRunService.start(JANUARY).get();
+
+        assertThat(summary.get(STATE_KEY)).isEqualTo("complete");
+        assertThat(summary.get(METERS_KEY)).isEqualTo(2L);
+        assertThat(summary.get(BILLED_COST_KEY)).isEqualTo(new BigDecimal("3720.0000"));
+        assertThat(Files.exists(directory.resolve("2023-01").resolve(BillingRunService.SUMMARY_FILE))).isTrue();
+        List<String> bills = bills();
+        assertThat(bills).hasSize(2);
+        assertThat(bills).anyMatch(bill -> bill.contains("\"smartMeterId\":\"smart-meter-1\"")
+                && bill.contains("\"pricePlanId\":\"dear\"") && bill.contains("\"billedCost\":2976.0000")
+                && bill.contains("\"cheap\":1488.0000"));
+    }
+
+    @Test
+    public void shouldNotBillAMonthAgainOnceItIsComplete() throws Exception {
+        billingRunService(() -> 0).start(JANUARY).get();
+
+        Map<String, Object> summary = billingRunService(() -> 0).start(JANUARY).get();
+
+        assertThat(summary.get(METERS_KEY)).isEqualTo(2);
+        assertThat(bills()).hasSize(2);
+        assertThat(meterRegistry.get("billing.run.billed.meters").functionCounter().count()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldCarryOnFromTheCheckpointLeftByAnInterruptedRun() throws Exception {
+        Path runDirectory = Files.createDirectories(directory.resolve("2023-01"));
+        Files.writeString(runDirectory.resolve("partition-7.ndjson"),
+                "{\"smartMeterId\":\"smart-meter-0\",\"pricePlanId\":\"cheap\",\"billedCost\":1.0000,\"pricePlanCosts\":{}}\n"
+                        + "{\"smartMeterId\":\"smart-meter-1\",\"pricePl", StandardCharsets.UTF_8);
+
+        Map<String, Object> summary = billingRunService(() -> 0).start(JANUARY).get();
+
+        assertThat(summary.get(METERS_KEY)).isEqualTo(2L);
+        assertThat(summary.get(BILLED_COST_KEY)).isEqualTo(new BigDecimal("2977.0000"));
+        assertThat(meterRegistry.get("billing.run.resumed.meters").functionCounter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("billing.run.billed.meters").functionCounter().count()).isEqualTo(1);
+        assertThat(bills()).hasSize(2).allMatch(bill -> bill.endsWith("}"));
+    }
+
+    @Test
+    public void shouldQuarantineCheckpointLinesThatCannotBeReadAndBillTheirMetersAgain() throws Exception {
+        Path runDirectory = Files.createDirectories(directory.resolve("2023-01"));
+        String unreadable = "{\"smartMeterId\":\"smart-meter-1\",\"billedCost\":\"lots\"}\n";
+        Files.writeString(runDirectory.resolve("partition-7.ndjson"),
+                "{\"smartMeterId\":\"smart-meter-0\",\"pricePlanId\":\"cheap\",\"billedCost\":1.0000,\"pricePlanCosts\":{}}\n"
+                        + unreadable, StandardCharsets.UTF_8);
+
+        Map<String, Object> summary = billingRunService(() -> 0).start(JANUARY).get();
+
+        assertThat(summary.get(METERS_KEY)).isEqualTo(2L);
+        assertThat(summary.get(BILLED_COST_KEY)).isEqualTo(new BigDecimal("2977.0000"));
+        assertThat(Files.readString(runDirectory.resolve("partition-7.ndjson" + BillingRunService.QUARANTINE_FILE_SUFFIX)))
+                .isEqualTo(unreadable);
+        assertThat(meterRegistry.get("billing.run.quarantined.lines").functionCounter().count()).isEqualTo(1);
+        assertThat(bills()).hasSize(2).noneMatch(bill -> bill.contains("lots"));
+    }
+
+    @Test
+    public void shouldLeaveOutAMeterThatCannotBeBilledAndCompleteTheRun() throws Exception {
+        unreadableMeter = "smart-meter-1";
+
+        Map<String, Object> summary = billingRunService(() -> 0).start(JANUARY).get();
+
+        assertThat(summary.get(STATE_KEY)).isEqualTo("complete");
+        assertThat(summary.get(METERS_KEY)).isEqualTo(1L);
+        assertThat(summary.get(FAILED_METERS_KEY)).isEqualTo(1L);
+        assertThat(meterRegistry.get("billing.run.failed.meters").functionCounter().count()).isEqualTo(1);
+        assertThat(bills()).hasSize(1);
+    }
+
+    @Test
+    public void shouldPauseWhileInteractiveRequestsAreBusy() throws Exception {
+        AtomicInteger checks = new AtomicInteger();
+
+        billingRunService(() -> checks.incrementAndGet() <= 3 ? 100 : 0).start(JANUARY).get();
+
+        assertThat(meterRegistry.get("billing.run.throttled.pauses").functionCounter().count()).isEqualTo(3);
+        assertThat(bills()).hasSize(2);
+    }
+
+    private BillingRunService billingRunService(IntSupplier inFlightRequests) {
+        return new BillingRunService(store, accountService, catalogue, inFlightRequests, meterRegistry,
+                Clock.fixed(Instant.parse("2023-02-10T00:00:00Z"), ZoneOffset.UTC), true, directory, 2, 0, 20, 1);
+    }
+
+    private List<String> bills() throws Exception {
+        try (Stream<Path> files = Files.list(directory.resolve("2023-01"))) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".ndjson"))
+                    .flatMap(file -> {
+                        try {
+                            return Files.readAllLines(file).stream();
+                        } catch (Exception e) {
+                            throw new IllegalStateException(e);
+                        }
+                    })
+                    .toList();
+        }
+    }
+
+    private static List<ElectricityReading> steadyKw(double kw) {
+        return List.of(new ElectricityReading(JANUARY_START.minusSeconds(3600), BigDecimal.valueOf(kw)),
+                new ElectricityReading(FEBRUARY_START.plusSeconds(3600), BigDecimal.valueOf(kw)));
+    }
+}
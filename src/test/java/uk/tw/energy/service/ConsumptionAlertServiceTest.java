@@ -0,0 +1,109 @@
+package uk.tw.energy.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import uk.tw.energy.domain.ConsumptionAlert;
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.domain.MeterReadings;
+import uk.tw.energy.domain.PricePlan;
+import uk.tw.energy.event.MeterReadingsStoredEvent;
+import uk.tw.energy.store.MeterReadingStore;
+import uk.tw.energy.stream.SseBroadcaster;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Collections.emptyList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ConsumptionAlertServiceTest {
+
+    private static final String SMART_METER_ID = "smart-meter-0";
+    private static final Instant START = Instant.parse("2023-01-02T00:00:00Z");
+
+    private final List<ConsumptionAlert> alerts = new ArrayList<>();
+    private MeterReadingService meterReadingService;
+    private PricePlanCatalogue catalogue;
+    private AccountService accountService;
+
+    @BeforeEach
+    public void setUp() {
+        catalogue = new PricePlanCatalogue(List.of(new PricePlan("flat", null, BigDecimal.valueOf(2), emptyList())));
+        accountService = new AccountService(Map.of(SMART_METER_ID, "flat"), catalogue);
+    }
+
+    private void useThresholds(ConsumptionAlertService.Thresholds thresholds) {
+        ConsumptionAlertService alertService = new ConsumptionAlertService(accountService, catalogue, thresholds,
+                new SseBroadcaster("alerts", 8, 1000, 1), alerts::add);
+        meterReadingService = new MeterReadingService(new MeterReadingStore(), event -> {
+            if (event instanceof MeterReadingsStoredEvent stored) {
+                alertService.onReadingsStored(stored);
+            }
+        });
+    }
+
+    @Test
+    public void shouldAlertOnceWhenDemandGoesOverTheThresholdUntilItDropsBackUnder() {
+        useThresholds(new ConsumptionAlertService.Thresholds(5, Duration.ofHours(1), 0, 0));
+
+        store(START, 1.0, 6.0, 7.0, 1.0);
+        store(START.plusSeconds(4 * 900), 8.0);
+
+        assertThat(alerts).extracting(ConsumptionAlert::rule).containsExactly(ConsumptionAlert.Rule.INSTANT_KW, ConsumptionAlert.Rule.INSTANT_KW);
+        assertThat(alerts).extracting(ConsumptionAlert::time).containsExactly(START.plusSeconds(900), START.plusSeconds(3600));
+        assertThat(alerts.get(0).value()).isEqualByComparingTo("6");
+        assertThat(alerts.get(0).threshold()).isEqualByComparingTo("5");
+    }
+
+    @Test
+    public void shouldAlertWhenTheRollingWindowsUsageGoesOverTheThreshold() {
+        useThresholds(new ConsumptionAlertService.Thresholds(0, Duration.ofHours(1), 3, 0));
+
+        // 4 kW throughout, so the window holds 1 kWh per quarter of an hour
+        store(START, 4.0, 4.0, 4.0);
+        store(START.plusSeconds(3 * 900), 4.0, 4.0, 4.0);
+
+        assertThat(alerts).hasSize(1);
+        assertThat(alerts.get(0).rule()).isEqualTo(ConsumptionAlert.Rule.WINDOW_KWH);
+        assertThat(alerts.get(0).time()).isEqualTo(START.plusSeconds(4 * 900));
+        assertThat(alerts.get(0).value()).isEqualByComparingTo("4");
+    }
+
+    @Test
+    public void shouldAlertWhenADayAtTheWindowsDemandWouldCostTooMuchOnTheAccountsPlan() {
+        useThresholds(new ConsumptionAlertService.Thresholds(0, Duration.ofHours(1), 0, 50));
+
+        store(START, 1.0, 1.0, 2.0);
+
+        // 1 kW for a day at 2 a kWh is 48, then the window averages 1.25 kW, 60 a day
+        assertThat(alerts).hasSize(1);
+        assertThat(alerts.get(0).rule()).isEqualTo(ConsumptionAlert.Rule.PROJECTED_DAILY_COST);
+        assertThat(alerts.get(0).value()).isEqualByComparingTo("60");
+        assertThat(alerts.get(0).pricePlanId()).isEqualTo("flat");
+    }
+
+    @Test
+    public void shouldNotCheckReadingsThatArriveOutOfOrder() {
+        useThresholds(new ConsumptionAlertService.Thresholds(5, Duration.ofHours(1), 0, 0));
+
+        store(START.plusSeconds(3600), 1.0);
+        store(START, 9.0);
+
+        assertThat(alerts).isEmpty();
+    }
+
+    /**
+     * Readings 15 minutes apart from the given time.
+     */
+    private void store(Instant start, double... kw) {
+        List<ElectricityReading> readings = new ArrayList<>();
+        for (int i = 0; i < kw.length; i++) {
+            readings.add(new ElectricityReading(start.plusSeconds(i * 900L), BigDecimal.valueOf(kw[i])));
+        }
+        meterReadingService.storeReadings(new MeterReadings(SMART_METER_ID, readings));
+    }
+}
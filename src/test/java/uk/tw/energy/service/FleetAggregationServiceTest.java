@@ -0,0 +1,142 @@
+package uk.tw.energy.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.domain.MeterReadings;
+import uk.tw.energy.domain.PricePlan;
+import uk.tw.energy.domain.PricePlanSwitch;
+import uk.tw.energy.domain.PricePlanSwitchRequest;
+import uk.tw.energy.event.MeterReadingsStoredEvent;
+import uk.tw.energy.event.PricePlanSwitchedEvent;
+import uk.tw.energy.store.MeterReadingStore;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Collections.emptyList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static uk.tw.energy.exceptions.Constants.*;
+
+public class FleetAggregationServiceTest {
+
+    private static final Instant START = Instant.parse("2023-01-02T00:00:00Z");
+
+    private MeterReadingStore store;
+    private MeterReadingService meterReadingService;
+    private AccountService accountService;
+    private FleetAggregationService fleetAggregationService;
+
+    @BeforeEach
+    public void setUp() {
+        store = new MeterReadingStore();
+        PricePlanCatalogue catalogue = new PricePlanCatalogue(List.of(
+                new PricePlan("cheap", "supplier-a", BigDecimal.ONE, emptyList()),
+                new PricePlan("dear", "supplier-a", BigDecimal.valueOf(3), emptyList()),
+                new PricePlan("other", "supplier-b", BigDecimal.valueOf(2), emptyList())));
+        meterReadingService = new MeterReadingService(store, this::publish);
+        accountService = new AccountService(Map.of("smart-meter-0", "cheap", "smart-meter-1", "cheap", "smart-meter-2", "other"),
+                catalogue, this::publish);
+        fleetAggregationService = new FleetAggregationService(store, accountService, catalogue);
+    }
+
+    private void publish(Object event) {
+        if (event instanceof MeterReadingsStoredEvent stored) {
+            fleetAggregationService.onReadingsStored(stored);
+        } else if (event instanceof PricePlanSwitchedEvent switched) {
+            fleetAggregationService.onPricePlanSwitched(switched);
+        }
+    }
+
+    @Test
+    public void shouldTotalConsumptionAndCostPerPricePlan() {
+        useKwh("smart-meter-0", 1);
+        useKwh("smart-meter-1", 3);
+        useKwh("smart-meter-2", 2);
+        // a second batch carries on from the first: 2 kWh ramping down from 3 kW, then 1 kWh
+        meterReadingService.storeReadings(readings("smart-meter-1", START.plusSeconds(7200), 1.0, 1.0));
+
+        Map<String, Object> usage = fleetAggregationService.getFleetUsage(FleetAggregationService.GROUP_BY_PRICE_PLAN);
+
+        assertThat(usage.get(METERS_KEY)).isEqualTo(3L);
+        assertThat((BigDecimal) usage.get(CONSUMPTION_KWH_KEY)).isEqualByComparingTo("9");
+        assertThat((BigDecimal) usage.get(COST_KEY)).isEqualByComparingTo("11");
+        Map<String, Object> cheap = group(usage, 0);
+        assertThat(cheap.get(PRICE_PLAN_ID_KEY)).isEqualTo("cheap");
+        assertThat(cheap.get(METERS_KEY)).isEqualTo(2L);
+        assertThat((BigDecimal) cheap.get(CONSUMPTION_KWH_KEY)).isEqualByComparingTo("7");
+        assertThat((BigDecimal) cheap.get(COST_KEY)).isEqualByComparingTo("7");
+        assertThat(percentile(cheap, CONSUMPTION_KWH_PER_METER_KEY, P50_KEY)).isCloseTo(1, within(0.01));
+        assertThat(percentile(cheap, CONSUMPTION_KWH_PER_METER_KEY, P95_KEY)).isCloseTo(6, within(0.06));
+        assertThat(percentile(cheap, COST_PER_METER_KEY, P95_KEY)).isCloseTo(6, within(0.06));
+        assertThat(group(usage, 1).get(PRICE_PLAN_ID_KEY)).isEqualTo("other");
+    }
+
+    @Test
+    public void shouldMoveAMetersEnergyWhenItSwitchesPlan() {
+        useKwh("smart-meter-0", 1);
+        useKwh("smart-meter-1", 3);
+        fleetAggregationService.getFleetUsage(FleetAggregationService.GROUP_BY_PRICE_PLAN);
+
+        accountService.switchPricePlans(new PricePlanSwitchRequest(null, List.of(new PricePlanSwitch("smart-meter-1", "dear", null))));
+        Map<String, Object> usage = fleetAggregationService.getFleetUsage(FleetAggregationService.GROUP_BY_PRICE_PLAN);
+
+        assertThat(group(usage, 0).get(PRICE_PLAN_ID_KEY)).isEqualTo("cheap");
+        assertThat((BigDecimal) group(usage, 0).get(CONSUMPTION_KWH_KEY)).isEqualByComparingTo("1");
+        assertThat(group(usage, 1).get(PRICE_PLAN_ID_KEY)).isEqualTo("dear");
+        assertThat((BigDecimal) group(usage, 1).get(CONSUMPTION_KWH_KEY)).isEqualByComparingTo("3");
+        assertThat((BigDecimal) group(usage, 1).get(COST_KEY)).isEqualByComparingTo("9");
+    }
+
+    @Test
+    public void shouldGroupPlansBySupplier() {
+        useKwh("smart-meter-0", 1);
+        useKwh("smart-meter-2", 2);
+        accountService.switchPricePlans(new PricePlanSwitchRequest(null, List.of(new PricePlanSwitch("smart-meter-1", "dear", null))));
+        useKwh("smart-meter-1", 3);
+
+        Map<String, Object> usage = fleetAggregationService.getFleetUsage(FleetAggregationService.GROUP_BY_SUPPLIER);
+
+        Map<String, Object> supplierA = group(usage, 0);
+        assertThat(supplierA.get(ENERGY_SUPPLIER_KEY)).isEqualTo("supplier-a");
+        assertThat(supplierA.get(METERS_KEY)).isEqualTo(2L);
+        assertThat((BigDecimal) supplierA.get(CONSUMPTION_KWH_KEY)).isEqualByComparingTo("4");
+        assertThat((BigDecimal) supplierA.get(COST_KEY)).isEqualByComparingTo("10");
+        assertThat(group(usage, 1).get(ENERGY_SUPPLIER_KEY)).isEqualTo("supplier-b");
+    }
+
+    @Test
+    public void shouldIncludeReadingsStoredBeforeTheFirstQuery() {
+        store.getOrCreate("smart-meter-0").append(readings("smart-meter-0", START, 1.0, 1.0).electricityReadings());
+
+        Map<String, Object> usage = fleetAggregationService.getFleetUsage(FleetAggregationService.GROUP_BY_PRICE_PLAN);
+
+        assertThat((BigDecimal) usage.get(CONSUMPTION_KWH_KEY)).isEqualByComparingTo("1");
+    }
+
+    /**
+     * Two readings an hour apart at a constant kW, i.e. {@code kw} kWh.
+     */
+    private void useKwh(String smartMeterId, double kw) {
+        meterReadingService.storeReadings(readings(smartMeterId, START, kw, kw));
+    }
+
+    private static MeterReadings readings(String smartMeterId, Instant start, double firstKw, double secondKw) {
+        return new MeterReadings(smartMeterId, List.of(
+                new ElectricityReading(start, BigDecimal.valueOf(firstKw)),
+                new ElectricityReading(start.plusSeconds(3600), BigDecimal.valueOf(secondKw))));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> group(Map<String, Object> usage, int index) {
+        return ((List<Map<String, Object>>) usage.get(GROUPS_KEY)).get(index);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static double percentile(Map<String, Object> group, String key, String percentile) {
+        return ((BigDecimal) ((Map<String, Object>) group.get(key)).get(percentile)).doubleValue();
+    }
+}
@@ -0,0 +1,85 @@
+package uk.tw.energy.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IdempotencyKeyIndexTest {
+
+    private static final Instant START = Instant.parse("2023-01-02T00:00:00Z");
+
+    private Instant now = START;
+    private final Clock clock = new Clock() {
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    };
+
+    @Test
+    public void shouldRecogniseARepeatedKeyForTheSameMeterOnly() {
+        IdempotencyKeyIndex index = new IdempotencyKeyIndex(Duration.ofHours(1), 1000, clock);
+
+        assertThat(index.firstSeen("smart-meter-0", "batch-1")).isTrue();
+        assertThat(index.firstSeen("smart-meter-0", "batch-1")).isFalse();
+        assertThat(index.firstSeen("smart-meter-1", "batch-1")).isTrue();
+        assertThat(index.firstSeen("smart-meter-0", "batch-2")).isTrue();
+        assertThat(index.duplicates()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldForgetAKeyWithoutLosingTheOthers() {
+        IdempotencyKeyIndex index = new IdempotencyKeyIndex(Duration.ofHours(1), 100_000, clock);
+        for (int i = 0; i < 10_000; i++) {
+            index.firstSeen("smart-meter-0", "batch-" + i);
+        }
+
+        for (int i = 0; i < 10_000; i += 2) {
+            index.forget("smart-meter-0", "batch-" + i);
+        }
+
+        for (int i = 0; i < 10_000; i++) {
+            assertThat(index.firstSeen("smart-meter-0", "batch-" + i)).isEqualTo(i % 2 == 0);
+        }
+    }
+
+    @Test
+    public void shouldRememberKeysForAtLeastTheTtlAndForgetThemAfterTwice() {
+        IdempotencyKeyIndex index = new IdempotencyKeyIndex(Duration.ofHours(1), 1000, clock);
+        index.firstSeen("smart-meter-0", "batch-1");
+
+        now = START.plus(Duration.ofMinutes(90));
+        assertThat(index.firstSeen("smart-meter-0", "batch-1")).isFalse();
+
+        now = START.plus(Duration.ofMinutes(150));
+        assertThat(index.firstSeen("smart-meter-0", "batch-1")).isTrue();
+    }
+
+    @Test
+    public void shouldStayBoundedWhenMoreKeysArriveThanAGenerationHolds() {
+        IdempotencyKeyIndex index = new IdempotencyKeyIndex(Duration.ofHours(1), 100, clock);
+
+        for (int key = 0; key < 250; key++) {
+            assertThat(index.firstSeen("smart-meter-0", "batch-" + key)).isTrue();
+        }
+
+        assertThat(index.firstSeen("smart-meter-0", "batch-249")).isFalse();
+        assertThat(index.firstSeen("smart-meter-0", "batch-0")).isTrue();
+    }
+}
@@ -0,0 +1,96 @@
+package uk.tw.energy.service;
+
+import org.junit.jupiter.api.Test;
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.domain.MeterReadings;
+import uk.tw.energy.domain.PricePlan;
+import uk.tw.energy.event.MeterReadingsStoredEvent;
+import uk.tw.energy.store.MeterReadingStore;
+import uk.tw.energy.stream.SseBroadcaster;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Collections.emptyList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.tw.energy.exceptions.Constants.*;
+
+public class LiveReadingServiceTest {
+
+    private static final String SMART_METER_ID = "smart-meter-0";
+    private static final Instant START = Instant.parse("2023-01-02T00:00:00Z");
+
+    private final List<MeterReadingsStoredEvent> events = new ArrayList<>();
+    private final MeterReadingService meterReadingService = new MeterReadingService(new MeterReadingStore(), event -> {
+        if (event instanceof MeterReadingsStoredEvent stored) {
+            events.add(stored);
+        }
+    });
+    private final LiveReadingService liveReadingService = new LiveReadingService(
+            new PricePlanCatalogue(List.of(new PricePlan("flat", null, BigDecimal.valueOf(2), emptyList()))),
+            new SseBroadcaster("readings", 8, 1000, 1), 2);
+
+    @Test
+    public void shouldSendOnlyTheNewReadingsWithTheMetersUpdatedCosts() {
+        ElectricityReading first = new ElectricityReading(START, BigDecimal.valueOf(1.0));
+        ElectricityReading second = new ElectricityReading(START.plusSeconds(3600), BigDecimal.valueOf(1.0));
+        ElectricityReading third = new ElectricityReading(START.plusSeconds(7200), BigDecimal.valueOf(3.0));
+        meterReadingService.storeReadings(new MeterReadings(SMART_METER_ID, List.of(first, second)));
+        meterReadingService.storeReadings(new MeterReadings(SMART_METER_ID, List.of(third)));
+
+        Map<String, Object> message = liveReadingService.message(events.get(1));
+
+        assertThat(message.get(SMART_METER_ID_KEY)).isEqualTo(SMART_METER_ID);
+        assertThat(message.get(ELECTRICITY_READINGS_KEY)).isEqualTo(List.of(third));
+        @SuppressWarnings("unchecked")
+        Map<String, BigDecimal> costs = (Map<String, BigDecimal>) message.get(PRICE_PLAN_COMPARISONS_KEY);
+        // 1 kWh, then 2 kWh ramping up to 3 kW, at 2 a kWh
+        assertThat(costs.get("flat")).isEqualByComparingTo("6");
+    }
+
+    @Test
+    public void shouldSendOnlyALateBatchAndTheRangeItChanged() {
+        ElectricityReading first = new ElectricityReading(START, BigDecimal.ONE);
+        ElectricityReading third = new ElectricityReading(START.plusSeconds(7200), BigDecimal.ONE);
+        ElectricityReading late = new ElectricityReading(START.plusSeconds(3600), BigDecimal.ONE);
+        meterReadingService.storeReadings(new MeterReadings(SMART_METER_ID, List.of(first, third)));
+        meterReadingService.storeReadings(new MeterReadings(SMART_METER_ID, List.of(late)));
+
+        Map<String, Object> message = liveReadingService.message(events.get(1));
+
+        assertThat(message.get(ELECTRICITY_READINGS_KEY)).isEqualTo(List.of(late));
+        assertThat(message.get(CHANGED_KEY)).isEqualTo(Map.of(FROM, late.time(), TO, third.time()));
+        assertThat(message).doesNotContainKey(OMITTED_READINGS_KEY);
+    }
+
+    @Test
+    public void shouldCapTheReadingsSentForALargeBatch() {
+        List<ElectricityReading> readings = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            readings.add(new ElectricityReading(START.plusSeconds(900L * i), BigDecimal.ONE));
+        }
+        meterReadingService.storeReadings(new MeterReadings(SMART_METER_ID, readings));
+
+        Map<String, Object> message = liveReadingService.message(events.get(0));
+
+        assertThat(message.get(ELECTRICITY_READINGS_KEY)).isEqualTo(readings.subList(3, 5));
+        assertThat(message.get(OMITTED_READINGS_KEY)).isEqualTo(3);
+        assertThat(message.get(CHANGED_KEY)).isEqualTo(Map.of(FROM, START, TO, START.plusSeconds(3600)));
+    }
+
+    @Test
+    public void shouldOnlyBuildEventsForMetersSomeoneIsFollowing() {
+        SseBroadcaster broadcaster = new SseBroadcaster("readings", 8, 1000, 1);
+
+        broadcaster.subscribe(SMART_METER_ID);
+
+        assertThat(broadcaster.hasSubscribers(SMART_METER_ID)).isTrue();
+        assertThat(broadcaster.hasSubscribers("smart-meter-1")).isFalse();
+        broadcaster.subscribe(SseBroadcaster.ALL);
+        assertThat(broadcaster.hasSubscribers("smart-meter-1")).isTrue();
+        assertThat(broadcaster.subscriberCount()).isEqualTo(2);
+    }
+}
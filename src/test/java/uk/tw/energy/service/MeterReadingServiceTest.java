@@ -2,12 +2,22 @@ package uk.tw.energy.service;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import uk.tw.energy.builders.MeterReadingsBuilder;
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.domain.MeterReadings;
+import uk.tw.energy.store.AppendResult;
+import uk.tw.energy.store.MeterReadingSeries;
+import uk.tw.energy.store.MeterReadingStore;
 
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
+import static uk.tw.energy.exceptions.Constants.*;
 
 public class MeterReadingServiceTest {
 
@@ -15,7 +25,7 @@ public class MeterReadingServiceTest {
 
     @BeforeEach
     public void setUp() {
-        meterReadingService = new MeterReadingService(new HashMap<>());
+        meterReadingService = new MeterReadingService(new MeterReadingStore());
     }
 
     @Test
@@ -25,7 +35,50 @@ public class MeterReadingServiceTest {
 
     @Test
     public void givenMeterReadingThatExistsShouldReturnMeterReadings() {
-        meterReadingService.storeReadings("random-id", new ArrayList<>());
-        assertThat(meterReadingService.getReadings("random-id")).isEqualTo(Optional.of(new ArrayList<>()));
+        MeterReadings meterReadings = new MeterReadingsBuilder().setSmartMeterId("random-meter-id")
+                .generateElectricityReadings()
+                .build();
+        meterReadingService.storeReadings(meterReadings);
+        assertThat(meterReadingService.getReadings("random-meter-id")).isEqualTo(Optional.of(meterReadings.electricityReadings()));
+    }
+
+    @Test
+    public void givenReadingTooLargeToStoreShouldBeInvalid() {
+        MeterReadings meterReadings = new MeterReadings("random-meter-id",
+                List.of(new ElectricityReading(Instant.parse("2023-01-02T00:00:00Z"), new BigDecimal("1E+200"))));
+
+        assertThat(meterReadingService.storeReadings(meterReadings)).isEqualTo(INPUT_IS_INVALID);
+        assertThat(meterReadingService.getReadings("random-meter-id")).isEqualTo(Optional.empty());
+    }
+
+    @Test
+    public void givenAnAppendThatFailsShouldStoreARetryWithTheSameIdempotencyKey() {
+        AtomicBoolean failing = new AtomicBoolean(true);
+        MeterReadingSeries series = new MeterReadingSeries() {
+            @Override
+            public synchronized AppendResult append(List<ElectricityReading> electricityReadings) {
+                if (failing.getAndSet(false)) {
+                    throw new IllegalStateException("Store unavailable");
+                }
+                return super.append(electricityReadings);
+            }
+        };
+        meterReadingService = new MeterReadingService(new MeterReadingStore() {
+            @Override
+            public MeterReadingSeries getOrCreate(String smartMeterId) {
+                return series;
+            }
+        }, event -> { });
+        MeterReadings meterReadings = new MeterReadings("random-meter-id",
+                List.of(new ElectricityReading(Instant.parse("2023-01-02T00:00:00Z"), new BigDecimal("0.5"))));
+
+        assertThatThrownBy(() -> meterReadingService.storeReadings(meterReadings, "batch-1"))
+                .isInstanceOf(IllegalStateException.class);
+        StoreReadingsResult retry = meterReadingService.storeReadings(meterReadings, "batch-1");
+        StoreReadingsResult repeat = meterReadingService.storeReadings(meterReadings, "batch-1");
+
+        assertThat(retry).isEqualTo(new StoreReadingsResult(SUCCESS, 1, 0));
+        assertThat(repeat.status()).isEqualTo(DUPLICATE_READINGS);
+        assertThat(series.columns().size()).isEqualTo(1);
     }
 }
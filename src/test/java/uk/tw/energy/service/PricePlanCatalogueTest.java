@@ -0,0 +1,142 @@
+package uk.tw.energy.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import uk.tw.energy.domain.PricePlan;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.util.List;
+
+import static java.util.Collections.emptyList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PricePlanCatalogueTest {
+
+    private static final List<PricePlan> SEEDED_PRICE_PLANS =
+            List.of(new PricePlan("seeded-plan", "Seeded Supplier", BigDecimal.ONE, emptyList()));
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void givenNoCatalogueFileShouldServeTheSeededPricePlans() {
+        PricePlanCatalogue catalogue = new PricePlanCatalogue(SEEDED_PRICE_PLANS);
+
+        assertThat(catalogue.current().version()).isEqualTo(0);
+        assertThat(catalogue.current().find("seeded-plan")).isPresent();
+    }
+
+    @Test
+    public void givenYamlCatalogueShouldCompileTimeOfUseTiers() throws Exception {
+        Path file = directory.resolve("price-plans.yml");
+        Files.writeString(file, """
+                pricePlans:
+                  - planName: peak-plan
+                    energySupplier: Peak Power
+                    unitRate: 2
+                    peakTimeMultipliers:
+                      - dayOfWeek: MONDAY
+                        fromHour: 17
+                        toHour: 20
+                        multiplier: 3
+                """);
+
+        PricePlanCatalogue catalogue = new PricePlanCatalogue(SEEDED_PRICE_PLANS, file.toString());
+
+        PricePlanCatalogue.Snapshot snapshot = catalogue.current();
+        assertThat(snapshot.version()).isEqualTo(1);
+        assertThat(snapshot.find("seeded-plan")).isEmpty();
+        assertThat(snapshot.find("peak-plan").get().getPrice(DayOfWeek.MONDAY, 18)).isEqualByComparingTo("6");
+        // 2023-01-02 was a Monday
+        assertThat(snapshot.rateSchedule("peak-plan").get().rateAt(Instant.parse("2023-01-02T18:30:00Z").getEpochSecond())).isEqualTo(6.0);
+        assertThat(snapshot.rateSchedule("peak-plan").get().rateAt(Instant.parse("2023-01-02T20:00:00Z").getEpochSecond())).isEqualTo(2.0);
+    }
+
+    @Test
+    public void givenChangedCatalogueFileShouldSwapInTheNewVersion() throws Exception {
+        Path file = directory.resolve("price-plans.json");
+        Files.writeString(file, "{\"pricePlans\":[{\"planName\":\"plan-a\",\"unitRate\":1}]}");
+        PricePlanCatalogue catalogue = new PricePlanCatalogue(SEEDED_PRICE_PLANS, file.toString());
+        PricePlanCatalogue.Snapshot inFlight = catalogue.current();
+
+        Files.writeString(file, "{\"pricePlans\":[{\"planName\":\"plan-a\",\"unitRate\":1},{\"planName\":\"plan-b\",\"unitRate\":2}]}");
+        Files.setLastModifiedTime(file, FileTime.from(Instant.now().plusSeconds(60)));
+        catalogue.reloadIfChanged();
+
+        assertThat(catalogue.current().version()).isEqualTo(2);
+        assertThat(catalogue.current().size()).isEqualTo(2);
+        assertThat(inFlight.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void givenInvalidCatalogueFileShouldKeepThePreviousVersion() throws Exception {
+        Path file = directory.resolve("price-plans.json");
+        Files.writeString(file, "{\"pricePlans\":[{\"planName\":\"plan-a\",\"unitRate\":1}]}");
+        PricePlanCatalogue catalogue = new PricePlanCatalogue(SEEDED_PRICE_PLANS, file.toString());
+
+        Files.writeString(file, "{\"pricePlans\":[{\"planName\":\"plan-a\",\"unitRate\":-1}]}");
+        Files.setLastModifiedTime(file, FileTime.from(Instant.now().plusSeconds(60)));
+        catalogue.reloadIfChanged();
+
+        assertThat(catalogue.current().version()).isEqualTo(1);
+        assertThat(catalogue.current().find("plan-a").get().getUnitRate()).isEqualByComparingTo("1");
+    }
+
+    @Test
+    public void givenYamlWithAJavaTypeTagShouldNotBuildItAndKeepThePreviousVersion() throws Exception {
+        Path file = directory.resolve("price-plans.yml");
+        Files.writeString(file, "pricePlans:\n  - planName: plan-a\n    unitRate: 1\n");
+        PricePlanCatalogue catalogue = new PricePlanCatalogue(SEEDED_PRICE_PLANS, file.toString());
+        Path created = directory.resolve("created-by-yaml");
+
+        Files.writeString(file, "pricePlans:\n  - planName: !!java.io.FileOutputStream [\"" + created + "\"]\n    unitRate: 1\n");
+        Files.setLastModifiedTime(file, FileTime.from(Instant.now().plusSeconds(60)));
+        catalogue.reloadIfChanged();
+
+        assertThat(created).doesNotExist();
+        assertThat(catalogue.current().version()).isEqualTo(1);
+        assertThat(catalogue.current().find("plan-a")).isPresent();
+    }
+
+    @Test
+    public void givenDemandChargeShouldReadItsWindowAndRate() throws Exception {
+        Path file = directory.resolve("price-plans.yml");
+        Files.writeString(file, """
+                pricePlans:
+                  - planName: business-plan
+                    unitRate: 0.2
+                    demandCharge:
+                      windowMinutes: 15
+                      ratePerKw: 12.5
+                  - planName: home-plan
+                    unitRate: 0.3
+                """);
+
+        PricePlanCatalogue.Snapshot snapshot = new PricePlanCatalogue(SEEDED_PRICE_PLANS, file.toString()).current();
+
+        PricePlan.DemandCharge demandCharge = snapshot.find("business-plan").get().getDemandCharge();
+        assertThat(demandCharge.getWindowMinutes()).isEqualTo(15);
+        assertThat(demandCharge.getRatePerKw()).isEqualByComparingTo("12.5");
+        assertThat(snapshot.find("home-plan").get().hasDemandCharge()).isFalse();
+    }
+
+    @Test
+    public void givenDemandChargeOverAnUntrackedWindowShouldKeepThePreviousVersion() throws Exception {
+        Path file = directory.resolve("price-plans.json");
+        Files.writeString(file, "{\"pricePlans\":[{\"planName\":\"plan-a\",\"unitRate\":1}]}");
+        PricePlanCatalogue catalogue = new PricePlanCatalogue(SEEDED_PRICE_PLANS, file.toString());
+
+        Files.writeString(file, "{\"pricePlans\":[{\"planName\":\"plan-a\",\"unitRate\":1,"
+                + "\"demandCharge\":{\"windowMinutes\":20,\"ratePerKw\":5}}]}");
+        Files.setLastModifiedTime(file, FileTime.from(Instant.now().plusSeconds(60)));
+        catalogue.reloadIfChanged();
+
+        assertThat(catalogue.current().version()).isEqualTo(1);
+        assertThat(catalogue.current().find("plan-a").get().hasDemandCharge()).isFalse();
+    }
+}
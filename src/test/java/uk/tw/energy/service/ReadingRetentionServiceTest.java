@@ -0,0 +1,90 @@
+package uk.tw.energy.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.store.ColdBlockStore;
+import uk.tw.energy.store.MeterReadingStore;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class ReadingRetentionServiceTest {
+
+    private static final Instant START = Instant.parse("2023-01-02T00:00:00Z");
+    private static final int READINGS = 3 * 4096 + 10;
+
+    private final MeterReadingStore store = new MeterReadingStore();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    public void shouldEvictReadingsPastTheRetentionAndPublishWhatWasReclaimed() {
+        store.getOrCreate("smart-meter-0").append(minuteReadings(START));
+        store.getOrCreate("smart-meter-1").append(minuteReadings(START.plus(Duration.ofDays(60))));
+        double totalKwh = store.find("smart-meter-0").orElseThrow().columns().energyKwh(null, null);
+        ReadingRetentionService retentionService = retentionServiceAt(START.plus(Duration.ofDays(70)), 1);
+
+        while (!retentionService.step()) {
+        }
+        while (!retentionService.step()) {
+        }
+
+        assertThat(store.find("smart-meter-0").orElseThrow().columns().size()).isEqualTo(4096 + 10);
+        assertThat(store.find("smart-meter-0").orElseThrow().columns().energyKwh(null, null)).isCloseTo(totalKwh, within(1e-9));
+        assertThat(store.find("smart-meter-1").orElseThrow().columns().size()).isEqualTo(READINGS);
+        assertThat(retentionService.evictedReadings()).isEqualTo(2 * 4096);
+        assertThat(retentionService.reclaimedBytes()).isPositive();
+        assertThat(meterRegistry.get("readings.retention.evicted.readings").functionCounter().count()).isEqualTo(2 * 4096.0);
+        assertThat(meterRegistry.get("readings.retention.reclaimed").functionCounter().count()).isPositive();
+    }
+
+    @Test
+    public void shouldLeaveReadingsAloneWhenRetentionIsDisabled() {
+        store.getOrCreate("smart-meter-0").append(minuteReadings(START));
+        ReadingRetentionService retentionService = new ReadingRetentionService(store, meterRegistry,
+                Clock.fixed(START.plus(Duration.ofDays(365)), ZoneOffset.UTC), 0, 0, 5, 1);
+
+        assertThat(retentionService.step()).isTrue();
+        assertThat(store.find("smart-meter-0").orElseThrow().columns().size()).isEqualTo(READINGS);
+    }
+
+    @Test
+    public void shouldSpillBlocksOlderThanTheHotDaysToDisk(@TempDir Path directory) throws IOException {
+        store.getOrCreate("smart-meter-0").append(minuteReadings(START));
+        List<ElectricityReading> before = store.find("smart-meter-0").orElseThrow().columns().toList();
+        ReadingRetentionService retentionService = new ReadingRetentionService(store, meterRegistry,
+                Clock.fixed(START.plus(Duration.ofDays(14)), ZoneOffset.UTC), 0, 0, 5, 10,
+                new ColdBlockStore(directory, 64 * 1024 * 1024, 64 * 1024 * 1024), 7);
+
+        while (!retentionService.step()) {
+        }
+
+        assertThat(store.find("smart-meter-0").orElseThrow().columns().toList()).isEqualTo(before);
+        assertThat(meterRegistry.get("readings.tiering.spilled.blocks").functionCounter().count()).isEqualTo(2.0);
+        assertThat(meterRegistry.get("readings.tiering.disk").gauge().value()).isPositive();
+        retentionService.close();
+    }
+
+    private ReadingRetentionService retentionServiceAt(Instant now, int maxBlocksPerStep) {
+        return new ReadingRetentionService(store, meterRegistry, Clock.fixed(now, ZoneOffset.UTC), 30, 0, 5, maxBlocksPerStep);
+    }
+
+    private static List<ElectricityReading> minuteReadings(Instant start) {
+        List<ElectricityReading> readings = new ArrayList<>();
+        for (int i = 0; i < READINGS; i++) {
+            readings.add(new ElectricityReading(start.plusSeconds(60L * i), BigDecimal.valueOf(0.5)));
+        }
+        return readings;
+    }
+}
@@ -0,0 +1,157 @@
+package uk.tw.energy.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.domain.MeterReadings;
+import uk.tw.energy.domain.PricePlan;
+import uk.tw.energy.domain.RankedPricePlans;
+import uk.tw.energy.event.MeterReadingsStoredEvent;
+import uk.tw.energy.store.MeterReadingStore;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Collections.emptyList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RecommendationServiceTest {
+
+    private static final Instant START = Instant.parse("2023-01-02T00:00:00Z");
+
+    @TempDir
+    Path directory;
+
+    private final Deque<Runnable> queued = new ArrayDeque<>();
+    private SimpleMeterRegistry meterRegistry;
+    private PricePlanCatalogue catalogue;
+    private MeterReadingService meterReadingService;
+    private RecommendationService recommendationService;
+
+    @BeforeEach
+    public void setUp() {
+        catalogue = new PricePlanCatalogue(List.of(
+                new PricePlan("dear", "supplier-b", BigDecimal.valueOf(2), emptyList()),
+                new PricePlan("cheap", "supplier-a", BigDecimal.ONE, emptyList()),
+                new PricePlan("dearest", "supplier-c", BigDecimal.valueOf(3), emptyList())));
+        meterReadingService = new MeterReadingService(new MeterReadingStore(), this::publish);
+        recommendationService = recommendationService(Duration.ofHours(1));
+    }
+
+    private void publish(Object event) {
+        if (event instanceof MeterReadingsStoredEvent stored) {
+            recommendationService.onReadingsStored(stored);
+        }
+    }
+
+    @Test
+    public void shouldRankThePricePlansCheapestFirst() {
+        meterReadingService.storeReadings(hourlyReadings(0, 25, 1.0));
+        runQueuedRefreshes();
+
+        RankedPricePlans ranked = recommendationService.getRankedPricePlans("smart-meter-0").orElseThrow();
+
+        assertThat(ranked).extracting(Map.Entry::getKey).containsExactly("cheap", "dear", "dearest");
+        assertThat(ranked.staleness()).isZero();
+        assertThat(ranked.limit(2)).extracting(Map.Entry::getKey).containsExactly("cheap", "dear");
+        assertThat(ranked.limit(5)).hasSize(3);
+        assertThat(recommendationService.getRankedPricePlans("smart-meter-1")).isEmpty();
+    }
+
+    @Test
+    public void shouldCoalesceBatchesStoredWhileARefreshIsQueued() {
+        meterReadingService.storeReadings(hourlyReadings(0, 25, 1.0));
+        meterReadingService.storeReadings(hourlyReadings(25, 24, 2.0));
+        meterReadingService.storeReadings(hourlyReadings(49, 24, 3.0));
+
+        assertThat(queued).hasSize(1);
+        runQueuedRefreshes();
+
+        assertThat(meterRegistry.get("recommendations.refreshes").functionCounter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("recommendations.coalesced.updates").functionCounter().count()).isEqualTo(2);
+        assertThat(recommendationService.getRankedPricePlans("smart-meter-0").orElseThrow().staleness()).isZero();
+        assertThat(meterRegistry.get("recommendations.read.refreshes").functionCounter().count()).isZero();
+    }
+
+    @Test
+    public void shouldServeAStaleRankingWithinTheBoundAndSayHowStale() {
+        meterReadingService.storeReadings(hourlyReadings(0, 25, 1.0));
+        runQueuedRefreshes();
+        RankedPricePlans before = recommendationService.getRankedPricePlans("smart-meter-0").orElseThrow();
+
+        meterReadingService.storeReadings(hourlyReadings(25, 24, 5.0));
+        RankedPricePlans stale = recommendationService.getRankedPricePlans("smart-meter-0").orElseThrow();
+        runQueuedRefreshes();
+        RankedPricePlans refreshed = recommendationService.getRankedPricePlans("smart-meter-0").orElseThrow();
+
+        assertThat(stale).isEqualTo(before);
+        assertThat(stale.staleness()).isPositive();
+        assertThat(refreshed).isNotEqualTo(before);
+        assertThat(refreshed.staleness()).isZero();
+        assertThat(meterRegistry.get("recommendations.read.refreshes").functionCounter().count()).isZero();
+    }
+
+    @Test
+    public void shouldRankOnReadWhenTheRankingIsTooStale() {
+        recommendationService = recommendationService(Duration.ZERO);
+        meterReadingService.storeReadings(hourlyReadings(0, 25, 1.0));
+        runQueuedRefreshes();
+        RankedPricePlans before = recommendationService.getRankedPricePlans("smart-meter-0").orElseThrow();
+
+        meterReadingService.storeReadings(hourlyReadings(25, 24, 5.0));
+        RankedPricePlans read = recommendationService.getRankedPricePlans("smart-meter-0").orElseThrow();
+
+        assertThat(read).isNotEqualTo(before);
+        assertThat(read.staleness()).isZero();
+        assertThat(meterRegistry.get("recommendations.read.refreshes").functionCounter().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldRankOnReadWhenTheCatalogueChanges() throws Exception {
+        Path file = directory.resolve("price-plans.json");
+        Files.writeString(file, "{\"pricePlans\":[{\"planName\":\"plan-a\",\"unitRate\":2},{\"planName\":\"plan-b\",\"unitRate\":1}]}");
+        catalogue = new PricePlanCatalogue(emptyList(), file.toString());
+        recommendationService = recommendationService(Duration.ofHours(1));
+        meterReadingService.storeReadings(hourlyReadings(0, 25, 1.0));
+        runQueuedRefreshes();
+        assertThat(recommendationService.getRankedPricePlans("smart-meter-0").orElseThrow())
+                .extracting(Map.Entry::getKey).containsExactly("plan-b", "plan-a");
+
+        Files.writeString(file, "{\"pricePlans\":[{\"planName\":\"plan-a\",\"unitRate\":0.5},{\"planName\":\"plan-b\",\"unitRate\":1}]}");
+        Files.setLastModifiedTime(file, FileTime.from(Instant.now().plusSeconds(60)));
+        catalogue.reloadIfChanged();
+
+        assertThat(recommendationService.getRankedPricePlans("smart-meter-0").orElseThrow())
+                .extracting(Map.Entry::getKey).containsExactly("plan-a", "plan-b");
+    }
+
+    private RecommendationService recommendationService(Duration maxStaleness) {
+        meterRegistry = new SimpleMeterRegistry();
+        return new RecommendationService(meterReadingService, catalogue, queued::add, maxStaleness, meterRegistry);
+    }
+
+    private void runQueuedRefreshes() {
+        while (!queued.isEmpty()) {
+            queued.poll().run();
+        }
+    }
+
+    private static MeterReadings hourlyReadings(int fromHour, int count, double kw) {
+        List<ElectricityReading> readings = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            readings.add(new ElectricityReading(START.plusSeconds((fromHour + i) * 3600L), BigDecimal.valueOf(kw)));
+        }
+        return new MeterReadings("smart-meter-0", readings);
+    }
+}
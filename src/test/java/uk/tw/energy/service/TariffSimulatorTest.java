@@ -0,0 +1,92 @@
+package uk.tw.energy.service;
+
+import org.junit.jupiter.api.Test;
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.domain.PricePlan;
+import uk.tw.energy.domain.WeeklyEnergyProfile;
+import uk.tw.energy.store.MeterReadingSeries;
+import uk.tw.energy.store.ReadingColumns;
+
+import java.math.BigDecimal;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Collections.emptyList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class TariffSimulatorTest {
+
+    // 2023-01-02 was a Monday
+    private static final Instant MONDAY_17_00 = Instant.parse("2023-01-02T17:00:00Z");
+
+    private final PricePlanCatalogue.Snapshot catalogue = new PricePlanCatalogue(List.of(
+            new PricePlan("flat", null, BigDecimal.ONE, emptyList()),
+            new PricePlan("monday-evening-peak", null, BigDecimal.ONE,
+                    List.of(new PricePlan.PeakTimeMultiplier(DayOfWeek.MONDAY, 18, 19, BigDecimal.TEN))),
+            new PricePlan("demand", null, BigDecimal.ONE, emptyList(), new PricePlan.DemandCharge(15, BigDecimal.TEN)))).current();
+
+    @Test
+    public void shouldIntegrateEachIntervalAsATrapezoid() {
+        List<ElectricityReading> readings = List.of(
+                new ElectricityReading(MONDAY_17_00, BigDecimal.valueOf(1.0)),
+                new ElectricityReading(MONDAY_17_00.plusSeconds(1800), BigDecimal.valueOf(3.0)));
+
+        WeeklyEnergyProfile profile = TariffSimulator.profile(columnsOf(readings), null, null);
+
+        assertThat(profile.totalKwh()).isCloseTo(1.0, within(1e-9));
+    }
+
+    @Test
+    public void shouldPriceTheHoursAnIntervalCrossesAtTheirOwnRates() {
+        List<ElectricityReading> readings = List.of(
+                new ElectricityReading(MONDAY_17_00.plusSeconds(3600), BigDecimal.valueOf(2.0)),
+                new ElectricityReading(MONDAY_17_00, BigDecimal.valueOf(2.0)),
+                new ElectricityReading(MONDAY_17_00.plusSeconds(7200), BigDecimal.valueOf(2.0)));
+
+        Map<String, BigDecimal> costs = TariffSimulator.price(TariffSimulator.profile(columnsOf(readings), null, null), catalogue);
+
+        assertThat(costs.get("flat")).isEqualByComparingTo("4");
+        assertThat(costs.get("monday-evening-peak")).isEqualByComparingTo("22");
+    }
+
+    @Test
+    public void shouldOnlyCountEnergyWithinTheRequestedRange() {
+        List<ElectricityReading> readings = List.of(
+                new ElectricityReading(MONDAY_17_00, BigDecimal.valueOf(0.0)),
+                new ElectricityReading(MONDAY_17_00.plusSeconds(3600), BigDecimal.valueOf(4.0)));
+
+        WeeklyEnergyProfile profile = TariffSimulator.profile(columnsOf(readings), MONDAY_17_00.plusSeconds(1800), null);
+
+        assertThat(profile.totalKwh()).isCloseTo(1.5, within(1e-9));
+    }
+
+    @Test
+    public void shouldAddEachMonthsPeakDemandForPlansWithADemandCharge() {
+        MeterReadingSeries series = new MeterReadingSeries();
+        List<ElectricityReading> readings = new ArrayList<>();
+        for (int minute = 0; minute <= 60; minute += 5) {
+            readings.add(new ElectricityReading(MONDAY_17_00.plusSeconds(minute * 60L), BigDecimal.valueOf(minute == 30 ? 4.0 : 2.0)));
+        }
+        series.append(readings);
+
+        Map<String, BigDecimal> costs = TariffSimulator.price(series, catalogue);
+        Map<String, BigDecimal> firstQuarterHour = TariffSimulator.priceWindow(series.columns(),
+                MONDAY_17_00, MONDAY_17_00.plusSeconds(20 * 60), catalogue);
+
+        // 130 kW minutes, with a peak of 40 kW minutes in the quarter hours ending at 17:35 and 17:40
+        assertThat(costs.get("flat")).isEqualByComparingTo("2.1667");
+        assertThat(costs.get("demand")).isEqualByComparingTo("28.8333");
+        // only the window ending at 17:15 lies within the range
+        assertThat(firstQuarterHour.get("demand")).isEqualByComparingTo("20.6667");
+    }
+
+    private static ReadingColumns columnsOf(List<ElectricityReading> readings) {
+        MeterReadingSeries series = new MeterReadingSeries();
+        series.append(readings);
+        return series.columns();
+    }
+}
@@ -0,0 +1,78 @@
+package uk.tw.energy.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.domain.MeterReadings;
+import uk.tw.energy.domain.PricePlan;
+import uk.tw.energy.domain.PricePlanSwitch;
+import uk.tw.energy.domain.PricePlanSwitchRequest;
+import uk.tw.energy.store.MeterReadingStore;
+
+import java.math.BigDecimal;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Collections.emptyList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.tw.energy.exceptions.Constants.*;
+
+public class UsageServiceTest {
+
+    private static final String SMART_METER_ID = "smart-meter-0";
+    // 2023-01-02 was a Monday
+    private static final Instant MONDAY = Instant.parse("2023-01-02T00:00:00Z");
+
+    private UsageService usageService;
+    private MeterReadingService meterReadingService;
+    private AccountService accountService;
+
+    @BeforeEach
+    public void setUp() {
+        meterReadingService = new MeterReadingService(new MeterReadingStore());
+        PricePlanCatalogue catalogue = new PricePlanCatalogue(List.of(
+                new PricePlan("flat", null, BigDecimal.valueOf(2), emptyList()),
+                new PricePlan("monday-night", null, BigDecimal.ONE,
+                        List.of(new PricePlan.PeakTimeMultiplier(DayOfWeek.MONDAY, 0, 1, BigDecimal.TEN)))));
+        accountService = new AccountService(Map.of(SMART_METER_ID, "flat"), catalogue);
+        usageService = new UsageService(meterReadingService, catalogue, accountService);
+    }
+
+    @Test
+    public void shouldReportEnergyAverageDemandAndCostsForAWindow() {
+        meterReadingService.storeReadings(new MeterReadings(SMART_METER_ID, List.of(
+                new ElectricityReading(MONDAY, BigDecimal.valueOf(2.0)),
+                new ElectricityReading(MONDAY.plusSeconds(7200), BigDecimal.valueOf(2.0)))));
+
+        Map<String, Object> usage = usageService.getUsage(SMART_METER_ID, MONDAY.plusSeconds(1800), MONDAY.plusSeconds(5400));
+
+        assertThat(usage.get(PRICE_PLAN_ID_KEY)).isEqualTo("flat");
+        assertThat((BigDecimal) usage.get(CONSUMPTION_KWH_KEY)).isEqualByComparingTo("2");
+        assertThat((BigDecimal) usage.get(AVERAGE_KW_KEY)).isEqualByComparingTo("2");
+        @SuppressWarnings("unchecked")
+        Map<String, BigDecimal> costs = (Map<String, BigDecimal>) usage.get(PRICE_PLAN_COMPARISONS_KEY);
+        assertThat(costs.get("flat")).isEqualByComparingTo("4");
+        assertThat(costs.get("monday-night")).isEqualByComparingTo("11");
+    }
+
+    @Test
+    public void shouldBillEachPartOfTheWindowOnThePlanTheAccountWasOnAtTheTime() {
+        meterReadingService.storeReadings(new MeterReadings(SMART_METER_ID, List.of(
+                new ElectricityReading(MONDAY, BigDecimal.valueOf(2.0)),
+                new ElectricityReading(MONDAY.plusSeconds(7200), BigDecimal.valueOf(2.0)))));
+        accountService.switchPricePlans(new PricePlanSwitchRequest(MONDAY.plusSeconds(3600),
+                List.of(new PricePlanSwitch(SMART_METER_ID, "monday-night", null))));
+
+        Map<String, Object> usage = usageService.getUsage(SMART_METER_ID, null, null);
+
+        // 2 kWh on flat at 2, then 2 kWh on monday-night after its 00:00-01:00 peak at 1
+        assertThat((BigDecimal) usage.get(BILLED_COST_KEY)).isEqualByComparingTo("6");
+    }
+
+    @Test
+    public void givenUnknownMeterShouldReturnNoUsage() {
+        assertThat(usageService.getUsage("unknown-meter-id", null, null)).isEmpty();
+    }
+}
@@ -0,0 +1,154 @@
+package uk.tw.energy.store;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import uk.tw.energy.domain.ElectricityReading;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ColdBlockStoreTest {
+
+    private static final Instant START = Instant.parse("2023-01-02T00:00:00Z");
+    private static final int READINGS = 4 * ReadingColumns.BLOCK_SIZE + 10;
+    private static final long BLOCK_BYTES = (long) ReadingColumns.BLOCK_SIZE * ReadingBlock.BYTES_PER_READING;
+
+    @TempDir
+    Path directory;
+
+    private ColdBlockStore coldBlockStore;
+
+    @AfterEach
+    public void close() {
+        if (coldBlockStore != null) {
+            coldBlockStore.close();
+        }
+    }
+
+    @Test
+    public void shouldReadSpilledBlocksBackUnchanged() throws IOException {
+        coldBlockStore = new ColdBlockStore(directory, 10 * BLOCK_BYTES, 1024 * 1024);
+        MeterReadingSeries series = new MeterReadingSeries();
+        List<ElectricityReading> readings = minuteReadings();
+        series.append(readings);
+        ReadingColumns before = series.columns();
+
+        int spilled = series.spill(START.plusSeconds(60L * READINGS), coldBlockStore, 10);
+
+        ReadingColumns columns = series.columns();
+        assertThat(spilled).isEqualTo(4);
+        assertThat(coldBlockStore.spilledBlocks()).isEqualTo(4);
+        assertThat(columns.toList()).isEqualTo(readings);
+        for (int i = 0; i < READINGS; i += 97) {
+            assertThat(columns.cumulativeKwh(i)).isEqualTo(before.cumulativeKwh(i));
+        }
+        assertThat(series.version()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldOnlySpillFullBlocksOlderThanTheCutoff() throws IOException {
+        coldBlockStore = new ColdBlockStore(directory, 10 * BLOCK_BYTES, 1024 * 1024);
+        MeterReadingSeries series = new MeterReadingSeries();
+        series.append(minuteReadings());
+
+        int spilled = series.spill(START.plusSeconds(60L * 2 * ReadingColumns.BLOCK_SIZE), coldBlockStore, 10);
+
+        assertThat(spilled).isEqualTo(2);
+        assertThat(series.spill(START.plusSeconds(60L * 2 * ReadingColumns.BLOCK_SIZE), coldBlockStore, 10)).isZero();
+    }
+
+    @Test
+    public void shouldKeepTheBlockCacheWithinItsSize() throws IOException {
+        coldBlockStore = new ColdBlockStore(directory, 2 * BLOCK_BYTES, 1024 * 1024);
+        MeterReadingSeries series = new MeterReadingSeries();
+        List<ElectricityReading> readings = minuteReadings();
+        series.append(readings);
+        series.spill(START.plusSeconds(60L * READINGS), coldBlockStore, 10);
+
+        ReadingColumns columns = series.columns();
+        for (int i = 0; i < 4; i++) {
+            assertThat(columns.get(i * ReadingColumns.BLOCK_SIZE)).isEqualTo(readings.get(i * ReadingColumns.BLOCK_SIZE));
+        }
+
+        assertThat(coldBlockStore.loads()).isEqualTo(4);
+        assertThat(coldBlockStore.cacheEvictions()).isEqualTo(2);
+        assertThat(coldBlockStore.residentBytes()).isLessThanOrEqualTo(2 * BLOCK_BYTES);
+    }
+
+    @Test
+    public void shouldFreeDiskOnceSpilledBlocksAreEvicted() throws IOException {
+        coldBlockStore = new ColdBlockStore(directory, 2 * BLOCK_BYTES, 2 * BLOCK_BYTES);
+        MeterReadingSeries series = new MeterReadingSeries();
+        series.append(minuteReadings());
+        series.spill(START.plusSeconds(60L * READINGS), coldBlockStore, 10);
+        assertThat(coldBlockStore.diskBytes()).isEqualTo(4 * BLOCK_BYTES);
+
+        EvictionResult result = series.evict(START.plusSeconds(60L * READINGS), null, 2);
+
+        assertThat(result.evictedReadings()).isEqualTo(2 * ReadingColumns.BLOCK_SIZE);
+        assertThat(result.reclaimedBytes()).isLessThan((long) result.evictedReadings() * ReadingBlock.BYTES_PER_READING);
+        assertThat(coldBlockStore.diskBytes()).isEqualTo(2 * BLOCK_BYTES);
+        assertThat(series.columns().get(0)).isEqualTo(minuteReadings().get(2 * ReadingColumns.BLOCK_SIZE));
+    }
+
+    @Test
+    public void shouldDeleteAnEmptySegmentOnceANewOneIsStarted() throws IOException {
+        coldBlockStore = new ColdBlockStore(directory, 2 * BLOCK_BYTES, BLOCK_BYTES);
+        MeterReadingSeries evicted = new MeterReadingSeries();
+        evicted.append(minuteReadings());
+        evicted.spill(START.plusSeconds(60L * READINGS), coldBlockStore, 10);
+        evicted.evict(START.plusSeconds(60L * READINGS), null, 10);
+        assertThat(coldBlockStore.diskBytes()).isEqualTo(BLOCK_BYTES);
+
+        MeterReadingSeries series = new MeterReadingSeries();
+        series.append(minuteReadings());
+        series.spill(START.plusSeconds(60L * READINGS), coldBlockStore, 1);
+
+        assertThat(coldBlockStore.diskBytes()).isEqualTo(BLOCK_BYTES);
+        assertThat(segmentFiles()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldDeleteDirectoriesLeftBehindByStoresThatWereNotClosed() throws IOException {
+        Path abandoned = Files.createDirectories(directory.resolve("blocks-abandoned"));
+        Files.createFile(abandoned.resolve(ColdBlockStore.LOCK_FILE));
+        Files.createFile(abandoned.resolve("segment-0.blocks"));
+        Path unrelated = Files.createDirectories(directory.resolve("blocks-of-another-program"));
+        Files.setLastModifiedTime(unrelated, FileTime.from(Instant.now().minus(Duration.ofDays(1))));
+        ColdBlockStore open = new ColdBlockStore(directory, BLOCK_BYTES, BLOCK_BYTES);
+
+        coldBlockStore = new ColdBlockStore(directory, BLOCK_BYTES, BLOCK_BYTES);
+
+        assertThat(abandoned).doesNotExist();
+        assertThat(unrelated).exists();
+        try (Stream<Path> directories = Files.list(directory)) {
+            assertThat(directories).hasSize(3);
+        }
+        open.close();
+    }
+
+    private long segmentFiles() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            return paths.filter(path -> path.getFileName().toString().endsWith(".blocks")).count();
+        }
+    }
+
+    private static List<ElectricityReading> minuteReadings() {
+        List<ElectricityReading> readings = new ArrayList<>();
+        for (int i = 0; i < READINGS; i++) {
+            readings.add(new ElectricityReading(START.plusSeconds(60L * i), BigDecimal.valueOf(i % 50, 2)));
+        }
+        return readings;
+    }
+}
@@ -0,0 +1,214 @@
+package uk.tw.energy.store;
+
+import org.junit.jupiter.api.Test;
+import uk.tw.energy.domain.ElectricityReading;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+public class MeterReadingSeriesTest {
+
+    private static final Instant START = Instant.parse("2023-01-02T00:00:00Z");
+
+    private final MeterReadingSeries series = new MeterReadingSeries();
+
+    @Test
+    public void shouldKeepACumulativeEnergyColumnAsReadingsArrive() {
+        series.append(List.of(reading(0, "1.0"), reading(1800, "3.0")));
+        series.append(List.of(reading(3600, "3.0")));
+
+        ReadingColumns columns = series.columns();
+        assertThat(columns.cumulativeKwh(0)).isEqualTo(0.0);
+        assertThat(columns.cumulativeKwh(1)).isCloseTo(1.0, within(1e-9));
+        assertThat(columns.cumulativeKwh(2)).isCloseTo(2.5, within(1e-9));
+        assertThat(series.profile().totalKwh()).isCloseTo(2.5, within(1e-9));
+    }
+
+    @Test
+    public void shouldMergeOutOfOrderReadingsAndRebuildTheTotals() {
+        series.append(List.of(reading(0, "2.0"), reading(3600, "2.0")));
+        ReadingColumns before = series.columns();
+
+        AppendResult result = series.append(List.of(reading(1800, "4.0")));
+
+        ReadingColumns columns = series.columns();
+        assertThat(result.firstChangedIndex()).isEqualTo(1);
+        assertThat(result.energyDelta().totalKwh()).isCloseTo(1.0, within(1e-9));
+        assertThat(columns.toList()).containsExactly(reading(0, "2.0"), reading(1800, "4.0"), reading(3600, "2.0"));
+        assertThat(columns.cumulativeKwh(2)).isCloseTo(3.0, within(1e-9));
+        assertThat(before.toList()).containsExactly(reading(0, "2.0"), reading(3600, "2.0"));
+    }
+
+    @Test
+    public void shouldRejectABatchWithAReadingOutOfRangeWithoutChangingTheSeries() {
+        series.append(List.of(reading(0, "2.0"), reading(3600, "2.0")));
+        ReadingColumns before = series.columns();
+
+        assertThatThrownBy(() -> series.append(List.of(reading(1800, "4.0"), reading(7200, "1E+200"))))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        assertThat(series.columns()).isSameAs(before);
+        assertThat(MeterReadingSeries.isStorable(new BigDecimal("1E+120"))).isTrue();
+        assertThat(MeterReadingSeries.isStorable(new BigDecimal("1E-200"))).isTrue();
+    }
+
+    @Test
+    public void shouldHandleSeriesSpanningManyBlocks() {
+        List<ElectricityReading> readings = new ArrayList<>();
+        for (int i = 0; i < 3 * ReadingColumns.BLOCK_SIZE + 7; i++) {
+            readings.add(reading(i * 10L, "0.3600"));
+        }
+        series.append(readings.subList(0, 100));
+        series.append(readings.subList(100, readings.size()));
+
+        ReadingColumns columns = series.columns();
+        assertThat(columns.size()).isEqualTo(readings.size());
+        assertThat(columns.get(ReadingColumns.BLOCK_SIZE)).isEqualTo(readings.get(ReadingColumns.BLOCK_SIZE));
+        assertThat(columns.cumulativeKwh(readings.size() - 1)).isCloseTo((readings.size() - 1) * 0.001, within(1e-9));
+        assertThat(columns.indexAtOrAfter(START.plusSeconds(50_005))).isEqualTo(5001);
+    }
+
+    @Test
+    public void shouldAnswerWindowEnergyFromTheCumulativeColumn() {
+        series.append(List.of(reading(0, "0.0"), reading(3600, "4.0"), reading(7200, "4.0")));
+
+        ReadingColumns columns = series.columns();
+        assertThat(columns.energyKwh(null, null)).isCloseTo(6.0, within(1e-9));
+        assertThat(columns.energyKwh(START.plusSeconds(1800), START.plusSeconds(5400))).isCloseTo(3.5, within(1e-9));
+        assertThat(columns.energyKwh(START.minusSeconds(600), START.plusSeconds(1800))).isCloseTo(0.5, within(1e-9));
+        assertThat(columns.energyKwh(START.plusSeconds(7200), START.plusSeconds(9000))).isEqualTo(0.0);
+    }
+
+    @Test
+    public void shouldKeepTheExactReadingValues() {
+        series.append(List.of(reading(0, "0.0500"), reading(60, "12.5")));
+
+        assertThat(series.columns().reading(0)).isEqualTo(new BigDecimal("0.0500"));
+        assertThat(series.columns().reading(1)).isEqualTo(new BigDecimal("12.5"));
+    }
+
+    @Test
+    public void shouldRollEvictedBlocksUpIntoHourlyTotals() {
+        List<ElectricityReading> readings = minuteReadings(2 * ReadingColumns.BLOCK_SIZE + 100);
+        series.append(readings);
+        ReadingColumns before = series.columns();
+
+        EvictionResult result = series.evict(START.plusSeconds(60L * readings.size()), null, 10);
+
+        ReadingColumns after = series.columns();
+        assertThat(result.evictedReadings()).isEqualTo(2 * ReadingColumns.BLOCK_SIZE);
+        assertThat(after.size()).isEqualTo(100);
+        assertThat(after.hasRolledUpHistory()).isTrue();
+        assertThat(after.firstCoveredTime()).isEqualTo(START);
+        assertThat(after.energyKwh(null, null)).isCloseTo(before.energyKwh(null, null), within(1e-9));
+        Instant from = START.plusSeconds(3600);
+        Instant to = START.plusSeconds(100 * 3600);
+        assertThat(after.energyKwh(from, to)).isCloseTo(before.energyKwh(from, to), within(1e-9));
+        assertThat(before.size()).isEqualTo(readings.size());
+    }
+
+    @Test
+    public void shouldOnlyEvictBlocksOlderThanTheCutoffAndNeverTheNewest() {
+        series.append(minuteReadings(2 * ReadingColumns.BLOCK_SIZE));
+
+        assertThat(series.evict(START, null, 10).changed()).isFalse();
+        assertThat(series.evict(START.plusSeconds(60L * 3 * ReadingColumns.BLOCK_SIZE), null, 10).evictedReadings())
+                .isEqualTo(ReadingColumns.BLOCK_SIZE);
+        assertThat(series.columns().size()).isEqualTo(ReadingColumns.BLOCK_SIZE);
+    }
+
+    @Test
+    public void shouldDropReadingsOlderThanTheEvictedHistory() {
+        series.append(minuteReadings(ReadingColumns.BLOCK_SIZE + 10));
+        series.evict(START.plusSeconds(60L * 2 * ReadingColumns.BLOCK_SIZE), null, 10);
+        double total = series.columns().energyKwh(null, null);
+
+        AppendResult result = series.append(List.of(reading(0, "5.0"), reading(60L * (ReadingColumns.BLOCK_SIZE + 10), "0.0600")));
+
+        assertThat(result.appended()).isEqualTo(1);
+        assertThat(series.columns().energyKwh(null, null)).isCloseTo(total + 0.001, within(1e-9));
+        assertThat(series.profile().totalKwh()).isCloseTo(total + 0.001, within(1e-9));
+    }
+
+    @Test
+    public void shouldDropRolledUpHoursOlderThanTheRollupCutoff() {
+        List<ElectricityReading> readings = minuteReadings(8 * ReadingColumns.BLOCK_SIZE);
+        series.append(readings);
+        Instant rollupCutoff = START.plus(Duration.ofDays(10));
+
+        EvictionResult result = series.evict(START.plusSeconds(60L * readings.size()), rollupCutoff, 10);
+
+        ReadingColumns columns = series.columns();
+        assertThat(result.droppedRollupHours()).isEqualTo(240);
+        assertThat(columns.firstCoveredTime()).isEqualTo(rollupCutoff);
+        assertThat(columns.energyKwh(START, rollupCutoff)).isEqualTo(0.0);
+        assertThat(columns.energyKwh(rollupCutoff, rollupCutoff.plus(Duration.ofDays(1)))).isCloseTo(1.44, within(1e-9));
+    }
+
+    @Test
+    public void shouldTrackEachMonthsPeakDemandAsReadingsArrive() {
+        List<ElectricityReading> readings = spikeReadings();
+        series.append(readings.subList(0, 12));
+        series.append(readings.subList(12, readings.size()));
+
+        List<MonthlyPeak> peaks = series.peakDemand(15);
+        assertThat(peaks).hasSize(1);
+        assertThat(peaks.get(0).month()).isEqualTo(YearMonth.of(2023, 1));
+        // 75 kW minutes in the quarter hour to 01:10
+        assertThat(peaks.get(0).kw()).isCloseTo(75.0 / 15, within(1e-9));
+        assertThat(peaks.get(0).windowEnd()).isEqualTo(START.plusSeconds(70 * 60));
+        assertThat(series.peakDemand(30).get(0).kw()).isCloseTo(90.0 / 30, within(1e-9));
+        assertThat(series.peakDemand(60).get(0).kw()).isCloseTo(120.0 / 60, within(1e-9));
+    }
+
+    @Test
+    public void shouldRecomputePeakDemandFromTheMonthAnOutOfOrderBatchLandsIn() {
+        List<ElectricityReading> readings = new ArrayList<>(spikeReadings());
+        ElectricityReading spike = readings.remove(13);
+        // and a quieter February
+        readings.add(reading(Duration.ofDays(30).toSeconds(), "0.5"));
+        readings.add(reading(Duration.ofDays(30).toSeconds() + 3600, "0.5"));
+        series.append(readings);
+        assertThat(series.peakDemand(15).get(0).kw()).isLessThan(75.0 / 15);
+
+        series.append(List.of(spike));
+
+        assertThat(series.peakDemand(15)).hasSize(2);
+        assertThat(series.peakDemand(15).get(0).kw()).isCloseTo(75.0 / 15, within(1e-9));
+        assertThat(series.peakDemand(15).get(1).month()).isEqualTo(YearMonth.of(2023, 2));
+        for (int windowMinutes : MeterReadingSeries.DEMAND_WINDOW_MINUTES) {
+            assertThat(series.peakDemand(windowMinutes)).isEqualTo(PeakDemand.peaks(series.columns(), null, null, windowMinutes));
+        }
+    }
+
+    /**
+     * Readings every 5 minutes for two hours at 1 kW, apart from 7 kW at 01:00 and 01:05.
+     */
+    private static List<ElectricityReading> spikeReadings() {
+        List<ElectricityReading> readings = new ArrayList<>();
+        for (int minute = 0; minute <= 120; minute += 5) {
+            readings.add(reading(minute * 60L, minute == 60 || minute == 65 ? "7.0" : "1.0"));
+        }
+        return readings;
+    }
+
+    private static List<ElectricityReading> minuteReadings(int count) {
+        List<ElectricityReading> readings = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            readings.add(reading(60L * i, "0.0600"));
+        }
+        return readings;
+    }
+
+    private static ElectricityReading reading(long secondsAfterStart, String kw) {
+        return new ElectricityReading(START.plusSeconds(secondsAfterStart), new BigDecimal(kw));
+    }
+}
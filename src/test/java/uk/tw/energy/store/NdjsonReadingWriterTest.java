@@ -0,0 +1,73 @@
+package uk.tw.energy.store;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import uk.tw.energy.domain.ElectricityReading;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class NdjsonReadingWriterTest {
+
+    private final MeterReadingSeries series = new MeterReadingSeries();
+
+    @Test
+    public void shouldWriteOneReadingPerLineLikeJackson() throws IOException {
+        series.append(List.of(
+                new ElectricityReading(Instant.parse("2023-01-02T00:00:00Z"), new BigDecimal("1.2345")),
+                new ElectricityReading(Instant.parse("2023-01-02T00:00:10.500Z"), new BigDecimal("0.0001")),
+                new ElectricityReading(Instant.parse("2023-01-03T23:59:59.000000001Z"), new BigDecimal("1E+3"))));
+
+        assertThat(write(0, 3)).isEqualTo("""
+                {"time":"2023-01-02T00:00:00Z","reading":1.2345}
+                {"time":"2023-01-02T00:00:10.500Z","reading":0.0001}
+                {"time":"2023-01-03T23:59:59.000000001Z","reading":1E+3}
+                """);
+    }
+
+    @Test
+    public void shouldWriteOnlyTheRequestedRange() throws IOException {
+        series.append(List.of(
+                new ElectricityReading(Instant.parse("2023-01-02T00:00:00Z"), BigDecimal.ONE),
+                new ElectricityReading(Instant.parse("2023-01-02T00:01:00Z"), BigDecimal.TEN)));
+
+        assertThat(write(1, 2)).isEqualTo("{\"time\":\"2023-01-02T00:01:00Z\",\"reading\":10}\n");
+        assertThat(write(2, 2)).isEmpty();
+    }
+
+    @Test
+    public void shouldMatchInstantAndJacksonDecimalFormattingAcrossBufferFlushes() throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        List<ElectricityReading> readings = new ArrayList<>();
+        Instant time = Instant.parse("1969-12-31T23:00:00Z");
+        for (int i = 0; i < 10_000; i++) {
+            time = time.plusMillis(1_234_567).plusNanos(i % 3 == 0 ? 0 : i * 1_001L);
+            // scales from -127 to 127, e.g. 1E-120, so lines with the longest readings land on buffer flushes too
+            long unscaled = i % 7 == 0 ? (i % 2 == 0 ? Long.MIN_VALUE : Long.MAX_VALUE) : (i - 5_000L) * 7_919;
+            readings.add(new ElectricityReading(time, BigDecimal.valueOf(unscaled, i % 255 - 127)));
+        }
+        series.append(readings);
+
+        String[] lines = write(0, readings.size()).split("\n");
+
+        assertThat(lines).hasSize(readings.size());
+        for (int i = 0; i < readings.size(); i++) {
+            // as stored, so rounded to 18 significant digits
+            ElectricityReading reading = series.columns().get(i);
+            assertThat(lines[i]).isEqualTo("{\"time\":\"" + reading.time() + "\",\"reading\":"
+                    + objectMapper.writeValueAsString(reading.reading()) + "}");
+        }
+    }
+
+    private String write(int from, int to) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new NdjsonReadingWriter(out).write(series.columns(), from, to);
+        return out.toString();
+    }
+}
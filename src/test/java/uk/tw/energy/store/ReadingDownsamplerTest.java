@@ -0,0 +1,72 @@
+package uk.tw.energy.store;
+
+import org.junit.jupiter.api.Test;
+import uk.tw.energy.domain.ElectricityReading;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ReadingDownsamplerTest {
+
+    private static final Instant START = Instant.parse("2023-01-02T00:00:00Z");
+
+    @Test
+    public void shouldKeepEveryReadingWhenThereAreNoMoreThanThePoints() {
+        ReadingColumns columns = columnsOf(flatReadings(5));
+
+        assertThat(ReadingDownsampler.largestTriangleThreeBuckets(columns, 0, 5, 10)).containsExactly(0, 1, 2, 3, 4);
+    }
+
+    @Test
+    public void shouldKeepTheEndsAndOneReadingPerBucketInTimeOrder() {
+        ReadingColumns columns = columnsOf(flatReadings(10_000));
+
+        int[] indexes = ReadingDownsampler.largestTriangleThreeBuckets(columns, 0, 10_000, 1000);
+
+        assertThat(indexes).hasSize(1000);
+        assertThat(indexes[0]).isZero();
+        assertThat(indexes[999]).isEqualTo(9999);
+        for (int i = 1; i < indexes.length; i++) {
+            assertThat(indexes[i]).isGreaterThan(indexes[i - 1]);
+        }
+    }
+
+    @Test
+    public void shouldKeepSpikesThatStridingWouldSkip() {
+        List<ElectricityReading> readings = flatReadings(1000);
+        readings.set(437, new ElectricityReading(readings.get(437).time(), new BigDecimal("9.0")));
+        readings.set(701, new ElectricityReading(readings.get(701).time(), new BigDecimal("0.0")));
+        ReadingColumns columns = columnsOf(readings);
+
+        int[] indexes = ReadingDownsampler.largestTriangleThreeBuckets(columns, 0, 1000, 20);
+
+        assertThat(indexes).contains(437, 701);
+    }
+
+    @Test
+    public void shouldRejectTooFewPoints() {
+        ReadingColumns columns = columnsOf(flatReadings(10));
+
+        assertThatThrownBy(() -> ReadingDownsampler.largestTriangleThreeBuckets(columns, 0, 10, 2))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static ReadingColumns columnsOf(List<ElectricityReading> readings) {
+        MeterReadingSeries series = new MeterReadingSeries();
+        series.append(readings);
+        return series.columns();
+    }
+
+    private static List<ElectricityReading> flatReadings(int count) {
+        List<ElectricityReading> readings = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            readings.add(new ElectricityReading(START.plusSeconds(60L * i), new BigDecimal("1.0")));
+        }
+        return readings;
+    }
+}